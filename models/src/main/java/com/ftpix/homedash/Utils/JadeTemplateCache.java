@@ -0,0 +1,57 @@
+package com.ftpix.homedash.Utils;
+
+import de.neuland.jade4j.JadeConfiguration;
+import de.neuland.jade4j.exceptions.JadeException;
+import de.neuland.jade4j.template.JadeTemplate;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the compiled plugin templates so they are parsed only once.
+ * Templates are loaded from the class path using {@link HomeDashClassPathTemplateLoader}
+ */
+public class JadeTemplateCache {
+    private final JadeConfiguration configuration = new JadeConfiguration();
+    private final Map<String, JadeTemplate> templates = new ConcurrentHashMap<>();
+
+    public JadeTemplateCache() {
+        configuration.setTemplateLoader(new HomeDashClassPathTemplateLoader());
+        //we do the caching ourselves
+        configuration.setCaching(false);
+    }
+
+    /**
+     * Gets a compiled template, compiles it if it's the first time we need it
+     *
+     * @param pluginId id of the plugin owning the template
+     * @param name     path of the template, ex: templates/systeminfo-2x1.jade
+     */
+    public JadeTemplate getTemplate(String pluginId, String name) throws IOException, JadeException {
+        String key = pluginId + ":" + name;
+
+        JadeTemplate template = templates.get(key);
+        if (template == null) {
+            template = configuration.getTemplate(name);
+            templates.putIfAbsent(key, template);
+        }
+
+        return template;
+    }
+
+    /**
+     * Renders a compiled template
+     */
+    public String render(JadeTemplate template, Map<String, Object> model) throws JadeException {
+        return configuration.renderTemplate(template, model);
+    }
+
+    public int size() {
+        return templates.size();
+    }
+
+    public void clear() {
+        templates.clear();
+    }
+}
@@ -0,0 +1,136 @@
+package com.ftpix.homedash.Utils;
+
+import com.ftpix.homedash.models.WebSocketMessage;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import io.gsonfire.GsonFireBuilder;
+
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gson instances shared by the whole app. Gson is thread safe and keeps the type adapters it builds,
+ * a new instance per class or per message builds them again every time.
+ * <p>
+ * The classes sent at every refresh can have a {@link PayloadWriter} instead of being serialized by reflection,
+ * they're read by reflection as before.
+ */
+public final class Json {
+    private static final Map<Class<?>, PayloadWriter<?>> WRITERS = new ConcurrentHashMap<>();
+
+    /**
+     * Messages sent to the browsers and the other instances, {@link WebSocketMessage} and the plugins payloads
+     */
+    public static final Gson MESSAGES = new GsonFireBuilder().enableExposeMethodResult().createGsonBuilder()
+            .excludeFieldsWithModifiers(Modifier.STATIC, Modifier.TRANSIENT, Modifier.VOLATILE)
+            .serializeSpecialFloatingPointValues()
+            .registerTypeAdapterFactory(new PayloadAdapterFactory())
+            .create();
+
+    /**
+     * Database models sent to the pages, only the @Expose fields and @ExposeMethodResult methods
+     */
+    public static final Gson EXPOSED = new GsonFireBuilder().enableExposeMethodResult().createGsonBuilder()
+            .excludeFieldsWithoutExposeAnnotation()
+            .create();
+
+    /**
+     * Default configuration, for settings, api calls and module data
+     */
+    public static final Gson PLAIN = new Gson();
+
+    static {
+        register(WebSocketMessage.class, (gson, out, message) -> {
+            out.beginObject();
+            if (message.getCommand() != null) {
+                out.name("command").value(message.getCommand());
+            }
+            writeObject(gson, out, "message", message.getMessage());
+            writeObject(gson, out, "extra", message.getExtra());
+            out.name("id").value(message.getModuleId());
+            if (message.getSeq() != null) {
+                out.name("seq").value(message.getSeq());
+            }
+            out.endObject();
+        });
+    }
+
+    private Json() {
+    }
+
+    /**
+     * Registers the writer of a payload class, to do before it's serialized the first time (ex: in a static block of the plugin)
+     * as gson keeps the adapter it used for a class.
+     */
+    public static <T> void register(Class<T> clazz, PayloadWriter<T> writer) {
+        WRITERS.put(clazz, writer);
+    }
+
+    /**
+     * Writes a field holding any type of value, skipped if null
+     */
+    public static void writeObject(Gson gson, JsonWriter out, String name, Object value) throws IOException {
+        if (value != null) {
+            out.name(name);
+            writeValue(gson, out, value);
+        }
+    }
+
+    /**
+     * Writes a value with the adapter of its runtime type
+     */
+    @SuppressWarnings("unchecked")
+    public static void writeValue(Gson gson, JsonWriter out, Object value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+        } else {
+            ((TypeAdapter<Object>) gson.getAdapter(value.getClass())).write(out, value);
+        }
+    }
+
+    /**
+     * Writes a class field by field, without reflection
+     */
+    @FunctionalInterface
+    public interface PayloadWriter<T> {
+        /**
+         * @param gson to write the nested values that don't have a writer
+         * @param out  where to write, value is never null
+         */
+        void write(Gson gson, JsonWriter out, T value) throws IOException;
+    }
+
+    private static class PayloadAdapterFactory implements TypeAdapterFactory {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            PayloadWriter<T> writer = (PayloadWriter<T>) WRITERS.get(type.getRawType());
+            if (writer == null) {
+                return null;
+            }
+
+            TypeAdapter<T> delegate = gson.getDelegateAdapter(this, type);
+            return new TypeAdapter<T>() {
+                @Override
+                public void write(JsonWriter out, T value) throws IOException {
+                    if (value == null) {
+                        out.nullValue();
+                    } else {
+                        writer.write(gson, out, value);
+                    }
+                }
+
+                @Override
+                public T read(JsonReader in) throws IOException {
+                    return delegate.read(in);
+                }
+            };
+        }
+    }
+}
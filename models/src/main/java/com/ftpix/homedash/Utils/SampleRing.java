@@ -0,0 +1,192 @@
+package com.ftpix.homedash.Utils;
+
+import java.lang.invoke.VarHandle;
+
+/**
+ * History of numeric samples kept in one array, the oldest sample is replaced once it's full.
+ * Each sample has the same number of values (ex: cpu usage, temperature and the usage of each core).
+ * <p>
+ * Made for a single thread adding samples (the background refresh of a plugin) while any number of threads
+ * read them (the refreshes) without locking: readers copy the samples they need and drop the ones
+ * that were overwritten while they were copying them.
+ * <p>
+ * Values are doubles, whole numbers (bytes, timestamps in ms) are exact up to 2^53.
+ */
+public class SampleRing {
+    private final int capacity, width;
+    private final double[] values;
+
+    /**
+     * Number of samples published, samples before it can be read
+     */
+    private volatile long published = 0;
+
+    /**
+     * Number of samples started by the writer, the ones older than claimed - capacity may be getting overwritten
+     */
+    private volatile long claimed = 0;
+
+    /**
+     * @param capacity number of samples kept
+     * @param width    number of values of a sample
+     */
+    public SampleRing(int capacity, int width) {
+        if (capacity <= 0 || width <= 0) {
+            throw new IllegalArgumentException("capacity and width must be positive");
+        }
+        this.capacity = capacity;
+        this.width = width;
+        this.values = new double[capacity * width];
+    }
+
+    /**
+     * Adds a sample, only one thread can add samples.
+     * The array is copied so the caller can reuse it for its next sample
+     *
+     * @param sample the values of the sample, at least {@link #getWidth()}
+     */
+    public void add(double[] sample) {
+        long sequence = published;
+        claimed = sequence + 1;
+        VarHandle.storeStoreFence();
+
+        System.arraycopy(sample, 0, values, (int) (sequence % capacity) * width, width);
+        published = sequence + 1;
+    }
+
+    /**
+     * Gets a value of the last sample
+     *
+     * @return NaN if there's no sample yet
+     */
+    public double lastValue(int column) {
+        long end = published;
+        if (end == 0) {
+            return Double.NaN;
+        }
+
+        double value = values[(int) ((end - 1) % capacity) * width + column];
+        VarHandle.loadLoadFence();
+        return claimed - capacity <= end - 1 ? value : Double.NaN;
+    }
+
+    /**
+     * Copies the most recent samples, oldest first
+     *
+     * @param count maximum number of samples wanted
+     */
+    public Snapshot last(int count) {
+        long end = published;
+        long start = Math.max(0, end - Math.min(count, capacity));
+
+        int size = (int) (end - start);
+        double[] copy = new double[size * width];
+        for (int i = 0; i < size; i++) {
+            System.arraycopy(values, (int) ((start + i) % capacity) * width, copy, i * width, width);
+        }
+
+        // the writer may have started overwriting the oldest samples while we were copying
+        VarHandle.loadLoadFence();
+        int overwritten = (int) Math.max(0, claimed - capacity - start);
+        return new Snapshot(copy, width, Math.min(overwritten, size));
+    }
+
+    /**
+     * Number of samples available
+     */
+    public int size() {
+        return (int) Math.min(published, capacity);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Copy of consecutive samples, oldest first
+     */
+    public static class Snapshot {
+        private final double[] values;
+        private final int width, offset, size;
+
+        /**
+         * Samples that don't come from a ring, ex: read back from json
+         *
+         * @param values the values of the samples one after the other, oldest first
+         */
+        public static Snapshot of(double[] values, int width) {
+            return new Snapshot(values, width, 0);
+        }
+
+        private Snapshot(double[] values, int width, int skipped) {
+            this.values = values;
+            this.width = width;
+            this.offset = skipped;
+            this.size = values.length / width - skipped;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * Number of values of a sample
+         */
+        public int getWidth() {
+            return width;
+        }
+
+        /**
+         * @param sample index of the sample, 0 is the oldest
+         * @param column index of the value in the sample
+         */
+        public double get(int sample, int column) {
+            return values[(offset + sample) * width + column];
+        }
+
+        /**
+         * Value of a sample that holds a whole number
+         */
+        public long getLong(int sample, int column) {
+            return (long) get(sample, column);
+        }
+
+        /**
+         * Keeps one sample per interval going back from the last one, for samples taken more often than the caller needs
+         *
+         * @param timeColumn column holding the time of the samples
+         * @param interval   time between two samples kept, 10% less is accepted as the samples aren't taken exactly on time
+         * @param count      maximum number of samples kept
+         */
+        public Snapshot downsample(int timeColumn, double interval, int count) {
+            int[] kept = new int[Math.min(count, size)];
+            int keptSize = 0;
+            double last = 0;
+            for (int i = size - 1; i >= 0 && keptSize < kept.length; i--) {
+                double time = get(i, timeColumn);
+                if (keptSize == 0 || time <= last - interval * 0.9) {
+                    kept[keptSize++] = i;
+                    last = time;
+                }
+            }
+
+            if (keptSize == size) {
+                return this;
+            }
+
+            double[] copy = new double[keptSize * width];
+            for (int i = 0; i < keptSize; i++) {
+                System.arraycopy(values, (offset + kept[keptSize - 1 - i]) * width, copy, i * width, width);
+            }
+            return new Snapshot(copy, width, 0);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.ftpix.homedash.metrics;
+
+/**
+ * Counters of named devices (network interfaces, disks), one row per device in the order they were read.
+ * The rows and their names are kept from one read to the next, a name is only created when a device appears.
+ */
+public abstract class Counters {
+    private final int width;
+    private String[] names = new String[8];
+    private long[] values;
+    private int size = 0;
+
+    protected Counters(int width) {
+        this.width = width;
+        this.values = new long[names.length * width];
+    }
+
+    /**
+     * Number of devices read
+     */
+    public int size() {
+        return size;
+    }
+
+    public String getName(int row) {
+        return names[row];
+    }
+
+    /**
+     * @param row    index of the device
+     * @param column one of the constants of the counters, ex: {@link InterfaceCounters#RX_BYTES}
+     */
+    public long get(int row, int column) {
+        return values[row * width + column];
+    }
+
+    /**
+     * Row of a device
+     *
+     * @return -1 if it wasn't read
+     */
+    public int indexOf(String name) {
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Copies another read, to keep it as the previous one
+     */
+    public void copy(Counters other) {
+        clear();
+        for (int i = 0; i < other.size; i++) {
+            int row = size;
+            grow();
+            names[row] = other.names[i];
+            System.arraycopy(other.values, i * width, values, row * width, width);
+        }
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Adds a row for the device, keeps the name already at this row if it's the same device as the previous read
+     *
+     * @return the new row
+     */
+    int add(ProcScanner scanner, int nameStart, int nameEnd) {
+        int row = size;
+        grow();
+        if (names[row] == null || !scanner.equals(nameStart, nameEnd, names[row])) {
+            names[row] = scanner.string(nameStart, nameEnd);
+        }
+        return row;
+    }
+
+    /**
+     * Adds a row for a device read from somewhere else than /proc
+     */
+    int add(String name) {
+        int row = size;
+        grow();
+        names[row] = name;
+        return row;
+    }
+
+    void set(int row, int column, long value) {
+        values[row * width + column] = value;
+    }
+
+    private void grow() {
+        if (size == names.length) {
+            String[] newNames = new String[names.length * 2];
+            System.arraycopy(names, 0, newNames, 0, size);
+            names = newNames;
+
+            long[] newValues = new long[newNames.length * width];
+            System.arraycopy(values, 0, newValues, 0, size * width);
+            values = newValues;
+        }
+        size++;
+    }
+}
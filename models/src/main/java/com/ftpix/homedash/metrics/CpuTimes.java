@@ -0,0 +1,79 @@
+package com.ftpix.homedash.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Cpu ticks spent in each state, for the whole cpu (index 0 of the {@link #get(int, int)} methods) then for each core.
+ * The usage comes from the difference between two reads.
+ */
+public class CpuTimes {
+    public static final int USER = 0, NICE = 1, SYSTEM = 2, IDLE = 3, IOWAIT = 4, IRQ = 5, SOFTIRQ = 6, STEAL = 7, STATES = 8;
+
+    private long[] ticks = new long[STATES];
+    private int cores = 0;
+
+    /**
+     * Number of cores read
+     */
+    public int getCores() {
+        return cores;
+    }
+
+    /**
+     * @param cpu   0 for the whole cpu, core number + 1 for a core
+     * @param state one of the states, ex: {@link #IDLE}
+     */
+    public long get(int cpu, int state) {
+        return ticks[cpu * STATES + state];
+    }
+
+    /**
+     * Sum of all the states
+     */
+    public long total(int cpu) {
+        long total = 0;
+        for (int state = 0; state < STATES; state++) {
+            total += ticks[cpu * STATES + state];
+        }
+        return total;
+    }
+
+    /**
+     * Part of the time the cpu wasn't idle since a previous read
+     *
+     * @param cpu 0 for the whole cpu, core number + 1 for a core
+     * @return between 0 and 1, 0 if no time passed or the core didn't exist before
+     */
+    public double usage(CpuTimes previous, int cpu) {
+        if (cpu > previous.cores) {
+            return 0;
+        }
+
+        long total = total(cpu) - previous.total(cpu);
+        long idle = get(cpu, IDLE) + get(cpu, IOWAIT) - previous.get(cpu, IDLE) - previous.get(cpu, IOWAIT);
+        return total <= 0 ? 0 : Math.max(0, Math.min(1, 1 - (double) idle / total));
+    }
+
+    /**
+     * Copies another read, to keep it as the previous one
+     */
+    public void copy(CpuTimes other) {
+        resize(other.cores);
+        System.arraycopy(other.ticks, 0, ticks, 0, (other.cores + 1) * STATES);
+    }
+
+    /**
+     * Makes room for the given number of cores, the ticks are only reallocated if there are more of them than before
+     */
+    void resize(int cores) {
+        int length = (cores + 1) * STATES;
+        if (ticks.length < length) {
+            ticks = Arrays.copyOf(ticks, Math.max(length, ticks.length * 2));
+        }
+        this.cores = cores;
+    }
+
+    void set(int cpu, int state, long value) {
+        ticks[cpu * STATES + state] = value;
+    }
+}
@@ -0,0 +1,12 @@
+package com.ftpix.homedash.metrics;
+
+/**
+ * Counters of the block devices since the boot, the time spent doing I/O is in ms
+ */
+public class DiskCounters extends Counters {
+    public static final int READS = 0, READ_BYTES = 1, WRITES = 2, WRITE_BYTES = 3, IO_TIME = 4, WIDTH = 5;
+
+    public DiskCounters() {
+        super(WIDTH);
+    }
+}
@@ -0,0 +1,48 @@
+package com.ftpix.homedash.metrics;
+
+import org.apache.logging.log4j.LogManager;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Reads the counters of the host the app runs on. The results are written in the objects given
+ * so a plugin sampling every few seconds can reuse the same ones and allocate nothing.
+ * <p>
+ * Not thread safe, one instance per sampling thread.
+ */
+public interface HostMetrics extends Closeable {
+
+    /**
+     * Cpu time spent in each state since the boot, for the whole cpu and for each core
+     */
+    void readCpu(CpuTimes cpu) throws IOException;
+
+    void readMemory(MemoryUsage memory) throws IOException;
+
+    /**
+     * Counters of all the network interfaces
+     */
+    void readNetwork(InterfaceCounters interfaces) throws IOException;
+
+    /**
+     * Counters of all the block devices
+     */
+    void readDisks(DiskCounters disks) throws IOException;
+
+    /**
+     * Reads /proc directly on Linux, uses OSHI everywhere else
+     */
+    static HostMetrics local() {
+        Path proc = Paths.get("/proc");
+        if (Files.isReadable(proc.resolve("stat")) && Files.isReadable(proc.resolve("meminfo"))) {
+            return new ProcHostMetrics(proc);
+        }
+
+        LogManager.getLogger().info("No /proc to read, host metrics read by OSHI");
+        return new OshiHostMetrics();
+    }
+}
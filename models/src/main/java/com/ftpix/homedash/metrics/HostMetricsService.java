@@ -0,0 +1,397 @@
+package com.ftpix.homedash.metrics;
+
+import com.ftpix.homedash.Utils.SampleRing;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples the host for all the modules showing it (system info, network monitor, hard disk...) and keeps the histories.
+ * <p>
+ * A plugin subscribes to the metrics it needs with the resolution it needs, each metric is sampled at the finest resolution
+ * asked for it and only while someone is subscribed to it. The plugins then read the histories at their own resolution,
+ * the cost is the same with one module or ten.
+ * <p>
+ * The histories are {@link SampleRing}s, the first column of each is the time of the sample in ms.
+ */
+public enum HostMetricsService {
+    INSTANCE;
+
+    public enum Metric {
+        CPU, MEMORY, NETWORK, DISKS
+    }
+
+    public static final int TIME = 0;
+
+    /**
+     * Cpu history: usage of the whole cpu in %, then the usage of each core from {@link #CPU_CORES}
+     */
+    public static final int CPU_USAGE = 1, CPU_CORES = 2;
+
+    /**
+     * Memory history, in bytes
+     */
+    public static final int MEMORY_TOTAL = 1, MEMORY_AVAILABLE = 2, MEMORY_USED = 3, MEMORY_SWAP_TOTAL = 4, MEMORY_SWAP_USED = 5;
+
+    /**
+     * History of a network interface: the counters since the boot and the rates per second since the previous sample.
+     * The rates of the first sample are NaN
+     */
+    public static final int NETWORK_RX_BYTES = 1, NETWORK_TX_BYTES = 2, NETWORK_RX_RATE = 3, NETWORK_TX_RATE = 4,
+            NETWORK_RX_PACKET_RATE = 5, NETWORK_TX_PACKET_RATE = 6, NETWORK_RX_ERROR_RATE = 7, NETWORK_TX_ERROR_RATE = 8;
+
+    /**
+     * History of a disk: bytes and operations per second, % of the time it was busy. NaN for the first sample
+     */
+    public static final int DISK_READ_RATE = 1, DISK_WRITE_RATE = 2, DISK_READS_RATE = 3, DISK_WRITES_RATE = 4, DISK_BUSY = 5;
+
+    private static final int MEMORY_WIDTH = 6, NETWORK_WIDTH = 9, DISK_WIDTH = 6;
+    private static final int HISTORY_SIZE = 600, DEVICE_HISTORY_SIZE = 300;
+
+    /**
+     * A metric is sampled when its resolution is reached minus this, the ticks aren't exactly one second apart
+     */
+    private static final long TOLERANCE = 200;
+
+    private final Logger logger = LogManager.getLogger();
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "host-metrics");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ScheduledFuture<?> sampling;
+
+    private volatile SampleRing cpu, memory;
+    private final Map<String, SampleRing> network = new ConcurrentHashMap<>(), disks = new ConcurrentHashMap<>();
+
+    // only used by the sampling thread
+    private HostMetrics metrics;
+    private final long[] lastSamples = new long[Metric.values().length];
+    private final boolean[] failing = new boolean[Metric.values().length];
+    private final CpuTimes cpuTimes = new CpuTimes(), previousCpuTimes = new CpuTimes();
+    private final MemoryUsage memoryUsage = new MemoryUsage();
+    private final InterfaceCounters interfaces = new InterfaceCounters(), previousInterfaces = new InterfaceCounters();
+    private final DiskCounters diskCounters = new DiskCounters(), previousDiskCounters = new DiskCounters();
+    private final double[] memorySample = new double[MEMORY_WIDTH], deviceSample = new double[Math.max(NETWORK_WIDTH, DISK_WIDTH)];
+    private double[] cpuSample = new double[0];
+
+    /**
+     * Starts sampling the given metrics, at least every resolution seconds
+     *
+     * @return to close when the metrics aren't needed anymore
+     */
+    public Subscription subscribe(int resolution, Metric... metrics) {
+        Subscription subscription = new Subscription(Math.max(1, resolution), EnumSet.copyOf(Arrays.asList(metrics)));
+
+        synchronized (this) {
+            subscriptions.add(subscription);
+            if (sampling == null) {
+                logger.info("Starting to sample the host");
+                sampling = sampler.scheduleAtFixedRate(this::sample, 0, 1, TimeUnit.SECONDS);
+            }
+        }
+
+        return subscription;
+    }
+
+    private synchronized void unsubscribe(Subscription subscription) {
+        if (subscriptions.remove(subscription) && subscriptions.isEmpty() && sampling != null) {
+            logger.info("Nothing left to sample");
+            sampling.cancel(false);
+            sampling = null;
+            // one last run to forget the histories nobody reads anymore
+            sampler.execute(this::sample);
+        }
+    }
+
+    /**
+     * Cpu samples at the given resolution
+     *
+     * @return null if the cpu isn't sampled
+     */
+    public SampleRing.Snapshot getCpu(int resolution, int count) {
+        return window(cpu, Metric.CPU, resolution, count);
+    }
+
+    /**
+     * Memory samples at the given resolution
+     *
+     * @return null if the memory isn't sampled
+     */
+    public SampleRing.Snapshot getMemory(int resolution, int count) {
+        return window(memory, Metric.MEMORY, resolution, count);
+    }
+
+    /**
+     * Samples of a network interface at the given resolution
+     *
+     * @return null if the interface doesn't exist or the network isn't sampled
+     */
+    public SampleRing.Snapshot getNetwork(String name, int resolution, int count) {
+        return window(network.get(name), Metric.NETWORK, resolution, count);
+    }
+
+    /**
+     * Samples of a disk at the given resolution
+     *
+     * @return null if the disk doesn't exist or the disks aren't sampled
+     */
+    public SampleRing.Snapshot getDisk(String name, int resolution, int count) {
+        return window(disks.get(name), Metric.DISKS, resolution, count);
+    }
+
+    /**
+     * Names of the network interfaces sampled
+     */
+    public Set<String> getInterfaces() {
+        return new TreeSet<>(network.keySet());
+    }
+
+    /**
+     * Names of the disks sampled
+     */
+    public Set<String> getDisks() {
+        return new TreeSet<>(disks.keySet());
+    }
+
+    /**
+     * Finest resolution asked for a metric
+     *
+     * @return 0 if nobody wants it
+     */
+    private int resolution(Metric metric) {
+        int resolution = 0;
+        for (Subscription subscription : subscriptions) {
+            if (subscription.metrics.contains(metric) && (resolution == 0 || subscription.resolution < resolution)) {
+                resolution = subscription.resolution;
+            }
+        }
+        return resolution;
+    }
+
+    /**
+     * Copies only the samples needed to pick one per resolution
+     */
+    private SampleRing.Snapshot window(SampleRing ring, Metric metric, int resolution, int count) {
+        if (ring == null) {
+            return null;
+        }
+
+        int sampled = Math.max(1, resolution(metric));
+        int perSample = Math.max(1, (resolution + sampled - 1) / sampled);
+        return ring.last(count * perSample).downsample(TIME, resolution * 1000d, count);
+    }
+
+    private void sample() {
+        long now = System.currentTimeMillis();
+
+        for (Metric metric : Metric.values()) {
+            int index = metric.ordinal();
+            int resolution = resolution(metric);
+
+            if (resolution == 0) {
+                if (lastSamples[index] != 0) {
+                    forget(metric);
+                    lastSamples[index] = 0;
+                }
+                continue;
+            }
+
+            if (now - lastSamples[index] < resolution * 1000L - TOLERANCE) {
+                continue;
+            }
+
+            try {
+                if (metrics == null) {
+                    metrics = HostMetrics.local();
+                }
+
+                long previous = lastSamples[index];
+                switch (metric) {
+                    case CPU:
+                        sampleCpu(now, previous);
+                        break;
+                    case MEMORY:
+                        sampleMemory(now);
+                        break;
+                    case NETWORK:
+                        sampleNetwork(now, previous);
+                        break;
+                    case DISKS:
+                        sampleDisks(now, previous);
+                        break;
+                }
+                lastSamples[index] = now;
+                failing[index] = false;
+            } catch (Exception e) {
+                // a metric not available on this host would fail every second
+                if (!failing[index]) {
+                    logger.error("Couldn't sample " + metric, e);
+                    failing[index] = true;
+                }
+            }
+        }
+    }
+
+    private void forget(Metric metric) {
+        logger.info("{} not sampled anymore", metric);
+        switch (metric) {
+            case CPU:
+                cpu = null;
+                break;
+            case MEMORY:
+                memory = null;
+                break;
+            case NETWORK:
+                network.clear();
+                break;
+            case DISKS:
+                disks.clear();
+                break;
+        }
+    }
+
+    private void sampleCpu(long now, long previous) throws Exception {
+        metrics.readCpu(cpuTimes);
+
+        // the usage is the difference with the previous sample
+        if (previous != 0) {
+            int width = CPU_CORES + cpuTimes.getCores();
+            if (cpu == null || cpu.getWidth() != width) {
+                cpuSample = new double[width];
+                cpu = new SampleRing(HISTORY_SIZE, width);
+            }
+
+            cpuSample[TIME] = now;
+            for (int i = 0; i <= cpuTimes.getCores(); i++) {
+                cpuSample[CPU_USAGE + i] = cpuTimes.usage(previousCpuTimes, i) * 100;
+            }
+            cpu.add(cpuSample);
+        }
+
+        previousCpuTimes.copy(cpuTimes);
+    }
+
+    private void sampleMemory(long now) throws Exception {
+        metrics.readMemory(memoryUsage);
+
+        if (memory == null) {
+            memory = new SampleRing(HISTORY_SIZE, MEMORY_WIDTH);
+        }
+
+        memorySample[TIME] = now;
+        memorySample[MEMORY_TOTAL] = memoryUsage.getTotal();
+        memorySample[MEMORY_AVAILABLE] = memoryUsage.getAvailable();
+        memorySample[MEMORY_USED] = memoryUsage.getUsed();
+        memorySample[MEMORY_SWAP_TOTAL] = memoryUsage.getSwapTotal();
+        memorySample[MEMORY_SWAP_USED] = memoryUsage.getSwapUsed();
+        memory.add(memorySample);
+    }
+
+    private void sampleNetwork(long now, long previous) throws Exception {
+        metrics.readNetwork(interfaces);
+
+        double seconds = (now - previous) / 1000d;
+        for (int row = 0; row < interfaces.size(); row++) {
+            String name = interfaces.getName(row);
+            int before = previous == 0 ? -1 : indexOf(previousInterfaces, name, row);
+
+            deviceSample[TIME] = now;
+            deviceSample[NETWORK_RX_BYTES] = interfaces.get(row, InterfaceCounters.RX_BYTES);
+            deviceSample[NETWORK_TX_BYTES] = interfaces.get(row, InterfaceCounters.TX_BYTES);
+            deviceSample[NETWORK_RX_RATE] = rate(interfaces, previousInterfaces, row, before, InterfaceCounters.RX_BYTES, seconds);
+            deviceSample[NETWORK_TX_RATE] = rate(interfaces, previousInterfaces, row, before, InterfaceCounters.TX_BYTES, seconds);
+            deviceSample[NETWORK_RX_PACKET_RATE] = rate(interfaces, previousInterfaces, row, before, InterfaceCounters.RX_PACKETS, seconds);
+            deviceSample[NETWORK_TX_PACKET_RATE] = rate(interfaces, previousInterfaces, row, before, InterfaceCounters.TX_PACKETS, seconds);
+            deviceSample[NETWORK_RX_ERROR_RATE] = rate(interfaces, previousInterfaces, row, before, InterfaceCounters.RX_ERRORS, seconds);
+            deviceSample[NETWORK_TX_ERROR_RATE] = rate(interfaces, previousInterfaces, row, before, InterfaceCounters.TX_ERRORS, seconds);
+
+            network.computeIfAbsent(name, n -> new SampleRing(DEVICE_HISTORY_SIZE, NETWORK_WIDTH)).add(deviceSample);
+        }
+
+        // interfaces gone (containers stopped...)
+        network.keySet().removeIf(name -> interfaces.indexOf(name) < 0);
+        previousInterfaces.copy(interfaces);
+    }
+
+    private void sampleDisks(long now, long previous) throws Exception {
+        metrics.readDisks(diskCounters);
+
+        double seconds = (now - previous) / 1000d;
+        for (int row = 0; row < diskCounters.size(); row++) {
+            String name = diskCounters.getName(row);
+            int before = previous == 0 ? -1 : indexOf(previousDiskCounters, name, row);
+
+            deviceSample[TIME] = now;
+            deviceSample[DISK_READ_RATE] = rate(diskCounters, previousDiskCounters, row, before, DiskCounters.READ_BYTES, seconds);
+            deviceSample[DISK_WRITE_RATE] = rate(diskCounters, previousDiskCounters, row, before, DiskCounters.WRITE_BYTES, seconds);
+            deviceSample[DISK_READS_RATE] = rate(diskCounters, previousDiskCounters, row, before, DiskCounters.READS, seconds);
+            deviceSample[DISK_WRITES_RATE] = rate(diskCounters, previousDiskCounters, row, before, DiskCounters.WRITES, seconds);
+            // ms spent doing I/O per second
+            deviceSample[DISK_BUSY] = Math.min(100, rate(diskCounters, previousDiskCounters, row, before, DiskCounters.IO_TIME, seconds) / 10);
+
+            disks.computeIfAbsent(name, n -> new SampleRing(DEVICE_HISTORY_SIZE, DISK_WIDTH)).add(deviceSample);
+        }
+
+        disks.keySet().removeIf(name -> diskCounters.indexOf(name) < 0);
+        previousDiskCounters.copy(diskCounters);
+    }
+
+    /**
+     * Row of a device in the previous sample, the devices are usually in the same order
+     */
+    private int indexOf(Counters previous, String name, int row) {
+        if (row < previous.size() && previous.getName(row).equals(name)) {
+            return row;
+        }
+        return previous.indexOf(name);
+    }
+
+    /**
+     * Change per second of a counter
+     *
+     * @return NaN without previous value, 0 if the counter was reset
+     */
+    private double rate(Counters current, Counters previous, int row, int previousRow, int column, double seconds) {
+        if (previousRow < 0 || seconds <= 0) {
+            return Double.NaN;
+        }
+        return Math.max(0, current.get(row, column) - previous.get(previousRow, column)) / seconds;
+    }
+
+    /**
+     * Metrics sampled for a plugin, to close once it doesn't need them anymore
+     */
+    public static class Subscription implements Closeable {
+        private final int resolution;
+        private final Set<Metric> metrics;
+
+        private Subscription(int resolution, Set<Metric> metrics) {
+            this.resolution = resolution;
+            this.metrics = metrics;
+        }
+
+        public int getResolution() {
+            return resolution;
+        }
+
+        @Override
+        public void close() {
+            INSTANCE.unsubscribe(this);
+        }
+    }
+}
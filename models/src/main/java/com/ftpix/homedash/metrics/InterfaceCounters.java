@@ -0,0 +1,12 @@
+package com.ftpix.homedash.metrics;
+
+/**
+ * Counters of the network interfaces since the boot
+ */
+public class InterfaceCounters extends Counters {
+    public static final int RX_BYTES = 0, RX_PACKETS = 1, RX_ERRORS = 2, TX_BYTES = 3, TX_PACKETS = 4, TX_ERRORS = 5, WIDTH = 6;
+
+    public InterfaceCounters() {
+        super(WIDTH);
+    }
+}
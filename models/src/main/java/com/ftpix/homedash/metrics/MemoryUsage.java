@@ -0,0 +1,31 @@
+package com.ftpix.homedash.metrics;
+
+/**
+ * Memory of the host, in bytes
+ */
+public class MemoryUsage {
+    long total, available, swapTotal, swapFree;
+
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Memory that can be used without swapping: free plus what the caches would give back
+     */
+    public long getAvailable() {
+        return available;
+    }
+
+    public long getUsed() {
+        return total - available;
+    }
+
+    public long getSwapTotal() {
+        return swapTotal;
+    }
+
+    public long getSwapUsed() {
+        return swapTotal - swapFree;
+    }
+}
@@ -0,0 +1,74 @@
+package com.ftpix.homedash.metrics;
+
+import oshi.SystemInfo;
+import oshi.hardware.CentralProcessor;
+import oshi.hardware.GlobalMemory;
+import oshi.hardware.HWDiskStore;
+import oshi.hardware.HardwareAbstractionLayer;
+import oshi.hardware.NetworkIF;
+
+/**
+ * Host metrics from OSHI, for the systems without /proc.
+ * OSHI doesn't give the network errors nor the I/O time of the disks, they stay at 0.
+ */
+public class OshiHostMetrics implements HostMetrics {
+    private final HardwareAbstractionLayer hardware = new SystemInfo().getHardware();
+
+    @Override
+    public void readCpu(CpuTimes cpu) {
+        CentralProcessor processor = hardware.getProcessor();
+        long[][] cores = processor.getProcessorCpuLoadTicks();
+
+        cpu.resize(cores.length);
+        setTicks(cpu, 0, processor.getSystemCpuLoadTicks());
+        for (int i = 0; i < cores.length; i++) {
+            setTicks(cpu, i + 1, cores[i]);
+        }
+    }
+
+    @Override
+    public void readMemory(MemoryUsage memory) {
+        GlobalMemory global = hardware.getMemory();
+        memory.total = global.getTotal();
+        memory.available = global.getAvailable();
+        memory.swapTotal = global.getSwapTotal();
+        memory.swapFree = global.getSwapTotal() - global.getSwapUsed();
+    }
+
+    @Override
+    public void readNetwork(InterfaceCounters interfaces) {
+        interfaces.clear();
+        for (NetworkIF networkIF : hardware.getNetworkIFs()) {
+            int row = interfaces.add(networkIF.getName());
+            interfaces.set(row, InterfaceCounters.RX_BYTES, networkIF.getBytesRecv());
+            interfaces.set(row, InterfaceCounters.RX_PACKETS, networkIF.getPacketsRecv());
+            interfaces.set(row, InterfaceCounters.TX_BYTES, networkIF.getBytesSent());
+            interfaces.set(row, InterfaceCounters.TX_PACKETS, networkIF.getPacketsSent());
+        }
+    }
+
+    @Override
+    public void readDisks(DiskCounters disks) {
+        disks.clear();
+        for (HWDiskStore disk : hardware.getDiskStores()) {
+            int row = disks.add(disk.getName());
+            disks.set(row, DiskCounters.READS, disk.getReads());
+            disks.set(row, DiskCounters.READ_BYTES, disk.getReadBytes());
+            disks.set(row, DiskCounters.WRITES, disk.getWrites());
+            disks.set(row, DiskCounters.WRITE_BYTES, disk.getWriteBytes());
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * OSHI gives the ticks in the same order, some versions have fewer states
+     */
+    private void setTicks(CpuTimes cpu, int index, long[] ticks) {
+        for (int state = 0; state < CpuTimes.STATES; state++) {
+            cpu.set(index, state, state < ticks.length ? ticks[state] : 0);
+        }
+    }
+}
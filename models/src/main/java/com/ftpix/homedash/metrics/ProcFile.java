@@ -0,0 +1,59 @@
+package com.ftpix.homedash.metrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A /proc file kept open and read again from the start at every sample, in the same buffer.
+ * The kernel builds the content again when it's read from the start, no need to reopen it.
+ */
+class ProcFile implements Closeable {
+    private final Path path;
+    private final ProcScanner scanner = new ProcScanner();
+    private FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(4096);
+
+    ProcFile(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Reads the whole file, the buffer grows (once) if the file doesn't fit in it
+     *
+     * @return the scanner, at the start of the content
+     */
+    ProcScanner read() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+        }
+
+        while (true) {
+            buffer.clear();
+            long position = 0;
+            int read;
+            while (buffer.hasRemaining() && (read = channel.read(buffer, position)) > 0) {
+                position += read;
+            }
+
+            if (buffer.hasRemaining()) {
+                buffer.flip();
+                scanner.reset(buffer);
+                return scanner;
+            }
+
+            buffer = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.ftpix.homedash.metrics;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Linux host metrics read from /proc. The files stay open and are parsed from the same buffers at every read,
+ * a read allocates nothing once the buffers and the names of the devices are there.
+ */
+public class ProcHostMetrics implements HostMetrics {
+    private static final int SECTOR_SIZE = 512;
+
+    private final ProcFile stat, meminfo, netDev, diskstats;
+
+    /**
+     * @param proc where /proc is, another folder with the same files for the tests
+     */
+    public ProcHostMetrics(Path proc) {
+        stat = new ProcFile(proc.resolve("stat"));
+        meminfo = new ProcFile(proc.resolve("meminfo"));
+        netDev = new ProcFile(proc.resolve("net").resolve("dev"));
+        diskstats = new ProcFile(proc.resolve("diskstats"));
+    }
+
+    /**
+     * /proc/stat: a "cpu" line with the total then a "cpuN" line per core, ticks of each state in the order of {@link CpuTimes}
+     */
+    @Override
+    public void readCpu(CpuTimes cpu) throws IOException {
+        ProcScanner scanner = stat.read();
+
+        int index = 0;
+        while (scanner.hasMore() && scanner.startsWith("cpu")) {
+            scanner.skipWord();
+            cpu.resize(index);
+            for (int state = 0; state < CpuTimes.STATES; state++) {
+                cpu.set(index, state, scanner.nextLong());
+            }
+            scanner.nextLine();
+            index++;
+        }
+    }
+
+    /**
+     * /proc/meminfo: "Name:   value kB" lines. Kernels older than 3.14 don't have MemAvailable,
+     * it's then estimated from the free memory and the caches.
+     */
+    @Override
+    public void readMemory(MemoryUsage memory) throws IOException {
+        ProcScanner scanner = meminfo.read();
+
+        long free = 0, buffers = 0, cached = 0, available = -1;
+        while (scanner.hasMore()) {
+            int start = scanner.wordStart();
+            int end = scanner.wordEnd();
+            long value = scanner.nextLong() * 1024;
+
+            if (scanner.equals(start, end, "MemTotal")) {
+                memory.total = value;
+            } else if (scanner.equals(start, end, "MemFree")) {
+                free = value;
+            } else if (scanner.equals(start, end, "MemAvailable")) {
+                available = value;
+            } else if (scanner.equals(start, end, "Buffers")) {
+                buffers = value;
+            } else if (scanner.equals(start, end, "Cached")) {
+                cached = value;
+            } else if (scanner.equals(start, end, "SwapTotal")) {
+                memory.swapTotal = value;
+            } else if (scanner.equals(start, end, "SwapFree")) {
+                memory.swapFree = value;
+            }
+            scanner.nextLine();
+        }
+
+        memory.available = available >= 0 ? available : free + buffers + cached;
+    }
+
+    /**
+     * /proc/net/dev: two header lines then "name: " followed by 8 receive and 8 transmit counters
+     */
+    @Override
+    public void readNetwork(InterfaceCounters interfaces) throws IOException {
+        ProcScanner scanner = netDev.read();
+        scanner.nextLine();
+        scanner.nextLine();
+
+        interfaces.clear();
+        while (scanner.hasMore()) {
+            int start = scanner.wordStart();
+            int end = scanner.wordEnd();
+            if (end > start) {
+                int row = interfaces.add(scanner, start, end);
+                interfaces.set(row, InterfaceCounters.RX_BYTES, scanner.nextLong());
+                interfaces.set(row, InterfaceCounters.RX_PACKETS, scanner.nextLong());
+                interfaces.set(row, InterfaceCounters.RX_ERRORS, scanner.nextLong());
+                // drop fifo frame compressed multicast
+                scanner.skipLongs(5);
+                interfaces.set(row, InterfaceCounters.TX_BYTES, scanner.nextLong());
+                interfaces.set(row, InterfaceCounters.TX_PACKETS, scanner.nextLong());
+                interfaces.set(row, InterfaceCounters.TX_ERRORS, scanner.nextLong());
+            }
+            scanner.nextLine();
+        }
+    }
+
+    /**
+     * /proc/diskstats: major minor name reads merged sectors-read ms-reading writes merged sectors-written ms-writing in-progress ms-doing-io...
+     */
+    @Override
+    public void readDisks(DiskCounters disks) throws IOException {
+        ProcScanner scanner = diskstats.read();
+
+        disks.clear();
+        while (scanner.hasMore()) {
+            scanner.skipLongs(2);
+            int start = scanner.wordStart();
+            int end = scanner.wordEnd();
+            if (end > start) {
+                int row = disks.add(scanner, start, end);
+                disks.set(row, DiskCounters.READS, scanner.nextLong());
+                scanner.skipLongs(1);
+                disks.set(row, DiskCounters.READ_BYTES, scanner.nextLong() * SECTOR_SIZE);
+                scanner.skipLongs(1);
+                disks.set(row, DiskCounters.WRITES, scanner.nextLong());
+                scanner.skipLongs(1);
+                disks.set(row, DiskCounters.WRITE_BYTES, scanner.nextLong() * SECTOR_SIZE);
+                scanner.skipLongs(2);
+                disks.set(row, DiskCounters.IO_TIME, scanner.nextLong());
+            }
+            scanner.nextLine();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        stat.close();
+        meminfo.close();
+        netDev.close();
+        diskstats.close();
+    }
+}
@@ -0,0 +1,153 @@
+package com.ftpix.homedash.metrics;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the numbers and names of a /proc file straight from its buffer, line by line, without creating strings.
+ * The files are ASCII: columns separated by spaces (and a ':' after the names in some of them).
+ */
+class ProcScanner {
+    private ByteBuffer buffer;
+    private int position, limit;
+
+    void reset(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.position = 0;
+        this.limit = buffer.limit();
+    }
+
+    boolean hasMore() {
+        return position < limit;
+    }
+
+    /**
+     * Moves to the start of the next line
+     */
+    void nextLine() {
+        while (position < limit && buffer.get(position) != '\n') {
+            position++;
+        }
+        if (position < limit) {
+            position++;
+        }
+    }
+
+    /**
+     * Whether the line (after its leading spaces) starts with the given text
+     */
+    boolean startsWith(String text) {
+        skipSpaces();
+        if (limit - position < text.length()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (buffer.get(position + i) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Skips the next word, up to a space, a ':' or the end of the line
+     */
+    void skipWord() {
+        skipSpaces();
+        while (position < limit && !isSeparator(buffer.get(position))) {
+            position++;
+        }
+    }
+
+    /**
+     * Moves to the start of the next word, returns where it starts.
+     * Use with {@link #wordEnd()} to know where it ends
+     */
+    int wordStart() {
+        skipSpaces();
+        return position;
+    }
+
+    /**
+     * Moves to the end of the word started at the current position and past its ':' if it has one
+     *
+     * @return where it ends
+     */
+    int wordEnd() {
+        while (position < limit && !isSeparator(buffer.get(position))) {
+            position++;
+        }
+        int end = position;
+        if (position < limit && buffer.get(position) == ':') {
+            position++;
+        }
+        return end;
+    }
+
+    /**
+     * Next number of the line
+     *
+     * @return 0 if the line has no more numbers
+     */
+    long nextLong() {
+        skipSpaces();
+        long value = 0;
+        while (position < limit) {
+            byte b = buffer.get(position);
+            if (b < '0' || b > '9') {
+                break;
+            }
+            value = value * 10 + (b - '0');
+            position++;
+        }
+        return value;
+    }
+
+    /**
+     * Skips the given number of numbers
+     */
+    void skipLongs(int count) {
+        for (int i = 0; i < count; i++) {
+            nextLong();
+        }
+    }
+
+    /**
+     * Whether the bytes between start and end are the given text
+     */
+    boolean equals(int start, int end, String text) {
+        if (end - start != text.length()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (buffer.get(start + i) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates a string, only for the names seen for the first time
+     */
+    String string(int start, int end) {
+        char[] chars = new char[end - start];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) (buffer.get(start + i) & 0xFF);
+        }
+        return new String(chars);
+    }
+
+    private void skipSpaces() {
+        while (position < limit) {
+            byte b = buffer.get(position);
+            if (b != ' ' && b != '\t') {
+                break;
+            }
+            position++;
+        }
+    }
+
+    private static boolean isSeparator(byte b) {
+        return b == ' ' || b == '\t' || b == ':' || b == '\n';
+    }
+}
@@ -0,0 +1,54 @@
+package com.ftpix.homedash.models;
+
+import org.eclipse.jetty.websocket.api.Session;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Way to push messages to a browser: a websocket or a server-sent events stream
+ */
+public interface ClientTransport {
+
+    /**
+     * Sends a message without waiting for the client to receive it
+     *
+     * @param message json to send
+     * @throws IOException if the client is gone
+     */
+    void send(String message) throws IOException;
+
+    /**
+     * Sends a binary message, only websockets support them
+     *
+     * @param message encoded message to send
+     * @throws IOException if the client is gone or can't receive binary messages
+     */
+    default void send(byte[] message) throws IOException {
+        throw new IOException("Binary messages are not supported by this transport");
+    }
+
+    boolean isOpen();
+
+    /**
+     * Transport over a websocket session
+     */
+    static ClientTransport of(Session session) {
+        return new ClientTransport() {
+            @Override
+            public void send(String message) {
+                session.getRemote().sendStringByFuture(message);
+            }
+
+            @Override
+            public void send(byte[] message) {
+                session.getRemote().sendBytesByFuture(ByteBuffer.wrap(message));
+            }
+
+            @Override
+            public boolean isOpen() {
+                return session.isOpen();
+            }
+        };
+    }
+}
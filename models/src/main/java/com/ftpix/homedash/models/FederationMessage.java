@@ -0,0 +1,67 @@
+package com.ftpix.homedash.models;
+
+import com.google.gson.JsonElement;
+
+/**
+ * Message exchanged between two HomeDash instances on the federation websocket (/ws-federation)
+ * <p>
+ * subscribe / unsubscribe: local instance asks for the refreshes of a module at a given size
+ * refresh: remote instance pushes a refreshed module, payload is the {@link WebSocketMessage}
+ * command: local instance forwards a command, payload is the {@link WebSocketMessage}, answered by a response with the same request id
+ */
+public class FederationMessage {
+    public final static String SUBSCRIBE = "subscribe", UNSUBSCRIBE = "unsubscribe", REFRESH = "refresh", COMMAND = "command", RESPONSE = "response";
+
+    private String type;
+    private int module;
+    private String size;
+    private String request;
+    private JsonElement payload;
+
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    /**
+     * Id of the module on the remote instance
+     */
+    public int getModule() {
+        return module;
+    }
+
+    public void setModule(int module) {
+        this.module = module;
+    }
+
+    public String getSize() {
+        return size;
+    }
+
+    public void setSize(String size) {
+        this.size = size;
+    }
+
+    /**
+     * Id used to match a command with its response
+     */
+    public String getRequest() {
+        return request;
+    }
+
+    public void setRequest(String request) {
+        this.request = request;
+    }
+
+    public JsonElement getPayload() {
+        return payload;
+    }
+
+    public void setPayload(JsonElement payload) {
+        this.payload = payload;
+    }
+}
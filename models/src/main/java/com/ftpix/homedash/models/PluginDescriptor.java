@@ -0,0 +1,130 @@
+package com.ftpix.homedash.models;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Static information about a plugin, read once at startup so we don't need
+ * to create plugin instances just to display or query them
+ */
+public class PluginDescriptor {
+
+    private String id;
+    private String displayName;
+    private String description;
+    private String externalLink;
+    private String pluginClass;
+    private String[] sizes;
+    private boolean hasSettings;
+    private int backgroundRefreshRate;
+    private Map<String, Integer> refreshRates = Collections.emptyMap();
+    private List<String> externalEndPoints = Collections.emptyList();
+
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public void setDisplayName(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public String getExternalLink() {
+        return externalLink;
+    }
+
+    public void setExternalLink(String externalLink) {
+        this.externalLink = externalLink;
+    }
+
+    public String getPluginClass() {
+        return pluginClass;
+    }
+
+    public void setPluginClass(String pluginClass) {
+        this.pluginClass = pluginClass;
+    }
+
+    /**
+     * Sizes of the plugin, sorted, the first one is the smallest available
+     */
+    public String[] getSizes() {
+        return sizes.clone();
+    }
+
+    public void setSizes(String[] sizes) {
+        this.sizes = sizes.clone();
+        Arrays.sort(this.sizes);
+    }
+
+    public String getSmallestSize() {
+        return sizes[0];
+    }
+
+    /**
+     * Whether the plugin provides a settings template
+     */
+    public boolean hasSettings() {
+        return hasSettings;
+    }
+
+    public void setHasSettings(boolean hasSettings) {
+        this.hasSettings = hasSettings;
+    }
+
+    public int getBackgroundRefreshRate() {
+        return backgroundRefreshRate;
+    }
+
+    public void setBackgroundRefreshRate(int backgroundRefreshRate) {
+        this.backgroundRefreshRate = backgroundRefreshRate;
+    }
+
+    /**
+     * Default refresh rate (in seconds) for each size
+     */
+    public Map<String, Integer> getRefreshRates() {
+        return refreshRates;
+    }
+
+    public void setRefreshRates(Map<String, Integer> refreshRates) {
+        this.refreshRates = Collections.unmodifiableMap(refreshRates);
+    }
+
+    /**
+     * External end points defined by the plugin in the form "{METHOD} {url}"
+     */
+    public List<String> getExternalEndPoints() {
+        return externalEndPoints;
+    }
+
+    public void setExternalEndPoints(List<String> externalEndPoints) {
+        this.externalEndPoints = Collections.unmodifiableList(externalEndPoints);
+    }
+
+    public boolean hasFullScreen() {
+        return Arrays.stream(sizes).anyMatch(s -> s.equalsIgnoreCase(ModuleLayout.FULL_SCREEN));
+    }
+
+    public boolean hasExternalLink() {
+        return externalLink != null;
+    }
+}
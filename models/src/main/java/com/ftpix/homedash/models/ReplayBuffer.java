@@ -0,0 +1,54 @@
+package com.ftpix.homedash.models;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Last messages sent to a browser with their sequence number, so they can be sent again if it reconnects
+ */
+public class ReplayBuffer {
+    private final int capacity;
+    private final Deque<Entry> entries = new ArrayDeque<>();
+    private long dropped = 0;
+
+    public ReplayBuffer(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public synchronized void add(long seq, String message) {
+        if (entries.size() == capacity) {
+            dropped = entries.removeFirst().seq;
+        }
+        entries.addLast(new Entry(seq, message));
+    }
+
+    /**
+     * Gets the messages sent after a sequence number
+     *
+     * @param seq last sequence number received by the browser
+     * @return the messages to send again, empty if some of them are not in the buffer anymore
+     */
+    public synchronized Optional<List<String>> after(long seq) {
+        if (seq < dropped) {
+            return Optional.empty();
+        }
+
+        return Optional.of(entries.stream()
+                .filter(e -> e.seq > seq)
+                .map(e -> e.message)
+                .collect(Collectors.toList()));
+    }
+
+    private static class Entry {
+        private final long seq;
+        private final String message;
+
+        private Entry(long seq, String message) {
+            this.seq = seq;
+            this.message = message;
+        }
+    }
+}
@@ -1,19 +1,21 @@
 package com.ftpix.homedash.models;
 
-import com.google.gson.GsonBuilder;
+import com.ftpix.homedash.Utils.Json;
 import com.google.gson.annotations.SerializedName;
-import io.gsonfire.GsonFireBuilder;
-
-import java.lang.reflect.Modifier;
 
 public class WebSocketMessage {
 	public final static String COMMAND_START = "start", COMMAND_ERROR = "error", COMMAND_SUCCESS = "success", COMMAND_REFRESH = "refresh", COMMAND_CHANGE_PAGE = "changePage",
-			REMOTE_MODULE_NOT_FOUND = "remote404", RELOAD_OTHERS = "reloadOthers", COMMAND_CHANGE_LAYOUT = "changeLayout", COMMAND_SET_MODULE = "setModule";
+			REMOTE_MODULE_NOT_FOUND = "remote404", RELOAD_OTHERS = "reloadOthers", COMMAND_CHANGE_LAYOUT = "changeLayout", COMMAND_SET_MODULE = "setModule",
+			COMMAND_RESUME = "resume", COMMAND_SESSION = "session", COMMAND_RESUMED = "resumed", COMMAND_WARMING = "warming";
 
 	private String command;
 	private Object message, extra;
 	@SerializedName("id")
 	private int moduleId;
+	/**
+	 * Order of the message sent to the browsers, used to resume a session
+	 */
+	private Long seq;
 
 	
 	
@@ -44,6 +46,14 @@ public class WebSocketMessage {
 		this.moduleId = moduleId;
 	}
 
+	public Long getSeq() {
+		return seq;
+	}
+
+	public void setSeq(Long seq) {
+		this.seq = seq;
+	}
+
 	public Object getExtra() {
 		return extra;
 	}
@@ -53,10 +63,6 @@ public class WebSocketMessage {
 	}
 
 	public String toJSon() {
-		GsonBuilder builder = new GsonFireBuilder().enableExposeMethodResult().createGsonBuilder();
-		builder.excludeFieldsWithModifiers(Modifier.STATIC, Modifier.TRANSIENT, Modifier.VOLATILE);
-
-		return builder.serializeSpecialFloatingPointValues().create().toJson(this);
-
+		return Json.MESSAGES.toJson(this);
 	}
 }
@@ -4,8 +4,30 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.eclipse.jetty.websocket.api.Session;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A browser showing a dashboard. It keeps its id, page, layout and last messages across reconnections when resumed
+ */
 public class WebSocketSession {
+	private static final int REPLAY_SIZE = 200;
+
+	private String id = UUID.randomUUID().toString();
+	private ReplayBuffer replay = new ReplayBuffer(REPLAY_SIZE);
+	/**
+	 * Messages that got their sequence number but aren't sent yet, in the order of their numbers.
+	 * A message encoded faster than the ones before it waits for them
+	 */
+	private final Deque<Reserved> reserved = new ArrayDeque<>();
+	private volatile WebSocketSession resumedBy;
 	private Session session;
+	private ClientTransport transport;
+	private boolean binary = false;
 	private Page page;
 	private Layout layout;
 	private  Logger logger = LogManager.getLogger();
@@ -16,6 +38,131 @@ public class WebSocketSession {
 
 	public void setSession(Session session) {
 		this.session = session;
+		this.transport = ClientTransport.of(session);
+	}
+
+	public ClientTransport getTransport() {
+		return transport;
+	}
+
+	/**
+	 * For clients that are not on a websocket
+	 */
+	public void setTransport(ClientTransport transport) {
+		this.transport = transport;
+	}
+
+	/**
+	 * Whether the client negotiated a binary encoding for the messages it receives
+	 */
+	public boolean isBinary() {
+		return binary;
+	}
+
+	public void setBinary(boolean binary) {
+		this.binary = binary;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public ReplayBuffer getReplay() {
+		return replay;
+	}
+
+	/**
+	 * Sends a message that is not kept for replay
+	 */
+	public void send(String message) throws IOException {
+		transport.send(message);
+	}
+
+	/**
+	 * Sends a message and keeps it for replay, even if the browser is not connected at the moment
+	 */
+	public void send(long seq, String message) throws IOException {
+		send(seq, message, null);
+	}
+
+	/**
+	 * Sends a message and keeps it for replay, binary clients get the encoded message instead of the json.
+	 * The replay keeps the json, messages sent again after a resume are text messages
+	 *
+	 * @param encoded the message in the binary encoding of the client, null to send the json
+	 */
+	public synchronized void send(long seq, String message, byte[] encoded) throws IOException {
+		if (resumedBy != null) {
+			resumedBy.send(seq, message, encoded);
+			return;
+		}
+
+		replay.add(seq, message);
+		if (isOpen()) {
+			if (binary && encoded != null) {
+				transport.send(encoded);
+			} else {
+				transport.send(message);
+			}
+		}
+	}
+
+	/**
+	 * Keeps the place of a message in the order of this client while it's being encoded, see {@link #send(Reserved, String, byte[])}.
+	 * Doesn't wait for the messages being sent
+	 */
+	public Reserved reserve(long seq) {
+		Reserved place = new Reserved(seq);
+		synchronized (reserved) {
+			reserved.addLast(place);
+		}
+		return place;
+	}
+
+	/**
+	 * Sends a reserved message, after the messages reserved before it
+	 *
+	 * @param message null if it couldn't be made, its place is freed
+	 * @param encoded the message in the binary encoding of the client, null to send the json
+	 */
+	public synchronized void send(Reserved place, String message, byte[] encoded) {
+		List<Reserved> ready = new ArrayList<>();
+		synchronized (reserved) {
+			place.message = message;
+			place.encoded = encoded;
+			place.ready = true;
+			while (!reserved.isEmpty() && reserved.peekFirst().ready) {
+				ready.add(reserved.removeFirst());
+			}
+		}
+
+		for (Reserved next : ready) {
+			if (next.message != null) {
+				try {
+					send(next.seq, next.message, next.encoded);
+				} catch (Exception e) {
+					logger.error("Error while sending message " + next.seq, e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Takes over a previous session of the same browser: id, page, layout and replay buffer.
+	 * Messages still sent to the previous session are forwarded to this one
+	 */
+	public void resume(WebSocketSession previous) {
+		synchronized (previous) {
+			id = previous.id;
+			page = previous.page;
+			layout = previous.layout;
+			replay = previous.replay;
+			previous.resumedBy = this;
+		}
+	}
+
+	public boolean isOpen() {
+		return transport != null && transport.isOpen();
 	}
 	
 	public Page getPage() {
@@ -36,13 +183,31 @@ public class WebSocketSession {
 		this.layout = layout;
 	}
 
+	/**
+	 * Place of a message in the order of a client
+	 */
+	public static class Reserved {
+		private final long seq;
+		private String message;
+		private byte[] encoded;
+		private boolean ready = false;
+
+		private Reserved(long seq) {
+			this.seq = seq;
+		}
+	}
+
 	@Override
 	public boolean equals(Object obj) {
 		//logger.info("equals !!!");
 
+		if (obj == this) {
+			return true;
+		}
+
 		try{
 			WebSocketSession wsSession = (WebSocketSession) obj;
-			return wsSession.getSession().equals(session);
+			return session != null && session.equals(wsSession.getSession());
 		}catch(Exception e){
 			//logger.info("Can't convert");
 		}
@@ -51,7 +216,7 @@ public class WebSocketSession {
 		try{
 			Session otherSession = (Session) obj;
 			//logger.info("{} == {}", otherSession.hashCode(), session.hashCode());
-			return otherSession.hashCode() == session.hashCode();
+			return session != null && otherSession.hashCode() == session.hashCode();
 		}catch(Exception e){
 			//logger.info("Can't convert to session either ?");
 
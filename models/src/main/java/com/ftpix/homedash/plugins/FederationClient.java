@@ -0,0 +1,342 @@
+package com.ftpix.homedash.plugins;
+
+import com.ftpix.homedash.Utils.Json;
+import com.ftpix.homedash.models.FederationMessage;
+import com.ftpix.homedash.models.WebSocketMessage;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketError;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketMessage;
+import org.eclipse.jetty.websocket.api.annotations.WebSocket;
+import org.eclipse.jetty.websocket.client.ClientUpgradeRequest;
+import org.eclipse.jetty.websocket.client.WebSocketClient;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Keeps a websocket open to each remote HomeDash instance we show modules from (/ws-federation).
+ * The remote modules we need are subscribed and the remote instance pushes them every time it refreshes them,
+ * commands are forwarded on the same connection. Each push is handed to the receivers of the module right away.
+ * <p>
+ * Subscriptions are made the first time a module is read and dropped when nobody reads them anymore.
+ * When the connection can't be made (ex: older remote instance) callers get nothing and should use the HTTP api.
+ */
+public enum FederationClient {
+    INSTANCE;
+
+    public static final String PATH = "ws-federation";
+    private static final long SUBSCRIPTION_TTL_MS = 60_000, RETRY_DELAY_MS = 30_000, CONNECT_TIMEOUT_MS = 10_000;
+    private static final int MAX_MESSAGE_SIZE = 10 * 1024 * 1024;
+
+    private final Logger logger = LogManager.getLogger();
+    private final Gson gson = Json.PLAIN;
+    private final Map<String, Connection> connections = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "federation-client");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private WebSocketClient client;
+
+    FederationClient() {
+        scheduler.scheduleWithFixedDelay(this::expireSubscriptions, SUBSCRIPTION_TTL_MS, SUBSCRIPTION_TTL_MS / 2, TimeUnit.MILLISECONDS);
+    }
+
+
+    /**
+     * Gets the last refresh pushed by the remote instance for a module, subscribes to it if it's the first time
+     *
+     * @param remoteUrl url of the remote instance, ending with /
+     * @param apiKey    api key of the remote instance
+     * @param moduleId  id of the module on the remote instance
+     * @param size      size of the module
+     * @return the refreshed message (command, message, id) or empty if nothing has been pushed yet or we're not connected
+     */
+    public Optional<JsonObject> latest(String remoteUrl, String apiKey, int moduleId, String size) {
+        return latest(remoteUrl, apiKey, moduleId, size, Long.MAX_VALUE, null);
+    }
+
+    /**
+     * Gets the last refresh pushed by the remote instance for a module if it's recent enough, subscribes to it if it's the first time
+     *
+     * @param maxAge   how old (in ms) the refresh can be, the remote instance stopped pushing past that
+     * @param receiver given every refresh pushed from now on, null for none. Kept as long as the module is read
+     */
+    public Optional<JsonObject> latest(String remoteUrl, String apiKey, int moduleId, String size, long maxAge, Consumer<JsonObject> receiver) {
+        Connection connection = connection(remoteUrl, apiKey);
+
+        Subscription subscription = connection.subscribe(moduleId, size);
+        subscription.lastRead = System.currentTimeMillis();
+        if (receiver != null) {
+            subscription.receivers.add(receiver);
+        }
+
+        JsonObject latest = subscription.latest;
+        if (!connection.isConnected() || latest == null || System.currentTimeMillis() - subscription.latestAt > maxAge) {
+            return Optional.empty();
+        }
+        return Optional.of(latest);
+    }
+
+    /**
+     * Forwards a command to a remote module
+     *
+     * @return the future response or empty if we're not connected to the remote instance
+     */
+    public Optional<CompletableFuture<JsonObject>> command(String remoteUrl, String apiKey, int moduleId, WebSocketMessage command) {
+        Connection connection = connection(remoteUrl, apiKey);
+        if (!connection.isConnected()) {
+            return Optional.empty();
+        }
+
+        FederationMessage message = new FederationMessage();
+        message.setType(FederationMessage.COMMAND);
+        message.setModule(moduleId);
+        message.setRequest(UUID.randomUUID().toString());
+        message.setPayload(gson.toJsonTree(command));
+
+        CompletableFuture<JsonObject> response = new CompletableFuture<>();
+        connection.pendingCommands.put(message.getRequest(), response);
+
+        if (!connection.send(message)) {
+            connection.pendingCommands.remove(message.getRequest());
+            return Optional.empty();
+        }
+
+        return Optional.of(response);
+    }
+
+    /**
+     * Closes all the connections
+     */
+    public synchronized void close() {
+        connections.values().forEach(Connection::close);
+        connections.clear();
+
+        if (client != null) {
+            try {
+                client.stop();
+            } catch (Exception e) {
+                logger.error("Couldn't stop federation client", e);
+            }
+            client = null;
+        }
+    }
+
+    private Connection connection(String remoteUrl, String apiKey) {
+        Connection connection = connections.computeIfAbsent(remoteUrl + "|" + apiKey, k -> new Connection(remoteUrl, apiKey));
+        connection.connectIfNeeded();
+        return connection;
+    }
+
+    private synchronized WebSocketClient client() throws Exception {
+        if (client == null) {
+            client = new WebSocketClient(new SslContextFactory.Client());
+            client.getPolicy().setMaxTextMessageSize(MAX_MESSAGE_SIZE);
+            client.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            client.start();
+        }
+        return client;
+    }
+
+    /**
+     * Drops the subscriptions nobody read for a while, closes the connections without subscriptions
+     */
+    private void expireSubscriptions() {
+        long limit = System.currentTimeMillis() - SUBSCRIPTION_TTL_MS;
+
+        connections.forEach((key, connection) -> {
+            connection.subscriptions.values().removeIf(subscription -> {
+                if (subscription.lastRead < limit) {
+                    connection.send(subscription.message(FederationMessage.UNSUBSCRIBE));
+                    return true;
+                }
+                return false;
+            });
+
+            if (connection.subscriptions.isEmpty()) {
+                connections.remove(key);
+                connection.close();
+            }
+        });
+    }
+
+
+    @WebSocket(maxTextMessageSize = MAX_MESSAGE_SIZE)
+    public class Connection {
+        private final String remoteUrl, apiKey;
+        private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+        private final Map<String, CompletableFuture<JsonObject>> pendingCommands = new ConcurrentHashMap<>();
+        private volatile Session session;
+        private volatile boolean connecting = false, closed = false;
+        private volatile long retryAt = 0;
+
+        private Connection(String remoteUrl, String apiKey) {
+            this.remoteUrl = remoteUrl;
+            this.apiKey = apiKey;
+        }
+
+        private boolean isConnected() {
+            Session current = session;
+            return current != null && current.isOpen();
+        }
+
+        private synchronized void connectIfNeeded() {
+            if (closed || connecting || isConnected() || System.currentTimeMillis() < retryAt) {
+                return;
+            }
+
+            connecting = true;
+            try {
+                URI uri = URI.create(remoteUrl.replaceFirst("^http", "ws") + PATH);
+                ClientUpgradeRequest request = new ClientUpgradeRequest();
+                request.setHeader("Authorization", apiKey);
+
+                logger.info("Connecting to federation end point [{}]", uri);
+                client().connect(this, uri, request);
+            } catch (Exception e) {
+                failed(e);
+            }
+        }
+
+        private Subscription subscribe(int moduleId, String size) {
+            return subscriptions.computeIfAbsent(moduleId + ":" + size, k -> {
+                Subscription subscription = new Subscription(moduleId, size);
+                send(subscription.message(FederationMessage.SUBSCRIBE));
+                return subscription;
+            });
+        }
+
+        /**
+         * Sends a message if we're connected
+         */
+        private boolean send(FederationMessage message) {
+            Session current = session;
+            if (current == null || !current.isOpen()) {
+                return false;
+            }
+
+            try {
+                synchronized (current) {
+                    current.getRemote().sendString(gson.toJson(message));
+                }
+                return true;
+            } catch (IOException e) {
+                logger.error("Couldn't send message to [" + remoteUrl + "]", e);
+                return false;
+            }
+        }
+
+        private void close() {
+            closed = true;
+            Optional.ofNullable(session).ifPresent(Session::close);
+        }
+
+        @OnWebSocketConnect
+        public void connected(Session session) {
+            logger.info("Connected to federation end point of [{}], subscribing to {} modules", remoteUrl, subscriptions.size());
+            this.session = session;
+            connecting = false;
+
+            subscriptions.values().forEach(s -> send(s.message(FederationMessage.SUBSCRIBE)));
+        }
+
+        @OnWebSocketMessage
+        public void onMessage(String text) {
+            FederationMessage message = gson.fromJson(text, FederationMessage.class);
+            if (message.getPayload() == null || !message.getPayload().isJsonObject()) {
+                return;
+            }
+
+            JsonObject payload = RemoteRefreshBatcher.rewriteCacheUrls(message.getPayload(), remoteUrl).getAsJsonObject();
+
+            switch (message.getType()) {
+                case FederationMessage.REFRESH:
+                    Optional.ofNullable(subscriptions.get(message.getModule() + ":" + message.getSize()))
+                            .ifPresent(s -> s.pushed(payload));
+                    break;
+                case FederationMessage.RESPONSE:
+                    Optional.ofNullable(pendingCommands.remove(message.getRequest()))
+                            .ifPresent(f -> f.complete(payload));
+                    break;
+                default:
+                    logger.info("Unknown federation message [{}]", message.getType());
+            }
+        }
+
+        @OnWebSocketClose
+        public void closed(int statusCode, String reason) {
+            logger.info("Federation connection to [{}] closed: {} {}", remoteUrl, statusCode, reason);
+            failed(new IOException("Connection closed: " + reason));
+        }
+
+        @OnWebSocketError
+        public void error(Throwable error) {
+            logger.info("Federation connection to [{}] failed: {}", remoteUrl, error.getMessage());
+            failed(error);
+        }
+
+        /**
+         * Forgets what the remote sent us, we'll retry later
+         */
+        private void failed(Throwable error) {
+            session = null;
+            connecting = false;
+            retryAt = System.currentTimeMillis() + RETRY_DELAY_MS;
+
+            subscriptions.values().forEach(s -> s.latest = null);
+            pendingCommands.values().forEach(f -> f.completeExceptionally(error));
+            pendingCommands.clear();
+        }
+    }
+
+    private static class Subscription {
+        private final int moduleId;
+        private final String size;
+        private final Set<Consumer<JsonObject>> receivers = ConcurrentHashMap.newKeySet();
+        private volatile JsonObject latest;
+        private volatile long latestAt = 0, lastRead = System.currentTimeMillis();
+
+        private Subscription(int moduleId, String size) {
+            this.moduleId = moduleId;
+            this.size = size;
+        }
+
+        private void pushed(JsonObject payload) {
+            latestAt = System.currentTimeMillis();
+            latest = payload;
+            receivers.forEach(r -> {
+                try {
+                    r.accept(payload);
+                } catch (Exception e) {
+                    LogManager.getLogger().error("Couldn't pass remote module " + moduleId + " on", e);
+                }
+            });
+        }
+
+        private FederationMessage message(String type) {
+            FederationMessage message = new FederationMessage();
+            message.setType(type);
+            message.setModule(moduleId);
+            message.setSize(size);
+            return message;
+        }
+    }
+}
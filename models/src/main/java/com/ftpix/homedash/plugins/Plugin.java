@@ -1,12 +1,14 @@
 package com.ftpix.homedash.plugins;
 
 import com.ftpix.homedash.Utils.HomeDashClassPathTemplateLoader;
+import com.ftpix.homedash.Utils.JadeTemplateCache;
+import com.ftpix.homedash.Utils.Json;
 import com.ftpix.homedash.models.Module;
 import com.ftpix.homedash.models.*;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import com.mashape.unirest.http.HttpResponse;
-import com.mashape.unirest.http.JsonNode;
 import com.mashape.unirest.http.Unirest;
 import de.neuland.jade4j.JadeConfiguration;
 import de.neuland.jade4j.exceptions.JadeException;
@@ -18,6 +20,7 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.ThreadContext;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Type;
 import java.nio.channels.NotYetBoundException;
 import java.nio.charset.StandardCharsets;
@@ -25,21 +28,58 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 public abstract class Plugin {
 
     private final static String REMOTE_URL = "url", REMOTE_API_KEY = "key", REMOTE_MODULE_ID = "id";
+    private final static int REMOTE_TIMEOUT = 30;
     private final static boolean DEV_MODE = Boolean.parseBoolean(System.getProperty("dev", "false"));
     public static int NEVER = 0, ONE_SECOND = 1, ONE_MINUTE = 60, ONE_HOUR = 60 * ONE_MINUTE;
+    private final static JadeTemplateCache TEMPLATES = new JadeTemplateCache();
+    private final static int DISCONNECT_DELAY = 10;
+    private final static ScheduledExecutorService DISCONNECTS = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "plugin-disconnect");
+        thread.setDaemon(true);
+        return thread;
+    });
     protected Map<String, String> settings;
-    protected Gson gson = new GsonBuilder().create();
+    protected Gson gson = Json.PLAIN;
     private Logger logger = LogManager.getLogger();
     private String cacheBase;
     private Module module;
     private List<PluginListener> listeners = new ArrayList<>();
+    private final CopyOnWriteArrayList<RefreshListener> refreshListeners = new CopyOnWriteArrayList<>();
+    /**
+     * Time of the last shared refresh and of the last refresh pushed by the remote instance, by size
+     */
+    private final Map<String, Long> lastRefreshes = new ConcurrentHashMap<>(), lastPushes = new ConcurrentHashMap<>();
+    private final Map<String, Consumer<JsonObject>> pushReceivers = new ConcurrentHashMap<>();
     private AtomicInteger clients = new AtomicInteger(0);
+    private ScheduledFuture<?> pendingDisconnect;
+    /**
+     * Clients by size of the module, for the clients that show a single size (full screen, kiosk, remote instances)
+     */
+    private final Map<String, Integer> sizeClients = new HashMap<>();
+    private final Map<String, ScheduledFuture<?>> pendingSizeDisconnects = new HashMap<>();
+    private final Map<String, String> views = new ConcurrentHashMap<>();
+    private final AtomicInteger settingsVersion = new AtomicInteger(0);
+    /**
+     * Module data read from the database, by lower case name. Loaded once, only this plugin changes its data.
+     * Read again when the module is saved with new settings
+     */
+    private final Map<String, DecodedData> data = new ConcurrentHashMap<>();
+    private volatile boolean dataLoaded = false;
+    private final static Map<String, Class<?>> DATA_CLASSES = new ConcurrentHashMap<>();
 
     public Plugin() {
     }
@@ -100,6 +140,14 @@ public abstract class Plugin {
      */
     protected abstract WebSocketMessage processCommand(String command, String message, Object extra);
 
+    /**
+     * Process a command sent by a single client, with what the module keeps about this client (see {@link #refresh(String, Map)}).
+     * Calls {@link #processCommand(String, String, Object)} by default.
+     */
+    protected WebSocketMessage processCommand(String command, String message, Object extra, Map<String, Object> client) {
+        return processCommand(command, message, extra);
+    }
+
     /**
      * Do background task if getBackgroundRefreshRate() > 0
      */
@@ -112,6 +160,17 @@ public abstract class Plugin {
      */
     protected abstract Object refresh(String size) throws Exception;
 
+    /**
+     * Get data to send to a single client, for modules that only send what changed since the previous refresh of this client.
+     * Calls {@link #refresh(String)} by default.
+     *
+     * @param size   of the module
+     * @param client what the module keeps about this client between its refreshes, empty for its first refresh
+     */
+    protected Object refresh(String size, Map<String, Object> client) throws Exception {
+        return refresh(size);
+    }
+
     /**
      * Get refresh rate in seconds for main page display
      *
@@ -150,6 +209,44 @@ public abstract class Plugin {
     protected abstract void onLastClientDisconnect();
 
 
+    /**
+     * Do something when the first client showing the module at this size connects, ex: start collecting
+     * what only the full screen view shows. Does nothing by default.
+     */
+    protected void onFirstClientConnect(String size) {
+    }
+
+
+    /**
+     * Do something when the last client showing the module at this size disconnects. Does nothing by default.
+     */
+    protected void onLastClientDisconnect(String size) {
+    }
+
+
+    /**
+     * Do the expensive first work of the module ahead of its first refresh: creating a client, a login, a session handshake...
+     * Called in the background at startup and after the settings change, after {@link #init()}, with the other modules in parallel.
+     * The module isn't refreshed until it's done or {@link #getWarmUpTimeout()} is over.
+     * Does nothing by default.
+     */
+    public void warmUp() throws Exception {
+    }
+
+    /**
+     * Called when the module is deleted, to release what the module holds outside of itself (subscriptions, threads...).
+     * Does nothing by default.
+     */
+    public void destroy() {
+    }
+
+    /**
+     * How long (in second) {@link #warmUp()} can take before the module is refreshed anyway
+     */
+    public int getWarmUpTimeout() {
+        return 30;
+    }
+
     /**
      * Any data that might be useful to the settings screen of the plugin.
      *
@@ -162,19 +259,43 @@ public abstract class Plugin {
 
     /**
      * Gets the html for a specific size
+     * The rendered html is kept until the module settings change (except in dev mode)
      */
     public final String getView(String size) throws JadeException, IOException {
+        String view = views.get(size);
+        if (view != null) {
+            return view;
+        }
 
-
-        JadeConfiguration config = defaultTemplateConfig();
         Map<String, Object> model = new HashMap<String, Object>();
         model.put("module", module);
 
-        logger().info("id:[{}]", getId());
-        logger().info("size:[{}]", size);
-        JadeTemplate template = config.getTemplate("templates/" + getId() + "-" + size + ".jade");
+        logger().info("Rendering view id:[{}] size:[{}]", getId(), size);
+        view = renderTemplate("templates/" + getId() + "-" + size + ".jade", model);
 
-        return config.renderTemplate(template, model);
+        if (!DEV_MODE) {
+            views.put(size, view);
+        }
+        return view;
+    }
+
+
+    /**
+     * Renders one of the plugin templates.
+     * Uses the shared compiled template cache, or reads the template from the file system in dev mode
+     *
+     * @param name  template path
+     * @param model model given to the template
+     * @return the rendered html
+     * @throws IOException
+     */
+    private String renderTemplate(String name, Map<String, Object> model) throws JadeException, IOException {
+        if (DEV_MODE) {
+            JadeConfiguration config = defaultTemplateConfig();
+            return config.renderTemplate(config.getTemplate(name), model);
+        } else {
+            return TEMPLATES.render(TEMPLATES.getTemplate(getId(), name), model);
+        }
     }
 
 
@@ -190,21 +311,52 @@ public abstract class Plugin {
         TemplateLoader loader = getTemplateLoader(null);
 
         config.setTemplateLoader(loader);
+        config.setCaching(false);
 
         return config;
     }
 
     /**
-     * Refresh called from the websocket
+     * Refresh called from the websocket, shared by all the clients of this size. The refresh listeners are told about it
      */
     public final WebSocketMessage refreshPlugin(String size) throws Exception {
+        WebSocketMessage result = refreshPlugin(size, new HashMap<>());
+        lastRefreshes.put(size, System.currentTimeMillis());
+        if (result != null) {
+            refreshListeners.forEach(l -> l.refreshed(this, size, result, false));
+        }
+        return result;
+    }
+
+    /**
+     * Time of the last refresh shared by all the clients of this size, see {@link #refreshPlugin(String)}
+     *
+     * @return 0 if it never happened
+     */
+    public final long getLastRefresh(String size) {
+        return lastRefreshes.getOrDefault(size, 0L);
+    }
+
+    /**
+     * Whether the remote instance of this remote module keeps pushing this size, it doesn't need to be refreshed then
+     */
+    public final boolean isPushed(String size) {
+        return System.currentTimeMillis() - lastPushes.getOrDefault(size, 0L) <= pushMaxAge(size);
+    }
+
+    /**
+     * Refresh for a single client, see {@link #refresh(String, Map)}
+     *
+     * @param client kept by the caller between the refreshes of the client
+     */
+    public final WebSocketMessage refreshPlugin(String size, Map<String, Object> client) throws Exception {
         WebSocketMessage result = new WebSocketMessage();
         result.setCommand(WebSocketMessage.COMMAND_REFRESH);
 
         try {
             switch (module.getLocation()) {
                 case LOCAL:
-                    result.setMessage(refresh(size));
+                    result.setMessage(refresh(size, client));
                     break;
                 case REMOTE:
                     result.setMessage(refreshRemote(size));
@@ -232,9 +384,18 @@ public abstract class Plugin {
      * @return a {@link WebSocketMessage} to be sent to the front end
      */
     public final WebSocketMessage processIncomingCommand(String command, String message, Object extra) {
+        return processIncomingCommand(command, message, extra, new HashMap<>());
+    }
+
+    /**
+     * Processes an incoming command from a single client
+     *
+     * @param client kept by the caller for this client, the same as for its refreshes
+     */
+    public final WebSocketMessage processIncomingCommand(String command, String message, Object extra, Map<String, Object> client) {
         switch (module.getLocation()) {
             case LOCAL:
-                return processCommand(command, message, extra);
+                return processCommand(command, message, extra, client);
             case REMOTE:
                 return processCommandRemote(command, message, extra);
             default:
@@ -260,7 +421,6 @@ public abstract class Plugin {
 
 
             logger().info("Getting settings for [{}]", this.getId());
-            JadeConfiguration config = defaultTemplateConfig();
 
             Map<String, Object> model = new HashMap<String, Object>();
 
@@ -276,10 +436,7 @@ public abstract class Plugin {
 
             String templateFile = "templates/" + getId() + "-settings.jade";
             logger().info("Looking for template: [{}]", templateFile);
-            JadeTemplate template = config.getTemplate(templateFile);
-
-            logger().info("Found setting template, returning it");
-            return config.renderTemplate(template, model);
+            return renderTemplate(templateFile, model);
         } catch (Exception e) {
             logger().error("Error while getting settings template", e);
             throw e;
@@ -349,12 +506,27 @@ public abstract class Plugin {
 
         this.settings = getSettingsAsMap();
 
-        if (module.getLocation() == ModuleLocation.LOCAL && (oldSettings == null || !this.settings.equals(oldSettings))) {
-            init();
+        if (oldSettings == null || !this.settings.equals(oldSettings)) {
+            //new version of the module, the rendered views and the data read might be outdated
+            views.clear();
+            clearDataCache();
+            settingsVersion.incrementAndGet();
+
+            if (module.getLocation() == ModuleLocation.LOCAL) {
+                init();
+            }
         }
 
     }
 
+    /**
+     * Version of the module settings, changes every time the module is set with different settings.
+     * Useful to know if something computed from the settings is outdated
+     */
+    public final int getSettingsVersion() {
+        return settingsVersion.get();
+    }
+
     public final void setCacheBase(String cacheBase) {
         this.cacheBase = cacheBase;
         if (!cacheBase.endsWith("/")) {
@@ -414,6 +586,17 @@ public abstract class Plugin {
         listeners.remove(listener);
     }
 
+    /**
+     * Adds a listener told about the shared refreshes of the module, see {@link RefreshListener}
+     */
+    public final void addRefreshListener(RefreshListener listener) {
+        refreshListeners.addIfAbsent(listener);
+    }
+
+    public final void removeRefreshListener(RefreshListener listener) {
+        refreshListeners.remove(listener);
+    }
+
     /**
      * Sets data for a module
      */
@@ -426,25 +609,24 @@ public abstract class Plugin {
         moduleData.setJson(gson.toJson(object));
 
         listeners.forEach(l -> l.saveModuleData(moduleData));
+
+        data.put(name.toLowerCase(Locale.ROOT), new DecodedData(moduleData));
     }
 
     /**
-     * Get module data
+     * Get module data. The json is parsed once until it changes, each call gets its own object
+     * so changing it doesn't change the data kept
      *
      * @param type expected type
      */
     protected final Optional getData(String name, Type type) {
         try {
-            Optional<ModuleData> filtered = module.getData().stream().filter(data -> data.getName().equalsIgnoreCase(name))
-                    .findFirst();
-
-            if (filtered.isPresent()) {
+            DecodedData decoded = loadData().get(name.toLowerCase(Locale.ROOT));
 
-                ModuleData data = filtered.get();
+            if (decoded != null) {
+                Class clazz = dataClass(decoded.dataClass);
 
-                Class clazz = Class.forName(data.getDataClass());
-
-                Object o = gson.fromJson(data.getJson(), type);
+                Object o = decoded.get(gson, type);
 
                 return Optional.of(clazz.cast(o));
             } else {
@@ -462,14 +644,14 @@ public abstract class Plugin {
     protected final Map<String, Object> getAllData() {
         Map<String, Object> data = new HashMap<>();
 
-        module.getData().forEach(singleData -> {
+        loadData().values().forEach(singleData -> {
             try {
-                Class clazz = Class.forName(singleData.getDataClass());
+                Class clazz = dataClass(singleData.dataClass);
 
-                Object o = gson.fromJson(singleData.getJson(), clazz);
-                data.put(singleData.getName(), o);
+                Object o = singleData.get(gson, clazz);
+                data.put(singleData.name, o);
             } catch (Exception e) {
-                logger().error("Error while getting module data [" + singleData.getName() + "]", e);
+                logger().error("Error while getting module data [" + singleData.name + "]", e);
             }
         });
 
@@ -486,36 +668,65 @@ public abstract class Plugin {
         if (!data.isEmpty()) {
             listeners.forEach(l -> l.removeModuleData(data.get(0)));
         }
-    }
 
+        this.data.remove(name.toLowerCase(Locale.ROOT));
+    }
 
     /**
-     * Refresh a remote module
+     * Reads the module data from the database the first time it's needed
      */
-    private final Object refreshRemote(String size) {
-
-        if (module != null && module.getLocation() == ModuleLocation.REMOTE) {
-            String url = settings.get(REMOTE_URL) + "api/refresh/" + settings.get(REMOTE_MODULE_ID) + "/size/" + size;
-            String apiKey = settings.get(REMOTE_API_KEY);
+    private Map<String, DecodedData> loadData() {
+        if (!dataLoaded) {
+            synchronized (data) {
+                if (!dataLoaded && module != null && module.getData() != null) {
+                    module.getData().forEach(d -> data.putIfAbsent(d.getName().toLowerCase(Locale.ROOT), new DecodedData(d)));
+                    dataLoaded = true;
+                }
+            }
+        }
+        return data;
+    }
 
-            try {
-                HttpResponse<JsonNode> response = Unirest.get(url).header("Authorization", apiKey).asJson();
+    private void clearDataCache() {
+        synchronized (data) {
+            data.clear();
+            dataLoaded = false;
+        }
+    }
 
-                String jsonString = response.getBody().getObject().toString();
+    private static Class<?> dataClass(String name) throws ClassNotFoundException {
+        Class<?> clazz = DATA_CLASSES.get(name);
+        if (clazz == null) {
+            clazz = Class.forName(name);
+            DATA_CLASSES.put(name, clazz);
+        }
+        return clazz;
+    }
 
-                logger().info("Refreshing remote module, calling [{}], responseL [{}]", url, jsonString);
 
+    /**
+     * Refresh a remote module.
+     * Uses what the remote instance pushed on the federation websocket, or polls the remote with the
+     * other modules of the same instance if the websocket isn't available
+     */
+    private final Object refreshRemote(String size) {
 
-                // replacing all the cache url calling by the remote one
-                jsonString = jsonString.replaceAll("cache/", settings.get(REMOTE_URL) + "cache/");
+        if (module != null && module.getLocation() == ModuleLocation.REMOTE) {
+            String remoteModuleId = settings.get(REMOTE_MODULE_ID);
 
+            try {
+                Optional<JsonObject> pushed = FederationClient.INSTANCE.latest(settings.get(REMOTE_URL), settings.get(REMOTE_API_KEY), Integer.parseInt(remoteModuleId), size,
+                        pushMaxAge(size), pushReceivers.computeIfAbsent(size, this::pushReceiver));
 
-                WebSocketMessage result = gson.fromJson(jsonString, WebSocketMessage.class);
+                JsonObject result = pushed.isPresent() ? pushed.get() : RemoteRefreshBatcher.INSTANCE
+                        .refresh(settings.get(REMOTE_URL), settings.get(REMOTE_API_KEY), remoteModuleId, size)
+                        .get(REMOTE_TIMEOUT, TimeUnit.SECONDS);
 
+                logger().info("Refreshed remote module [{}] size [{}]", remoteModuleId, size);
 
-                return result.getMessage();
+                return result.get("message");
             } catch (Exception e) {
-                logger().error("Couldn't get remote module [" + settings.get(REMOTE_MODULE_ID) + "] from url: [" + url + "]", e);
+                logger().error("Couldn't get remote module [" + remoteModuleId + "] from url: [" + settings.get(REMOTE_URL) + "]", e);
                 return null;
             }
         } else {
@@ -525,30 +736,63 @@ public abstract class Plugin {
 
 
     /**
-     * Sends command to remote module
+     * Receives the refreshes of a size pushed by the remote instance and passes them to the refresh listeners as soon as they come
      */
-    private WebSocketMessage processCommandRemote(String command, String message, Object extra) {
+    private Consumer<JsonObject> pushReceiver(String size) {
+        return payload -> {
+            WebSocketMessage message = new WebSocketMessage();
+            message.setCommand(Optional.ofNullable(payload.get("command")).map(JsonElement::getAsString).orElse(WebSocketMessage.COMMAND_REFRESH));
+            message.setMessage(payload.get("message"));
+            message.setModuleId(module.getId());
+
+            lastPushes.put(size, System.currentTimeMillis());
+            refreshListeners.forEach(l -> l.refreshed(this, size, message, true));
+        };
+    }
+
+    /**
+     * How long a pushed refresh stays valid: if the remote instance misses two refreshes in a row it's not pushing anymore
+     */
+    private long pushMaxAge(String size) {
+        int refreshRate = getRefreshRate(size);
+        return refreshRate > NEVER ? refreshRate * 2000L : Long.MAX_VALUE;
+    }
+
+    /**
+     * Sends command to remote module, over the federation websocket if it's connected
+     */
+    private WebSocketMessage processCommandRemote(String commandName, String message, Object extra) {
         if (module != null && module.getLocation() == ModuleLocation.REMOTE) {
             String url = settings.get(REMOTE_URL) + "api/process-command/" + settings.get(REMOTE_MODULE_ID);
             String apiKey = settings.get(REMOTE_API_KEY);
 
             try {
-                HttpResponse<JsonNode> response = Unirest.post(url)
+                WebSocketMessage command = new WebSocketMessage();
+                command.setCommand(commandName);
+                command.setMessage(message);
+                command.setExtra(extra);
+                command.setModuleId(Integer.parseInt(settings.get(REMOTE_MODULE_ID)));
+
+                Optional<CompletableFuture<JsonObject>> forwarded = FederationClient.INSTANCE.command(settings.get(REMOTE_URL), apiKey, command.getModuleId(), command);
+                if (forwarded.isPresent()) {
+                    WebSocketMessage result = gson.fromJson(forwarded.get().get(REMOTE_TIMEOUT, TimeUnit.SECONDS), WebSocketMessage.class);
+                    result.setModuleId(module.getId());
+                    return result;
+                }
+
+                HttpResponse<InputStream> response = Unirest.post(url)
                         .header("Authorization", apiKey)
-                        .field("command", command)
+                        .field("command", commandName)
                         .field("message", message)
                         .field("extra", gson.toJson(extra))
-                        .asJson();
-
-                String jsonString = response.getBody().getObject().toString();
+                        .asBinary();
 
-                logger().info("Refreshing remote module, calling [{}], responseL [{}]", url, jsonString);
+                logger().info("Sent command [{}] to remote module, calling [{}]", commandName, url);
 
-                // replacing all the cache url calling by the remote one
-                jsonString = jsonString.replaceAll("cache/", settings.get(REMOTE_URL) + "cache/");
+                // pointing the cache urls to the remote instance
+                JsonElement json = RemoteRefreshBatcher.rewriteCacheUrls(RemoteRefreshBatcher.parse(response.getBody()), settings.get(REMOTE_URL));
 
-
-                WebSocketMessage result = gson.fromJson(jsonString, WebSocketMessage.class);
+                WebSocketMessage result = gson.fromJson(json, WebSocketMessage.class);
                 result.setModuleId(module.getId());
 
 
@@ -570,27 +814,85 @@ public abstract class Plugin {
     /**
      * Increase the number of clients, if it's the first one, do something
      */
-    public void increaseClients() {
+    public synchronized void increaseClients() {
         if (clients.incrementAndGet() == 1) {
-            logger().info("[{}] onFirstClientConnect()", getId());
-            onFirstClientConnect();
+            if (pendingDisconnect != null) {
+                // the last client left a moment ago, we never disconnected
+                pendingDisconnect.cancel(false);
+                pendingDisconnect = null;
+                logger().info("[{}] client is back, onLastClientDisconnect() cancelled", getId());
+            } else {
+                logger().info("[{}] onFirstClientConnect()", getId());
+                onFirstClientConnect();
+            }
         }
 
         logger().info("[{}] has now {} clients", getId(), clients.get());
     }
 
     /**
-     * Decrease the number of clients, if it's the last one, do something
+     * Decrease the number of clients, if it's the last one, do something.
+     * onLastClientDisconnect is called a few seconds later so a client reconnecting right away
+     * (page reload, network blip) doesn't stop and restart the plugin
      */
-    public void decreaseClients() {
+    public synchronized void decreaseClients() {
         if (clients.decrementAndGet() == 0) {
-            logger().info("[{}] onLastClientDisconnect()", getId());
-            onLastClientDisconnect();
+            pendingDisconnect = DISCONNECTS.schedule(this::lastClientDisconnected, DISCONNECT_DELAY, TimeUnit.SECONDS);
         }
 
         logger().info("[{}] has now {} clients", getId(), clients.get());
     }
 
+    /**
+     * Increase the number of clients showing the module at the given size, it also counts as a client of the module
+     */
+    public synchronized void increaseClients(String size) {
+        increaseClients();
+
+        if (sizeClients.merge(size, 1, Integer::sum) == 1) {
+            ScheduledFuture<?> pending = pendingSizeDisconnects.remove(size);
+            if (pending != null) {
+                pending.cancel(false);
+            } else {
+                logger().info("[{}] onFirstClientConnect({})", getId(), size);
+                onFirstClientConnect(size);
+            }
+        }
+    }
+
+    /**
+     * Decrease the number of clients showing the module at the given size, same delay as {@link #decreaseClients()}
+     */
+    public synchronized void decreaseClients(String size) {
+        decreaseClients();
+
+        if (sizeClients.merge(size, -1, Integer::sum) == 0) {
+            pendingSizeDisconnects.put(size, DISCONNECTS.schedule(() -> lastSizeClientDisconnected(size), DISCONNECT_DELAY, TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * Number of clients showing the module at the given size
+     */
+    public synchronized int getClients(String size) {
+        return sizeClients.getOrDefault(size, 0);
+    }
+
+    private synchronized void lastSizeClientDisconnected(String size) {
+        if (pendingSizeDisconnects.remove(size) != null && getClients(size) == 0) {
+            logger().info("[{}] onLastClientDisconnect({})", getId(), size);
+            onLastClientDisconnect(size);
+        }
+    }
+
+    private synchronized void lastClientDisconnected() {
+        if (pendingDisconnect != null && clients.get() == 0) {
+            pendingDisconnect = null;
+            logger().info("[{}] onLastClientDisconnect()", getId());
+            onLastClientDisconnect();
+        }
+    }
+
     protected Logger logger() {
         ThreadContext.put("logFile", getId());
         return logger;
@@ -609,4 +911,30 @@ public abstract class Plugin {
     public List<ExternalEndPointDefinition> defineExternalEndPoints() {
         return null;
     }
+
+    /**
+     * Json of a module data, parsed the first time it's read
+     */
+    private static class DecodedData {
+        private final String name, json, dataClass;
+        private volatile JsonElement tree;
+
+        private DecodedData(ModuleData moduleData) {
+            this.name = moduleData.getName();
+            this.json = moduleData.getJson();
+            this.dataClass = moduleData.getDataClass();
+        }
+
+        /**
+         * A new object each time
+         */
+        private Object get(Gson gson, Type type) {
+            JsonElement parsed = tree;
+            if (parsed == null) {
+                parsed = gson.fromJson(json, JsonElement.class);
+                tree = parsed;
+            }
+            return gson.fromJson(parsed, type);
+        }
+    }
 }
@@ -0,0 +1,16 @@
+package com.ftpix.homedash.plugins;
+
+import com.ftpix.homedash.models.WebSocketMessage;
+
+/**
+ * Told about the refreshes of a module shared by all its clients, see {@link Plugin#addRefreshListener(RefreshListener)}
+ */
+public interface RefreshListener {
+
+    /**
+     * @param size    size of the module refreshed
+     * @param message the refresh, as sent to the clients
+     * @param pushed  true if it was pushed by the remote instance of a remote module, false if the module was refreshed here
+     */
+    void refreshed(Plugin plugin, String size, WebSocketMessage message, boolean pushed);
+}
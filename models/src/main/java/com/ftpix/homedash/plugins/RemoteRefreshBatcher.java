@@ -0,0 +1,240 @@
+package com.ftpix.homedash.plugins;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.mashape.unirest.http.HttpResponse;
+import com.mashape.unirest.http.Unirest;
+import com.mashape.unirest.request.GetRequest;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Groups the refreshes of remote modules hosted on the same instance, so a dashboard mirroring
+ * many modules of another HomeDash does one call to /api/refresh-batch per tick instead of one per module.
+ * <p>
+ * Refreshes requested within a few milliseconds of each other (the modules of the same tick) are sent together.
+ * Falls back to /api/refresh calls if the remote instance doesn't know the batch endpoint.
+ * <p>
+ * The ETag of the last response of each call is sent back, the remote answers 304 when nothing changed
+ * and the previous response is used.
+ */
+enum RemoteRefreshBatcher {
+    INSTANCE;
+
+    private static final long WINDOW_MS = 25;
+    private static final String CACHE_PATH = "cache/";
+    private static final int MAX_VALIDATED = 256;
+
+    private final Logger logger = LogManager.getLogger();
+    private final Map<String, Batch> pending = new HashMap<>();
+    /**
+     * Last response of each url, least recently used are dropped
+     */
+    private final Map<String, Validated> validated = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Validated> eldest) {
+            return size() > MAX_VALIDATED;
+        }
+    });
+    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(2, r -> {
+        Thread thread = new Thread(r, "remote-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+
+    /**
+     * Queues the refresh of a remote module
+     *
+     * @param remoteUrl url of the remote instance, ending with /
+     * @param apiKey    api key of the remote instance
+     * @param moduleId  id of the module on the remote instance
+     * @param size      size to refresh
+     * @return the refreshed message as sent by the remote (command, message, id) with its cache urls pointing to the remote
+     */
+    CompletableFuture<JsonObject> refresh(String remoteUrl, String apiKey, String moduleId, String size) {
+        String key = remoteUrl + "|" + apiKey;
+
+        synchronized (pending) {
+            Batch batch = pending.get(key);
+            if (batch == null) {
+                batch = new Batch(remoteUrl, apiKey);
+                pending.put(key, batch);
+                executor.schedule(() -> send(key), WINDOW_MS, TimeUnit.MILLISECONDS);
+            }
+
+            return batch.requests.computeIfAbsent(moduleId + ":" + size, k -> new CompletableFuture<>());
+        }
+    }
+
+    private void send(String key) {
+        Batch batch;
+        synchronized (pending) {
+            batch = pending.remove(key);
+        }
+
+        if (batch == null) {
+            return;
+        }
+
+        String modules = String.join(",", batch.requests.keySet());
+        try {
+            JsonElement response = get(batch.remoteUrl + "api/refresh-batch?modules=" + URLEncoder.encode(modules, StandardCharsets.UTF_8), batch);
+
+            if (response == null) {
+                logger.info("[{}] doesn't support batch refresh, refreshing modules one by one", batch.remoteUrl);
+                batch.requests.forEach((module, future) -> refreshSingle(batch, module, future));
+                return;
+            }
+
+            JsonObject results = response.getAsJsonObject();
+            logger.info("Refreshed {} remote modules from [{}] in a single call", batch.requests.size(), batch.remoteUrl);
+
+            batch.requests.forEach((module, future) -> {
+                JsonElement result = results.get(module);
+                if (result != null && result.isJsonObject()) {
+                    future.complete(result.getAsJsonObject());
+                } else {
+                    future.completeExceptionally(new IllegalStateException("Module " + module + " missing from remote response"));
+                }
+            });
+        } catch (Exception e) {
+            logger.error("Couldn't refresh remote modules [" + modules + "] from [" + batch.remoteUrl + "]", e);
+            batch.requests.values().forEach(f -> f.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * Refreshes a single module with /api/refresh, for remote instances without the batch end point
+     */
+    private void refreshSingle(Batch batch, String module, CompletableFuture<JsonObject> future) {
+        String[] split = module.split(":");
+        try {
+            JsonElement response = get(batch.remoteUrl + "api/refresh/" + split[0] + "/size/" + split[1], batch);
+            if (response == null) {
+                throw new IllegalStateException("Module " + module + " not found on remote");
+            }
+
+            future.complete(response.getAsJsonObject());
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Calls the remote instance with the ETag of the previous response of this url
+     *
+     * @return the response with its cache urls pointing to the remote, the previous one if it didn't change or null if the remote answered 404
+     */
+    private JsonElement get(String url, Batch batch) throws Exception {
+        Validated previous = validated.get(url);
+
+        GetRequest request = Unirest.get(url).header("Authorization", batch.apiKey);
+        if (previous != null) {
+            request.header("If-None-Match", previous.etag);
+        }
+
+        HttpResponse<InputStream> response = request.asBinary();
+        switch (response.getStatus()) {
+            case 304:
+                if (previous != null) {
+                    return previous.json;
+                }
+                throw new IllegalStateException("Remote answered 304 without validator");
+            case 404:
+                return null;
+            case 200:
+                JsonElement json = rewriteCacheUrls(parse(response.getBody()), batch.remoteUrl);
+                header(response, "ETag").ifPresentOrElse(etag -> validated.put(url, new Validated(etag, json)), () -> validated.remove(url));
+                return json;
+            default:
+                throw new IllegalStateException("Remote answered with status " + response.getStatus());
+        }
+    }
+
+    /**
+     * Gets a response header, ignoring the case of its name
+     */
+    private static Optional<String> header(HttpResponse<?> response, String name) {
+        return response.getHeaders().entrySet().stream()
+                .filter(e -> e.getKey() != null && e.getKey().equalsIgnoreCase(name) && !e.getValue().isEmpty())
+                .map(e -> e.getValue().get(0))
+                .findFirst();
+    }
+
+    /**
+     * Parses a json response in a single pass
+     */
+    static JsonElement parse(InputStream body) throws Exception {
+        try (Reader reader = new InputStreamReader(body, StandardCharsets.UTF_8)) {
+            return new JsonParser().parse(reader);
+        }
+    }
+
+    /**
+     * Points the cache urls (/cache/... or cache/...) found in the string values to the remote instance.
+     * Other strings are left as is, even if they contain "cache/"
+     *
+     * @param element   json sent by the remote instance, modified in place
+     * @param remoteUrl url of the remote instance, ending with /
+     */
+    static JsonElement rewriteCacheUrls(JsonElement element, String remoteUrl) {
+        if (element.isJsonObject()) {
+            for (Map.Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+                entry.setValue(rewriteCacheUrls(entry.getValue(), remoteUrl));
+            }
+        } else if (element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+            for (int i = 0; i < array.size(); i++) {
+                array.set(i, rewriteCacheUrls(array.get(i), remoteUrl));
+            }
+        } else if (element.isJsonPrimitive() && element.getAsJsonPrimitive().isString()) {
+            String value = element.getAsString();
+            if (value.startsWith("/" + CACHE_PATH)) {
+                return new JsonPrimitive(remoteUrl + value.substring(1));
+            } else if (value.startsWith(CACHE_PATH)) {
+                return new JsonPrimitive(remoteUrl + value);
+            }
+        }
+
+        return element;
+    }
+
+    private static class Validated {
+        private final String etag;
+        private final JsonElement json;
+
+        private Validated(String etag, JsonElement json) {
+            this.etag = etag;
+            this.json = json;
+        }
+    }
+
+    private static class Batch {
+        private final String remoteUrl, apiKey;
+        private final Map<String, CompletableFuture<JsonObject>> requests = new LinkedHashMap<>();
+
+        private Batch(String remoteUrl, String apiKey) {
+            this.remoteUrl = remoteUrl;
+            this.apiKey = apiKey;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.ftpix.homedash.timeseries;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records copied from a tier, oldest first. The raw samples have the same min, max and average.
+ * <p>
+ * Sent by columns: {tier, time: [], min: [[column 0], [column 1]...], max: [...], avg: [...]}, null for the missing values
+ */
+@JsonAdapter(Points.Adapter.class)
+public class Points {
+    private static final int MIN = 0, MAX = 1, AVG = 2;
+
+    private final Tier tier;
+    private final int width, stride;
+    private final long[] times;
+    private final double[] values;
+
+    Points(Tier tier, int width, long[] times, double[] values) {
+        this.tier = tier;
+        this.width = width;
+        this.stride = tier == Tier.RAW ? width : width * 3;
+        this.times = times;
+        this.values = values;
+    }
+
+    public Tier getTier() {
+        return tier;
+    }
+
+    public int size() {
+        return times.length;
+    }
+
+    public long time(int index) {
+        return times[index];
+    }
+
+    public double min(int index, int column) {
+        return get(index, column, MIN);
+    }
+
+    public double max(int index, int column) {
+        return get(index, column, MAX);
+    }
+
+    public double avg(int index, int column) {
+        return get(index, column, AVG);
+    }
+
+    private double get(int index, int column, int value) {
+        if (tier == Tier.RAW) {
+            return values[index * stride + column];
+        }
+        return values[index * stride + column * 3 + value];
+    }
+
+    public static class Adapter extends TypeAdapter<Points> {
+        @Override
+        public void write(JsonWriter out, Points points) throws IOException {
+            if (points == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            out.name("tier").value(points.tier.name());
+            out.name("time").beginArray();
+            for (long time : points.times) {
+                out.value(time);
+            }
+            out.endArray();
+
+            writeValues(out.name("min"), points, MIN);
+            writeValues(out.name("max"), points, MAX);
+            writeValues(out.name("avg"), points, AVG);
+            out.endObject();
+        }
+
+        private void writeValues(JsonWriter out, Points points, int value) throws IOException {
+            out.beginArray();
+            for (int column = 0; column < points.width; column++) {
+                out.beginArray();
+                for (int i = 0; i < points.size(); i++) {
+                    double v = points.get(i, column, value);
+                    if (Double.isNaN(v)) {
+                        out.nullValue();
+                    } else {
+                        out.value(v);
+                    }
+                }
+                out.endArray();
+            }
+            out.endArray();
+        }
+
+        /**
+         * Reads the points sent by a remote instance
+         */
+        @Override
+        public Points read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            Tier tier = Tier.RAW;
+            List<Long> times = new ArrayList<>();
+            List<List<Double>> min = new ArrayList<>(), max = new ArrayList<>(), avg = new ArrayList<>();
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "tier":
+                        tier = Tier.valueOf(in.nextString());
+                        break;
+                    case "time":
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            times.add(in.nextLong());
+                        }
+                        in.endArray();
+                        break;
+                    case "min":
+                        readValues(in, min);
+                        break;
+                    case "max":
+                        readValues(in, max);
+                        break;
+                    case "avg":
+                        readValues(in, avg);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+
+            int width = avg.size();
+            int stride = tier == Tier.RAW ? width : width * 3;
+            long[] timesArray = new long[times.size()];
+            double[] values = new double[times.size() * stride];
+            for (int i = 0; i < timesArray.length; i++) {
+                timesArray[i] = times.get(i);
+                for (int column = 0; column < width; column++) {
+                    if (tier == Tier.RAW) {
+                        values[i * stride + column] = value(avg, column, i);
+                    } else {
+                        values[i * stride + column * 3 + MIN] = value(min, column, i);
+                        values[i * stride + column * 3 + MAX] = value(max, column, i);
+                        values[i * stride + column * 3 + AVG] = value(avg, column, i);
+                    }
+                }
+            }
+            return new Points(tier, width, timesArray, values);
+        }
+
+        private void readValues(JsonReader in, List<List<Double>> columns) throws IOException {
+            in.beginArray();
+            while (in.hasNext()) {
+                List<Double> column = new ArrayList<>();
+                in.beginArray();
+                while (in.hasNext()) {
+                    if (in.peek() == JsonToken.NULL) {
+                        in.nextNull();
+                        column.add(Double.NaN);
+                    } else {
+                        column.add(in.nextDouble());
+                    }
+                }
+                in.endArray();
+                columns.add(column);
+            }
+            in.endArray();
+        }
+
+        private double value(List<List<Double>> columns, int column, int index) {
+            if (column >= columns.size() || index >= columns.get(column).size()) {
+                return Double.NaN;
+            }
+            return columns.get(column).get(index);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.ftpix.homedash.timeseries;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * A series of samples of a fixed number of values, ex: cpu and ram usage.
+ * <p>
+ * The samples go to the raw tier as they come and are rolled up in min/max/average per minute and per hour,
+ * appending only writes in place in the mapped files. The rollup in progress is kept in a mapped file of its own
+ * so the hour being rolled up survives a restart, it is rebuilt from the raw samples if that file is missing.
+ */
+public class Series implements Closeable {
+    private final String name;
+    private final int width;
+    private final TierFile raw;
+    private final Rollup[] rollups;
+    /**
+     * Number of modules using it, kept by {@link TimeSeriesStore}
+     */
+    int users = 0;
+
+    Series(Path folder, String name, int width) throws IOException {
+        this.name = name;
+        this.width = width;
+
+        raw = new TierFile(folder.resolve(name + ".raw"), width, Tier.RAW.getSize());
+        rollups = new Rollup[]{new Rollup(folder, Tier.MINUTE), new Rollup(folder, Tier.HOUR)};
+
+        double[] sample = new double[width];
+        for (int i = 0; i < raw.size(); i++) {
+            for (int column = 0; column < width; column++) {
+                sample[column] = raw.value(i, column);
+            }
+            for (Rollup rollup : rollups) {
+                if (!rollup.restored) {
+                    rollup.add(raw.time(i), sample);
+                }
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Adds a sample, ignored if it isn't newer than the last one (several modules writing the same series).
+     * NaN values are kept raw but left out of the rollups.
+     *
+     * @return whether the sample was added
+     */
+    public synchronized boolean append(long time, double... values) {
+        if (values.length != width) {
+            throw new IllegalArgumentException("Series " + name + " expects " + width + " values, got " + values.length);
+        }
+        if (time <= raw.lastTime()) {
+            return false;
+        }
+
+        raw.append(time, values);
+        for (Rollup rollup : rollups) {
+            rollup.add(time, values);
+        }
+        return true;
+    }
+
+    /**
+     * Copies the records of a tier from the given time
+     */
+    public synchronized Points read(Tier tier, long since) {
+        TierFile file = tier == Tier.RAW ? raw : rollups[tier.ordinal() - 1].file;
+
+        int start = file.indexOf(since);
+        int size = file.size() - start;
+        long[] times = new long[size];
+        double[] values = new double[size * file.getValues()];
+        for (int i = 0; i < size; i++) {
+            times[i] = file.time(start + i);
+            for (int value = 0; value < file.getValues(); value++) {
+                values[i * file.getValues() + value] = file.value(start + i, value);
+            }
+        }
+        return new Points(tier, width, times, values);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        raw.close();
+        for (Rollup rollup : rollups) {
+            rollup.file.close();
+            rollup.state.close();
+        }
+    }
+
+    /**
+     * Min, max and sum of the bucket in progress, written as min, max, average once a sample of the next bucket comes.
+     * The bucket in progress is saved after each sample as a single record of min, max, sum and count per value.
+     */
+    private class Rollup {
+        private final Tier tier;
+        private final TierFile file, state;
+        private final double[] min = new double[width], max = new double[width], sum = new double[width], record = new double[width * 3],
+                saved = new double[width * 4];
+        private final int[] count = new int[width];
+        private long bucket = Long.MIN_VALUE;
+        /**
+         * Whether the bucket in progress was read from its file
+         */
+        private final boolean restored;
+
+        private Rollup(Path folder, Tier tier) throws IOException {
+            String fileName = name + "." + tier.name().toLowerCase();
+            this.tier = tier;
+            this.file = new TierFile(folder.resolve(fileName), width * 3, tier.getSize());
+            this.state = new TierFile(folder.resolve(fileName + ".state"), width * 4, 1);
+            this.restored = restore();
+        }
+
+        private boolean restore() {
+            // nothing saved yet, or the bucket was written before a restart
+            if (state.size() == 0 || state.time(0) <= file.lastTime()) {
+                return false;
+            }
+
+            bucket = state.time(0);
+            for (int i = 0; i < width; i++) {
+                min[i] = state.value(0, i * 4);
+                max[i] = state.value(0, i * 4 + 1);
+                sum[i] = state.value(0, i * 4 + 2);
+                count[i] = (int) state.value(0, i * 4 + 3);
+            }
+            return true;
+        }
+
+        private void add(long time, double[] values) {
+            long start = time - Math.floorMod(time, tier.getInterval());
+            // already written before a restart
+            if (start <= file.lastTime()) {
+                return;
+            }
+
+            if (start != bucket) {
+                flush();
+                bucket = start;
+                Arrays.fill(min, Double.POSITIVE_INFINITY);
+                Arrays.fill(max, Double.NEGATIVE_INFINITY);
+                Arrays.fill(sum, 0);
+                Arrays.fill(count, 0);
+            }
+
+            for (int i = 0; i < width; i++) {
+                double value = values[i];
+                if (!Double.isNaN(value)) {
+                    min[i] = Math.min(min[i], value);
+                    max[i] = Math.max(max[i], value);
+                    sum[i] += value;
+                    count[i]++;
+                }
+            }
+            save();
+        }
+
+        private void save() {
+            for (int i = 0; i < width; i++) {
+                saved[i * 4] = min[i];
+                saved[i * 4 + 1] = max[i];
+                saved[i * 4 + 2] = sum[i];
+                saved[i * 4 + 3] = count[i];
+            }
+            state.append(bucket, saved);
+        }
+
+        private void flush() {
+            if (bucket == Long.MIN_VALUE) {
+                return;
+            }
+
+            for (int i = 0; i < width; i++) {
+                boolean empty = count[i] == 0;
+                record[i * 3] = empty ? Double.NaN : min[i];
+                record[i * 3 + 1] = empty ? Double.NaN : max[i];
+                record[i * 3 + 2] = empty ? Double.NaN : sum[i] / count[i];
+            }
+            file.append(bucket, record);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.ftpix.homedash.timeseries;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Levels of detail of a series. Each tier is a fixed size file, the oldest records are overwritten once it's full
+ * so the retention is the size times the interval.
+ */
+public enum Tier {
+    /**
+     * Every sample appended, at the rate of the module writing them (ex: 1200 samples = 1 hour every 3 seconds)
+     */
+    RAW(0, 1200),
+    /**
+     * Min, max and average per minute, kept 2 days
+     */
+    MINUTE(TimeUnit.MINUTES.toMillis(1), 2 * 24 * 60),
+    /**
+     * Min, max and average per hour, kept 90 days
+     */
+    HOUR(TimeUnit.HOURS.toMillis(1), 90 * 24);
+
+    private final long interval;
+    private final int size;
+
+    Tier(long interval, int size) {
+        this.interval = interval;
+        this.size = size;
+    }
+
+    /**
+     * Time covered by a record in ms, 0 for the raw samples
+     */
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * Number of records kept
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Finest tier still holding the given time ago, a graph of the last 24 hours is drawn from the minutes, the last 7 days from the hours
+     *
+     * @param rawInterval time between 2 raw samples of the series in ms
+     */
+    public static Tier forRange(long range, long rawInterval) {
+        if (range <= RAW.size * rawInterval) {
+            return RAW;
+        } else if (range <= MINUTE.size * MINUTE.interval) {
+            return MINUTE;
+        } else {
+            return HOUR;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.ftpix.homedash.timeseries;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Ring of fixed size records in a memory mapped file: a time then the values.
+ * <p>
+ * Header: magic, version, values per record, capacity (int each) then the number of records ever written (long).
+ * The count is written after the record, a crash in between loses the record, not the file.
+ */
+class TierFile implements Closeable {
+    private static final int MAGIC = 0x48445453, VERSION = 1, HEADER_SIZE = 24, WRITTEN_POSITION = 16;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int values, capacity, recordSize;
+    private long written;
+
+    /**
+     * Opens or creates the file, a file with another layout (width or size changed) is started over
+     *
+     * @param values   number of doubles after the time of each record
+     * @param capacity number of records kept
+     */
+    TierFile(Path path, int values, int capacity) throws IOException {
+        this.values = values;
+        this.capacity = capacity;
+        this.recordSize = Long.BYTES + values * Double.BYTES;
+
+        long size = HEADER_SIZE + (long) recordSize * capacity;
+        boolean reset = !Files.exists(path) || Files.size(path) != size;
+
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+        if (!reset && buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION && buffer.getInt(8) == values && buffer.getInt(12) == capacity) {
+            written = buffer.getLong(WRITTEN_POSITION);
+        } else {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, values);
+            buffer.putInt(12, capacity);
+            buffer.putLong(WRITTEN_POSITION, 0);
+            written = 0;
+        }
+    }
+
+    /**
+     * Writes a record over the oldest one once full
+     *
+     * @param record at least {@link #getValues()} values
+     */
+    void append(long time, double[] record) {
+        int position = position((int) (written % capacity));
+        buffer.putLong(position, time);
+        position += Long.BYTES;
+        for (int i = 0; i < values; i++) {
+            buffer.putDouble(position + i * Double.BYTES, record[i]);
+        }
+
+        written++;
+        buffer.putLong(WRITTEN_POSITION, written);
+    }
+
+    /**
+     * Number of records available
+     */
+    int size() {
+        return (int) Math.min(written, capacity);
+    }
+
+    int getValues() {
+        return values;
+    }
+
+    /**
+     * @param index 0 is the oldest record kept
+     */
+    long time(int index) {
+        return buffer.getLong(position(slot(index)));
+    }
+
+    double value(int index, int value) {
+        return buffer.getDouble(position(slot(index)) + Long.BYTES + value * Double.BYTES);
+    }
+
+    /**
+     * Time of the last record
+     *
+     * @return Long.MIN_VALUE if there's none
+     */
+    long lastTime() {
+        return written == 0 ? Long.MIN_VALUE : time(size() - 1);
+    }
+
+    /**
+     * Index of the first record at or after the given time, the records are in time order
+     */
+    int indexOf(long time) {
+        int low = 0, high = size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (time(middle) < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Flushes the file, the mapping itself is released with the buffer
+     */
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    private int slot(int index) {
+        long oldest = written - size();
+        return (int) ((oldest + index) % capacity);
+    }
+
+    private int position(int slot) {
+        return HEADER_SIZE + slot * recordSize;
+    }
+}
@@ -0,0 +1,184 @@
+package com.ftpix.homedash.timeseries;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Long history of the metrics shown by the modules (host cpu and ram, network interfaces, containers...), kept across restarts.
+ * <p>
+ * Each series is a few memory mapped files in the metrics folder, their size doesn't change once created
+ * so the disk and memory used only grow with the number of series. Series no longer written can be {@link #delete(String, long)}d.
+ */
+public enum TimeSeriesStore {
+    INSTANCE;
+
+    private static final String RAW_EXTENSION = ".raw";
+
+    private final Logger logger = LogManager.getLogger();
+    private final Map<String, Series> series = new ConcurrentHashMap<>();
+    private volatile Path folder = Paths.get("metrics");
+
+    /**
+     * Where the series are stored, set at startup before any series is opened
+     */
+    public void setFolder(Path folder) {
+        this.folder = folder;
+    }
+
+    /**
+     * Opens a series, the same instance is shared by all the modules asking for it until they all {@link #release(Series)} it
+     *
+     * @param name  letters, digits, '.', '_' and '-', the others are replaced
+     * @param width number of values of a sample, a series stored with another width is started over
+     */
+    public Series getSeries(String name, int width) throws IOException {
+        String fileName = toFileName(name);
+        try {
+            return series.compute(fileName, (n, opened) -> {
+                if (opened == null) {
+                    try {
+                        Files.createDirectories(folder);
+                        logger.info("Opening series {} in {}", n, folder.toAbsolutePath());
+                        opened = new Series(folder, n, width);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                } else if (opened.getWidth() != width) {
+                    throw new IllegalArgumentException("Series " + n + " is already open with " + opened.getWidth() + " values");
+                }
+
+                opened.users++;
+                return opened;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Closes a series once every module that opened it released it, its files stay for the next time it's opened
+     */
+    public void release(Series released) {
+        series.computeIfPresent(released.getName(), (n, opened) -> {
+            if (opened != released || --opened.users > 0) {
+                return opened;
+            }
+
+            try {
+                logger.info("Closing series {}", n);
+                opened.close();
+            } catch (IOException e) {
+                logger.error("Couldn't close series " + n, e);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Names of the series stored whose name starts with the given prefix, open or not
+     */
+    public List<String> list(String prefix) throws IOException {
+        if (!Files.isDirectory(folder)) {
+            return new ArrayList<>();
+        }
+
+        String start = toFileName(prefix);
+        try (Stream<Path> files = Files.list(folder)) {
+            return files.map(f -> f.getFileName().toString())
+                    .filter(f -> f.startsWith(start) && f.endsWith(RAW_EXTENSION))
+                    .map(f -> f.substring(0, f.length() - RAW_EXTENSION.length()))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Deletes the files of a series that isn't open and wasn't written for some time
+     *
+     * @param unused ms since the series was last written
+     * @return whether it was deleted
+     */
+    public boolean delete(String name, long unused) throws IOException {
+        String fileName = toFileName(name);
+        long before = System.currentTimeMillis() - unused;
+        AtomicBoolean deleted = new AtomicBoolean(false);
+        try {
+            // in compute so the series isn't opened meanwhile
+            series.compute(fileName, (n, opened) -> {
+                if (opened != null) {
+                    return opened;
+                }
+
+                try {
+                    List<Path> files = files(n);
+                    for (Path file : files) {
+                        if (Files.exists(file) && Files.getLastModifiedTime(file).toMillis() > before) {
+                            return null;
+                        }
+                    }
+
+                    logger.info("Deleting series {}", n);
+                    for (Path file : files) {
+                        Files.deleteIfExists(file);
+                    }
+                    deleted.set(true);
+                    return null;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return deleted.get();
+    }
+
+    /**
+     * Name of a series as used for its files
+     */
+    public static String toFileName(String name) {
+        return name.replaceAll("[^a-zA-Z0-9._-]", "_");
+    }
+
+    /**
+     * Files of a series, see {@link Series}
+     */
+    private List<Path> files(String fileName) {
+        List<Path> files = new ArrayList<>();
+        files.add(folder.resolve(fileName + RAW_EXTENSION));
+        for (Tier tier : Tier.values()) {
+            if (tier != Tier.RAW) {
+                String tierFile = fileName + "." + tier.name().toLowerCase();
+                files.add(folder.resolve(tierFile));
+                files.add(folder.resolve(tierFile + ".state"));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Flushes and closes all the series
+     */
+    public void close() {
+        series.values().forEach(s -> {
+            try {
+                s.close();
+            } catch (IOException e) {
+                logger.error("Couldn't close series " + s.getName(), e);
+            }
+        });
+        series.clear();
+    }
+}
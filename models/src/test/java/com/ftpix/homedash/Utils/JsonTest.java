@@ -0,0 +1,64 @@
+package com.ftpix.homedash.Utils;
+
+import com.ftpix.homedash.models.WebSocketMessage;
+import com.google.gson.Gson;
+import io.gsonfire.GsonFireBuilder;
+import org.junit.Test;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class JsonTest {
+    private final Gson reflection = new GsonFireBuilder().enableExposeMethodResult().createGsonBuilder().excludeFieldsWithModifiers(Modifier.STATIC, Modifier.TRANSIENT, Modifier.VOLATILE).serializeSpecialFloatingPointValues().create();
+
+    @Test
+    public void testSameJsonAsReflection() {
+        Map<String, Object> data = new HashMap<>();
+        data.put("usage", 12.5);
+        data.put("nothing", null);
+        data.put("list", List.of(1, 2L, "three"));
+
+        WebSocketMessage message = new WebSocketMessage();
+        message.setCommand(WebSocketMessage.COMMAND_REFRESH);
+        message.setModuleId(4);
+        message.setMessage(data);
+        assertEquals(reflection.toJson(message), Json.MESSAGES.toJson(message));
+
+        message.setExtra(new int[]{1, 2});
+        message.setSeq(12L);
+        assertEquals(reflection.toJson(message), Json.MESSAGES.toJson(message));
+        assertEquals(reflection.toJsonTree(message), Json.MESSAGES.toJsonTree(message));
+    }
+
+    @Test
+    public void testReadStillByReflection() {
+        WebSocketMessage message = Json.MESSAGES.fromJson("{\"command\":\"refresh\",\"message\":\"2x1\",\"id\":3,\"seq\":7}", WebSocketMessage.class);
+
+        assertEquals("refresh", message.getCommand());
+        assertEquals("2x1", message.getMessage());
+        assertEquals(3, message.getModuleId());
+        assertEquals(Long.valueOf(7), message.getSeq());
+    }
+
+    @Test
+    public void testRegisteredWriter() {
+        Json.register(Sample.class, (gson, out, sample) -> out.beginObject().name("v").value(sample.value * 2).endObject());
+
+        Sample sample = new Sample();
+        sample.value = 21;
+        List<Sample> samples = new ArrayList<>();
+        samples.add(sample);
+
+        assertEquals("[{\"v\":42}]", Json.MESSAGES.toJson(samples));
+        assertEquals(5, Json.MESSAGES.fromJson("{\"value\":5}", Sample.class).value);
+    }
+
+    private static class Sample {
+        private int value;
+    }
+}
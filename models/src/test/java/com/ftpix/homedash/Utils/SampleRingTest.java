@@ -0,0 +1,97 @@
+package com.ftpix.homedash.Utils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SampleRingTest {
+
+    @Test
+    public void testWindow() {
+        SampleRing ring = new SampleRing(3, 2);
+        assertTrue(ring.last(3).isEmpty());
+        assertTrue(Double.isNaN(ring.lastValue(0)));
+
+        double[] sample = new double[2];
+        for (int i = 1; i <= 5; i++) {
+            sample[0] = i;
+            sample[1] = i * 10;
+            ring.add(sample);
+        }
+
+        assertEquals(3, ring.size());
+        assertEquals(50, ring.lastValue(1), 0);
+
+        SampleRing.Snapshot all = ring.last(10);
+        assertEquals(3, all.size());
+        assertEquals(3, all.get(0, 0), 0);
+        assertEquals(5, all.getLong(2, 0));
+
+        SampleRing.Snapshot two = ring.last(2);
+        assertEquals(2, two.size());
+        assertEquals(40, two.get(0, 1), 0);
+    }
+
+    @Test
+    public void testDownsample() {
+        SampleRing ring = new SampleRing(20, 2);
+        double[] sample = new double[2];
+        for (int i = 0; i < 20; i++) {
+            // sampled every second, a bit late sometimes
+            sample[0] = i * 1000 + (i % 3 == 0 ? 50 : 0);
+            sample[1] = i;
+            ring.add(sample);
+        }
+
+        SampleRing.Snapshot all = ring.last(20);
+        assertTrue(all == all.downsample(0, 1000, 20));
+
+        SampleRing.Snapshot everyThree = all.downsample(0, 3000, 4);
+        assertEquals(4, everyThree.size());
+        assertEquals(19, everyThree.get(3, 1), 0);
+        assertEquals(16, everyThree.get(2, 1), 0);
+        assertEquals(10, everyThree.get(0, 1), 0);
+    }
+
+    @Test
+    public void testConsistentWhileWriting() throws InterruptedException {
+        SampleRing ring = new SampleRing(16, 8);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<String> error = new AtomicReference<>();
+
+        Thread writer = new Thread(() -> {
+            double[] sample = new double[8];
+            for (int i = 1; i <= 200_000; i++) {
+                Arrays.fill(sample, i);
+                ring.add(sample);
+            }
+            running.set(false);
+        });
+
+        Thread reader = new Thread(() -> {
+            while (running.get() && error.get() == null) {
+                SampleRing.Snapshot snapshot = ring.last(16);
+                for (int i = 0; i < snapshot.size(); i++) {
+                    for (int column = 0; column < 8; column++) {
+                        if (snapshot.get(i, column) != snapshot.get(0, 0) + i) {
+                            error.set("sample " + i + " column " + column + " is " + snapshot.get(i, column) + ", first is " + snapshot.get(0, 0));
+                        }
+                    }
+                }
+            }
+        });
+
+        writer.start();
+        reader.start();
+        writer.join();
+        reader.join();
+
+        assertNull(error.get());
+    }
+}
@@ -0,0 +1,82 @@
+package com.ftpix.homedash.metrics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one sample of the cpu, memory, network and disks (what the host plugins read every few seconds).
+ * Run with -prof gc to compare the allocations.
+ * <ul>
+ * <li>fixtures: /proc parser on the files of src/test/resources/proc</li>
+ * <li>local: what the app would use on this host, the /proc parser on Linux</li>
+ * <li>oshi: the same values from OSHI</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HostMetricsBenchmark {
+    private final CpuTimes cpu = new CpuTimes();
+    private final MemoryUsage memory = new MemoryUsage();
+    private final InterfaceCounters interfaces = new InterfaceCounters();
+    private final DiskCounters disks = new DiskCounters();
+
+    private HostMetrics fixtures, local, oshi;
+
+    @Setup
+    public void setUp() throws Exception {
+        fixtures = new ProcHostMetrics(Paths.get(getClass().getResource("/proc").toURI()));
+        local = HostMetrics.local();
+        oshi = new OshiHostMetrics();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        fixtures.close();
+        local.close();
+        oshi.close();
+    }
+
+    @Benchmark
+    public void fixtures(Blackhole blackhole) throws Exception {
+        sample(fixtures, blackhole);
+    }
+
+    @Benchmark
+    public void local(Blackhole blackhole) throws Exception {
+        sample(local, blackhole);
+    }
+
+    @Benchmark
+    public void oshi(Blackhole blackhole) throws Exception {
+        sample(oshi, blackhole);
+    }
+
+    private void sample(HostMetrics metrics, Blackhole blackhole) throws Exception {
+        metrics.readCpu(cpu);
+        metrics.readMemory(memory);
+        metrics.readNetwork(interfaces);
+        metrics.readDisks(disks);
+
+        blackhole.consume(cpu.get(0, CpuTimes.IDLE));
+        blackhole.consume(memory.getAvailable());
+        blackhole.consume(interfaces.size());
+        blackhole.consume(disks.size());
+    }
+}
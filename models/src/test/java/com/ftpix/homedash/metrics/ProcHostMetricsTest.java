@@ -0,0 +1,92 @@
+package com.ftpix.homedash.metrics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ProcHostMetricsTest {
+    private ProcHostMetrics metrics;
+
+    @Before
+    public void setUp() throws Exception {
+        metrics = new ProcHostMetrics(Paths.get(getClass().getResource("/proc").toURI()));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        metrics.close();
+    }
+
+    @Test
+    public void testCpu() throws Exception {
+        CpuTimes cpu = new CpuTimes();
+        metrics.readCpu(cpu);
+
+        assertEquals(4, cpu.getCores());
+        assertEquals(2255034, cpu.get(0, CpuTimes.USER));
+        assertEquals(75264523, cpu.get(0, CpuTimes.IDLE));
+        assertEquals(1204, cpu.get(0, CpuTimes.STEAL));
+        assertEquals(3047, cpu.get(4, CpuTimes.SOFTIRQ));
+
+        CpuTimes previous = new CpuTimes();
+        previous.copy(cpu);
+        assertEquals(0, cpu.usage(previous, 0), 0);
+
+        previous.set(1, CpuTimes.USER, cpu.get(1, CpuTimes.USER) - 30);
+        previous.set(1, CpuTimes.IDLE, cpu.get(1, CpuTimes.IDLE) - 70);
+        assertEquals(0.3, cpu.usage(previous, 1), 0.0001);
+    }
+
+    @Test
+    public void testMemory() throws Exception {
+        MemoryUsage memory = new MemoryUsage();
+        metrics.readMemory(memory);
+
+        assertEquals(16318412L * 1024, memory.getTotal());
+        assertEquals(9861176L * 1024, memory.getAvailable());
+        assertEquals((2097148L - 1948412L) * 1024, memory.getSwapUsed());
+    }
+
+    @Test
+    public void testNetwork() throws Exception {
+        InterfaceCounters interfaces = new InterfaceCounters();
+        metrics.readNetwork(interfaces);
+
+        assertEquals(6, interfaces.size());
+        int eth0 = interfaces.indexOf("eth0");
+        assertEquals(1, eth0);
+        assertEquals(98310259447L, interfaces.get(eth0, InterfaceCounters.RX_BYTES));
+        assertEquals(2, interfaces.get(eth0, InterfaceCounters.RX_ERRORS));
+        assertEquals(12077912831L, interfaces.get(eth0, InterfaceCounters.TX_BYTES));
+        assertEquals(41292745, interfaces.get(eth0, InterfaceCounters.TX_PACKETS));
+        assertEquals("br-5f1e9c2b7d41", interfaces.getName(4));
+        assertEquals(1, interfaces.get(interfaces.indexOf("eth0.20"), InterfaceCounters.TX_ERRORS));
+
+        // same interfaces, the names are kept
+        String name = interfaces.getName(3);
+        metrics.readNetwork(interfaces);
+        assertEquals(6, interfaces.size());
+        assertSame(name, interfaces.getName(3));
+    }
+
+    @Test
+    public void testDisks() throws Exception {
+        DiskCounters disks = new DiskCounters();
+        metrics.readDisks(disks);
+
+        assertEquals(5, disks.size());
+        int sda = disks.indexOf("sda");
+        assertTrue(sda >= 0);
+        assertEquals(1433972, disks.get(sda, DiskCounters.READS));
+        assertEquals(102934762L * 512, disks.get(sda, DiskCounters.READ_BYTES));
+        assertEquals(3012854, disks.get(sda, DiskCounters.WRITES));
+        assertEquals(178127000L * 512, disks.get(sda, DiskCounters.WRITE_BYTES));
+        assertEquals(2603116, disks.get(sda, DiskCounters.IO_TIME));
+    }
+}
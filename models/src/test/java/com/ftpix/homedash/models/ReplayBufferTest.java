@@ -0,0 +1,38 @@
+package com.ftpix.homedash.models;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReplayBufferTest {
+
+    @Test
+    public void testAfter() {
+        ReplayBuffer buffer = new ReplayBuffer(3);
+        buffer.add(2, "a");
+        buffer.add(5, "b");
+        buffer.add(9, "c");
+
+        assertEquals(List.of("b", "c"), buffer.after(2).get());
+        assertEquals(List.of("c"), buffer.after(7).get());
+        assertTrue(buffer.after(9).get().isEmpty());
+        // nothing has been dropped yet
+        assertEquals(List.of("a", "b", "c"), buffer.after(0).get());
+    }
+
+    @Test
+    public void testTooOld() {
+        ReplayBuffer buffer = new ReplayBuffer(2);
+        buffer.add(1, "a");
+        buffer.add(2, "b");
+        buffer.add(3, "c");
+
+        // message 1 has been dropped, a browser that only got 0 can't resume
+        assertFalse(buffer.after(0).isPresent());
+        assertEquals(List.of("b", "c"), buffer.after(1).get());
+    }
+}
@@ -0,0 +1,48 @@
+package com.ftpix.homedash.models;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class WebSocketSessionTest {
+
+    @Test
+    public void testReservedOrder() {
+        List<String> sent = new ArrayList<>();
+        WebSocketSession session = new WebSocketSession();
+        session.setTransport(new ClientTransport() {
+            @Override
+            public void send(String message) {
+                sent.add(message);
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+        });
+
+        WebSocketSession.Reserved first = session.reserve(1);
+        WebSocketSession.Reserved second = session.reserve(2);
+        WebSocketSession.Reserved third = session.reserve(3);
+
+        // ready before the first one, waits for it
+        session.send(second, "b", null);
+        assertEquals(List.of(), sent);
+
+        session.send(first, "a", null);
+        assertEquals(List.of("a", "b"), sent);
+
+        // couldn't be made, doesn't block the next ones
+        WebSocketSession.Reserved fourth = session.reserve(4);
+        session.send(fourth, "d", null);
+        assertEquals(List.of("a", "b"), sent);
+        session.send(third, null, null);
+        assertEquals(List.of("a", "b", "d"), sent);
+
+        assertEquals(List.of("a", "b", "d"), session.getReplay().after(0).get());
+    }
+}
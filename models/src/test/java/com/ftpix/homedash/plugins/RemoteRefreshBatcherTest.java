@@ -0,0 +1,70 @@
+package com.ftpix.homedash.plugins;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Test;
+import spark.Service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class RemoteRefreshBatcherTest {
+
+    @Test
+    public void testRewriteCacheUrls() {
+        JsonElement json = new JsonParser().parse("{\"command\":\"refresh\",\"message\":{" +
+                "\"poster\":\"/cache/12/images/abc.jpg\"," +
+                "\"relative\":\"cache/12/images/def.jpg\"," +
+                "\"title\":\"Where is my cache/ folder\"," +
+                "\"count\":3," +
+                "\"items\":[{\"image\":\"/cache/12/1.jpg\"},\"/cache/12/2.jpg\",null]}}");
+
+        JsonObject message = RemoteRefreshBatcher.rewriteCacheUrls(json, "http://remote:4567/")
+                .getAsJsonObject().getAsJsonObject("message");
+
+        assertEquals("http://remote:4567/cache/12/images/abc.jpg", message.get("poster").getAsString());
+        assertEquals("http://remote:4567/cache/12/images/def.jpg", message.get("relative").getAsString());
+        assertEquals("Where is my cache/ folder", message.get("title").getAsString());
+        assertEquals(3, message.get("count").getAsInt());
+        assertEquals("http://remote:4567/cache/12/1.jpg", message.getAsJsonArray("items").get(0).getAsJsonObject().get("image").getAsString());
+        assertEquals("http://remote:4567/cache/12/2.jpg", message.getAsJsonArray("items").get(1).getAsString());
+    }
+
+    @Test
+    public void testNotModified() throws Exception {
+        AtomicInteger full = new AtomicInteger(), notModified = new AtomicInteger();
+
+        Service remote = Service.ignite().port(0);
+        remote.get("/api/refresh-batch", (req, res) -> {
+            res.header("ETag", "\"v1\"");
+            if ("\"v1\"".equals(req.headers("If-None-Match"))) {
+                notModified.incrementAndGet();
+                res.status(304);
+                return "";
+            }
+
+            full.incrementAndGet();
+            return "{\"5:1x1\":{\"command\":\"refresh\",\"message\":{\"poster\":\"/cache/5/a.jpg\"},\"moduleId\":5}}";
+        });
+        remote.init();
+        remote.awaitInitialization();
+
+        try {
+            String url = "http://localhost:" + remote.port() + "/";
+
+            JsonObject first = RemoteRefreshBatcher.INSTANCE.refresh(url, "key", "5", "1x1").get(5, TimeUnit.SECONDS);
+            JsonObject second = RemoteRefreshBatcher.INSTANCE.refresh(url, "key", "5", "1x1").get(5, TimeUnit.SECONDS);
+
+            assertEquals(1, full.get());
+            assertEquals(1, notModified.get());
+            assertEquals(first, second);
+            assertEquals(url + "cache/5/a.jpg", second.getAsJsonObject("message").get("poster").getAsString());
+        } finally {
+            remote.stop();
+            remote.awaitStop();
+        }
+    }
+}
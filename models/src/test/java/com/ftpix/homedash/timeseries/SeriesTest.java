@@ -0,0 +1,153 @@
+package com.ftpix.homedash.timeseries;
+
+import com.google.gson.Gson;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SeriesTest {
+    private static final long MINUTE = Tier.MINUTE.getInterval();
+
+    private Path folder;
+
+    @Before
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("series");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(folder)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testRollup() throws IOException {
+        try (Series series = new Series(folder, "host", 2)) {
+            // 3 samples in the first minute, 1 in the second
+            assertTrue(series.append(0, 10, 1));
+            assertTrue(series.append(20_000, 30, Double.NaN));
+            assertTrue(series.append(40_000, 20, 3));
+            assertFalse(series.append(40_000, 50, 5));
+            assertTrue(series.append(MINUTE + 1000, 40, 4));
+
+            Points raw = series.read(Tier.RAW, 0);
+            assertEquals(4, raw.size());
+            assertEquals(30, raw.avg(1, 0), 0);
+            assertTrue(Double.isNaN(raw.min(1, 1)));
+
+            Points minutes = series.read(Tier.MINUTE, 0);
+            assertEquals(1, minutes.size());
+            assertEquals(0, minutes.time(0));
+            assertEquals(10, minutes.min(0, 0), 0);
+            assertEquals(30, minutes.max(0, 0), 0);
+            assertEquals(20, minutes.avg(0, 0), 0);
+            assertEquals(2, minutes.avg(0, 1), 0);
+
+            assertEquals(0, series.read(Tier.HOUR, 0).size());
+            assertEquals(2, series.read(Tier.RAW, 40_000).size());
+        }
+    }
+
+    @Test
+    public void testReopen() throws IOException {
+        try (Series series = new Series(folder, "host", 1)) {
+            series.append(0, 10);
+            series.append(MINUTE, 20);
+            series.append(MINUTE + 30_000, 40);
+        }
+
+        // the minute in progress is rebuilt from the raw samples
+        try (Series series = new Series(folder, "host", 1)) {
+            assertEquals(3, series.read(Tier.RAW, 0).size());
+            assertEquals(1, series.read(Tier.MINUTE, 0).size());
+
+            series.append(2 * MINUTE, 0);
+            Points minutes = series.read(Tier.MINUTE, 0);
+            assertEquals(2, minutes.size());
+            assertEquals(MINUTE, minutes.time(1));
+            assertEquals(30, minutes.avg(1, 0), 0);
+        }
+
+        // another width starts over
+        try (Series series = new Series(folder, "host", 2)) {
+            assertEquals(0, series.read(Tier.RAW, 0).size());
+        }
+    }
+
+    @Test
+    public void testHourSurvivesRestart() throws IOException {
+        long hour = Tier.HOUR.getInterval();
+        try (Series series = new Series(folder, "host", 1)) {
+            series.append(0, 10);
+        }
+
+        // the raw tier no longer holds the start of the hour
+        try (Series series = new Series(folder, "host", 1)) {
+            for (int i = 1; i <= Tier.RAW.getSize(); i++) {
+                series.append(i * 1000L, 30);
+            }
+        }
+
+        try (Series series = new Series(folder, "host", 1)) {
+            series.append(hour, 0);
+            Points hours = series.read(Tier.HOUR, 0);
+            assertEquals(1, hours.size());
+            assertEquals(10, hours.min(0, 0), 0);
+            assertEquals(30, hours.max(0, 0), 0);
+        }
+    }
+
+    @Test
+    public void testPointsJson() throws IOException {
+        try (Series series = new Series(folder, "host", 2)) {
+            series.append(0, 10, 1);
+            series.append(20_000, 30, Double.NaN);
+            series.append(MINUTE, 40, 4);
+
+            Gson gson = new Gson();
+            for (Tier tier : new Tier[]{Tier.RAW, Tier.MINUTE}) {
+                Points points = series.read(tier, 0);
+                Points read = gson.fromJson(gson.toJson(points), Points.class);
+
+                assertEquals(tier, read.getTier());
+                assertEquals(points.size(), read.size());
+                for (int i = 0; i < points.size(); i++) {
+                    assertEquals(points.time(i), read.time(i));
+                    for (int column = 0; column < 2; column++) {
+                        assertEquals(points.min(i, column), read.min(i, column), 0);
+                        assertEquals(points.max(i, column), read.max(i, column), 0);
+                        assertEquals(points.avg(i, column), read.avg(i, column), 0);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRetention() throws IOException {
+        int size = Tier.RAW.getSize();
+        try (Series series = new Series(folder, "host", 1)) {
+            for (int i = 0; i < size + 10; i++) {
+                series.append(i * 1000L, i);
+            }
+
+            Points raw = series.read(Tier.RAW, 0);
+            assertEquals(size, raw.size());
+            assertEquals(10, raw.avg(0, 0), 0);
+            assertEquals(size + 9, raw.avg(size - 1, 0), 0);
+            assertEquals(5, series.read(Tier.RAW, (size + 5) * 1000L).size());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.ftpix.homedash.timeseries;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimeSeriesStoreTest {
+    private Path folder;
+
+    @Before
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("series");
+        TimeSeriesStore.INSTANCE.setFolder(folder);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        TimeSeriesStore.INSTANCE.close();
+        TimeSeriesStore.INSTANCE.setFolder(Paths.get("metrics"));
+        try (Stream<Path> files = Files.walk(folder)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testShared() throws IOException {
+        Series first = TimeSeriesStore.INSTANCE.getSeries("docker-1-web", 3);
+        Series second = TimeSeriesStore.INSTANCE.getSeries("docker-1-web", 3);
+        assertTrue(first == second);
+
+        // still used by the second one
+        TimeSeriesStore.INSTANCE.release(first);
+        assertTrue(second.append(1000, 1, 2, 3));
+        TimeSeriesStore.INSTANCE.release(second);
+    }
+
+    @Test
+    public void testListAndDelete() throws IOException {
+        for (String name : Arrays.asList("docker-1-web", "docker-1-db", "docker-12-web", "network-eth0")) {
+            TimeSeriesStore.INSTANCE.release(TimeSeriesStore.INSTANCE.getSeries(name, 1));
+        }
+
+        List<String> listed = TimeSeriesStore.INSTANCE.list("docker-1-");
+        listed.sort(Comparator.naturalOrder());
+        assertEquals(Arrays.asList("docker-1-db", "docker-1-web"), listed);
+
+        // written just now
+        assertFalse(TimeSeriesStore.INSTANCE.delete("docker-1-web", 60_000));
+
+        // open
+        Series open = TimeSeriesStore.INSTANCE.getSeries("docker-1-db", 1);
+        assertFalse(TimeSeriesStore.INSTANCE.delete("docker-1-db", -60_000));
+        TimeSeriesStore.INSTANCE.release(open);
+
+        assertTrue(TimeSeriesStore.INSTANCE.delete("docker-1-web", -60_000));
+        assertEquals(Arrays.asList("docker-1-db"), TimeSeriesStore.INSTANCE.list("docker-1-"));
+        try (Stream<Path> files = Files.list(folder)) {
+            assertTrue(files.noneMatch(f -> f.getFileName().toString().startsWith("docker-1-web")));
+        }
+    }
+}
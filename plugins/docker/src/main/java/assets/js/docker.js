@@ -71,6 +71,8 @@ function docker(moduleId) {
             this.showContainerDetails(message);
         } else if (command === 'logs') {
             this.displayLogs(message);
+        } else if (command === 'history') {
+            this.showMemoryHistory(message);
         }
     };
 
@@ -151,9 +153,21 @@ function docker(moduleId) {
         modal.find('.container-info').html('<div class="loader"></div>');
         sendMessage(this.moduleId, 'details', this.selectedContainer);
 
+        modal.find('.memory-history path').attr('d', '');
+        sendMessage(this.moduleId, 'history', this.selectedContainer, 24);
+
         modal.modal('show');
     };
 
+    this.showMemoryHistory = function (points) {
+        var graph = rootElement(this.moduleId).find('#container-modal .memory-history');
+        if (points) {
+            var memory = historyPaths(points, 0);
+            graph.find('.band').attr('d', memory.band);
+            graph.find('.line').attr('d', memory.line);
+        }
+    };
+
     this.showContainerDetails = function (data) {
         var root = rootElement(this.moduleId);
 
@@ -0,0 +1,435 @@
+package com.ftpix.homedash.plugins.docker;
+
+import com.ftpix.homedash.plugins.docker.models.DockerInfo;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.EventStream;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.Container;
+import com.spotify.docker.client.messages.ContainerStats;
+import com.spotify.docker.client.messages.Event;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Containers of a docker host with their last stats, kept up to date in the background so the refreshes only read them.
+ * <p>
+ * The containers are listed again when the event stream of the host says something happened to one of them
+ * (created, started, stopped, died, health changed...), and every {@link #RESYNC_RATE} minutes in case an event was missed.
+ * <p>
+ * Each running container asks for its stats every few seconds. The containers asking wait in a queue per module,
+ * read by at most {@link #MAX_IN_FLIGHT} reads at a time on a thread pool shared by all the docker modules.
+ * The size of the pool bounds the load on the daemons however many containers there are, and a slow daemon doesn't take the pool
+ * from the other modules. On a big host the stats just come less often, every container still gets its turn.
+ * The stats are read whether a client is watching or not, they make the history of the containers.
+ * The lists run on their own thread so they don't wait behind the stats.
+ */
+class ContainerStates implements Closeable {
+    static final int DEFAULT_STATS_RATE = 10;
+    private static final int RESYNC_RATE = 5, RECONNECT_DELAY = 10, EVENTS_DELAY = 500, MAX_IN_FLIGHT = 2;
+
+    /**
+     * Actions of the container events that change the list of containers or their status.
+     * The others are ignored, especially the exec_* events of the health checks
+     */
+    private static final Set<String> ACTIONS = new HashSet<>(Arrays.asList("create", "start", "restart", "stop", "die", "kill", "oom",
+            "pause", "unpause", "rename", "update", "destroy", "health_status"));
+
+    private static final ScheduledExecutorService EXECUTOR = Executors.newScheduledThreadPool(4, r -> {
+        Thread thread = new Thread(r, "docker-stats");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final ScheduledExecutorService RESYNCS = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "docker-resync");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Logger logger = LogManager.getLogger();
+    private final DockerClient client;
+    private final BiConsumer<Container, ContainerStats> statsListener;
+    private final Consumer<String> removalListener;
+    private final Map<String, State> containers = new ConcurrentHashMap<>();
+    private final AtomicBoolean resyncPending = new AtomicBoolean(false);
+    /**
+     * Containers waiting for their stats to be read, each one once at most
+     */
+    private final Set<State> queue = new LinkedHashSet<>();
+    /**
+     * Reads going on, locked by the queue
+     */
+    private int reading = 0;
+    /**
+     * Number of the last list of containers applied, an older list finishing after it is dropped
+     */
+    private final AtomicLong lists = new AtomicLong(0);
+    private long applied = 0;
+    private final int statsRate;
+
+    /**
+     * Ids of the containers in the order of the daemon
+     */
+    private volatile List<String> order = Collections.emptyList();
+    private volatile boolean closed = false;
+    private volatile EventStream events;
+    private Thread eventsThread;
+    private ScheduledFuture<?> resyncs;
+
+    /**
+     * @param statsRate       seconds between two reads of the stats of a container
+     * @param statsListener   called after each read of the stats of a container
+     * @param removalListener called with the id of a container no longer listed
+     */
+    ContainerStates(DockerClient client, int statsRate, BiConsumer<Container, ContainerStats> statsListener, Consumer<String> removalListener) {
+        this.client = client;
+        this.statsRate = statsRate;
+        this.statsListener = statsListener;
+        this.removalListener = removalListener;
+    }
+
+    /**
+     * Starts following the events of the host, and lists the containers
+     */
+    synchronized void start() {
+        eventsThread = new Thread(this::followEvents, "docker-events");
+        eventsThread.setDaemon(true);
+        eventsThread.start();
+
+        resyncs = RESYNCS.scheduleWithFixedDelay(this::requestResync, RESYNC_RATE, RESYNC_RATE, TimeUnit.MINUTES);
+    }
+
+    /**
+     * All the containers with their last stats, the stats are missing for the containers not running or not read yet
+     */
+    List<DockerInfo> getContainers() {
+        List<DockerInfo> infos = new ArrayList<>();
+        for (String id : order) {
+            State state = containers.get(id);
+            if (state != null) {
+                DockerInfo info = new DockerInfo(state.container);
+                if (state.stats != null) {
+                    info.setStats(state.stats);
+                }
+                infos.add(info);
+            }
+        }
+        return infos;
+    }
+
+    /**
+     * Number of containers running
+     */
+    int getRunning() {
+        return (int) containers.values().stream().filter(s -> isRunning(s.container)).count();
+    }
+
+    /**
+     * Names of the containers listed, running or not
+     */
+    Set<String> getNames() {
+        Set<String> names = new HashSet<>();
+        for (State state : containers.values()) {
+            String name = nameOf(state.container);
+            if (name != null) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * First name of a container without its leading /
+     *
+     * @return null if it doesn't have any
+     */
+    static String nameOf(Container container) {
+        if (container.names() == null || container.names().isEmpty()) {
+            return null;
+        }
+        return container.names().get(0).replaceFirst("^/", "");
+    }
+
+    /**
+     * Seconds between two reads of the stats of a container
+     */
+    int getStatsRate() {
+        return statsRate;
+    }
+
+    /**
+     * Lists the containers and starts or stops reading their stats
+     */
+    void resync() throws DockerException, InterruptedException {
+        // not locked while waiting for the daemon so closing doesn't wait for it
+        long number = lists.incrementAndGet();
+        List<Container> listed = client.listContainers(DockerClient.ListContainersParam.allContainers());
+        apply(number, listed);
+    }
+
+    private synchronized void apply(long number, List<Container> listed) {
+        if (closed || number < applied) {
+            return;
+        }
+        applied = number;
+
+        List<String> ids = new ArrayList<>();
+        Set<String> listedIds = new HashSet<>();
+        for (Container container : listed) {
+            ids.add(container.id());
+            listedIds.add(container.id());
+            State state = containers.computeIfAbsent(container.id(), State::new);
+            state.container = container;
+
+            if (isRunning(container)) {
+                // spread over the interval so the stats aren't all read at once
+                startStats(state, ids.size() % statsRate);
+            } else {
+                stopStats(state);
+            }
+        }
+
+        containers.values().removeIf(state -> {
+            boolean gone = !listedIds.contains(state.id);
+            if (gone) {
+                stopStats(state);
+                removalListener.accept(state.id);
+            }
+            return gone;
+        });
+        order = ids;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (resyncs != null) {
+            resyncs.cancel(false);
+        }
+        if (eventsThread != null) {
+            eventsThread.interrupt();
+        }
+        closeEvents();
+        containers.values().forEach(this::stopStats);
+        containers.clear();
+        synchronized (queue) {
+            queue.clear();
+        }
+    }
+
+    /**
+     * Lists the containers a moment later, once for all the events coming together (docker-compose up...)
+     */
+    private void requestResync() {
+        if (resyncPending.compareAndSet(false, true)) {
+            RESYNCS.schedule(() -> {
+                resyncPending.set(false);
+                try {
+                    resync();
+                } catch (Exception e) {
+                    logger.info("Couldn't list the containers", e);
+                }
+            }, EVENTS_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void followEvents() {
+        while (!closed) {
+            try {
+                EventStream stream = client.events(DockerClient.EventsParam.type(Event.Type.CONTAINER));
+                events = stream;
+                // what happened before the stream was opened
+                resync();
+
+                while (!closed && stream.hasNext()) {
+                    onEvent(stream.next());
+                }
+            } catch (Exception e) {
+                if (closed) {
+                    return;
+                }
+                logger.info("Lost the docker events, reconnecting in {}s", RECONNECT_DELAY, e);
+            } finally {
+                closeEvents();
+            }
+
+            try {
+                Thread.sleep(RECONNECT_DELAY * 1000L);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void onEvent(Event event) {
+        String action = relevantAction(event.action() != null ? event.action() : event.status());
+        if (action == null) {
+            return;
+        }
+
+        String id = event.actor() != null ? event.actor().id() : event.id();
+        logger.debug("Container {} {}", id, action);
+        if (id != null && (action.equals("die") || action.equals("destroy"))) {
+            State state = containers.get(id);
+            if (state != null) {
+                stopStats(state);
+            }
+        }
+        requestResync();
+    }
+
+    /**
+     * The action of an event without its details, null if it doesn't change the list of containers or their status
+     *
+     * @param action ex: "start", "health_status: healthy", "exec_start: /bin/sh -c ..."
+     */
+    static String relevantAction(String action) {
+        if (action == null) {
+            return null;
+        }
+
+        int separator = action.indexOf(':');
+        String base = separator < 0 ? action : action.substring(0, separator);
+        return ACTIONS.contains(base) ? base : null;
+    }
+
+    private void startStats(State state, int delay) {
+        synchronized (state) {
+            if (state.statsTask == null) {
+                state.statsTask = EXECUTOR.scheduleWithFixedDelay(() -> requestStats(state), delay, statsRate, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    /**
+     * Queues the container for its stats, starts a read unless there are enough going on already
+     */
+    private void requestStats(State state) {
+        synchronized (queue) {
+            // still waiting from the previous time
+            if (closed || !queue.add(state) || reading >= MAX_IN_FLIGHT) {
+                return;
+            }
+            reading++;
+        }
+        EXECUTOR.execute(this::readNextStats);
+    }
+
+    /**
+     * Reads the stats of the first container of the queue, then goes on with the next one on a new task so the reads of the other modules get their turn
+     */
+    private void readNextStats() {
+        State state;
+        synchronized (queue) {
+            Iterator<State> next = queue.iterator();
+            if (closed || !next.hasNext()) {
+                reading--;
+                return;
+            }
+            state = next.next();
+            next.remove();
+        }
+
+        try {
+            readStats(state);
+        } finally {
+            EXECUTOR.execute(this::readNextStats);
+        }
+    }
+
+    /**
+     * The stats read are dropped if they were stopped meanwhile
+     */
+    private void readStats(State state) {
+        int generation;
+        synchronized (state) {
+            if (state.statsTask == null) {
+                return;
+            }
+            generation = state.generation;
+        }
+
+        try {
+            ContainerStats stats = client.stats(state.id);
+            synchronized (state) {
+                if (state.generation == generation) {
+                    state.stats = stats;
+                    statsListener.accept(state.container, stats);
+                }
+            }
+        } catch (Exception e) {
+            // stopped since the last list
+            logger.debug("Couldn't read the stats of container {}", state.id, e);
+        }
+    }
+
+    private void stopStats(State state) {
+        synchronized (state) {
+            if (state.statsTask != null) {
+                state.statsTask.cancel(false);
+                state.statsTask = null;
+                state.generation++;
+            }
+            state.stats = null;
+        }
+    }
+
+    private synchronized void closeEvents() {
+        if (events != null) {
+            try {
+                events.close();
+            } catch (Exception e) {
+                logger.debug("Couldn't close the docker events", e);
+            }
+            events = null;
+        }
+    }
+
+    private static boolean isRunning(Container container) {
+        return isRunning(container.state(), container.status());
+    }
+
+    /**
+     * @param state  "running", "exited"... missing with the old daemons
+     * @param status "Up 2 hours", "Exited (0) 5 minutes ago"...
+     */
+    static boolean isRunning(String state, String status) {
+        return state != null ? "running".equalsIgnoreCase(state) : status != null && status.startsWith("Up");
+    }
+
+    private static class State {
+        private final String id;
+        private volatile Container container;
+        private volatile ContainerStats stats;
+        private volatile ScheduledFuture<?> statsTask;
+
+        /**
+         * Changes each time the stats stop, under the lock of the state
+         */
+        private int generation;
+
+        private State(String id) {
+            this.id = id;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.ftpix.homedash.plugins.docker;
 
 import com.ftpix.homedash.Utils.ByteUtils;
+import com.ftpix.homedash.Utils.Json;
 import com.ftpix.homedash.models.Module;
 import com.ftpix.homedash.models.ModuleExposedData;
 import com.ftpix.homedash.models.ModuleLayout;
@@ -8,33 +9,53 @@ import com.ftpix.homedash.models.WebSocketMessage;
 import com.ftpix.homedash.plugins.Plugin;
 import com.ftpix.homedash.plugins.docker.models.DockerInfo;
 import com.ftpix.homedash.plugins.docker.models.DockerImageInfo;
+import com.ftpix.homedash.timeseries.Series;
+import com.ftpix.homedash.timeseries.Tier;
+import com.ftpix.homedash.timeseries.TimeSeriesStore;
 import com.spotify.docker.client.DefaultDockerClient;
 import com.spotify.docker.client.DockerClient;
 import com.spotify.docker.client.LogStream;
 import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.Container;
 import com.spotify.docker.client.messages.ContainerInfo;
 import com.spotify.docker.client.messages.ContainerStats;
+import org.apache.commons.lang3.StringUtils;
 
+import java.io.IOException;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class DockerPlugin extends Plugin {
 
-    private static final String ENV_DOCKER_HOST = "DOCKER_HOST", DOCKER_URL = "url", ACTION_REMOVE_IMAGE = "removeImage",
+    private static final String ENV_DOCKER_HOST = "DOCKER_HOST", DOCKER_URL = "url", STATS_RATE = "stats-rate", ACTION_REMOVE_IMAGE = "removeImage",
             ACTION_REMOVE_IMAGE_FORCE = "removeImageForce", ACTION_CONTAINER_DETAILS = "details",
             ACTION_RESTART = "restart", ACTION_START = "start", ACTION_STOP = "stop", ACTION_REMOVE = "remove",
             ACTION_KILL = "kill", SUCCESS_MESSAGE_CONTAINER = "Container %sed successfully",
-            SUCCESS_MESSAGE_IMAGE = "Image %sed successfully", ACTION_LOGS = "logs";
+            SUCCESS_MESSAGE_IMAGE = "Image %sed successfully", ACTION_LOGS = "logs", ACTION_HISTORY = "history";
+
+    private static final long HISTORY_EXPIRY = TimeUnit.DAYS.toMillis(1);
+
+    static {
+        Json.register(DockerInfo.class, DockerInfo.WRITER);
+    }
 
     private DockerClient client;
+    private ContainerStates containers;
+
+    /**
+     * Long history of the memory and network of the containers, by container name so it survives the container being recreated.
+     * The series of a container is closed once it's removed, its files are deleted once nothing was written to them for {@link #HISTORY_EXPIRY}
+     * and no container has its name anymore.
+     */
+    private final Map<String, Series> histories = new ConcurrentHashMap<>();
+    private final Map<String, String> containerNames = new ConcurrentHashMap<>();
 
 
     public DockerPlugin() {
@@ -66,15 +87,17 @@ public class DockerPlugin extends Plugin {
 
     @Override
     protected void init() {
-
-        String url = settings.get(DOCKER_URL);
-
-        if (url.startsWith("unix://")) {
-            client = new DefaultDockerClient(url);
-        } else {
-            client = DefaultDockerClient.builder().uri(url).build();
+        if (containers != null) {
+            containers.close();
         }
+        closeClient();
 
+        client = connect(settings.get(DOCKER_URL));
+
+        // the stats are read even without clients, for the history
+        int statsRate = Integer.parseInt(settings.getOrDefault(STATS_RATE, Integer.toString(ContainerStates.DEFAULT_STATS_RATE)));
+        containers = new ContainerStates(client, statsRate, this::recordStats, this::forget);
+        containers.start();
     }
 
     @Override
@@ -101,29 +124,29 @@ public class DockerPlugin extends Plugin {
                 case ACTION_START:
                     startContainer(message);
                     response.setMessage(String.format(SUCCESS_MESSAGE_CONTAINER, command));
-                    response.setExtra(refresh(ModuleLayout.FULL_SCREEN));
+                    response.setExtra(refreshAfterAction());
                     break;
                 case ACTION_RESTART:
                     restartContainer(message);
                     response.setMessage(String.format(SUCCESS_MESSAGE_CONTAINER, command));
-                    response.setExtra(refresh(ModuleLayout.FULL_SCREEN));
+                    response.setExtra(refreshAfterAction());
                     break;
                 case ACTION_STOP:
                     stopContainer(message);
                     response.setMessage(String.format(SUCCESS_MESSAGE_CONTAINER, command));
-                    response.setExtra(refresh(ModuleLayout.FULL_SCREEN));
+                    response.setExtra(refreshAfterAction());
                     break;
                 case ACTION_KILL:
                     killContainer(message);
                     response.setMessage(String.format(SUCCESS_MESSAGE_CONTAINER, command));
-                    response.setExtra(refresh(ModuleLayout.FULL_SCREEN));
+                    response.setExtra(refreshAfterAction());
                     break;
                 case ACTION_REMOVE:
                     removeContainer(message);
                     //shitty trick because remove finishes with a e and will bug with String formatting...
                     command = command.substring(0, command.length() - 1);
                     response.setMessage(String.format(SUCCESS_MESSAGE_CONTAINER, command));
-                    response.setExtra(refresh(ModuleLayout.FULL_SCREEN));
+                    response.setExtra(refreshAfterAction());
                     break;
                 case ACTION_CONTAINER_DETAILS:
                     response.setCommand(ACTION_CONTAINER_DETAILS);
@@ -133,17 +156,21 @@ public class DockerPlugin extends Plugin {
                 case ACTION_REMOVE_IMAGE:
                     client.removeImage(message);
                     response.setMessage(String.format(SUCCESS_MESSAGE_IMAGE, ACTION_REMOVE));
-                    response.setExtra(refresh(ModuleLayout.FULL_SCREEN));
+                    response.setExtra(refreshAfterAction());
                     break;
                 case ACTION_REMOVE_IMAGE_FORCE:
                     client.removeImage(message, true, true);
                     response.setMessage(String.format(SUCCESS_MESSAGE_IMAGE, ACTION_REMOVE));
-                    response.setExtra(refresh(ModuleLayout.FULL_SCREEN));
+                    response.setExtra(refreshAfterAction());
                     break;
                 case ACTION_LOGS:
                     response.setCommand(ACTION_LOGS);
                     response.setMessage(getContainerLogs(message, ((Double) extra).intValue()));
                     break;
+                case ACTION_HISTORY:
+                    response.setCommand(ACTION_HISTORY);
+                    response.setMessage(getContainerHistory(message, ((Double) extra).intValue()));
+                    break;
             }
         } catch (Exception e) {
             response.setCommand(WebSocketMessage.COMMAND_ERROR);
@@ -158,22 +185,22 @@ public class DockerPlugin extends Plugin {
     @Override
     public Object refresh(String size) throws Exception {
         if (!size.equalsIgnoreCase(ModuleLayout.FULL_SCREEN)) {
-            return client.listContainers().size();
+            return containers.getRunning();
         } else {
 
-            List<DockerInfo> containers = getContainersInfo();
+            List<DockerInfo> infos = containers.getContainers();
             Map<String, Object> data = new HashMap<>();
-            data.put("containers", containers);
-            data.put("images", getImagesInfo(containers));
+            data.put("containers", infos);
+            data.put("images", getImagesInfo(infos));
             return data;
         }
     }
 
     @Override
     public int getRefreshRate(String size) {
-        // TODO Auto-generated method stub
+        // only reads the state kept up to date by ContainerStates
         if (size.equalsIgnoreCase(ModuleLayout.FULL_SCREEN)) {
-            return ONE_MINUTE;
+            return getStatsRate();
         } else {
             return ONE_MINUTE * 10;
         }
@@ -184,15 +211,14 @@ public class DockerPlugin extends Plugin {
         Map<String, String> errors = new HashMap<>();
         String url = settings.get(DOCKER_URL);
 
+        String statsRate = settings.get(STATS_RATE);
+        if (statsRate != null && (!StringUtils.isNumeric(statsRate) || statsRate.length() > 5 || Integer.parseInt(statsRate) < 1)) {
+            errors.put("Stats rate", "has to be a number of seconds");
+        }
+
         logger().info("Testing docker container for url {}", url);
 
-        try {
-            DockerClient testClient;
-            if (url.startsWith("unix://")) {
-                testClient = new DefaultDockerClient(url);
-            } else {
-                testClient = DefaultDockerClient.builder().uri(settings.get(DOCKER_URL)).build();
-            }
+        try (DockerClient testClient = connect(url)) {
             testClient.ping();
         } catch (DockerException | InterruptedException | NullPointerException e) {
             errors.put("Connection error", "Impossible to connect to " + settings.get(DOCKER_URL));
@@ -205,17 +231,9 @@ public class DockerPlugin extends Plugin {
     @Override
     public ModuleExposedData exposeData() {
 
-        try {
-            ModuleExposedData data = new ModuleExposedData();
-            data.addText(client.listContainers().size() + " containers running.");
-            return data;
-        } catch (DockerException e) {
-            e.printStackTrace();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
-
-        return null;
+        ModuleExposedData data = new ModuleExposedData();
+        data.addText(containers.getRunning() + " containers running.");
+        return data;
     }
 
     @Override
@@ -223,6 +241,49 @@ public class DockerPlugin extends Plugin {
         return settings;
     }
 
+    /**
+     * Opens the connection to the docker daemon and lists the containers before the first refresh
+     */
+    @Override
+    public void warmUp() throws Exception {
+        client.ping();
+        containers.resync();
+        expireHistories();
+    }
+
+    @Override
+    public void destroy() {
+        if (containers != null) {
+            containers.close();
+        }
+        closeClient();
+        histories.values().forEach(TimeSeriesStore.INSTANCE::release);
+        histories.clear();
+        containerNames.clear();
+    }
+
+    private DockerClient connect(String url) {
+        if (url.startsWith("unix://")) {
+            return new DefaultDockerClient(url);
+        } else {
+            return DefaultDockerClient.builder().uri(url).build();
+        }
+    }
+
+    /**
+     * Closes the connections of the previous client, a new one is made each time the settings change
+     */
+    private void closeClient() {
+        if (client != null) {
+            try {
+                client.close();
+            } catch (Exception e) {
+                logger().info("Couldn't close the docker client", e);
+            }
+            client = null;
+        }
+    }
+
     @Override
     protected void onFirstClientConnect() {
 
@@ -283,41 +344,105 @@ public class DockerPlugin extends Plugin {
     }
 
     /**
-     * Gets the list of all the containers with detailed information about them
-     *
-     * @return
-     * @throws DockerException
-     * @throws InterruptedException
+     * Lists the containers again after an action so the response shows its result, without waiting for its event
      */
-    private List<DockerInfo> getContainersInfo() throws DockerException, InterruptedException {
-        logger().info("Getting container stats for all containers");
-        List<DockerInfo> containers = client.listContainers(DockerClient.ListContainersParam.allContainers())
-                .stream()
-                .map(DockerInfo::new)
-                .collect(Collectors.toList());
+    private Object refreshAfterAction() throws Exception {
+        containers.resync();
+        return refresh(ModuleLayout.FULL_SCREEN);
+    }
+
+    /**
+     * Adds the memory and network totals of a running container to its history, called after each read of its stats
+     */
+    private void recordStats(Container container, ContainerStats stats) {
+        String name = ContainerStates.nameOf(container);
+        if (name == null) {
+            return;
+        }
+
+        containerNames.put(container.id(), name);
 
+        DockerInfo info = new DockerInfo(container);
+        info.setStats(stats);
+        Series series = getSeries(name);
+        if (series != null && info.memoryLimit > 0) {
+            series.append(System.currentTimeMillis(), info.memoryUsage, info.bytesReceived, info.bytesSent);
+        }
+    }
+
+    /**
+     * Closes the history of a container no longer listed, unless another container has the same name (recreated)
+     */
+    private void forget(String id) {
+        String name = containerNames.remove(id);
+        if (name != null && !containerNames.containsValue(name)) {
+            Series series = histories.remove(name);
+            if (series != null) {
+                TimeSeriesStore.INSTANCE.release(series);
+            }
+        }
+        expireHistories();
+    }
+
+    /**
+     * Deletes the history of the containers of this module removed for a while, so the disk used doesn't grow with the containers created and removed
+     */
+    private void expireHistories() {
+        ContainerStates current = containers;
+        if (current == null) {
+            return;
+        }
 
-        List<Callable<Void>> statsTasks = containers.stream().map(c -> {
-            return (Callable<Void>) () -> {
-                try {
-                    ContainerStats stats = client.stats(c.id);
-                    c.setStats(stats);
-                } catch (Exception e) {
-                    logger().info("Error while setting stats", e);
+        try {
+            Set<String> listed = current.getNames().stream().map(n -> TimeSeriesStore.toFileName(seriesName(n))).collect(Collectors.toSet());
+            for (String series : TimeSeriesStore.INSTANCE.list(seriesName(""))) {
+                if (!listed.contains(series)) {
+                    TimeSeriesStore.INSTANCE.delete(series, HISTORY_EXPIRY);
                 }
+            }
+        } catch (IOException e) {
+            logger().error("Couldn't delete the history of the removed containers", e);
+        }
+    }
+
+    /**
+     * Series of a container, by module so two hosts with containers of the same name don't share it
+     */
+    private String seriesName(String containerName) {
+        return "docker-" + getModule().getId() + "-" + containerName;
+    }
+
+    /**
+     * History of a container: memory used, bytes received and sent
+     *
+     * @return null if it can't be opened
+     */
+    private Series getSeries(String name) {
+        return histories.computeIfAbsent(name, n -> {
+            try {
+                return TimeSeriesStore.INSTANCE.getSeries(seriesName(n), 3);
+            } catch (IOException e) {
+                logger().error("Couldn't open the history of container " + n, e);
                 return null;
-            };
-        }).collect(Collectors.toList());
+            }
+        });
+    }
 
-        ExecutorService exec = Executors.newFixedThreadPool(containers.size());
-        try {
-            logger().info("Getting all stats");
-            exec.invokeAll(statsTasks);
-            logger().info("All stats finish");
-        } finally {
-            exec.shutdown();
+    private Object getContainerHistory(String id, int hours) {
+        String name = containerNames.get(id);
+        Series series = name == null ? null : getSeries(name);
+        if (series == null) {
+            return null;
         }
-        return containers;
+
+        // the stats are read every few seconds by ContainerStates
+        long range = hours * ONE_HOUR * 1000L;
+        return series.read(Tier.forRange(range, getStatsRate() * 1000L), System.currentTimeMillis() - range);
+    }
+
+    private int getStatsRate() {
+        ContainerStates current = containers;
+        return current != null ? current.getStatsRate() : ContainerStates.DEFAULT_STATS_RATE;
     }
 
 
@@ -1,6 +1,7 @@
 package com.ftpix.homedash.plugins.docker.models;
 
 import com.ftpix.homedash.Utils.ByteUtils;
+import com.ftpix.homedash.Utils.Json;
 import com.google.common.collect.Collections2;
 import com.jcraft.jsch.Logger;
 import com.spotify.docker.client.messages.Container;
@@ -16,6 +17,32 @@ import java.util.Optional;
  * Created by gz on 11-Mar-17.
  */
 public class DockerInfo {
+    /**
+     * Json of a container as sent to the browsers with its stats
+     */
+    public static final Json.PayloadWriter<DockerInfo> WRITER = (gson, out, docker) -> {
+        out.beginObject();
+        out.name("id").value(docker.id);
+        out.name("status").value(docker.status);
+        out.name("memoryUsagePretty").value(docker.memoryUsagePretty);
+        out.name("image").value(docker.image);
+        out.name("imageId").value(docker.imageId);
+        if (docker.names != null) {
+            out.name("names").beginArray();
+            for (String name : docker.names) {
+                out.value(name);
+            }
+            out.endArray();
+        }
+        out.name("memoryUsage").value(docker.memoryUsage);
+        out.name("memoryLimit").value(docker.memoryLimit);
+        out.name("bytesReceived").value(docker.bytesReceived);
+        out.name("bytesSent").value(docker.bytesSent);
+        out.name("bytesReceivedPretty").value(docker.bytesReceivedPretty);
+        out.name("bytesSentPretty").value(docker.bytesSentPretty);
+        out.endObject();
+    };
+
     public String id, status, memoryUsagePretty, image, imageId;
     public List<String> names;
     public long memoryUsage = 0;
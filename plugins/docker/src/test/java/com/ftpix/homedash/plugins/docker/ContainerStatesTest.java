@@ -0,0 +1,92 @@
+package com.ftpix.homedash.plugins.docker;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.messages.Container;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ContainerStatesTest {
+
+    @Test
+    public void testRelevantAction() {
+        assertEquals("start", ContainerStates.relevantAction("start"));
+        assertEquals("die", ContainerStates.relevantAction("die"));
+        assertEquals("destroy", ContainerStates.relevantAction("destroy"));
+
+        // the health checks
+        assertNull(ContainerStates.relevantAction("exec_create: /bin/sh -c curl -f http://localhost/"));
+        assertNull(ContainerStates.relevantAction("exec_start: /bin/sh -c curl -f http://localhost/"));
+        assertNull(ContainerStates.relevantAction("exec_die"));
+
+        assertNull(ContainerStates.relevantAction("attach"));
+        assertNull(ContainerStates.relevantAction("top"));
+        assertNull(ContainerStates.relevantAction(null));
+    }
+
+    @Test
+    public void testHealthStatus() {
+        assertEquals("health_status", ContainerStates.relevantAction("health_status: healthy"));
+        assertEquals("health_status", ContainerStates.relevantAction("health_status: unhealthy"));
+        assertEquals("health_status", ContainerStates.relevantAction("health_status"));
+        assertNull(ContainerStates.relevantAction("health_check: healthy"));
+    }
+
+    @Test
+    public void testIsRunning() {
+        assertTrue(ContainerStates.isRunning("running", "Up 2 hours"));
+        assertTrue(ContainerStates.isRunning("RUNNING", null));
+        assertFalse(ContainerStates.isRunning("exited", "Exited (0) 5 minutes ago"));
+        // paused containers are up but not running
+        assertFalse(ContainerStates.isRunning("paused", "Up 2 hours (Paused)"));
+
+        // old daemons without the state
+        assertTrue(ContainerStates.isRunning(null, "Up 2 hours"));
+        assertFalse(ContainerStates.isRunning(null, "Exited (137) 2 days ago"));
+        assertFalse(ContainerStates.isRunning(null, null));
+    }
+
+    @Test
+    public void testCloseWhileListing() throws Exception {
+        CountDownLatch listing = new CountDownLatch(1), daemon = new CountDownLatch(1);
+        DockerClient client = new DockerClient() {
+            @Override
+            public List<Container> listContainers(ListContainersParam... params) throws InterruptedException {
+                listing.countDown();
+                daemon.await();
+                return Collections.emptyList();
+            }
+        };
+        ContainerStates states = new ContainerStates(client, ContainerStates.DEFAULT_STATS_RATE, (c, s) -> {
+        }, id -> {
+        });
+
+        Thread resync = new Thread(() -> {
+            try {
+                states.resync();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        resync.start();
+        assertTrue(listing.await(5, TimeUnit.SECONDS));
+
+        // doesn't wait for the daemon to answer
+        Thread close = new Thread(states::close);
+        close.start();
+        close.join(5000);
+        assertFalse(close.isAlive());
+
+        daemon.countDown();
+        resync.join(5000);
+        assertTrue(states.getContainers().isEmpty());
+    }
+}
@@ -173,6 +173,10 @@ function harddisk(moduleId) {
             $('.progress-bar').css('width', percentage + '%');
             $('.progress-bar').html(message.pretty);
 
+            if (message.io !== undefined) {
+                $('.io').html('Read ' + message.io.read + ', write ' + message.io.write + ', busy ' + message.io.busy);
+            }
+
 
             this.clipBoardHtml(message.clipboard);
         } else if (command === 'browse') {
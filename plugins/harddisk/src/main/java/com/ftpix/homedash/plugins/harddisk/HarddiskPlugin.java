@@ -2,6 +2,8 @@ package com.ftpix.homedash.plugins.harddisk;
 
 
 import com.ftpix.homedash.Utils.ByteUtils;
+import com.ftpix.homedash.Utils.SampleRing;
+import com.ftpix.homedash.metrics.HostMetricsService;
 import com.ftpix.homedash.models.ModuleExposedData;
 import com.ftpix.homedash.models.ModuleLayout;
 import com.ftpix.homedash.models.WebSocketMessage;
@@ -29,12 +31,19 @@ public class HarddiskPlugin extends Plugin {
     private final static String MOUNT = "mount", COMMAND_BROWSE = "browse", COMMAND_DELETE = "delete", COMMAND_RENAME = "rename",
             COMMAND_MOVE = "move", COMMAND_COPY = "copy", COMMAND_NEW_FOLDER = "newFolder", COMMAND_UPLOAD_FILE = "uploadFile",
             COMMAND_ADD_CLIPBOARD = "addClipboard", COMMAND_REMOVE_CLIPBOARD = "removeClipboard";
-    private final static int MAX_DATA = 100;
+    private final static int MAX_DATA = 100, IO_RESOLUTION = 2;
     public static final String COMMAND_CALCULATE = "calculate";
     private SystemInfo systemInfo = new SystemInfo();
     private Path mountPoint;
     private final Map<String, FileOperation> clipBoard = new HashMap<>();
 
+    /**
+     * The disk activity is only sampled while someone looks at the full screen view
+     */
+    private final HostMetricsService metrics = HostMetricsService.INSTANCE;
+    private HostMetricsService.Subscription ioSubscription;
+    private volatile String device;
+
 
     @Override
     public String getId() {
@@ -59,6 +68,12 @@ public class HarddiskPlugin extends Plugin {
     @Override
     protected void init() {
         mountPoint = Paths.get(settings.get(MOUNT)).toAbsolutePath();
+        device = getDevice(mountPoint);
+    }
+
+    @Override
+    public void destroy() {
+        stopIo();
     }
 
     @Override
@@ -166,6 +181,10 @@ public class HarddiskPlugin extends Plugin {
         spaces.put("pretty", ByteUtils.humanReadableByteCount(usedSpace, root.getTotalSpace(), true));
         spaces.put("clipboard", clipBoard);
 
+        if (size.equalsIgnoreCase(ModuleLayout.FULL_SCREEN)) {
+            getIo().ifPresent(io -> spaces.put("io", io));
+        }
+
         return spaces;
     }
 
@@ -219,6 +238,24 @@ public class HarddiskPlugin extends Plugin {
 
     }
 
+    @Override
+    protected void onFirstClientConnect(String size) {
+        if (size.equalsIgnoreCase(ModuleLayout.FULL_SCREEN) && device != null) {
+            synchronized (this) {
+                if (ioSubscription == null) {
+                    ioSubscription = metrics.subscribe(IO_RESOLUTION, HostMetricsService.Metric.DISKS);
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void onLastClientDisconnect(String size) {
+        if (size.equalsIgnoreCase(ModuleLayout.FULL_SCREEN)) {
+            stopIo();
+        }
+    }
+
     @Override
     protected Map<String, Object> getSettingsModel() {
 
@@ -228,6 +265,53 @@ public class HarddiskPlugin extends Plugin {
         }).collect(Collectors.toMap(OSFileStore::getMount, Function.identity(), (o, o2) -> o));
     }
 
+    private synchronized void stopIo() {
+        if (ioSubscription != null) {
+            ioSubscription.close();
+            ioSubscription = null;
+        }
+    }
+
+    /**
+     * Finds the device holding the mount point, as the kernel names it (sda1, dm-0...)
+     *
+     * @return null if the mount point isn't on a block device (network share, overlay...)
+     */
+    private String getDevice(Path mountPoint) {
+        try {
+            String name = Files.getFileStore(mountPoint).name();
+            Path devicePath = Paths.get(name);
+            if (devicePath.isAbsolute() && Files.exists(devicePath)) {
+                // /dev/mapper/xxx and /dev/disk/by-uuid/xxx are links to the real device
+                return devicePath.toRealPath().getFileName().toString();
+            }
+        } catch (Exception e) {
+            logger().info("Couldn't find the device of {}, no disk activity", mountPoint);
+        }
+        return null;
+    }
+
+    /**
+     * Activity of the device since the last sample
+     */
+    private Optional<Map<String, String>> getIo() {
+        String device = this.device;
+        if (device == null) {
+            return Optional.empty();
+        }
+
+        SampleRing.Snapshot samples = metrics.getDisk(device, IO_RESOLUTION, 1);
+        if (samples == null || samples.isEmpty() || Double.isNaN(samples.get(0, HostMetricsService.DISK_READ_RATE))) {
+            return Optional.empty();
+        }
+
+        Map<String, String> io = new HashMap<>();
+        io.put("read", ByteUtils.humanReadableByteCount((long) samples.get(0, HostMetricsService.DISK_READ_RATE), true) + "/s");
+        io.put("write", ByteUtils.humanReadableByteCount((long) samples.get(0, HostMetricsService.DISK_WRITE_RATE), true) + "/s");
+        io.put("busy", Math.round(samples.get(0, HostMetricsService.DISK_BUSY)) + "%");
+        return Optional.of(io);
+    }
+
     /**
      * Browse a specified path
      *
@@ -6,6 +6,13 @@ function logreader(moduleId) {
 
     this.maxActivity = 1;
 
+    //lines shown in full screen, the refreshes only send the new ones
+    this.lines = [];
+
+    //current search and where its last page stopped
+    this.search = null;
+    this.next = null;
+
     this.onConnect = function () {
 
     };
@@ -19,6 +26,32 @@ function logreader(moduleId) {
                 self.autoScroll = !self.autoScroll;
                 $(this).toggleClass('active');
             });
+
+            var root = rootElement(this.moduleId);
+            root.find('.levels button').click(function () {
+                $(this).toggleClass('active');
+                var levels = root.find('.levels button.active').map(function () {
+                    return $(this).attr('data-level');
+                }).get();
+                sendMessage(self.moduleId, 'levels', levels.join(','));
+            });
+
+            root.find('form.search').submit(function (event) {
+                event.preventDefault();
+                var text = root.find('.search-text').val();
+                if (text.length > 0) {
+                    self.search = {text: text, regex: root.find('.search-regex').is(':checked')};
+                    root.find('.matches').empty();
+                    root.find('.search-status').html('Searching...');
+                    sendMessage(self.moduleId, 'search', text, {regex: self.search.regex});
+                }
+            });
+
+            root.find('.search-results .more').click(function () {
+                if (self.search !== null && self.next !== null) {
+                    sendMessage(self.moduleId, 'search', self.search.text, {regex: self.search.regex, next: self.next});
+                }
+            });
         }
 
     }
@@ -53,8 +86,56 @@ function logreader(moduleId) {
     }
 
     this.onMessage_fullScreen = function (command, message, extra) {
+        switch (command) {
+            case 'refresh':
+                this.showLines(message);
+                break;
+            case 'search':
+                this.showSearch(message);
+                break;
+            case 'levels':
+                rootElement(this.moduleId).find('.levels button').each(function () {
+                    $(this).toggleClass('active', message.indexOf($(this).attr('data-level')) >= 0);
+                });
+                break;
+        }
+    }
+
+    this.showSearch = function (result) {
+        var root = rootElement(this.moduleId);
+        if (this.search === null || result.query !== this.search.text) {
+            return;
+        }
+
+        var matches = root.find('.matches');
+        $.each(result.matches, function (index, match) {
+            var item = $('<li></li>');
+            item.append($('<span class="location"></span>').text(match.file + ':' + match.line));
+            item.append($('<span class="text"></span>').text(match.text));
+            matches.append(item);
+        });
+
+        this.next = result.next;
+        var found = matches.children().length;
+        root.find('.search-status').html(found + ' result' + (found === 1 ? '' : 's') + (this.next !== null ? ', more to search' : ''));
+        root.find('.search-results .more').toggle(this.next !== null);
+    }
+
+    this.showLines = function (message) {
         var logs = $('#logs');
-        logs.val(message.lines.join('\n'));
+        if (message.reset) {
+            this.lines = message.lines;
+        } else if (message.lines.length > 0) {
+            this.lines = this.lines.concat(message.lines);
+        }
+
+        if (this.lines.length > message.maxLines) {
+            this.lines = this.lines.slice(this.lines.length - message.maxLines);
+        }
+
+        if (message.reset || message.lines.length > 0) {
+            logs.val(this.lines.join('\n'));
+        }
 
         $('#file').html(message.file);
 
@@ -0,0 +1,85 @@
+package com.ftpix.logreader;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the lines of some levels only (ERROR, WARN...), the level of a line is the first level name found in it
+ */
+class LevelFilter {
+    static final String ERROR = "ERROR", WARN = "WARN", INFO = "INFO", DEBUG = "DEBUG";
+    static final Set<String> LEVELS = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(ERROR, WARN, INFO, DEBUG)));
+
+    private static final Pattern LEVEL = Pattern.compile("\\b(FATAL|CRIT(?:ICAL)?|SEVERE|ERROR|ERR|WARN(?:ING)?|INFO|NOTICE|DEBUG|TRACE|FINE(?:R|ST)?)\\b", Pattern.CASE_INSENSITIVE);
+
+    private final Set<String> levels;
+
+    private LevelFilter(Set<String> levels) {
+        this.levels = levels;
+    }
+
+    /**
+     * @param levels comma separated levels from {@link #LEVELS}, the others are ignored
+     * @return null if there's nothing to filter
+     */
+    static LevelFilter of(String levels) {
+        Set<String> kept = new LinkedHashSet<>();
+        for (String level : levels.split(",")) {
+            level = level.trim().toUpperCase(Locale.ROOT);
+            if (LEVELS.contains(level)) {
+                kept.add(level);
+            }
+        }
+        return kept.isEmpty() || kept.size() == LEVELS.size() ? null : new LevelFilter(kept);
+    }
+
+    Set<String> getLevels() {
+        return levels;
+    }
+
+    /**
+     * Level of a line, the less common names are grouped with the closest of {@link #LEVELS}
+     *
+     * @return null if the line doesn't have one
+     */
+    static String levelOf(String line) {
+        Matcher matcher = LEVEL.matcher(line);
+        if (!matcher.find()) {
+            return null;
+        }
+
+        String level = matcher.group(1).toUpperCase(Locale.ROOT);
+        switch (level) {
+            case "FATAL":
+            case "CRIT":
+            case "CRITICAL":
+            case "SEVERE":
+            case "ERR":
+                return ERROR;
+            case "WARNING":
+                return WARN;
+            case "NOTICE":
+                return INFO;
+            case "TRACE":
+            case "FINE":
+            case "FINER":
+            case "FINEST":
+                return DEBUG;
+            default:
+                return level;
+        }
+    }
+
+    /**
+     * @param previous whether the previous line was kept, a line without level (a stack trace, a multi line message) goes with it
+     */
+    boolean keeps(String line, boolean previous) {
+        String level = levelOf(line);
+        return level == null ? previous : levels.contains(level);
+    }
+}
@@ -0,0 +1,94 @@
+package com.ftpix.logreader;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Last lines of a log kept in one array, the oldest line is replaced once it's full.
+ * Every line gets a sequence number (1 for the first line ever added) so each client can ask for the lines it hasn't seen yet.
+ */
+class LineRing {
+    private final String[] lines;
+
+    /**
+     * Sequence number of the last line added, 0 if none
+     */
+    private long last = 0;
+
+    /**
+     * Number of lines kept
+     */
+    private int size = 0;
+
+    LineRing(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.lines = new String[capacity];
+    }
+
+    synchronized void add(String line) {
+        lines[(int) (last % lines.length)] = line;
+        last++;
+        size = Math.min(size + 1, lines.length);
+    }
+
+    /**
+     * Forgets the lines kept, the sequence numbers keep going
+     */
+    synchronized void clear() {
+        size = 0;
+    }
+
+    /**
+     * Lines added after the given sequence number, oldest first.
+     * If some of them aren't kept anymore (or the sequence number doesn't come from this ring) all the lines kept are returned as a reset
+     *
+     * @param sequence sequence number of the last line seen by the client, -1 for a reset with all the lines kept
+     */
+    synchronized Delta after(long sequence) {
+        boolean reset = sequence < last - size || sequence > last;
+        long from = reset ? last - size : sequence;
+
+        List<String> newLines = new ArrayList<>((int) (last - from));
+        for (long i = from; i < last; i++) {
+            newLines.add(lines[(int) (i % lines.length)]);
+        }
+        return new Delta(last, reset, newLines);
+    }
+
+    synchronized long getLast() {
+        return last;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    int getCapacity() {
+        return lines.length;
+    }
+
+    /**
+     * Lines to send to a client
+     */
+    static class Delta {
+        /**
+         * Sequence number of the last line, for the next request of the client
+         */
+        final long sequence;
+
+        /**
+         * The lines replace the ones the client has
+         */
+        final boolean reset;
+
+        final List<String> lines;
+
+        private Delta(long sequence, boolean reset, List<String> lines) {
+            this.sequence = sequence;
+            this.reset = reset;
+            this.lines = lines;
+        }
+    }
+}
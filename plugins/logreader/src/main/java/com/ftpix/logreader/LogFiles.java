@@ -0,0 +1,125 @@
+package com.ftpix.logreader;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads log files without loading them
+ */
+class LogFiles {
+    /**
+     * Size of the parts of the file mapped at once when looking for the line breaks
+     */
+    private static final int WINDOW = 64 * 1024;
+
+    /**
+     * At most this many bytes are read from the end of a file, for files with very long lines
+     */
+    static final int MAX_TAIL = 4 * 1024 * 1024;
+
+    private LogFiles() {
+    }
+
+    /**
+     * Last lines of a file, found by mapping the end of the file and going backward until enough line breaks are found
+     *
+     * @param count maximum number of lines
+     * @return the lines, oldest first
+     */
+    static List<String> lastLines(Path file, int count) throws IOException {
+        return lastLines(file, count, Long.MAX_VALUE);
+    }
+
+    /**
+     * Last lines of a file before a position, see {@link #completeLinesEnd(Path)}
+     *
+     * @param end where to stop reading, the size of the file if it's smaller
+     */
+    static List<String> lastLines(Path file, int count, long end) throws IOException {
+        if (count <= 0) {
+            return new ArrayList<>();
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = Math.min(end, channel.size());
+            long limit = Math.max(0, size - MAX_TAIL);
+            long start = limit;
+            int found = 0;
+
+            long windowEnd = size;
+            search:
+            while (windowEnd > limit) {
+                long windowStart = Math.max(limit, windowEnd - WINDOW);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowEnd - windowStart);
+                for (int i = (int) (windowEnd - windowStart) - 1; i >= 0; i--) {
+                    // the line break ending the last line doesn't count
+                    if (window.get(i) == '\n' && windowStart + i != size - 1 && ++found == count) {
+                        start = windowStart + i + 1;
+                        break search;
+                    }
+                }
+                windowEnd = windowStart;
+            }
+
+            List<String> lines = new ArrayList<>();
+            // when the lines are too long to reach the line break, the first line is cut
+            boolean cut = start == limit && limit > 0;
+            if (start < size) {
+                CharBuffer text = StandardCharsets.UTF_8.decode(channel.map(FileChannel.MapMode.READ_ONLY, start, size - start));
+                int lineStart = 0;
+                for (int i = 0; i <= text.length(); i++) {
+                    if (i == text.length() || text.charAt(i) == '\n') {
+                        if ((i > lineStart || i < text.length()) && !cut) {
+                            lines.add(trimLine(text, lineStart, i));
+                        }
+                        cut = false;
+                        lineStart = i + 1;
+                    }
+                }
+            }
+
+            return lines;
+        }
+    }
+
+    /**
+     * Position right after the last line break of a file, where the line being written starts.
+     * The size of the file if there's no line break in its last {@link #MAX_TAIL} bytes
+     */
+    static long completeLinesEnd(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long limit = Math.max(0, size - MAX_TAIL);
+
+            long windowEnd = size;
+            while (windowEnd > limit) {
+                long windowStart = Math.max(limit, windowEnd - WINDOW);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowEnd - windowStart);
+                for (int i = (int) (windowEnd - windowStart) - 1; i >= 0; i--) {
+                    if (window.get(i) == '\n') {
+                        return windowStart + i + 1;
+                    }
+                }
+                windowEnd = windowStart;
+            }
+            return size;
+        }
+    }
+
+    /**
+     * A line without its carriage return
+     */
+    static String trimLine(CharSequence text, int start, int end) {
+        if (end > start && text.charAt(end - 1) == '\r') {
+            end--;
+        }
+        return text.subSequence(start, end).toString();
+    }
+}
@@ -0,0 +1,461 @@
+package com.ftpix.logreader;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows the log files of all the log reader modules with a single thread and a single {@link WatchService}.
+ * <p>
+ * The folders are watched once however many modules follow them, and the files are only read when they change.
+ * The files are also checked every few seconds, for the events that are missed (file systems without notifications, too many events).
+ * <p>
+ * Rotations are followed: a file renamed keeps being read until its end under its new name (or dropped if it doesn't match anymore),
+ * a new file with the same name is read from its start, and a file truncated is read again from its start.
+ */
+enum LogFollower {
+    INSTANCE;
+
+    /**
+     * Every how many seconds the files are checked without waiting for an event
+     */
+    private static final int CHECK_INTERVAL = 5;
+
+    /**
+     * When more than this was written since the last read (a big file created, a burst), only its end is read
+     */
+    private static final int MAX_CATCH_UP = 1024 * 1024;
+
+    /**
+     * Longer lines are cut
+     */
+    private static final int MAX_LINE = 16 * 1024;
+
+    private final Logger logger = LogManager.getLogger();
+    private final Map<Path, Directory> directories = new HashMap<>();
+    private final Map<WatchKey, Directory> keys = new HashMap<>();
+    private WatchService watcher;
+
+    // only used while holding the lock (follower thread, first read of a file followed)
+    private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+    /**
+     * Receives the new lines of the files followed, called on the follower thread so it must be quick
+     */
+    interface Listener {
+        void onLines(Path file, List<String> lines);
+    }
+
+    /**
+     * Starts following the files of a folder, from their current end
+     *
+     * @return to close to stop following
+     */
+    Subscription follow(LogSource source, Listener listener) throws IOException {
+        return follow(source, listener, Collections.emptyMap());
+    }
+
+    /**
+     * Starts following the files of a folder from where they were last read, so nothing written in between is missed.
+     * The files already followed for another module go on from where they are.
+     *
+     * @param from position to start from by file, the files not given are followed from their current end
+     * @return to close to stop following
+     */
+    synchronized Subscription follow(LogSource source, Listener listener, Map<Path, Long> from) throws IOException {
+        if (watcher == null) {
+            watcher = FileSystems.getDefault().newWatchService();
+            WatchService started = watcher;
+            Thread thread = new Thread(() -> run(started), "log-follower");
+            thread.setDaemon(true);
+            thread.start();
+            logger.info("Started to follow log files");
+        }
+
+        Directory directory = directories.get(source.getDirectory());
+        if (directory == null) {
+            WatchKey key = source.getDirectory().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            Directory watched = new Directory(source.getDirectory(), key);
+            directories.put(watched.path, watched);
+            keys.put(key, watched);
+            directory = watched;
+        }
+
+        Subscription subscription = new Subscription(directory, source, listener);
+        directory.subscriptions.add(subscription);
+        for (Path file : source.files()) {
+            if (!directory.files.containsKey(file.getFileName())) {
+                Directory.Followed followed = directory.open(file.getFileName(), true);
+                if (followed != null) {
+                    directory.files.put(file.getFileName(), followed);
+
+                    // what was written since, without waiting for the next change of the file
+                    Long position = from.get(file);
+                    if (position != null && position < followed.position) {
+                        followed.position = position;
+                        followed.read();
+                    }
+                }
+            }
+        }
+
+        logger.info("Following {}, {} files followed in {} folders", source.getName(), directories.values().stream().mapToInt(d -> d.files.size()).sum(), directories.size());
+        return subscription;
+    }
+
+    private synchronized void unfollow(Subscription subscription) {
+        Directory directory = subscription.directory;
+        if (!directory.subscriptions.remove(subscription)) {
+            return;
+        }
+
+        if (directory.subscriptions.isEmpty()) {
+            directory.key.cancel();
+            directory.files.values().forEach(Directory.Followed::close);
+            directories.remove(directory.path);
+            keys.remove(directory.key);
+        } else {
+            directory.files.entrySet().removeIf(e -> {
+                boolean unused = directory.listeners(e.getKey()).isEmpty();
+                if (unused) {
+                    e.getValue().close();
+                }
+                return unused;
+            });
+        }
+
+        if (directories.isEmpty()) {
+            try {
+                watcher.close();
+            } catch (IOException e) {
+                logger.error("Couldn't close the watch service", e);
+            }
+            watcher = null;
+            logger.info("Nothing left to follow");
+        }
+    }
+
+    private void run(WatchService watcher) {
+        try {
+            while (true) {
+                WatchKey key = watcher.poll(CHECK_INTERVAL, TimeUnit.SECONDS);
+                synchronized (this) {
+                    try {
+                        if (key == null) {
+                            directories.values().forEach(Directory::check);
+                            continue;
+                        }
+
+                        Directory directory = keys.get(key);
+                        List<WatchEvent<?>> events = key.pollEvents();
+                        key.reset();
+                        if (directory == null) {
+                            continue;
+                        }
+
+                        for (WatchEvent<?> event : events) {
+                            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                                directory.check();
+                            } else {
+                                directory.changed((Path) event.context());
+                            }
+                        }
+                        directory.moved.clear();
+                    } catch (RuntimeException e) {
+                        logger.error("Error while following the log files", e);
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stopped
+        }
+    }
+
+    /**
+     * A folder watched, with the files followed in it
+     */
+    private class Directory {
+        private final Path path;
+        private final WatchKey key;
+        private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+        private final Map<Path, Followed> files = new HashMap<>();
+
+        /**
+         * Files that disappeared during the current events, by file key, in case they were renamed
+         */
+        private final Map<Object, Followed> moved = new HashMap<>();
+
+        private Directory(Path path, WatchKey key) {
+            this.path = path;
+            this.key = key;
+        }
+
+        private List<Listener> listeners(Path name) {
+            List<Listener> listeners = new ArrayList<>();
+            for (Subscription subscription : subscriptions) {
+                if (subscription.source.matches(name)) {
+                    listeners.add(subscription.listener);
+                }
+            }
+            return listeners;
+        }
+
+        /**
+         * @param fromEnd true to ignore what the file already holds
+         * @return null if the file can't be read
+         */
+        private Followed open(Path name, boolean fromEnd) {
+            try {
+                Path file = path.resolve(name);
+                FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+                Followed followed = new Followed(name, channel, Files.readAttributes(file, BasicFileAttributes.class).fileKey());
+                if (fromEnd) {
+                    followed.position = channel.size();
+                }
+                return followed;
+            } catch (IOException e) {
+                logger.info("Can't follow {}", path.resolve(name), e);
+                return null;
+            }
+        }
+
+        /**
+         * Something happened to a file of the folder
+         */
+        private void changed(Path name) {
+            Followed followed = files.get(name);
+            if (followed != null) {
+                if (!followed.read()) {
+                    files.remove(name);
+                    followed.close();
+                    if (followed.fileKey != null) {
+                        moved.put(followed.fileKey, followed);
+                    }
+                }
+                return;
+            }
+
+            List<Listener> listeners = listeners(name);
+            Path file = path.resolve(name);
+            if (listeners.isEmpty() || !Files.isRegularFile(file)) {
+                return;
+            }
+
+            // a file renamed (rotation) goes on where it was
+            Followed renamed = null;
+            try {
+                Object fileKey = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+                renamed = fileKey == null ? null : moved.remove(fileKey);
+                if (renamed == null) {
+                    for (Iterator<Followed> iterator = files.values().iterator(); iterator.hasNext() && fileKey != null; ) {
+                        Followed other = iterator.next();
+                        if (fileKey.equals(other.fileKey)) {
+                            // the old name isn't there anymore, its event is coming
+                            other.read();
+                            iterator.remove();
+                            other.close();
+                            renamed = other;
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                return;
+            }
+
+            Followed created = open(name, false);
+            if (created != null) {
+                if (renamed != null) {
+                    created.position = renamed.position;
+                    created.pending = renamed.pending;
+                    created.skipping = renamed.skipping;
+                }
+                files.put(name, created);
+                created.read();
+            }
+        }
+
+        /**
+         * Reads all the files and looks for new ones, when events may have been missed
+         */
+        private void check() {
+            files.entrySet().removeIf(e -> {
+                boolean gone = !e.getValue().read();
+                if (gone) {
+                    e.getValue().close();
+                }
+                return gone;
+            });
+
+            try {
+                for (Subscription subscription : subscriptions) {
+                    for (Path file : subscription.source.files()) {
+                        if (!files.containsKey(file.getFileName())) {
+                            changed(file.getFileName());
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                logger.info("Can't list {}", path, e);
+            }
+            moved.clear();
+        }
+
+        /**
+         * A file followed
+         */
+        private class Followed {
+            private final Path name;
+            private final FileChannel channel;
+            private final Object fileKey;
+            private long position = 0;
+            private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+            /**
+             * The beginning of the current line was skipped
+             */
+            private boolean skipping = false;
+
+            private Followed(Path name, FileChannel channel, Object fileKey) {
+                this.name = name;
+                this.channel = channel;
+                this.fileKey = fileKey;
+            }
+
+            /**
+             * Reads what was added to the file since the last time
+             *
+             * @return false if the file isn't there anymore (deleted or renamed) or was replaced by another file, after reading its end
+             */
+            private boolean read() {
+                Path file = path.resolve(name);
+                boolean replaced;
+                try {
+                    replaced = fileKey != null && !fileKey.equals(Files.readAttributes(file, BasicFileAttributes.class).fileKey());
+                } catch (NoSuchFileException e) {
+                    replaced = true;
+                } catch (IOException e) {
+                    logger.info("Can't check {}", file, e);
+                    return true;
+                }
+
+                try {
+                    long size = channel.size();
+                    if (size < position) {
+                        logger.info("{} was truncated, reading it again", file);
+                        position = 0;
+                        pending.reset();
+                    }
+
+                    if (size - position > MAX_CATCH_UP) {
+                        position = size - MAX_CATCH_UP;
+                        pending.reset();
+                        skipping = true;
+                    }
+
+                    List<String> lines = new ArrayList<>();
+                    while (position < size) {
+                        buffer.clear();
+                        int read = channel.read(buffer, position);
+                        if (read <= 0) {
+                            break;
+                        }
+                        position += read;
+                        split(read, lines);
+                    }
+
+                    if (!lines.isEmpty()) {
+                        listeners(name).forEach(l -> l.onLines(file, lines));
+                    }
+                } catch (IOException e) {
+                    logger.info("Can't read {}", file, e);
+                }
+
+                if (replaced) {
+                    logger.info("{} was rotated", file);
+                    // the new file with the same name is found by the next event or check
+                    return false;
+                }
+                return true;
+            }
+
+            private void split(int read, List<String> lines) {
+                byte[] bytes = buffer.array();
+                int start = 0;
+                for (int i = 0; i < read; i++) {
+                    if (bytes[i] == '\n') {
+                        if (!skipping) {
+                            append(bytes, start, i);
+                            lines.add(line());
+                        }
+                        pending.reset();
+                        skipping = false;
+                        start = i + 1;
+                    }
+                }
+
+                if (!skipping) {
+                    append(bytes, start, read);
+                }
+            }
+
+            private void append(byte[] bytes, int start, int end) {
+                pending.write(bytes, start, Math.min(end - start, Math.max(0, MAX_LINE - pending.size())));
+            }
+
+            private String line() {
+                String line = new String(pending.toByteArray(), StandardCharsets.UTF_8);
+                return LogFiles.trimLine(line, 0, line.length());
+            }
+
+            private void close() {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    logger.info("Can't close {}", path.resolve(name), e);
+                }
+            }
+        }
+    }
+
+    static class Subscription implements Closeable {
+        private final Directory directory;
+        private final LogSource source;
+        private final Listener listener;
+
+        private Subscription(Directory directory, LogSource source, Listener listener) {
+            this.directory = directory;
+            this.source = source;
+            this.listener = listener;
+        }
+
+        @Override
+        public void close() {
+            INSTANCE.unfollow(this);
+        }
+    }
+}
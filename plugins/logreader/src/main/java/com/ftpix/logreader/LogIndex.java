@@ -0,0 +1,280 @@
+package com.ftpix.logreader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Index of a log file for the searches: the file is cut in blocks of whole lines of about {@link #BLOCK} bytes and each block
+ * keeps the trigrams (3 consecutive bytes, ignoring the case) it holds in a small bit set.
+ * A search only reads the blocks holding all the trigrams of the text searched, some blocks are read for nothing but none is missed.
+ * <p>
+ * The index grows with the file, {@link #update(FileChannel, long)} only reads what was added since the last time.
+ * It takes {@link #BITS} / 8 bytes per block, about 1/32 of the size of the file. Past {@link #MAX_BLOCKS} blocks, the blocks are merged
+ * two by two so the index of a big file stays the same size, its searches just read more.
+ * <p>
+ * The first bytes of the file are kept as a checksum, a file truncated and written again past where it was indexed
+ * (copytruncate) doesn't match its index anymore.
+ */
+class LogIndex {
+    static final int BLOCK = 16 * 1024;
+    static final int BITS = 4096;
+    static final int MAX_BLOCKS = 8192;
+    static final int FINGERPRINT = 4096;
+    private static final int WORDS = BITS / 64;
+
+    private final Object fileKey;
+    private final List<Block> blocks = new ArrayList<>();
+
+    /**
+     * Bytes indexed, always the end of a line
+     */
+    private long indexed = 0;
+    private long lines = 0;
+    private long blockSize = BLOCK;
+
+    /**
+     * Checksum of the first fingerprintLength bytes of the file, set once something is indexed
+     */
+    private long fingerprint;
+    private int fingerprintLength = 0;
+
+    LogIndex(Object fileKey) {
+        this.fileKey = fileKey;
+    }
+
+    Object getFileKey() {
+        return fileKey;
+    }
+
+    long getIndexed() {
+        return indexed;
+    }
+
+    /**
+     * Number of lines indexed
+     */
+    long getLines() {
+        return lines;
+    }
+
+    /**
+     * Forgets everything indexed, for a file that changed
+     */
+    void clear() {
+        blocks.clear();
+        indexed = 0;
+        lines = 0;
+        blockSize = BLOCK;
+        fingerprintLength = 0;
+    }
+
+    /**
+     * Whether the index still describes the file: not shorter than what was indexed and starting with the same bytes
+     */
+    boolean matches(FileChannel channel) throws IOException {
+        if (channel.size() < indexed) {
+            return false;
+        }
+        return fingerprintLength == 0 || checksum(channel, fingerprintLength) == fingerprint;
+    }
+
+    /**
+     * Memory used, in bytes
+     */
+    long getFootprint() {
+        return blocks.size() * (WORDS * 8L + 48);
+    }
+
+    List<Block> getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * Indexes what was added to the file, up to its last complete line
+     *
+     * @param budget maximum number of bytes read
+     * @return number of bytes read
+     */
+    long update(FileChannel channel, long budget) throws IOException {
+        long size = channel.size();
+        long end = size - indexed <= budget ? size : indexed + budget;
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+        Block block = blocks.isEmpty() || blocks.get(blocks.size() - 1).length() >= blockSize ? null : blocks.get(blocks.size() - 1);
+        long position = indexed, lineEnd = indexed, lineCount = lines;
+        int previous = -1, beforePrevious = -1;
+        long[] bits = block == null ? new long[WORDS] : block.bits.clone();
+        long blockStart = block == null ? indexed : block.start;
+        long blockLine = block == null ? lines : block.firstLine;
+
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+
+            byte[] bytes = buffer.array();
+            for (int i = 0; i < read; i++) {
+                int b = lower(bytes[i]);
+                if (beforePrevious >= 0) {
+                    set(bits, trigram(beforePrevious, previous, b));
+                }
+                beforePrevious = previous;
+                previous = b;
+
+                if (b == '\n') {
+                    lineEnd = position + i + 1;
+                    lineCount++;
+                    // trigrams don't go across lines
+                    previous = beforePrevious = -1;
+
+                    if (lineEnd - blockStart >= blockSize) {
+                        save(block, blockStart, lineEnd, blockLine, bits);
+                        block = null;
+                        bits = new long[WORDS];
+                        blockStart = lineEnd;
+                        blockLine = lineCount;
+                    }
+                }
+            }
+            position += read;
+        }
+
+        if (lineEnd > blockStart) {
+            save(block, blockStart, lineEnd, blockLine, bits);
+        }
+
+        long read = position - indexed;
+        indexed = lineEnd;
+        lines = lineCount;
+
+        if (fingerprintLength == 0 && indexed > 0) {
+            fingerprintLength = (int) Math.min(FINGERPRINT, indexed);
+            fingerprint = checksum(channel, fingerprintLength);
+            read += fingerprintLength;
+        }
+        return read;
+    }
+
+    private static long checksum(FileChannel channel, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        int read;
+        do {
+            read = channel.read(buffer, buffer.position());
+        } while (read > 0 && buffer.hasRemaining());
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        return crc.getValue();
+    }
+
+    private void save(Block block, long start, long end, long firstLine, long[] bits) {
+        if (block == null) {
+            block = new Block(start, firstLine, bits);
+            blocks.add(block);
+        } else {
+            System.arraycopy(bits, 0, block.bits, 0, WORDS);
+        }
+        block.end = end;
+
+        if (blocks.size() > MAX_BLOCKS) {
+            merge();
+        }
+    }
+
+    /**
+     * Merges the blocks two by two
+     */
+    private void merge() {
+        List<Block> merged = new ArrayList<>(blocks.size() / 2 + 1);
+        for (int i = 0; i < blocks.size(); i += 2) {
+            Block first = blocks.get(i);
+            if (i + 1 < blocks.size()) {
+                Block second = blocks.get(i + 1);
+                for (int word = 0; word < WORDS; word++) {
+                    first.bits[word] |= second.bits[word];
+                }
+                first.end = second.end;
+            }
+            merged.add(first);
+        }
+
+        blocks.clear();
+        blocks.addAll(merged);
+        blockSize *= 2;
+    }
+
+    /**
+     * Bits of the trigrams of a text, to check the blocks against.
+     * Only the ascii trigrams are used, the case of the other characters isn't ignored by the index
+     *
+     * @param text searched, in UTF-8
+     * @return null if the text doesn't have an ascii trigram
+     */
+    static long[] trigrams(byte[] text) {
+        long[] bits = null;
+        for (int i = 2; i < text.length; i++) {
+            if (text[i - 2] >= 0 && text[i - 1] >= 0 && text[i] >= 0) {
+                if (bits == null) {
+                    bits = new long[WORDS];
+                }
+                set(bits, trigram(lower(text[i - 2]), lower(text[i - 1]), lower(text[i])));
+            }
+        }
+        return bits;
+    }
+
+    private static int lower(byte b) {
+        int value = b & 0xFF;
+        return value >= 'A' && value <= 'Z' ? value + ('a' - 'A') : value;
+    }
+
+    private static int trigram(int a, int b, int c) {
+        return (((a << 16) | (b << 8) | c) * 0x9E3779B1) >>> (32 - 12);
+    }
+
+    private static void set(long[] bits, int bit) {
+        bits[bit >>> 6] |= 1L << bit;
+    }
+
+    /**
+     * Lines of the file from start to end (excluded), starting with the line number firstLine (0 for the first line of the file)
+     */
+    static class Block {
+        final long start, firstLine;
+        long end;
+        private final long[] bits;
+
+        private Block(long start, long firstLine, long[] bits) {
+            this.start = start;
+            this.firstLine = firstLine;
+            this.bits = bits;
+        }
+
+        long length() {
+            return end - start;
+        }
+
+        /**
+         * @param trigrams from {@link #trigrams(byte[])}
+         * @return false if the block can't contain the text
+         */
+        boolean mayContain(long[] trigrams) {
+            if (trigrams == null) {
+                return true;
+            }
+            for (int i = 0; i < WORDS; i++) {
+                if ((bits[i] & trigrams[i]) != trigrams[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
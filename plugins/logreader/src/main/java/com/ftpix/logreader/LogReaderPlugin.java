@@ -4,31 +4,38 @@ import com.ftpix.homedash.models.ModuleExposedData;
 import com.ftpix.homedash.models.ModuleLayout;
 import com.ftpix.homedash.models.WebSocketMessage;
 import com.ftpix.homedash.plugins.Plugin;
-import org.apache.commons.io.input.ReversedLinesFileReader;
-import org.apache.commons.io.input.Tailer;
-import org.apache.commons.io.input.TailerListener;
-import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * Created by gz on 6/10/17.
  */
-public class LogReaderPlugin extends Plugin implements TailerListener {
+public class LogReaderPlugin extends Plugin {
     private final static String SETTINGS_PATH = "path", SETTINGS_LINES = "lines";
+    private final static String CLIENT_SEQUENCE = "sequence", CLIENT_LEVELS = "levels", CLIENT_KEPT = "kept", CLIENT_ACTIVITY = "activity";
+    private final static String COMMAND_SEARCH = "search", COMMAND_LEVELS = "levels";
 
-    private int maxLines = 200, linesSinceRefresh = 0;
+    /**
+     * Lines kept at most, they're allocated up front
+     */
+    final static int MAX_LINES = 100_000;
+    private final static int DEFAULT_LINES = 200;
 
-    private Tailer tailer;
-    private boolean tailerRunning = false;
-    private Queue<String> lines = new ConcurrentLinkedQueue<>();
+    private int maxLines = DEFAULT_LINES;
+
+    /**
+     * What the refreshes shared by all the clients keep between them, like a client of its own
+     */
+    private final Map<String, Object> shared = new HashMap<>();
+
+    private LogSource source;
+    private LogFollower.Subscription following;
+    private volatile LineRing lines = new LineRing(maxLines);
 
     @Override
     public String getId() {
@@ -42,7 +49,7 @@ public class LogReaderPlugin extends Plugin implements TailerListener {
 
     @Override
     public String getDescription() {
-        return "Follow the logs of a single file";
+        return "Follow the logs of a file, or of several files of a folder";
     }
 
     @Override
@@ -50,9 +57,19 @@ public class LogReaderPlugin extends Plugin implements TailerListener {
         return null;
     }
 
+    /**
+     * The files followed while clients are connected are replaced by the ones of the new settings
+     */
     @Override
-    protected void init() {
-        maxLines = Integer.parseInt(settings.getOrDefault(SETTINGS_LINES, "200"));
+    protected synchronized void init() {
+        maxLines = maxLines(settings.get(SETTINGS_LINES));
+        lines = new LineRing(maxLines);
+        source = LogSource.of(settings.get(SETTINGS_PATH));
+
+        if (following != null) {
+            stopFollowing();
+            startFollowing();
+        }
     }
 
     @Override
@@ -67,53 +84,169 @@ public class LogReaderPlugin extends Plugin implements TailerListener {
 
     @Override
     protected WebSocketMessage processCommand(String command, String message, Object extra) {
-        return null;
+        return processCommand(command, message, extra, new HashMap<>());
     }
 
+    /**
+     * search: message is the text searched, extra can have regex (boolean) and next (where the previous page stopped)
+     * levels: message is the comma separated levels to show, the next refresh sends all the lines again
+     */
     @Override
-    public void doInBackground() {
-        //getting the "maxLines" last lines of the files so that if the user visits the plugin when there is no activity, at least he/she can see something
-        if (!tailerRunning) {
-            try (ReversedLinesFileReader reversedLinesFileReader = new ReversedLinesFileReader(new File(settings.get(SETTINGS_PATH)));) {
-                String line = null;
-                List<String> linesTemp = new ArrayList<>();
-                do {
-                    line = reversedLinesFileReader.readLine();
-                    if (line != null) {
-                        linesTemp.add(0, line);
+    protected WebSocketMessage processCommand(String command, String message, Object extra, Map<String, Object> client) {
+        WebSocketMessage response = new WebSocketMessage();
+        if (command.equalsIgnoreCase(COMMAND_SEARCH)) {
+            try {
+                Map<?, ?> options = extra instanceof Map ? (Map<?, ?>) extra : Collections.emptyMap();
+                LogSearch.Query query = Boolean.TRUE.equals(options.get("regex")) ? LogSearch.Query.regex(message) : LogSearch.Query.text(message);
+
+                LogSearch.Cursor from = null;
+                if (options.get("next") != null) {
+                    from = cursor(options.get("next"));
+                    if (from == null) {
+                        response.setCommand(WebSocketMessage.COMMAND_ERROR);
+                        response.setMessage("Invalid search position");
+                        return response;
                     }
-                } while (line != null && linesTemp.size() < maxLines);
-
-                lines.addAll(linesTemp);
-                while (lines.size() > maxLines) {
-                    lines.remove();
                 }
-                logger().info("fetched {} lines from {}", lines.size(), settings.get(SETTINGS_PATH));
 
+                response.setCommand(COMMAND_SEARCH);
+                response.setMessage(LogSearch.INSTANCE.search(source.searchedFiles(), query, (LevelFilter) client.get(CLIENT_LEVELS), from));
+            } catch (PatternSyntaxException e) {
+                response.setCommand(WebSocketMessage.COMMAND_ERROR);
+                response.setMessage("Invalid regular expression: " + e.getDescription());
             } catch (IOException e) {
-                logger().info("Couldn't read file {}", settings.get(SETTINGS_PATH), e);
+                logger().error("Couldn't search {}", settings.get(SETTINGS_PATH), e);
+                response.setCommand(WebSocketMessage.COMMAND_ERROR);
+                response.setMessage("Couldn't search the logs: " + e.getMessage());
+            }
+        } else if (command.equalsIgnoreCase(COMMAND_LEVELS)) {
+            LevelFilter filter = LevelFilter.of(message);
+            if (filter == null) {
+                client.remove(CLIENT_LEVELS);
+            } else {
+                client.put(CLIENT_LEVELS, filter);
             }
+            client.remove(CLIENT_SEQUENCE);
+
+            response.setCommand(COMMAND_LEVELS);
+            response.setMessage(filter == null ? LevelFilter.LEVELS : filter.getLevels());
+        }
+        return response;
+    }
+
+    /**
+     * Where the previous page of a search stopped, as sent with it
+     *
+     * @return null if it isn't one
+     */
+    private LogSearch.Cursor cursor(Object next) {
+        if (!(next instanceof Map)) {
+            return null;
         }
+
+        Object file = ((Map<?, ?>) next).get("file"), before = ((Map<?, ?>) next).get("before");
+        if (!(file instanceof String) || !(before instanceof Number)) {
+            return null;
+        }
+        return new LogSearch.Cursor((String) file, ((Number) before).longValue());
+    }
+
+    @Override
+    public void doInBackground() {
+        //getting the "maxLines" last lines of the files so that if the user visits the plugin when there is no activity, at least he/she can see something
+        if (following == null) {
+            backfill();
+        }
+    }
+
+    /**
+     * Replaces the lines with the last lines of the files, the least recently modified file first
+     *
+     * @return where each file was read up to
+     */
+    private synchronized Map<Path, Long> backfill() {
+        Map<Path, Long> ends = new HashMap<>();
+        try {
+            List<String> linesTemp = new ArrayList<>();
+            for (Path file : source.files()) {
+                // the line being written is left to the follower
+                long end = LogFiles.completeLinesEnd(file);
+                ends.put(file, end);
+                LogFiles.lastLines(file, maxLines, end).forEach(line -> linesTemp.add(source.format(file, line)));
+            }
+
+            // the files may have changed since the last time, the lines are read again
+            lines.clear();
+            linesTemp.subList(Math.max(0, linesTemp.size() - maxLines), linesTemp.size()).forEach(lines::add);
+            logger().info("fetched {} lines from {}", lines.size(), settings.get(SETTINGS_PATH));
+        } catch (IOException e) {
+            logger().info("Couldn't read file {}", settings.get(SETTINGS_PATH), e);
+        }
+        return ends;
     }
 
     @Override
     protected Object refresh(String size) throws Exception {
         if (size.equalsIgnoreCase(ModuleLayout.FULL_SCREEN)) {
+            return refresh(size, new HashMap<>());
+        }
+
+        synchronized (shared) {
+            return refresh(size, shared);
+        }
+    }
+
+    /**
+     * The full screen view gets all the lines on its first refresh, then only the new ones
+     */
+    @Override
+    protected Object refresh(String size, Map<String, Object> client) throws Exception {
+        if (size.equalsIgnoreCase(ModuleLayout.FULL_SCREEN)) {
+            LineRing.Delta delta = lines.after((long) client.getOrDefault(CLIENT_SEQUENCE, -1L));
+            client.put(CLIENT_SEQUENCE, delta.sequence);
+
             Map<String, Object> data = new HashMap<>();
-            data.put("lines", lines);
+            data.put("lines", filter(delta, client));
+            data.put("reset", delta.reset);
+            data.put("maxLines", lines.getCapacity());
             data.put("file", settings.get(SETTINGS_PATH));
 
 
             return data;
         } else {
+            // lines since the previous refresh of this client
+            long last = lines.getLast();
+            long previous = (long) client.getOrDefault(CLIENT_ACTIVITY, last);
+            client.put(CLIENT_ACTIVITY, last);
+
             Map<String, String> data = new HashMap<>();
-            data.put("path", new File(settings.get(SETTINGS_PATH)).getName());
-            data.put("sinceRefresh", Integer.toString(linesSinceRefresh));
-            linesSinceRefresh = 0;
+            data.put("path", source.getName());
+            data.put("sinceRefresh", Long.toString(Math.max(0, last - previous)));
             return data;
         }
     }
 
+    /**
+     * Lines of the levels the client wants, the lines without level go with the line before them
+     */
+    private List<String> filter(LineRing.Delta delta, Map<String, Object> client) {
+        LevelFilter filter = (LevelFilter) client.get(CLIENT_LEVELS);
+        if (filter == null) {
+            return delta.lines;
+        }
+
+        boolean kept = !delta.reset && (boolean) client.getOrDefault(CLIENT_KEPT, false);
+        List<String> filtered = new ArrayList<>();
+        for (String line : delta.lines) {
+            kept = filter.keeps(line, kept);
+            if (kept) {
+                filtered.add(line);
+            }
+        }
+        client.put(CLIENT_KEPT, kept);
+        return filtered;
+    }
+
     @Override
     public int getRefreshRate(String size) {
         return ONE_SECOND;
@@ -122,8 +255,17 @@ public class LogReaderPlugin extends Plugin implements TailerListener {
     @Override
     public Map<String, String> validateSettings(Map<String, String> settings) {
         Map<String, String> errors = new HashMap<>();
-        Path path = Paths.get(settings.get(SETTINGS_PATH));
-        if (!Files.exists(path)) {
+        LogSource source = LogSource.of(settings.getOrDefault(SETTINGS_PATH, ""));
+        Path path = source.getDirectory().resolve(source.getName());
+        if (source.isPattern()) {
+            try {
+                if (source.files().isEmpty()) {
+                    errors.put("File", "No file of the folder matches the pattern");
+                }
+            } catch (IOException e) {
+                errors.put("Folder", "The folder given can't be read");
+            }
+        } else if (!Files.exists(path)) {
             errors.put("File", "The file given doesn't exist");
         } else {
 
@@ -138,13 +280,24 @@ public class LogReaderPlugin extends Plugin implements TailerListener {
 
         String maxLines = settings.get(SETTINGS_LINES);
 
-        if (!StringUtils.isNumeric(maxLines)) {
-            errors.put("Max lines", "has to be a number");
+        if (!StringUtils.isNumeric(maxLines) || maxLines.length() > 9 || Integer.parseInt(maxLines) < 1 || Integer.parseInt(maxLines) > MAX_LINES) {
+            errors.put("Max lines", "has to be a number between 1 and " + MAX_LINES);
         }
 
         return errors;
     }
 
+    /**
+     * Lines to keep from the settings, the modules saved before the setting was checked can have any value
+     */
+    static int maxLines(String setting) {
+        try {
+            return Math.max(1, Math.min(MAX_LINES, Integer.parseInt(setting)));
+        } catch (NumberFormatException e) {
+            return DEFAULT_LINES;
+        }
+    }
+
     @Override
     public ModuleExposedData exposeData() {
         ModuleExposedData data = new ModuleExposedData();
@@ -158,51 +311,44 @@ public class LogReaderPlugin extends Plugin implements TailerListener {
     }
 
     @Override
-    protected void onFirstClientConnect() {
-        tailer = Tailer.create(new File(settings.get(SETTINGS_PATH)), this, 1000, true);
-        tailerRunning = true;
+    protected synchronized void onFirstClientConnect() {
+        startFollowing();
     }
 
     @Override
-    protected void onLastClientDisconnect() {
+    protected synchronized void onLastClientDisconnect() {
         logger().info("Stopping to tail {}", settings.get(SETTINGS_PATH));
-        tailer.stop();
-        tailerRunning = false;
-    }
-
-    @Override
-    protected Map<String, Object> getSettingsModel() {
-        return null;
-    }
-
-    //File tail
-    @Override
-    public void init(Tailer tailer) {
-
+        stopFollowing();
     }
 
     @Override
-    public void fileNotFound() {
-
+    public synchronized void destroy() {
+        stopFollowing();
     }
 
-    @Override
-    public void fileRotated() {
-
+    /**
+     * Reads the last lines then follows the files from where they were read
+     */
+    private void startFollowing() {
+        Map<Path, Long> ends = backfill();
+        LogSource followed = source;
+        LineRing ring = lines;
+        try {
+            following = LogFollower.INSTANCE.follow(followed, (file, newLines) -> newLines.forEach(line -> ring.add(followed.format(file, line))), ends);
+        } catch (IOException e) {
+            logger().error("Can't follow {}", settings.get(SETTINGS_PATH), e);
+        }
     }
 
-    @Override
-    public void handle(String s) {
-        lines.add(s);
-        while (lines.size() > maxLines) {
-            lines.remove();
+    private void stopFollowing() {
+        if (following != null) {
+            following.close();
+            following = null;
         }
-        linesSinceRefresh++;
-
     }
 
     @Override
-    public void handle(Exception e) {
-
+    protected Map<String, Object> getSettingsModel() {
+        return null;
     }
 }
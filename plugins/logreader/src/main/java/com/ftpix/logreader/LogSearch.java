@@ -0,0 +1,423 @@
+package com.ftpix.logreader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Searches the log files of all the log reader modules, with the help of a {@link LogIndex} per file.
+ * <p>
+ * The results come by pages, the most recent lines first. A search stops after reading {@link #MAX_SCAN} bytes,
+ * to index the files or to read their lines, even if its page isn't full, the next page goes on from there.
+ * The end of a file not indexed yet is read line by line.
+ * The indexes are kept for the next searches, the least recently searched files are dropped past {@link #MAX_INDEXES_SIZE}.
+ */
+enum LogSearch {
+    INSTANCE;
+
+    static final int PAGE_SIZE = 50;
+
+    /**
+     * Bytes read at most by a search, indexing included. What's left to index is indexed by the next pages
+     */
+    static final long MAX_SCAN = 64L * 1024 * 1024;
+
+    /**
+     * Memory taken at most by the indexes of all the files
+     */
+    static final long MAX_INDEXES_SIZE = 32L * 1024 * 1024;
+
+    private static final int MAX_LINE = 16 * 1024, WINDOW = 64 * 1024;
+
+    /**
+     * Indexes by file key (path when the file system doesn't have file keys) so they still work after a rotation renames the file
+     */
+    private final Map<Object, LogIndex> indexes = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * @param files  searched in this order
+     * @param filter levels of the lines returned, null for all
+     * @param from   where the previous page stopped, null for the first page
+     */
+    Result search(List<Path> files, Query query, LevelFilter filter, Cursor from) throws IOException {
+        List<Match> matches = new ArrayList<>();
+        long scanned = 0;
+
+        int first = 0;
+        long before = Long.MAX_VALUE;
+        if (from != null) {
+            first = indexOf(files, from.file);
+            before = from.before;
+            if (first < 0) {
+                // gone since the previous page
+                return new Result(query.text, matches, null, scanned);
+            }
+        }
+
+        for (int fileIndex = first; fileIndex < files.size(); fileIndex++, before = Long.MAX_VALUE) {
+            Path file = files.get(fileIndex);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                String key = key(file);
+                LogIndex index = index(file);
+                synchronized (index) {
+                    // truncated, or replaced by a copy (copytruncate)
+                    if (!index.matches(channel)) {
+                        index.clear();
+                    }
+
+                    if (scanned >= MAX_SCAN) {
+                        return new Result(query.text, matches, new Cursor(key, before), scanned);
+                    }
+                    scanned += index.update(channel, MAX_SCAN - scanned);
+
+                    // the lines not indexed yet are the most recent ones
+                    long tailEnd = Math.min(channel.size(), before);
+                    long tailStart = index.getIndexed();
+                    if (tailStart < tailEnd) {
+                        if (tailEnd - tailStart > MAX_SCAN - scanned) {
+                            // the next page indexes more of it
+                            return new Result(query.text, matches, new Cursor(key, before), scanned);
+                        }
+
+                        List<Match> found = scan(channel, file, tailStart, tailEnd, index.getLines(), query, filter);
+                        scanned += tailEnd - tailStart;
+                        if (addAll(found, matches)) {
+                            return new Result(query.text, matches, new Cursor(key, matches.get(matches.size() - 1).offset), scanned);
+                        }
+                    }
+
+                    List<LogIndex.Block> blocks = index.getBlocks();
+                    for (int i = blocks.size() - 1; i >= 0; i--) {
+                        LogIndex.Block block = blocks.get(i);
+                        if (block.start >= before || !block.mayContain(query.trigrams)) {
+                            continue;
+                        }
+
+                        long end = Math.min(block.end, before);
+                        if (scanned >= MAX_SCAN) {
+                            return new Result(query.text, matches, new Cursor(key, end), scanned);
+                        }
+
+                        List<Match> found = scan(channel, file, block.start, end, block.firstLine, query, filter);
+                        scanned += end - block.start;
+                        if (addAll(found, matches)) {
+                            return new Result(query.text, matches, new Cursor(key, matches.get(matches.size() - 1).offset), scanned);
+                        }
+                    }
+                }
+            } catch (NoSuchFileException e) {
+                // rotated since the list was made
+            }
+        }
+
+        return new Result(query.text, matches, null, scanned);
+    }
+
+    /**
+     * Adds the lines found in a part of a file, the last ones first
+     *
+     * @return true once the page is full
+     */
+    private static boolean addAll(List<Match> found, List<Match> matches) {
+        for (int j = found.size() - 1; j >= 0; j--) {
+            matches.add(found.get(j));
+            if (matches.size() == PAGE_SIZE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Position of a file in the list by its key, the files can be renamed and listed in another order between two pages
+     *
+     * @return -1 if it isn't there anymore
+     */
+    private static int indexOf(List<Path> files, String key) throws IOException {
+        for (int i = 0; i < files.size(); i++) {
+            try {
+                if (key(files.get(i)).equals(key)) {
+                    return i;
+                }
+            } catch (NoSuchFileException e) {
+                // rotated since the list was made
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Identifies a file across renames: its file key, or its name when the file system doesn't have file keys
+     */
+    static String key(Path file) throws IOException {
+        Object fileKey = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+        return fileKey == null ? file.getFileName().toString() : fileKey.toString();
+    }
+
+    /**
+     * Index of a file, see {@link LogIndex#matches(FileChannel)} before using it
+     */
+    private LogIndex index(Path file) throws IOException {
+        Object fileKey = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+        Object key = fileKey == null ? file.toAbsolutePath() : fileKey;
+
+        synchronized (indexes) {
+            LogIndex index = indexes.get(key);
+            if (index == null) {
+                index = new LogIndex(key);
+                indexes.put(key, index);
+            }
+
+            long size = 0;
+            for (LogIndex other : indexes.values()) {
+                size += other.getFootprint();
+            }
+
+            // least recently used first
+            for (Iterator<LogIndex> iterator = indexes.values().iterator(); iterator.hasNext() && size > MAX_INDEXES_SIZE; ) {
+                LogIndex other = iterator.next();
+                if (other != index) {
+                    size -= other.getFootprint();
+                    iterator.remove();
+                }
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Lines of a part of the file matching the query, in the order of the file. Read by windows of {@link #WINDOW} bytes
+     */
+    private List<Match> scan(FileChannel channel, Path file, long start, long end, long firstLine, Query query, LevelFilter filter) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(WINDOW);
+        byte[] line = new byte[MAX_LINE];
+        int lineLength = 0;
+        long lineStart = start, lineNumber = firstLine, position = start;
+
+        List<Match> found = new ArrayList<>();
+        // a line without level goes with the line before it, which can be before the part read
+        boolean kept = filter != null && keptBefore(channel, start, filter);
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+
+            byte[] bytes = buffer.array();
+            for (int i = 0; i < read; i++) {
+                if (bytes[i] == '\n') {
+                    String text = new String(line, 0, lineLength, StandardCharsets.UTF_8);
+                    text = LogFiles.trimLine(text, 0, text.length());
+                    if (filter != null) {
+                        kept = filter.keeps(text, kept);
+                    }
+                    if (query.matches(text) && (filter == null || kept)) {
+                        found.add(new Match(file.getFileName().toString(), lineNumber + 1, lineStart, text));
+                    }
+                    lineNumber++;
+                    lineLength = 0;
+                    lineStart = position + i + 1;
+                } else if (lineLength < MAX_LINE) {
+                    line[lineLength++] = bytes[i];
+                }
+            }
+            position += read;
+        }
+        return found;
+    }
+
+    /**
+     * Whether the last line with a level before a position is kept by the filter, looking back {@link #WINDOW} bytes at most
+     */
+    private static boolean keptBefore(FileChannel channel, long position, LevelFilter filter) throws IOException {
+        long from = Math.max(0, position - WINDOW);
+        ByteBuffer buffer = ByteBuffer.allocate((int) (position - from));
+        int read;
+        do {
+            read = channel.read(buffer, from + buffer.position());
+        } while (read > 0 && buffer.hasRemaining());
+
+        byte[] bytes = buffer.array();
+        int lineEnd = buffer.position();
+        for (int i = lineEnd - 1; i >= -1; i--) {
+            // the first line is cut unless it starts the file
+            if (i >= 0 ? bytes[i] == '\n' : from == 0) {
+                if (lineEnd > i + 1) {
+                    String line = new String(bytes, i + 1, Math.min(lineEnd - i - 1, MAX_LINE), StandardCharsets.UTF_8);
+                    if (LevelFilter.levelOf(line) != null) {
+                        return filter.keeps(line, false);
+                    }
+                }
+                lineEnd = i;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Text or regular expression searched, ignoring the case unless the expression says otherwise
+     */
+    static class Query {
+        private final String text;
+        private final String lowerText;
+        private final Pattern pattern;
+        private final long[] trigrams;
+
+        private Query(String text, Pattern pattern, String literal) {
+            this.text = text;
+            this.lowerText = text.toLowerCase(Locale.ROOT);
+            this.pattern = pattern;
+            this.trigrams = LogIndex.trigrams(literal.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Query text(String text) {
+            return new Query(text, null, text);
+        }
+
+        /**
+         * @throws java.util.regex.PatternSyntaxException if the expression isn't valid
+         */
+        static Query regex(String regex) {
+            return new Query(regex, Pattern.compile(regex, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE), literal(regex));
+        }
+
+        boolean matches(String line) {
+            return pattern == null ? line.toLowerCase(Locale.ROOT).contains(lowerText) : pattern.matcher(line).find();
+        }
+
+        /**
+         * Longest text that any line matching the expression contains, to use the index. Empty if not sure
+         */
+        static String literal(String regex) {
+            if (regex.contains("|")) {
+                return "";
+            }
+
+            String longest = "";
+            StringBuilder current = new StringBuilder();
+            int depth = 0;
+            for (int i = 0; i < regex.length(); i++) {
+                char c = regex.charAt(i);
+                boolean literal = false;
+                switch (c) {
+                    case '\\':
+                        // an escaped character is literal, \d \w \b... aren't
+                        if (i + 1 < regex.length() && !Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                            c = regex.charAt(i + 1);
+                            literal = depth == 0;
+                        }
+                        i++;
+                        break;
+                    case '[':
+                        // a class, skipped
+                        i = regex.indexOf(']', i + 2);
+                        if (i < 0) {
+                            return longest;
+                        }
+                        break;
+                    case '(':
+                        depth++;
+                        break;
+                    case ')':
+                        depth--;
+                        break;
+                    case '?':
+                    case '*':
+                    case '{':
+                        // the previous character can be missing
+                        if (current.length() > 0) {
+                            current.setLength(current.length() - 1);
+                        }
+                        break;
+                    case '+':
+                    case '.':
+                    case '^':
+                    case '$':
+                        break;
+                    default:
+                        literal = depth == 0;
+                }
+
+                if (literal) {
+                    current.append(c);
+                } else {
+                    if (current.length() > longest.length()) {
+                        longest = current.toString();
+                    }
+                    current.setLength(0);
+                    if (c == '{') {
+                        i = Math.max(i, regex.indexOf('}', i));
+                    }
+                }
+            }
+            return current.length() > longest.length() ? current.toString() : longest;
+        }
+    }
+
+    /**
+     * Where a search stopped: the lines before this offset of this file are left, then the files after it in the list
+     */
+    static class Cursor {
+        /**
+         * See {@link #key(Path)}
+         */
+        final String file;
+        final long before;
+
+        Cursor(String file, long before) {
+            this.file = file;
+            this.before = before;
+        }
+    }
+
+    static class Match {
+        final String file;
+        final long line;
+        final long offset;
+        final String text;
+
+        private Match(String file, long line, long offset, String text) {
+            this.file = file;
+            this.line = line;
+            this.offset = offset;
+            this.text = text;
+        }
+    }
+
+    static class Result {
+        final String query;
+        final List<Match> matches;
+
+        /**
+         * To get the next page, null if everything was searched
+         */
+        final Cursor next;
+
+        /**
+         * Bytes of lines read
+         */
+        final long scanned;
+
+        private Result(String query, List<Match> matches, Cursor next, long scanned) {
+            this.query = query;
+            this.matches = matches;
+            this.next = next;
+            this.scanned = scanned;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.ftpix.logreader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Files followed by a module: a single file, or the files of a folder matching a glob pattern (ex: /var/log/nginx/*.log)
+ */
+class LogSource {
+    private static final Pattern COMPRESSED = Pattern.compile("\\.(gz|bz2|xz|zip|zst)$");
+
+    private final Path directory;
+    private final String name;
+    private final boolean pattern;
+    private final PathMatcher matcher;
+
+    private LogSource(Path directory, String name) {
+        this.directory = directory;
+        this.name = name;
+        this.pattern = name.chars().anyMatch(c -> c == '*' || c == '?' || c == '[' || c == '{');
+        this.matcher = pattern ? FileSystems.getDefault().getPathMatcher("glob:" + name) : p -> p.toString().equals(name);
+    }
+
+    /**
+     * @param path the path setting, only the file name can be a pattern
+     */
+    static LogSource of(String path) {
+        path = path.trim();
+        int separator = Math.max(path.lastIndexOf('/'), path.lastIndexOf(File.separatorChar));
+        if (separator < 0) {
+            return new LogSource(Paths.get("").toAbsolutePath(), path);
+        }
+        return new LogSource(Paths.get(separator == 0 ? path.substring(0, 1) : path.substring(0, separator)).toAbsolutePath(), path.substring(separator + 1));
+    }
+
+    Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * File name or pattern
+     */
+    String getName() {
+        return name;
+    }
+
+    boolean isPattern() {
+        return pattern;
+    }
+
+    /**
+     * @param fileName name of a file of the folder
+     */
+    boolean matches(Path fileName) {
+        return matcher.matches(fileName);
+    }
+
+    /**
+     * Files followed, the least recently modified first
+     */
+    List<Path> files() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> matches(p.getFileName()) && Files.isRegularFile(p))
+                    .sorted(Comparator.comparing(p -> p.toFile().lastModified()))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Files searched: the files followed and their rotated files (ex: app.log.1, app.log-20170610), the most recently modified first.
+     * Compressed files are left out
+     */
+    List<Path> searchedFiles() throws IOException {
+        List<Path> followed = files();
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> Files.isRegularFile(p) && !COMPRESSED.matcher(p.getFileName().toString()).find())
+                    .filter(p -> followed.contains(p) || followed.stream().anyMatch(f -> isRotation(f.getFileName().toString(), p.getFileName().toString())))
+                    .sorted(Comparator.comparing((Path p) -> p.toFile().lastModified()).reversed())
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static boolean isRotation(String file, String candidate) {
+        return candidate.length() > file.length() + 1 && candidate.startsWith(file)
+                && (candidate.charAt(file.length()) == '.' || candidate.charAt(file.length()) == '-');
+    }
+
+    /**
+     * A line as shown, with the name of its file when following several files
+     */
+    String format(Path file, String line) {
+        return pattern ? "[" + file.getFileName() + "] " + line : line;
+    }
+}
@@ -0,0 +1,48 @@
+package com.ftpix.logreader;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LevelFilterTest {
+
+    @Test
+    public void testOf() {
+        assertEquals(new LinkedHashSet<>(Arrays.asList("ERROR", "WARN")), LevelFilter.of(" error,WARN, unknown").getLevels());
+        // nothing or everything to filter
+        assertNull(LevelFilter.of(""));
+        assertNull(LevelFilter.of("verbose"));
+        assertNull(LevelFilter.of("ERROR,WARN,INFO,DEBUG"));
+    }
+
+    @Test
+    public void testLevelOf() {
+        assertEquals("ERROR", LevelFilter.levelOf("2017-06-10 12:00:00 ERROR [main] failed"));
+        assertEquals("ERROR", LevelFilter.levelOf("[crit] out of memory"));
+        assertEquals("WARN", LevelFilter.levelOf("Warning: disk almost full"));
+        assertEquals("INFO", LevelFilter.levelOf("notice: started"));
+        assertEquals("DEBUG", LevelFilter.levelOf("FINEST entering method"));
+        // the first one wins
+        assertEquals("INFO", LevelFilter.levelOf("INFO retrying after ERROR"));
+        // whole words only
+        assertNull(LevelFilter.levelOf("errors: 0, information: none"));
+        assertNull(LevelFilter.levelOf("    at com.ftpix.App.main(App.java:12)"));
+    }
+
+    @Test
+    public void testKeeps() {
+        LevelFilter filter = LevelFilter.of("ERROR");
+        assertTrue(filter.keeps("ERROR failed", false));
+        assertFalse(filter.keeps("INFO started", true));
+
+        // a line without level goes with the line before it
+        assertTrue(filter.keeps("    at com.ftpix.App.main(App.java:12)", true));
+        assertFalse(filter.keeps("    at com.ftpix.App.main(App.java:12)", false));
+    }
+}
@@ -0,0 +1,88 @@
+package com.ftpix.logreader;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LineRingTest {
+
+    @Test
+    public void testDelta() {
+        LineRing ring = new LineRing(5);
+        ring.add("a");
+        ring.add("b");
+
+        LineRing.Delta first = ring.after(-1);
+        assertTrue(first.reset);
+        assertEquals(2, first.sequence);
+        assertEquals(Arrays.asList("a", "b"), first.lines);
+
+        ring.add("c");
+        LineRing.Delta next = ring.after(first.sequence);
+        assertFalse(next.reset);
+        assertEquals(3, next.sequence);
+        assertEquals(Collections.singletonList("c"), next.lines);
+
+        LineRing.Delta nothing = ring.after(next.sequence);
+        assertFalse(nothing.reset);
+        assertTrue(nothing.lines.isEmpty());
+    }
+
+    @Test
+    public void testWrapAround() {
+        LineRing ring = new LineRing(3);
+        for (int i = 1; i <= 7; i++) {
+            ring.add(String.valueOf(i));
+        }
+
+        assertEquals(7, ring.getLast());
+        assertEquals(3, ring.size());
+        assertEquals(Arrays.asList("5", "6", "7"), ring.after(-1).lines);
+        assertEquals(Arrays.asList("6", "7"), ring.after(5).lines);
+        assertFalse(ring.after(4).reset);
+    }
+
+    @Test
+    public void testLinesNoLongerKept() {
+        LineRing ring = new LineRing(3);
+        for (int i = 1; i <= 7; i++) {
+            ring.add(String.valueOf(i));
+        }
+
+        // lines 3 and 4 were replaced, the client gets everything again
+        LineRing.Delta delta = ring.after(2);
+        assertTrue(delta.reset);
+        assertEquals(Arrays.asList("5", "6", "7"), delta.lines);
+
+        // a sequence from another ring
+        assertTrue(ring.after(100).reset);
+    }
+
+    @Test
+    public void testClear() {
+        LineRing ring = new LineRing(3);
+        ring.add("a");
+        ring.add("b");
+        ring.clear();
+
+        assertEquals(0, ring.size());
+        LineRing.Delta delta = ring.after(2);
+        assertFalse(delta.reset);
+        assertTrue(delta.lines.isEmpty());
+
+        ring.add("c");
+        assertEquals(3, ring.getLast());
+        assertEquals(Collections.singletonList("c"), ring.after(2).lines);
+        assertTrue(ring.after(1).reset);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCapacity() {
+        new LineRing(0);
+    }
+}
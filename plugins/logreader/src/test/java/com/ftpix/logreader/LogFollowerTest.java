@@ -0,0 +1,99 @@
+package com.ftpix.logreader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LogFollowerTest {
+    private Path folder;
+    private final List<String> received = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("logfollower");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(folder)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testFollowFromBackfill() throws IOException {
+        Path file = folder.resolve("app.log");
+        write(file, "a\nb\npart");
+
+        // the line being written is left out of the backfill
+        long end = LogFiles.completeLinesEnd(file);
+        assertEquals(4, end);
+        assertEquals(Arrays.asList("a", "b"), LogFiles.lastLines(file, 10, end));
+
+        // written between the backfill and the follow
+        write(file, "ial\nc\n");
+
+        LogSource source = LogSource.of(file.toString());
+        try (LogFollower.Subscription ignored = LogFollower.INSTANCE.follow(source, (f, lines) -> received.addAll(lines), Collections.singletonMap(file, end))) {
+            assertEquals(Arrays.asList("partial", "c"), received);
+        }
+    }
+
+    @Test
+    public void testFollowNewLines() throws Exception {
+        Path file = folder.resolve("app.log");
+        write(file, "old\n");
+
+        LogSource source = LogSource.of(file.toString());
+        try (LogFollower.Subscription ignored = LogFollower.INSTANCE.follow(source, (f, lines) -> received.addAll(lines))) {
+            assertTrue(received.isEmpty());
+
+            write(file, "new 1\nnew 2\n");
+            waitFor(2);
+            assertEquals(Arrays.asList("new 1", "new 2"), received);
+        }
+    }
+
+    @Test
+    public void testTruncated() throws Exception {
+        Path file = folder.resolve("app.log");
+        write(file, "line 1\nline 2\n");
+
+        LogSource source = LogSource.of(file.toString());
+        try (LogFollower.Subscription ignored = LogFollower.INSTANCE.follow(source, (f, lines) -> received.addAll(lines))) {
+            // copytruncate
+            Files.write(file, "after\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.TRUNCATE_EXISTING);
+            waitFor(1);
+            assertEquals(Collections.singletonList("after"), received);
+        }
+    }
+
+    private void write(Path file, String text) throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * The follower reads the files on its thread, at the latest at its next check
+     */
+    private void waitFor(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 15_000;
+        while (received.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+    }
+}
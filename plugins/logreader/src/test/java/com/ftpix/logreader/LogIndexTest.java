@@ -0,0 +1,119 @@
+package com.ftpix.logreader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LogIndexTest {
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("logindex", ".log");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testBlocks() throws IOException {
+        StringBuilder text = new StringBuilder();
+        int lines = 0;
+        while (text.length() < LogIndex.BLOCK) {
+            text.append("alpha ").append(lines++).append('\n');
+        }
+        text.append("omega Connection Refused\n");
+        lines++;
+        write(text + "partial");
+
+        LogIndex index = new LogIndex(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            index.update(channel, Long.MAX_VALUE);
+        }
+
+        // the line being written isn't indexed
+        assertEquals(text.length(), index.getIndexed());
+        assertEquals(lines, index.getLines());
+
+        List<LogIndex.Block> blocks = index.getBlocks();
+        assertEquals(2, blocks.size());
+        LogIndex.Block first = blocks.get(0), second = blocks.get(1);
+        assertEquals(0, first.start);
+        assertEquals(first.end, second.start);
+        assertEquals(index.getIndexed(), second.end);
+        assertEquals(lines - 1, second.firstLine);
+
+        long[] omega = LogIndex.trigrams("connection refused".getBytes(StandardCharsets.UTF_8));
+        assertFalse(first.mayContain(omega));
+        assertTrue(second.mayContain(omega));
+        assertTrue(first.mayContain(LogIndex.trigrams("ALPHA".getBytes(StandardCharsets.UTF_8))));
+
+        // too short to use the index
+        assertNull(LogIndex.trigrams("ab".getBytes(StandardCharsets.UTF_8)));
+        assertTrue(first.mayContain(null));
+    }
+
+    @Test
+    public void testIncrementalUpdate() throws IOException {
+        write("line 1\nline 2\n");
+        LogIndex index = new LogIndex(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            index.update(channel, Long.MAX_VALUE);
+            assertEquals(2, index.getLines());
+
+            write("line 3\n");
+            index.update(channel, Long.MAX_VALUE);
+            assertEquals(3, index.getLines());
+            assertEquals(1, index.getBlocks().size());
+            assertTrue(index.getBlocks().get(0).mayContain(LogIndex.trigrams("line 3".getBytes(StandardCharsets.UTF_8))));
+
+            // the budget stops the indexing at a line end
+            write("line 4\nline 5\n");
+            index.update(channel, 10);
+            assertEquals(4, index.getLines());
+        }
+    }
+
+    @Test
+    public void testFingerprint() throws IOException {
+        write("first line\n");
+        LogIndex index = new LogIndex(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            index.update(channel, Long.MAX_VALUE);
+            assertTrue(index.matches(channel));
+
+            write("second line\n");
+            assertTrue(index.matches(channel));
+        }
+
+        // copytruncate, then more written than what was indexed
+        Files.write(file, "other start\nand much more than before\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.TRUNCATE_EXISTING);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            assertFalse(index.matches(channel));
+
+            index.clear();
+            index.update(channel, Long.MAX_VALUE);
+            assertTrue(index.matches(channel));
+            assertEquals(2, index.getLines());
+        }
+    }
+
+    private void write(String text) throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+}
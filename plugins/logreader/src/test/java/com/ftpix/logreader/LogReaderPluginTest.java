@@ -0,0 +1,19 @@
+package com.ftpix.logreader;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LogReaderPluginTest {
+
+    @Test
+    public void testMaxLines() {
+        assertEquals(500, LogReaderPlugin.maxLines("500"));
+        // saved before the setting was checked
+        assertEquals(1, LogReaderPlugin.maxLines("0"));
+        assertEquals(LogReaderPlugin.MAX_LINES, LogReaderPlugin.maxLines("2000000000"));
+        assertEquals(200, LogReaderPlugin.maxLines("99999999999"));
+        assertEquals(200, LogReaderPlugin.maxLines(""));
+        assertEquals(200, LogReaderPlugin.maxLines(null));
+    }
+}
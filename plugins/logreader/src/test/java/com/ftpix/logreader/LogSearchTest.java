@@ -0,0 +1,130 @@
+package com.ftpix.logreader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LogSearchTest {
+    private Path folder;
+
+    @Before
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("logsearch");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(folder)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testLiteral() {
+        assertEquals("foo", LogSearch.Query.literal("foo.*bar"));
+        assertEquals(" connections refused", LogSearch.Query.literal("error: (\\d+) connections refused"));
+        assertEquals("colo", LogSearch.Query.literal("colou?r"));
+        assertEquals("[main] started", LogSearch.Query.literal("\\[main\\] started"));
+        assertEquals("yz", LogSearch.Query.literal("x{2,3}yz"));
+        assertEquals("def", LogSearch.Query.literal("[abc]def"));
+        // any of the alternatives can match
+        assertEquals("", LogSearch.Query.literal("timeout|refused"));
+    }
+
+    @Test
+    public void testQuery() {
+        assertTrue(LogSearch.Query.text("Refused").matches("connection refused"));
+        assertFalse(LogSearch.Query.text("refused").matches("connection reset"));
+        assertTrue(LogSearch.Query.regex("port \\d+").matches("listening on PORT 8080"));
+    }
+
+    @Test
+    public void testMostRecentFirst() throws IOException {
+        Path file = write("app.log", "match 1\nother\nmatch 2\nmatch 3");
+
+        LogSearch.Result result = LogSearch.INSTANCE.search(Collections.singletonList(file), LogSearch.Query.text("match"), null, null);
+        // the line being written isn't searched
+        assertEquals(Arrays.asList("match 2", "match 1"), texts(result));
+        assertEquals(3, result.matches.get(0).line);
+        assertNull(result.next);
+    }
+
+    @Test
+    public void testLevels() throws IOException {
+        Path file = write("app.log", "INFO start match\n" +
+                "ERROR failed match\n" +
+                "    at stack match\n" +
+                "INFO other\n" +
+                "    at unrelated match\n");
+
+        LogSearch.Result result = LogSearch.INSTANCE.search(Collections.singletonList(file), LogSearch.Query.text("match"), LevelFilter.of("ERROR"), null);
+        assertEquals(Arrays.asList("    at stack match", "ERROR failed match"), texts(result));
+    }
+
+    @Test
+    public void testLevelsAcrossBlocks() throws IOException {
+        // the error ends the first block, its stack trace starts the second one
+        String error = "ERROR failed\n";
+        StringBuilder text = new StringBuilder();
+        while (text.length() + error.length() < LogIndex.BLOCK) {
+            text.append("INFO filler ").append(text.length()).append('\n');
+        }
+        text.setLength(LogIndex.BLOCK - error.length() - 1);
+        text.append('\n').append(error)
+                .append("    at stack match\n")
+                .append("INFO other\n")
+                .append("    at unrelated match\n");
+        Path file = write("app.log", text.toString());
+
+        LogSearch.Result result = LogSearch.INSTANCE.search(Collections.singletonList(file), LogSearch.Query.text("match"), LevelFilter.of("ERROR"), null);
+        assertEquals(Collections.singletonList("    at stack match"), texts(result));
+    }
+
+    @Test
+    public void testNextPageAfterRotation() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 1; i <= LogSearch.PAGE_SIZE + 10; i++) {
+            text.append("match ").append(i).append('\n');
+        }
+        Path file = write("app.log", text.toString());
+
+        LogSearch.Query query = LogSearch.Query.text("match");
+        LogSearch.Result first = LogSearch.INSTANCE.search(Collections.singletonList(file), query, null, null);
+        assertEquals(LogSearch.PAGE_SIZE, first.matches.size());
+        assertNotNull(first.next);
+
+        // rotated between the pages, the new file comes first
+        Path rotated = Files.move(file, folder.resolve("app.log.1"));
+        Path current = write("app.log", "nothing\n");
+        LogSearch.Result second = LogSearch.INSTANCE.search(Arrays.asList(current, rotated), query, null, first.next);
+        assertEquals(10, second.matches.size());
+        assertEquals("match 10", second.matches.get(0).text);
+        assertEquals("match 1", second.matches.get(9).text);
+        assertNull(second.next);
+    }
+
+    private Path write(String name, String text) throws IOException {
+        return Files.write(folder.resolve(name), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<String> texts(LogSearch.Result result) {
+        return result.matches.stream().map(m -> m.text).collect(Collectors.toList());
+    }
+}
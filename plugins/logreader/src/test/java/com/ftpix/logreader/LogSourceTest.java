@@ -0,0 +1,89 @@
+package com.ftpix.logreader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LogSourceTest {
+    private Path folder;
+
+    @Before
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("logsource");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(folder)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testOf() {
+        LogSource file = LogSource.of(" /var/log/syslog ");
+        assertEquals(Paths.get("/var/log"), file.getDirectory());
+        assertEquals("syslog", file.getName());
+        assertFalse(file.isPattern());
+        assertTrue(file.matches(Paths.get("syslog")));
+        assertFalse(file.matches(Paths.get("syslog.1")));
+
+        LogSource pattern = LogSource.of("/var/log/nginx/*.log");
+        assertEquals(Paths.get("/var/log/nginx"), pattern.getDirectory());
+        assertTrue(pattern.isPattern());
+        assertTrue(pattern.matches(Paths.get("access.log")));
+        assertFalse(pattern.matches(Paths.get("access.log.1")));
+
+        assertEquals(Paths.get("/"), LogSource.of("/app.log").getDirectory());
+    }
+
+    @Test
+    public void testFormat() {
+        Path file = Paths.get("/var/log/nginx/access.log");
+        assertEquals("GET /", LogSource.of("/var/log/nginx/access.log").format(file, "GET /"));
+        assertEquals("[access.log] GET /", LogSource.of("/var/log/nginx/*.log").format(file, "GET /"));
+    }
+
+    @Test
+    public void testFiles() throws IOException {
+        Path error = create("error.log", 2000);
+        Path access = create("access.log", 1000);
+        create("access.log.1", 500);
+        create("notes.txt", 3000);
+
+        LogSource source = LogSource.of(folder.resolve("*.log").toString());
+        assertEquals(Arrays.asList(access, error), source.files());
+    }
+
+    @Test
+    public void testSearchedFiles() throws IOException {
+        Path current = create("app.log", 3000);
+        Path rotated = create("app.log.1", 2000);
+        Path dated = create("app.log-20170610", 1000);
+        create("app.log.2.gz", 500);
+        create("app.logger", 500);
+        create("other.log", 500);
+
+        LogSource source = LogSource.of(folder.resolve("app.log").toString());
+        assertEquals(Arrays.asList(current, rotated, dated), source.searchedFiles());
+    }
+
+    private Path create(String name, long modified) throws IOException {
+        Path file = Files.write(folder.resolve(name), new byte[]{'\n'});
+        Files.setLastModifiedTime(file, FileTime.fromMillis(modified * 1000));
+        return file;
+    }
+}
@@ -3,18 +3,40 @@ function networkmonitor(moduleId) {
     this.moduleId = moduleId;
 
     this.width = 1;
+    this.historyHours = 24;
+    this.graphed = [];
+    this.historyRefresh = undefined;
 
     this.onConnect = function () {
 
     };
 
     this.documentReady = function (size) {
-
+        if (size === 'full-screen') {
+            var root = rootElement(this.moduleId);
+
+            var self = this;
+
+            root.on('click', '.interfaces tbody tr', function (event) {
+                $(this).toggleClass('selected');
+                sendMessage(self.moduleId, 'select', $(this).attr('data-name'));
+            });
+
+            root.on('click', '.ranges .btn', function (event) {
+                root.find('.ranges .btn').removeClass('selected');
+                $(this).addClass('selected');
+                self.historyHours = parseInt($(this).attr('data-hours'));
+                self.askHistories();
+            });
+        }
     };
 
 
     this.onMessage = function (size, command, message, extra) {
         switch (size) {
+            case 'full-screen':
+                this.onMessage_fullScreen(command, message, extra);
+                break;
             default:
                 this['onMessage_' + size](command, message, extra);
                 break;
@@ -36,6 +58,118 @@ function networkmonitor(moduleId) {
         this.processData(message);
     };
 
+    this.onMessage_fullScreen = function (command, message, extra) {
+        if (command === 'history') {
+            this.showHistory(extra, message);
+            return;
+        } else if (command !== 'refresh') {
+            return;
+        }
+
+        var root = this.root();
+        var all = message.aggregate;
+
+        root.find('.aggregate .up-txt').html(all.readableUp);
+        root.find('.aggregate .down-txt').html(all.readableDown);
+        root.find('.aggregate .up-total-txt').html(' ' + all.readableTotalUp);
+        root.find('.aggregate .down-total-txt').html(' ' + all.readableTotalDown);
+
+        var talkers = [];
+        $.each(message.topTalkers, function (index, value) {
+            talkers.push('<li>', value.name, ': <i class="fa fa-arrow-down"></i> ', value.readableDown,
+                ' <i class="fa fa-arrow-up"></i> ', value.readableUp, '</li>');
+        });
+        root.find('.talkers').html(talkers.join(''));
+
+        var self = this;
+        var histories = [];
+        $.each(message.histories, function (index, history) {
+            if (history.length > 0) {
+                var last = history[history.length - 1];
+                histories.push('<div class="col-md-6 history"><h4>', last.name, '</h4><div class="svg">', self.buildGraph(history), '</div></div>');
+            }
+        });
+        root.find('.histories').html(histories.join(''));
+
+        var graphed = [];
+        $.each(message.histories, function (index, history) {
+            if (history.length > 0) {
+                graphed.push(history[0].name);
+            }
+        });
+        this.updateLongGraphs(graphed);
+
+        var rows = [];
+        $.each(message.interfaces, function (index, value) {
+            rows.push('<tr data-name="', value.name, '"', value.selected ? ' class="selected"' : '', '>',
+                '<td>', value.name, '</td>',
+                '<td>', value.readableDown, '</td>',
+                '<td>', value.readableUp, '</td>',
+                '<td>', Math.round(value.packetsDown), ' / ', Math.round(value.packetsUp), '</td>',
+                '<td>', Math.round(value.errorsDown), ' / ', Math.round(value.errorsUp), '</td>',
+                '<td>', value.readableTotalDown, '</td>',
+                '<td>', value.readableTotalUp, '</td>',
+                '</tr>');
+        });
+        root.find('.interfaces tbody').html(rows.join(''));
+    };
+
+    /**
+     * Keeps a long history graph per graphed interface, asked again every minute
+     */
+    this.updateLongGraphs = function (graphed) {
+        var root = this.root();
+        var container = root.find('.long-graphs');
+        var changed = graphed.join(',') !== this.graphed.join(',');
+        this.graphed = graphed;
+
+        if (changed) {
+            container.find('.long-graph').each(function () {
+                if (graphed.indexOf($(this).attr('data-name')) === -1) {
+                    $(this).remove();
+                }
+            });
+            $.each(graphed, function (index, name) {
+                if (container.find('.long-graph[data-name="' + name + '"]').length === 0) {
+                    container.append('<div class="col-md-6 long-graph" data-name="' + name + '"><h4>' + name + '</h4>'
+                        + '<svg viewBox="0 0 100 200" preserveAspectRatio="none" xmlns="http://www.w3.org/2000/svg" version="1.1">'
+                        + '<path class="band down"/><path class="line down"/>'
+                        + '<g transform="translate(0,100)"><path class="band up"/><path class="line up"/></g></svg></div>');
+                }
+            });
+            this.askHistories();
+        }
+
+        if (this.historyRefresh === undefined) {
+            var self = this;
+            this.historyRefresh = setInterval(function () {
+                self.askHistories();
+            }, 60000);
+        }
+    };
+
+    this.askHistories = function () {
+        var self = this;
+        $.each(this.graphed, function (index, name) {
+            sendMessage(self.moduleId, 'history', name, self.historyHours);
+        });
+    };
+
+    /**
+     * Download on the top half, upload on the bottom half
+     */
+    this.showHistory = function (name, points) {
+        var graph = this.root().find('.long-graph[data-name="' + name + '"]');
+
+        var down = historyPaths(points, 0);
+        graph.find('.band.down').attr('d', down.band);
+        graph.find('.line.down').attr('d', down.line);
+
+        var up = historyPaths(points, 1);
+        graph.find('.band.up').attr('d', up.band);
+        graph.find('.line.up').attr('d', up.line);
+    };
+
     this.root = function () {
         return rootElement(this.moduleId);
     };
@@ -0,0 +1,54 @@
+package com.ftpix.homedash.plugins.networkmonitor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Include and exclude globs on the interface names, ex: "eth*, br-*" and "lo, veth*".
+ * * matches any number of characters, ? a single one, the case is ignored.
+ */
+public class InterfaceFilter {
+    private final List<Pattern> includes, excludes;
+
+    /**
+     * @param includes comma separated globs, all the interfaces if empty
+     * @param excludes comma separated globs, none if empty
+     */
+    public InterfaceFilter(String includes, String excludes) {
+        this.includes = compile(includes);
+        this.excludes = compile(excludes);
+    }
+
+    public boolean matches(String name) {
+        return (includes.isEmpty() || includes.stream().anyMatch(p -> p.matcher(name).matches()))
+                && excludes.stream().noneMatch(p -> p.matcher(name).matches());
+    }
+
+    private static List<Pattern> compile(String globs) {
+        List<Pattern> patterns = new ArrayList<>();
+        if (globs == null) {
+            return patterns;
+        }
+
+        for (String glob : globs.split(",")) {
+            glob = glob.trim();
+            if (glob.isEmpty()) {
+                continue;
+            }
+
+            StringBuilder regex = new StringBuilder();
+            for (char c : glob.toCharArray()) {
+                if (c == '*') {
+                    regex.append(".*");
+                } else if (c == '?') {
+                    regex.append('.');
+                } else {
+                    regex.append(Pattern.quote(String.valueOf(c)));
+                }
+            }
+            patterns.add(Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE));
+        }
+        return patterns;
+    }
+}
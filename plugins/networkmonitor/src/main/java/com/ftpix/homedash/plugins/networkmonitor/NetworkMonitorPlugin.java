@@ -1,15 +1,27 @@
 package com.ftpix.homedash.plugins.networkmonitor;
 
-import com.ftpix.homedash.Utils.ByteUtils;
+import com.ftpix.homedash.Utils.SampleRing;
+import com.ftpix.homedash.metrics.HostMetricsService;
 import com.ftpix.homedash.models.ModuleExposedData;
 import com.ftpix.homedash.models.ModuleLayout;
 import com.ftpix.homedash.models.WebSocketMessage;
 import com.ftpix.homedash.plugins.Plugin;
-import com.ftpix.homedash.plugins.networkmonitor.models.NetworkInfo;
+import com.ftpix.homedash.plugins.networkmonitor.models.InterfaceRates;
+import com.ftpix.homedash.plugins.networkmonitor.models.NetworkHistory;
+import com.ftpix.homedash.plugins.networkmonitor.models.NetworkOverview;
+import com.ftpix.homedash.timeseries.Series;
+import com.ftpix.homedash.timeseries.Tier;
+import com.ftpix.homedash.timeseries.TimeSeriesStore;
 import oshi.SystemInfo;
 import oshi.hardware.NetworkIF;
 
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -17,10 +29,34 @@ import java.util.stream.Stream;
  * Created by gz on 01-Jul-16.
  */
 public class NetworkMonitorPlugin extends Plugin {
-    private final String SETTING_INTERFACE = "network-interface";
-    private final int MAX_SIZE = 25;
+    private final String SETTING_INTERFACE = "network-interface", SETTING_INCLUDE = "network-include", SETTING_EXCLUDE = "network-exclude",
+            DEFAULT_EXCLUDE = "lo", COMMAND_SELECT = "select", COMMAND_HISTORY = "history", CLIENT_SELECTED = "selected";
+    private final int MAX_SIZE = 25, RESOLUTION = 2, TOP_TALKERS = 5, DEFAULT_HISTORY_HOURS = 24;
     private SystemInfo systemInfo = new SystemInfo();
-    private List<NetworkInfo> networkInfos = new LinkedList<>();
+
+    /**
+     * The counters are sampled by the service shared with the other modules, the background refresh only looks for the ip
+     */
+    private final HostMetricsService metrics = HostMetricsService.INSTANCE;
+    private HostMetricsService.Subscription subscription;
+    private volatile String ip;
+
+    /**
+     * Interfaces shown in full screen, the ones picked there by a client get their graph for this client
+     */
+    private volatile InterfaceFilter filter = new InterfaceFilter(null, DEFAULT_EXCLUDE);
+
+    /**
+     * Interfaces graphed by the full screen clients, with the time they were last refreshed.
+     * They are kept in the long history as long as a client refreshes them.
+     */
+    private final Map<String, Long> graphed = new ConcurrentHashMap<>();
+
+    /**
+     * Long history of the graphed interfaces, written by the background refresh
+     */
+    private final Map<String, Series> histories = new ConcurrentHashMap<>();
+    private int backgroundRuns = 0;
 
     @Override
     public String getId() {
@@ -34,7 +70,7 @@ public class NetworkMonitorPlugin extends Plugin {
 
     @Override
     public String getDescription() {
-        return "Monitor a network interface from your computer";
+        return "Monitor the network interfaces of your computer";
     }
 
     @Override
@@ -44,41 +80,98 @@ public class NetworkMonitorPlugin extends Plugin {
 
     @Override
     protected void init() {
+        filter = new InterfaceFilter(settings.get(SETTING_INCLUDE), settings.getOrDefault(SETTING_EXCLUDE, DEFAULT_EXCLUDE));
+
+        if (subscription == null) {
+            subscription = metrics.subscribe(RESOLUTION, HostMetricsService.Metric.NETWORK);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (subscription != null) {
+            subscription.close();
+            subscription = null;
+        }
+        histories.values().forEach(TimeSeriesStore.INSTANCE::release);
+        histories.clear();
     }
 
     @Override
     public String[] getSizes() {
-        return new String[]{"2x1", "3x2", ModuleLayout.KIOSK};
+        return new String[]{"2x1", "3x2", ModuleLayout.FULL_SCREEN, ModuleLayout.KIOSK};
     }
 
     @Override
     public int getBackgroundRefreshRate() {
-        return ONE_SECOND * 2;
+        return ONE_SECOND * RESOLUTION;
     }
 
     @Override
     protected WebSocketMessage processCommand(String command, String message, Object extra) {
+        return processCommand(command, message, extra, new HashMap<>());
+    }
+
+    @Override
+    protected WebSocketMessage processCommand(String command, String message, Object extra, Map<String, Object> client) {
+        if (command.equalsIgnoreCase(COMMAND_SELECT)) {
+            Set<String> selected = getSelected(client);
+            if (!selected.remove(message) && metrics.getInterfaces().contains(message)) {
+                selected.add(message);
+            }
+        } else if (command.equalsIgnoreCase(COMMAND_HISTORY) && metrics.getInterfaces().contains(message)) {
+            return getHistory(message, extra instanceof Number ? ((Number) extra).intValue() : DEFAULT_HISTORY_HOURS);
+        }
         return null;
     }
 
     @Override
     public void doInBackground() {
+        if (backgroundRuns++ % (ONE_MINUTE / RESOLUTION) == 0) {
+            getInterfaceName().ifPresent(name -> ip = getIp(name));
+        }
 
-        getNetworkInfo(settings.get(SETTING_INTERFACE)).ifPresent(networkInfos::add);
+        long now = System.currentTimeMillis();
+        graphed.values().removeIf(time -> now - time > ONE_MINUTE * 1000L);
 
-        if (networkInfos.size() > MAX_SIZE) {
-            networkInfos.remove(0);
+        Set<String> names = new HashSet<>(graphed.keySet());
+        getInterfaceName().ifPresent(names::add);
+        for (String name : names) {
+            SampleRing.Snapshot last = metrics.getNetwork(name, RESOLUTION, 1);
+            Series series = getSeries(name);
+            if (last != null && !last.isEmpty() && series != null) {
+                series.append(last.getLong(0, HostMetricsService.TIME), last.get(0, HostMetricsService.NETWORK_RX_RATE), last.get(0, HostMetricsService.NETWORK_TX_RATE));
+            }
         }
     }
 
     @Override
     protected Object refresh(String size) throws Exception {
-        return networkInfos;
+        return refresh(size, new HashMap<>());
+    }
+
+    @Override
+    protected Object refresh(String size, Map<String, Object> client) throws Exception {
+        if (size.equalsIgnoreCase(ModuleLayout.FULL_SCREEN)) {
+            return getOverview(getSelected(client));
+        }
+
+        Optional<String> name = getInterfaceName();
+        SampleRing.Snapshot samples = name.map(n -> metrics.getNetwork(n, RESOLUTION, MAX_SIZE)).orElse(null);
+        if (samples == null) {
+            return Collections.emptyList();
+        }
+
+        // not waiting a minute for the background refresh after a start
+        if (ip == null) {
+            ip = getIp(name.get());
+        }
+        return new NetworkHistory(name.get(), ip, samples);
     }
 
     @Override
     public int getRefreshRate(String size) {
-        return ONE_SECOND * 2;
+        return ONE_SECOND * RESOLUTION;
     }
 
     @Override
@@ -102,6 +195,16 @@ public class NetworkMonitorPlugin extends Plugin {
             }
         }
 
+        String include = settings.get(SETTING_INCLUDE), exclude = settings.get(SETTING_EXCLUDE);
+        try {
+            InterfaceFilter filter = new InterfaceFilter(include, exclude);
+            if (Stream.of(interfaces).map(NetworkIF::getName).noneMatch(filter::matches)) {
+                errors.put("Filters", "No interface matches the filters");
+            }
+        } catch (Exception e) {
+            errors.put("Filters", "Invalid filters: " + e.getMessage());
+        }
+
         return errors;
     }
 
@@ -114,6 +217,12 @@ public class NetworkMonitorPlugin extends Plugin {
     public Map<String, String> exposeSettings() {
         Map<String, String> exposed = new HashMap<>();
         exposed.put("Interface", settings.get(SETTING_INTERFACE));
+        if (settings.containsKey(SETTING_INCLUDE)) {
+            exposed.put("Include", settings.get(SETTING_INCLUDE));
+        }
+        if (settings.containsKey(SETTING_EXCLUDE)) {
+            exposed.put("Exclude", settings.get(SETTING_EXCLUDE));
+        }
 
         return exposed;
     }
@@ -134,64 +243,150 @@ public class NetworkMonitorPlugin extends Plugin {
     }
 
     //////// plugin methods
-    public Optional<NetworkInfo> getNetworkInfo(String netInterface) {
 
+    /**
+     * Last rates of all the interfaces matching the filters.
+     * The interface from the settings is graphed until some are picked.
+     *
+     * @param selected interfaces picked by the client
+     */
+    private NetworkOverview getOverview(Set<String> selected) {
+        NetworkOverview overview = new NetworkOverview();
+        InterfaceFilter filter = this.filter;
+
+        for (String name : metrics.getInterfaces()) {
+            if (!filter.matches(name)) {
+                continue;
+            }
 
-        Optional<NetworkIF> ifConfigOpt = Stream.of(systemInfo.getHardware().getNetworkIFs())
-                .filter(iface -> iface.getName().equalsIgnoreCase(netInterface)).findFirst();
-        NetworkInfo networkInfo = new NetworkInfo();
-        if (ifConfigOpt.isPresent()) {
-            NetworkIF ifConfig = ifConfigOpt.get();
-
-            networkInfo.ip = ifConfig.getIPv4addr()[0];
-            networkInfo.name = ifConfig.getName();
+            SampleRing.Snapshot last = metrics.getNetwork(name, RESOLUTION, 1);
+            if (last == null || last.isEmpty()) {
+                continue;
+            }
 
+            InterfaceRates rates = getRates(name, last);
+            rates.selected = selected.contains(name);
+            overview.interfaces.add(rates.format());
+            overview.aggregate.add(rates);
+        }
+        overview.aggregate.format();
+
+        overview.topTalkers = overview.interfaces.stream()
+                .filter(rates -> rates.getTraffic() > 0)
+                .sorted(Comparator.comparingLong(InterfaceRates::getTraffic).reversed())
+                .limit(TOP_TALKERS)
+                .collect(Collectors.toList());
+
+        long now = System.currentTimeMillis();
+        for (String name : getGraphed(selected)) {
+            graphed.put(name, now);
+            SampleRing.Snapshot samples = metrics.getNetwork(name, RESOLUTION, MAX_SIZE);
+            if (samples != null) {
+                overview.histories.add(new NetworkHistory(name, null, samples));
+            }
+        }
 
-            long currentTime = System.currentTimeMillis();
-            long currentTotalUp = ifConfig.getBytesSent();
-            long currentTotalDown = ifConfig.getBytesRecv();
+        return overview;
+    }
 
+    /**
+     * Interfaces picked in full screen by a client, or the one from the settings
+     */
+    private Collection<String> getGraphed(Set<String> selected) {
+        return selected.isEmpty() ? getInterfaceName().map(Collections::singleton).orElse(Collections.emptySet()) : selected;
+    }
 
-            if (!networkInfos.isEmpty()) { // we have data let's proceed to calculation
-                Optional<NetworkInfo> old = Optional.ofNullable(networkInfos.get(networkInfos.size() - 1));
+    /**
+     * Interfaces picked in full screen, kept for each client
+     */
+    @SuppressWarnings("unchecked")
+    private Set<String> getSelected(Map<String, Object> client) {
+        return (Set<String>) client.computeIfAbsent(CLIENT_SELECTED, k -> ConcurrentHashMap.newKeySet());
+    }
 
-                long oldTotalUp = old.map(o -> o.totalUp).orElse(0l);
-                long oldTotalDown = old.map(o -> o.totalDown).orElse(0l);
-                long oldTime = old.map(o -> o.time).orElse(0l);
+    /**
+     * History of the download and upload rates of an interface
+     *
+     * @return null if it can't be opened
+     */
+    private Series getSeries(String name) {
+        return histories.computeIfAbsent(name, n -> {
+            try {
+                return TimeSeriesStore.INSTANCE.getSeries("network-" + n, 2);
+            } catch (IOException e) {
+                logger().error("Couldn't open the history of " + n, e);
+                return null;
+            }
+        });
+    }
 
-                if (oldTotalUp > 0 && oldTotalDown > 0) {
-                    logger().info("[Network info] We have history, lets calculate the speed since last refresh");
-                    long transferredUp = currentTotalUp - oldTotalUp;
-                    long transferredDown = currentTotalDown - oldTotalDown;
-                    double duration = (currentTime - oldTime) / 1000; // from
-                    if (duration == 0) duration = duration + 0.1;
-                    // millisecond
-                    // to seconds
-                    logger().info("[Network info] Uploaded [{}] Downloaded [{}] in [{}]s", transferredUp, transferredDown, duration);
+    /**
+     * Download and upload rates of an interface over the last hours
+     */
+    private WebSocketMessage getHistory(String name, int hours) {
+        WebSocketMessage response = new WebSocketMessage();
+        Series series = getSeries(name);
+        if (series != null) {
+            long range = hours * ONE_HOUR * 1000L;
+            response.setCommand(COMMAND_HISTORY);
+            response.setMessage(series.read(Tier.forRange(range, RESOLUTION * 1000), System.currentTimeMillis() - range));
+            response.setExtra(name);
+        }
+        return response;
+    }
 
-                    networkInfo.down = (long) Math.ceil(transferredDown / duration);
-                    networkInfo.up = (long) Math.ceil(transferredUp / duration);
+    /**
+     * Rates of the last sample, 0 until the interface has been sampled twice
+     */
+    private InterfaceRates getRates(String name, SampleRing.Snapshot last) {
+        InterfaceRates rates = new InterfaceRates(name);
+        rates.totalUp = last.getLong(0, HostMetricsService.NETWORK_TX_BYTES);
+        rates.totalDown = last.getLong(0, HostMetricsService.NETWORK_RX_BYTES);
+
+        if (!Double.isNaN(last.get(0, HostMetricsService.NETWORK_TX_RATE))) {
+            rates.up = (long) Math.ceil(last.get(0, HostMetricsService.NETWORK_TX_RATE));
+            rates.down = (long) Math.ceil(last.get(0, HostMetricsService.NETWORK_RX_RATE));
+            rates.packetsUp = last.get(0, HostMetricsService.NETWORK_TX_PACKET_RATE);
+            rates.packetsDown = last.get(0, HostMetricsService.NETWORK_RX_PACKET_RATE);
+            rates.errorsUp = last.get(0, HostMetricsService.NETWORK_TX_ERROR_RATE);
+            rates.errorsDown = last.get(0, HostMetricsService.NETWORK_RX_ERROR_RATE);
+        }
+        return rates;
+    }
 
-                    networkInfo.readableDown = ByteUtils.humanReadableByteCount(networkInfo.down, true) + "/s";
-                    networkInfo.readableUp = ByteUtils.humanReadableByteCount(networkInfo.up, true) + "/s";
-                    logger().info("[Network Info] Upload: {}. download: {}", networkInfo.readableUp, networkInfo.readableDown);
-                }
+    /**
+     * Name of the interface set in the settings as the host names it
+     */
+    private Optional<String> getInterfaceName() {
+        String setting = settings.get(SETTING_INTERFACE);
+        if (setting == null) {
+            return Optional.empty();
+        }
 
+        return metrics.getInterfaces().stream()
+                .filter(iface -> iface.equalsIgnoreCase(setting.trim()))
+                .findFirst();
+    }
 
+    /**
+     * First IPv4 address of an interface
+     *
+     * @return null if it doesn't have any
+     */
+    private String getIp(String name) {
+        try {
+            NetworkInterface networkInterface = NetworkInterface.getByName(name);
+            if (networkInterface != null) {
+                for (InetAddress address : Collections.list(networkInterface.getInetAddresses())) {
+                    if (address instanceof Inet4Address) {
+                        return address.getHostAddress();
+                    }
+                }
             }
-            networkInfo.time = currentTime;
-
-            networkInfo.totalDown = currentTotalDown;
-            networkInfo.totalUp = currentTotalUp;
-
-            networkInfo.readableTotalDown = ByteUtils.humanReadableByteCount(networkInfo.totalDown, true);
-            networkInfo.readableTotalUp = ByteUtils.humanReadableByteCount(networkInfo.totalUp, true);
-
-
-            return Optional.ofNullable(networkInfo);
-        } else {
-            return Optional.empty();
+        } catch (SocketException e) {
+            logger().error("Couldn't get the ip of " + name, e);
         }
+        return null;
     }
 
 }
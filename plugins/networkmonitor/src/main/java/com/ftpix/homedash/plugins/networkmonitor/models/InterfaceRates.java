@@ -0,0 +1,49 @@
+package com.ftpix.homedash.plugins.networkmonitor.models;
+
+import com.ftpix.homedash.Utils.ByteUtils;
+
+/**
+ * Last rates and counters of an interface, or the sum of several
+ */
+public class InterfaceRates {
+    public String name, readableUp, readableDown, readableTotalUp, readableTotalDown;
+    public long up, down, totalUp, totalDown;
+    public double packetsUp, packetsDown, errorsUp, errorsDown;
+    public boolean selected;
+
+    public InterfaceRates(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Adds the values of another interface
+     */
+    public void add(InterfaceRates other) {
+        up += other.up;
+        down += other.down;
+        totalUp += other.totalUp;
+        totalDown += other.totalDown;
+        packetsUp += other.packetsUp;
+        packetsDown += other.packetsDown;
+        errorsUp += other.errorsUp;
+        errorsDown += other.errorsDown;
+    }
+
+    /**
+     * Builds the readable values once all the values are set
+     */
+    public InterfaceRates format() {
+        readableUp = ByteUtils.humanReadableByteCount(up, true) + "/s";
+        readableDown = ByteUtils.humanReadableByteCount(down, true) + "/s";
+        readableTotalUp = ByteUtils.humanReadableByteCount(totalUp, true);
+        readableTotalDown = ByteUtils.humanReadableByteCount(totalDown, true);
+        return this;
+    }
+
+    /**
+     * Bytes per second both ways
+     */
+    public long getTraffic() {
+        return up + down;
+    }
+}
@@ -0,0 +1,142 @@
+package com.ftpix.homedash.plugins.networkmonitor.models;
+
+import com.ftpix.homedash.Utils.ByteUtils;
+import com.ftpix.homedash.Utils.SampleRing;
+import com.ftpix.homedash.metrics.HostMetricsService;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Samples of an interface from the {@link HostMetricsService}. Sent as the objects the page expects,
+ * the readable values are only built here.
+ * The speeds of the first sample are NaN as there's nothing to compare it with.
+ */
+@JsonAdapter(NetworkHistory.Adapter.class)
+public class NetworkHistory {
+    private final String name, ip;
+    /**
+     * Columns of the samples read back, up to the upload speed
+     */
+    private static final int WIDTH = HostMetricsService.NETWORK_TX_RATE + 1;
+
+    private final SampleRing.Snapshot samples;
+
+    public NetworkHistory(String name, String ip, SampleRing.Snapshot samples) {
+        this.name = name;
+        this.ip = ip;
+        this.samples = samples;
+    }
+
+    public static class Adapter extends TypeAdapter<NetworkHistory> {
+        @Override
+        public void write(JsonWriter out, NetworkHistory network) throws IOException {
+            if (network == null) {
+                out.nullValue();
+                return;
+            }
+
+            SampleRing.Snapshot samples = network.samples;
+            out.beginArray();
+            for (int i = 0; i < samples.size(); i++) {
+                boolean hasSpeed = !Double.isNaN(samples.get(i, HostMetricsService.NETWORK_TX_RATE));
+                long up = hasSpeed ? (long) Math.ceil(samples.get(i, HostMetricsService.NETWORK_TX_RATE)) : 0;
+                long down = hasSpeed ? (long) Math.ceil(samples.get(i, HostMetricsService.NETWORK_RX_RATE)) : 0;
+                long totalUp = samples.getLong(i, HostMetricsService.NETWORK_TX_BYTES), totalDown = samples.getLong(i, HostMetricsService.NETWORK_RX_BYTES);
+
+                out.beginObject();
+                if (network.name != null) {
+                    out.name("name").value(network.name);
+                }
+                if (network.ip != null) {
+                    out.name("ip").value(network.ip);
+                }
+                if (hasSpeed) {
+                    out.name("readableUp").value(ByteUtils.humanReadableByteCount(up, true) + "/s");
+                    out.name("readableDown").value(ByteUtils.humanReadableByteCount(down, true) + "/s");
+                }
+                out.name("readableTotalUp").value(ByteUtils.humanReadableByteCount(totalUp, true));
+                out.name("readableTotalDown").value(ByteUtils.humanReadableByteCount(totalDown, true));
+                out.name("up").value(up);
+                out.name("down").value(down);
+                out.name("totalUp").value(totalUp);
+                out.name("totalDown").value(totalDown);
+                out.name("time").value(samples.getLong(i, HostMetricsService.TIME));
+                out.endObject();
+            }
+            out.endArray();
+        }
+
+        /**
+         * The readable values are rebuilt from the numbers, a sample without readable speeds has no speed
+         */
+        @Override
+        public NetworkHistory read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            String name = null, ip = null;
+            List<double[]> samples = new ArrayList<>();
+            in.beginArray();
+            while (in.hasNext()) {
+                double[] sample = new double[WIDTH];
+                boolean hasSpeed = false;
+
+                in.beginObject();
+                while (in.hasNext()) {
+                    switch (in.nextName()) {
+                        case "name":
+                            name = in.nextString();
+                            break;
+                        case "ip":
+                            ip = in.nextString();
+                            break;
+                        case "readableUp":
+                            hasSpeed = true;
+                            in.skipValue();
+                            break;
+                        case "up":
+                            sample[HostMetricsService.NETWORK_TX_RATE] = in.nextDouble();
+                            break;
+                        case "down":
+                            sample[HostMetricsService.NETWORK_RX_RATE] = in.nextDouble();
+                            break;
+                        case "totalUp":
+                            sample[HostMetricsService.NETWORK_TX_BYTES] = in.nextLong();
+                            break;
+                        case "totalDown":
+                            sample[HostMetricsService.NETWORK_RX_BYTES] = in.nextLong();
+                            break;
+                        case "time":
+                            sample[HostMetricsService.TIME] = in.nextLong();
+                            break;
+                        default:
+                            in.skipValue();
+                    }
+                }
+                in.endObject();
+
+                if (!hasSpeed) {
+                    sample[HostMetricsService.NETWORK_TX_RATE] = Double.NaN;
+                    sample[HostMetricsService.NETWORK_RX_RATE] = Double.NaN;
+                }
+                samples.add(sample);
+            }
+            in.endArray();
+
+            double[] values = new double[samples.size() * WIDTH];
+            for (int i = 0; i < samples.size(); i++) {
+                System.arraycopy(samples.get(i), 0, values, i * WIDTH, WIDTH);
+            }
+            return new NetworkHistory(name, ip, SampleRing.Snapshot.of(values, WIDTH));
+        }
+    }
+}
@@ -1,9 +0,0 @@
-package com.ftpix.homedash.plugins.networkmonitor.models;
-
-/**
- * Created by gz on 01-Jul-16.
- */
-public class NetworkInfo {
-    public String name, ip, readableUp, readableDown, readableTotalUp, readableTotalDown;
-    public long up, down, totalUp, totalDown, time;
-}
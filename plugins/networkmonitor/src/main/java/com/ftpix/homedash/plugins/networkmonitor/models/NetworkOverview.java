@@ -0,0 +1,14 @@
+package com.ftpix.homedash.plugins.networkmonitor.models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Full screen data: every interface matching the filters, their sum, the busiest ones and the histories of the ones picked
+ */
+public class NetworkOverview {
+    public InterfaceRates aggregate = new InterfaceRates("All");
+    public List<InterfaceRates> interfaces = new ArrayList<>();
+    public List<InterfaceRates> topTalkers = new ArrayList<>();
+    public List<NetworkHistory> histories = new ArrayList<>();
+}
@@ -0,0 +1,58 @@
+package com.ftpix.homedash.plugins.networkmonitor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InterfaceFilterTest {
+
+    @Test
+    public void testEmpty() {
+        InterfaceFilter filter = new InterfaceFilter(null, "");
+        assertTrue(filter.matches("eth0"));
+        assertTrue(filter.matches("lo"));
+    }
+
+    @Test
+    public void testIncludes() {
+        InterfaceFilter filter = new InterfaceFilter("eth*, br-*", null);
+        assertTrue(filter.matches("eth0"));
+        assertTrue(filter.matches("br-1a2b3c"));
+        assertFalse(filter.matches("wlan0"));
+        assertFalse(filter.matches("veth0"));
+    }
+
+    @Test
+    public void testExcludes() {
+        InterfaceFilter filter = new InterfaceFilter(null, "lo, veth*");
+        assertTrue(filter.matches("eth0"));
+        assertFalse(filter.matches("lo"));
+        assertFalse(filter.matches("veth1234"));
+        // whole name only
+        assertTrue(filter.matches("lo0"));
+    }
+
+    @Test
+    public void testExcludeWins() {
+        InterfaceFilter filter = new InterfaceFilter("eth*", "eth1");
+        assertTrue(filter.matches("eth0"));
+        assertFalse(filter.matches("eth1"));
+    }
+
+    @Test
+    public void testSingleCharacterAndCase() {
+        InterfaceFilter filter = new InterfaceFilter("ETH?", null);
+        assertTrue(filter.matches("eth0"));
+        assertFalse(filter.matches("eth10"));
+    }
+
+    @Test
+    public void testRegexCharactersAreLiteral() {
+        InterfaceFilter filter = new InterfaceFilter("br.0, [a]", null);
+        assertTrue(filter.matches("br.0"));
+        assertFalse(filter.matches("br-0"));
+        assertTrue(filter.matches("[a]"));
+        assertFalse(filter.matches("a"));
+    }
+}
@@ -0,0 +1,26 @@
+package com.ftpix.homedash.plugins.networkmonitor;
+
+import com.ftpix.homedash.Utils.SampleRing;
+import com.ftpix.homedash.plugins.networkmonitor.models.NetworkHistory;
+import com.google.gson.Gson;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class NetworkHistoryTest {
+    private final Gson gson = new Gson();
+
+    @Test
+    public void testReadWrite() {
+        // time, rx bytes, tx bytes, rx rate, tx rate, and the columns not sent
+        SampleRing samples = new SampleRing(10, 9);
+        // no speed for the first sample
+        samples.add(new double[]{1000, 5000, 2000, Double.NaN, Double.NaN, 0, 0, 0, 0});
+        samples.add(new double[]{2000, 15000, 2500, 10000, 500, 0, 0, 0, 0});
+
+        String json = gson.toJson(new NetworkHistory("eth0", "192.168.1.2", samples.last(10)));
+        NetworkHistory read = gson.fromJson(json, NetworkHistory.class);
+
+        assertEquals(json, gson.toJson(read));
+    }
+}
@@ -5,6 +5,8 @@ function systeminfo(moduleId) {
     this.cpuHistory = [];
     this.ramHistory = [];
     this.width = 1;
+    this.historyHours = '24';
+    this.historyRefresh = undefined;
 
     this.onConnect = function () {
 
@@ -21,6 +23,13 @@ function systeminfo(moduleId) {
                 $(this).addClass('selected');
                 sendMessage(self.moduleId, 'sort', $(this).attr('data-sort'));
             });
+
+            root.on('click', '.ranges .btn', function (event) {
+                root.find('.ranges .btn').removeClass('selected');
+                $(this).addClass('selected');
+                self.historyHours = $(this).attr('data-hours');
+                sendMessage(self.moduleId, 'history', self.historyHours);
+            });
         }
     };
 
@@ -51,6 +60,22 @@ function systeminfo(moduleId) {
     this.onMessage_fullScreen = function (command, message, extra) {
         var root = rootElement(this.moduleId);
 
+        if (command === 'history') {
+            this.showHistory(message);
+            return;
+        } else if (command !== 'refresh') {
+            return;
+        }
+
+        // the long history changes slowly, asked again every minute
+        if (this.historyRefresh === undefined) {
+            var self = this;
+            sendMessage(this.moduleId, 'history', this.historyHours);
+            this.historyRefresh = setInterval(function () {
+                sendMessage(self.moduleId, 'history', self.historyHours);
+            }, 60000);
+        }
+
         this.cpuHistory = message.cpuInfo;
         this.ramHistory = message.ramInfo;
 
@@ -81,6 +106,18 @@ function systeminfo(moduleId) {
         root.find('.processes table tbody').html(this.buildProcessTableBody(os.processes));
     };
 
+    this.showHistory = function (points) {
+        var root = rootElement(this.moduleId);
+
+        var cpu = historyPaths(points, 0, 100);
+        root.find('.cpu-history .band').attr('d', cpu.band);
+        root.find('.cpu-history .line').attr('d', cpu.line);
+
+        var ram = historyPaths(points, 1, 100);
+        root.find('.ram-history .band').attr('d', ram.band);
+        root.find('.ram-history .line').attr('d', ram.line);
+    };
+
     this.processData = function (obj) {
 
         var root = rootElement(this.moduleId);
@@ -1,33 +1,35 @@
 package com.ftpix.homedash.plugins;
 
+import com.ftpix.homedash.Utils.SampleRing;
+import com.ftpix.homedash.metrics.HostMetricsService;
 import com.ftpix.homedash.models.Module;
 import com.ftpix.homedash.models.ModuleExposedData;
 import com.ftpix.homedash.models.ModuleLayout;
 import com.ftpix.homedash.models.WebSocketMessage;
-import com.ftpix.homedash.plugins.models.CpuInfo;
+import com.ftpix.homedash.plugins.models.CpuHistory;
 import com.ftpix.homedash.plugins.models.HardwareInfo;
 import com.ftpix.homedash.plugins.models.OsInfo;
 import com.ftpix.homedash.plugins.models.Process;
-import com.ftpix.homedash.plugins.models.RamInfo;
+import com.ftpix.homedash.plugins.models.RamHistory;
 import com.ftpix.homedash.plugins.models.SystemInfoData;
+import com.ftpix.homedash.timeseries.Series;
+import com.ftpix.homedash.timeseries.Tier;
+import com.ftpix.homedash.timeseries.TimeSeriesStore;
+
+import java.io.IOException;
 
 import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.function.Consumer;
-import java.util.function.Function;
-import java.util.stream.Collectors;
-import java.util.stream.DoubleStream;
-import java.util.stream.Stream;
+import java.util.PriorityQueue;
 
 import oshi.SystemInfo;
 import oshi.hardware.CentralProcessor;
-import oshi.hardware.GlobalMemory;
 import oshi.hardware.Sensors;
 import oshi.software.os.OSProcess;
 import oshi.software.os.OperatingSystem;
@@ -35,21 +37,44 @@ import oshi.software.os.OperatingSystem;
 public class SystemInfoPlugin extends Plugin {
 
     private static final int PROCESS_LIST_SIZE = 50;
-    private List<CpuInfo> cpuInfo = new LinkedList<>();
-    private List<RamInfo> ramInfo = new LinkedList<>();
+
+    /**
+     * The cpu and memory are sampled by the service shared with the other modules, only the sensors are read here
+     */
+    private HostMetricsService.Subscription subscription;
+    private volatile SampleRing sensorsHistory;
+    private double[] sensorsSample;
+    private int fans;
+
+    /**
+     * Long history of the cpu and ram usage, shared with the other system info modules
+     */
+    private Series history;
+
     private HardwareInfo hardwareInfo = new HardwareInfo();
-    private OsInfo osInfo = new OsInfo();
-    private Map<Integer, Process> processes = new HashMap<>();
+    /**
+     * Replaced when the settings change, each full screen refresh sends a copy with its own process list
+     */
+    private volatile OsInfo osInfo = new OsInfo();
+    /**
+     * Replaced by the background refresh, only while someone looks at the full screen view
+     */
+    private volatile Map<Integer, Process> processes = Collections.emptyMap();
+    private volatile boolean fullScreenClients = false;
+    private int samples = 0;
 
-    private final int MAX_INFO_SIZE = 100, WARNING_THRESHOLD = 90;
-    private final String SETTING_NOTIFICATIONS = "notifications", COMMAND_SORT = "sort";
+    private final int RESOLUTION = 3, MAX_INFO_SIZE = 100, SMALL_INFO_SIZE = 50, WARNING_THRESHOLD = 90, SENSORS_RATE = 5;
+    private final String SETTING_NOTIFICATIONS = "notifications", COMMAND_SORT = "sort", COMMAND_HISTORY = "history", HISTORY_SERIES = "host";
+    private final int HISTORY_CPU = 0, HISTORY_RAM = 1;
     private final DecimalFormat nf = new DecimalFormat("#,###,###,##0.00");
     private final SystemInfo systemInfo = new SystemInfo();
 
+    private final HostMetricsService metrics = HostMetricsService.INSTANCE;
+
     private long processLastCheck = System.currentTimeMillis();
 
-    private Sort sorting = Sort.CPU;
-    private boolean sortAlternate = false;
+    private volatile Sort sorting = Sort.CPU;
+    private volatile boolean sortAlternate = false;
 
     public SystemInfoPlugin() {
 
@@ -92,11 +117,45 @@ public class SystemInfoPlugin extends Plugin {
         hardwareInfo.vendor = processor.getVendor();
 
         OperatingSystem os = systemInfo.getOperatingSystem();
-        osInfo.family = os.getFamily();
-        osInfo.manufacturer = os.getManufacturer();
-        osInfo.version = os.getVersion().getVersion();
-        osInfo.build = os.getVersion().getBuildNumber();
-        osInfo.codename = os.getVersion().getCodeName();
+        OsInfo info = new OsInfo();
+        info.family = os.getFamily();
+        info.manufacturer = os.getManufacturer();
+        info.version = os.getVersion().getVersion();
+        info.build = os.getVersion().getBuildNumber();
+        info.codename = os.getVersion().getCodeName();
+        osInfo = info;
+
+        if (subscription == null) {
+            try {
+                fans = systemInfo.getHardware().getSensors().getFanSpeeds().length;
+            } catch (Exception e) {
+                logger().error("Couldn't read fans", e);
+            }
+
+            sensorsSample = new double[CpuHistory.width(fans)];
+            sensorsHistory = new SampleRing(MAX_INFO_SIZE / SENSORS_RATE + 1, sensorsSample.length);
+            subscription = metrics.subscribe(RESOLUTION, HostMetricsService.Metric.CPU, HostMetricsService.Metric.MEMORY);
+        }
+
+        if (history == null) {
+            try {
+                history = TimeSeriesStore.INSTANCE.getSeries(HISTORY_SERIES, 2);
+            } catch (IOException e) {
+                logger().error("Couldn't open the cpu and ram history", e);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (subscription != null) {
+            subscription.close();
+            subscription = null;
+        }
+        if (history != null) {
+            TimeSeriesStore.INSTANCE.release(history);
+            history = null;
+        }
     }
 
     @Override
@@ -106,12 +165,12 @@ public class SystemInfoPlugin extends Plugin {
 
     @Override
     public int getBackgroundRefreshRate() {
-        return ONE_SECOND * 3;
+        return ONE_SECOND * RESOLUTION;
     }
 
     @Override
     public int getRefreshRate(String size) {
-        return ONE_SECOND * 3;
+        return ONE_SECOND * RESOLUTION;
     }
 
     @Override
@@ -139,38 +198,59 @@ public class SystemInfoPlugin extends Plugin {
 
     }
 
+    @Override
+    protected void onFirstClientConnect(String size) {
+        if (size.equalsIgnoreCase(ModuleLayout.FULL_SCREEN)) {
+            fullScreenClients = true;
+        }
+    }
+
+    @Override
+    protected void onLastClientDisconnect(String size) {
+        if (size.equalsIgnoreCase(ModuleLayout.FULL_SCREEN)) {
+            fullScreenClients = false;
+        }
+    }
+
     @Override
     public void doInBackground() {
+        if (sensorsHistory == null) {
+            return;
+        }
+
         try {
-            CpuInfo cpu = getCPUInfo();
-            RamInfo ram = getRamInfo();
+            hardwareInfo.uptime = systemInfo.getHardware().getProcessor().getSystemUptime();
 
+            // the sensors are slower to read and change slowly
+            if (samples++ % SENSORS_RATE == 0) {
+                sensorsHistory.add(readSensors());
+            }
+
+            SampleRing.Snapshot cpu = metrics.getCpu(RESOLUTION, 2);
+            SampleRing.Snapshot ram = metrics.getMemory(RESOLUTION, 2);
+            if (history != null && cpu != null && !cpu.isEmpty() && ram != null && !ram.isEmpty()) {
+                int last = cpu.size() - 1;
+                history.append(cpu.getLong(last, HostMetricsService.TIME), cpu.get(last, HostMetricsService.CPU_USAGE), ramPercentage(ram, ram.size() - 1));
+            }
 
-            if (settings.containsKey(SETTING_NOTIFICATIONS) && cpuInfo.size() > 0 && ramInfo.size() > 0) {
-                CpuInfo oldCpu = cpuInfo.get(cpuInfo.size() - 1);
-                RamInfo oldRam = ramInfo.get(ramInfo.size() - 1);
+            if (settings.containsKey(SETTING_NOTIFICATIONS) && cpu != null && cpu.size() == 2 && ram != null && ram.size() == 2) {
+                double oldCpu = cpu.get(0, HostMetricsService.CPU_USAGE), newCpu = cpu.get(1, HostMetricsService.CPU_USAGE);
+                double oldRam = ramPercentage(ram, 0), newRam = ramPercentage(ram, 1);
 
-                if ((oldCpu.cpuUsage < WARNING_THRESHOLD && cpu.cpuUsage >= WARNING_THRESHOLD) || (oldRam.percentageUsed < WARNING_THRESHOLD && ram.percentageUsed >= WARNING_THRESHOLD)) {
+                if ((oldCpu < WARNING_THRESHOLD && newCpu >= WARNING_THRESHOLD) || (oldRam < WARNING_THRESHOLD && newRam >= WARNING_THRESHOLD)) {
                     logger().debug("Sending high load warning");
                     //Notifications.send("Warning",
                     //		"CPU load (" + nf.format(cpu.cpuUsage) + "%) or Ram load (" + nf.format(ram.percentageUsed) + "%)  became over " + WARNING_THRESHOLD + "%.\n Date: " + new Date());
                 }
             }
 
-            logger().info("CPU load:{}%, RAM load:{}%", cpu.cpuUsage, ram.percentageUsed);
-            cpuInfo.add(cpu);
-            ramInfo.add(ram);
-
-            if (cpuInfo.size() > MAX_INFO_SIZE) {
-                cpuInfo.remove(0);
-            }
-
-            if (ramInfo.size() > MAX_INFO_SIZE) {
-                ramInfo.remove(0);
+            // the process list is the expensive part, only the full screen view shows it
+            if (fullScreenClients) {
+                mapProcesses();
+            } else if (!processes.isEmpty()) {
+                processes = Collections.emptyMap();
             }
 
-            mapProcesses();
-
         } catch (Exception e) {
             logger().error("[SystemInfo] Error while getting system info", e);
         }
@@ -193,6 +273,16 @@ public class SystemInfoPlugin extends Plugin {
                 webSocketMessage.setCommand(command);
                 webSocketMessage.setMessage(message);
                 break;
+            case COMMAND_HISTORY:
+                if (history != null) {
+                    // message: number of hours to show
+                    long range = Long.parseLong(message) * ONE_HOUR * 1000;
+                    Tier tier = Tier.forRange(range, RESOLUTION * 1000);
+                    webSocketMessage.setCommand(command);
+                    webSocketMessage.setMessage(history.read(tier, System.currentTimeMillis() - range));
+                    return webSocketMessage;
+                }
+                break;
         }
 
         return new WebSocketMessage();
@@ -203,30 +293,20 @@ public class SystemInfoPlugin extends Plugin {
     protected Object refresh(String size) throws Exception {
         SystemInfoData data = new SystemInfoData();
 
-        if (cpuInfo.size() > 0 && ramInfo.size() > 0) {
-            data.cpuInfo = this.cpuInfo;
-            data.ramInfo = this.ramInfo;
+        // the small module draws its graphs on half the width
+        int historySize = size.equalsIgnoreCase(ModuleLayout.SIZE_1x1) ? SMALL_INFO_SIZE : MAX_INFO_SIZE;
+        SampleRing.Snapshot cpu = metrics.getCpu(RESOLUTION, historySize);
+        SampleRing.Snapshot ram = metrics.getMemory(RESOLUTION, historySize);
+        if (cpu != null && !cpu.isEmpty() && ram != null && !ram.isEmpty()) {
+            data.cpuInfo = new CpuHistory(cpu, sensorsHistory.last(historySize / SENSORS_RATE + 1));
+            data.ramInfo = new RamHistory(ram);
         }
 
         if (size.equalsIgnoreCase(ModuleLayout.FULL_SCREEN)) {
             data.hardwareInfo = hardwareInfo;
 
-            data.osInfo = osInfo;
-
-            Stream<Process> processStream = processes.values().stream();
-
-            if (sortAlternate) {
-                processStream = processStream.sorted(sorting.getComparator().reversed());
-            } else {
-                processStream = processStream.sorted(sorting.getComparator());
-            }
-
-            osInfo.processes = processStream
-                    //.limit(PROCESS_LIST_SIZE)
-                    .collect(Collectors.toList());
-
-
-            System.out.println(processes.values().stream().mapToDouble(p -> p.cpuUsage).sum() + "%");
+            Comparator<Process> order = sortAlternate ? sorting.getComparator().reversed() : sorting.getComparator();
+            data.osInfo = withProcesses(osInfo, top(processes.values(), order, PROCESS_LIST_SIZE));
         }
 
         return data;
@@ -244,105 +324,100 @@ public class SystemInfoPlugin extends Plugin {
      * Map from OSHI processes and calculate CPU time;
      */
     public void mapProcesses() {
+        final long current = System.currentTimeMillis();
+        final long timeDiff = current - processLastCheck;
+        processLastCheck = current;
+
+        // not sorted by OSHI, only the processes sent are sorted
+        OSProcess[] running = systemInfo.getOperatingSystem().getProcesses(0, null);
 
-        Function<OSProcess, Process> mapProcess = (osp) -> {
+        Map<Integer, Process> previous = processes;
+        Map<Integer, Process> mapped = new HashMap<>(running.length * 2);
+        for (OSProcess osp : running) {
             Process p = new Process();
             p.memory = osp.getResidentSetSize();
             p.name = osp.getName();
             p.pid = osp.getProcessID();
             p.cpuTime = osp.getKernelTime() + osp.getUserTime();
 
-            return p;
-        };
-
-        final long current = System.currentTimeMillis();
-        final long timeDiff = current - processLastCheck;
-        processLastCheck = current;
-
-        Consumer<Process> calculateCpuUsage = p -> {
-
-            if (!processes.containsKey(p.pid)) {
-                //It's the first time we're seeing this process, can't calculate a we need historical data.
-                processes.put(p.pid, p);
-            } else {
-                //We calculate the CPU usage by checking how much cpu time it took within the last x seconds
-                Process old = processes.get(p.pid);
+            //We calculate the CPU usage by checking how much cpu time it took within the last x seconds
+            //If it's the first time we're seeing this process, it's the average since it started
+            Process old = previous.get(p.pid);
+            if (old != null) {
                 long diff = p.cpuTime - old.cpuTime;
-
-
                 p.cpuUsage = ((double) diff / (double) timeDiff) * 100;
-                processes.put(p.pid, p);
+            } else if (osp.getUpTime() > 0) {
+                p.cpuUsage = ((double) p.cpuTime / (double) osp.getUpTime()) * 100;
             }
 
-        };
-
-        OSProcess[] running = systemInfo.getOperatingSystem().getProcesses(Integer.MAX_VALUE, OperatingSystem.ProcessSort.CPU);
-
-
-        Stream.of(running)
-                .map(mapProcess)
-                .forEach(calculateCpuUsage);
-
-        Set<Integer> idList = Stream.of(running)
-                .mapToInt(OSProcess::getProcessID)
-                .boxed()
-                .collect(Collectors.toSet());
-
-        //cleaning list of process that no longer exist.
-
-        new HashSet<Integer>(processes.keySet()).stream()
-                .filter(id -> !idList.contains(id))
-                .forEach(id -> {
-                    processes.remove(id);
-                });
+            mapped.put(p.pid, p);
+        }
 
+        // the processes that no longer exist are left behind with the previous map
+        processes = mapped;
     }
 
-
     /**
-     * Getting data
+     * Copy of the os info with a process list, so the list of a refresh being sent is never replaced
      */
-    public CpuInfo getCPUInfo() {
-
-        CentralProcessor processor = systemInfo.getHardware().getProcessor();
-        Sensors sensors = systemInfo.getHardware().getSensors();
-
-        CpuInfo info = new CpuInfo();
+    static OsInfo withProcesses(OsInfo info, List<Process> processes) {
+        OsInfo copy = new OsInfo();
+        copy.family = info.family;
+        copy.manufacturer = info.manufacturer;
+        copy.version = info.version;
+        copy.build = info.build;
+        copy.codename = info.codename;
+        copy.processes = processes;
+        return copy;
+    }
 
-        info.cpuUsage = Math.ceil(processor.getSystemCpuLoad() * 100);
+    /**
+     * First processes in the given order, keeps a heap of the processes wanted instead of sorting all of them
+     */
+    static List<Process> top(Collection<Process> processes, Comparator<Process> order, int count) {
+        if (count <= 0) {
+            return new ArrayList<>();
+        }
 
+        // the root of the heap is the last process kept so far
+        PriorityQueue<Process> heap = new PriorityQueue<>(count + 1, order.reversed());
+        for (Process process : processes) {
+            if (heap.size() < count) {
+                heap.add(process);
+            } else if (order.compare(process, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(process);
+            }
+        }
 
-       info.coreUsage =  DoubleStream.of(processor.getProcessorCpuLoadBetweenTicks()).map(d ->  Math.ceil(d * 100)).toArray();
+        List<Process> top = new ArrayList<>(heap);
+        top.sort(order);
+        return top;
+    }
 
-        hardwareInfo.uptime = processor.getSystemUptime();
 
+    /**
+     * Reads the temperature, voltage and fans, the sample is reused at every call and copied by the history
+     */
+    private double[] readSensors() {
+        double[] info = sensorsSample;
+        info[CpuHistory.TIME] = System.currentTimeMillis();
         try {
-            info.fanSpeed = sensors.getFanSpeeds();
-            info.temperature = sensors.getCpuTemperature();
-            info.voltage = sensors.getCpuVoltage();
+            Sensors sensors = systemInfo.getHardware().getSensors();
+            int[] fanSpeed = sensors.getFanSpeeds();
+            for (int i = 0; i < fans; i++) {
+                info[CpuHistory.FANS + i] = i < fanSpeed.length ? fanSpeed[i] : 0;
+            }
+            info[CpuHistory.TEMPERATURE] = sensors.getCpuTemperature();
+            info[CpuHistory.VOLTAGE] = sensors.getCpuVoltage();
         } catch (Exception e) {
             logger().error("Couldn't read sensors", e);
         }
-
         return info;
     }
 
-    public RamInfo getRamInfo() {
-        RamInfo info = new RamInfo();
-
-
-        GlobalMemory memory = systemInfo.getHardware().getMemory();
-
-
-        info.maxRam = memory.getTotal();
-
-        info.availableRam = memory.getAvailable();
-
-        info.usedRam = info.maxRam - info.availableRam;
-
-        info.percentageUsed = Math.ceil((info.usedRam / info.maxRam) * 100);
-
-        return info;
+    private double ramPercentage(SampleRing.Snapshot ram, int sample) {
+        return RamHistory.percentage(ram.get(sample, HostMetricsService.MEMORY_USED), ram.get(sample, HostMetricsService.MEMORY_TOTAL));
     }
 
     private enum Sort {
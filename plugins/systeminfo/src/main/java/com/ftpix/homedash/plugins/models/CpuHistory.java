@@ -0,0 +1,169 @@
+package com.ftpix.homedash.plugins.models;
+
+import com.ftpix.homedash.Utils.SampleRing;
+import com.ftpix.homedash.metrics.HostMetricsService;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cpu samples of the {@link HostMetricsService} with the closest sensors sample, sent as the array of objects the page expects:
+ * {cpuUsage, temperature, voltage, fanSpeed[], coreUsage[]}
+ */
+@JsonAdapter(CpuHistory.Adapter.class)
+public class CpuHistory {
+    /**
+     * Columns of the sensors samples, read less often than the cpu usage
+     */
+    public static final int TIME = 0, TEMPERATURE = 1, VOLTAGE = 2, FANS = 3;
+
+    private final SampleRing.Snapshot cpu, sensors;
+
+    public CpuHistory(SampleRing.Snapshot cpu, SampleRing.Snapshot sensors) {
+        this.cpu = cpu;
+        this.sensors = sensors;
+    }
+
+    /**
+     * Width of a sensors sample with the given number of fans
+     */
+    public static int width(int fans) {
+        return FANS + fans;
+    }
+
+    public static class Adapter extends TypeAdapter<CpuHistory> {
+        @Override
+        public void write(JsonWriter out, CpuHistory history) throws IOException {
+            if (history == null) {
+                out.nullValue();
+                return;
+            }
+
+            SampleRing.Snapshot cpu = history.cpu, sensors = history.sensors;
+            int cores = cpu.getWidth() - HostMetricsService.CPU_CORES;
+            int fans = sensors.getWidth() - FANS;
+
+            // both are sorted by time, the sensors sample used is the last one taken before the cpu sample
+            int sensor = 0;
+            out.beginArray();
+            for (int i = 0; i < cpu.size(); i++) {
+                double time = cpu.get(i, HostMetricsService.TIME);
+                while (sensor + 1 < sensors.size() && sensors.get(sensor + 1, TIME) <= time) {
+                    sensor++;
+                }
+                boolean hasSensors = !sensors.isEmpty();
+
+                out.beginObject();
+                out.name("cpuUsage").value(Math.ceil(cpu.get(i, HostMetricsService.CPU_USAGE)));
+                out.name("temperature").value(hasSensors ? sensors.get(sensor, TEMPERATURE) : 0);
+                out.name("voltage").value(hasSensors ? sensors.get(sensor, VOLTAGE) : 0);
+
+                out.name("fanSpeed").beginArray();
+                for (int fan = 0; fan < fans && hasSensors; fan++) {
+                    out.value(sensors.getLong(sensor, FANS + fan));
+                }
+                out.endArray();
+
+                out.name("coreUsage").beginArray();
+                for (int core = 0; core < cores; core++) {
+                    out.value(Math.ceil(cpu.get(i, HostMetricsService.CPU_CORES + core)));
+                }
+                out.endArray();
+                out.endObject();
+            }
+            out.endArray();
+        }
+
+        /**
+         * The times aren't sent, the samples read get their index as time with one sensors sample each
+         */
+        @Override
+        public CpuHistory read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            List<double[]> cpu = new ArrayList<>(), sensors = new ArrayList<>();
+            int cores = 0, fans = 0;
+            in.beginArray();
+            while (in.hasNext()) {
+                double usage = 0, temperature = 0, voltage = 0;
+                List<Double> fanSpeeds = new ArrayList<>(), coreUsages = new ArrayList<>();
+
+                in.beginObject();
+                while (in.hasNext()) {
+                    switch (in.nextName()) {
+                        case "cpuUsage":
+                            usage = in.nextDouble();
+                            break;
+                        case "temperature":
+                            temperature = in.nextDouble();
+                            break;
+                        case "voltage":
+                            voltage = in.nextDouble();
+                            break;
+                        case "fanSpeed":
+                            readValues(in, fanSpeeds);
+                            break;
+                        case "coreUsage":
+                            readValues(in, coreUsages);
+                            break;
+                        default:
+                            in.skipValue();
+                    }
+                }
+                in.endObject();
+
+                int time = cpu.size();
+                cores = Math.max(cores, coreUsages.size());
+                fans = Math.max(fans, fanSpeeds.size());
+
+                double[] cpuSample = new double[HostMetricsService.CPU_CORES + coreUsages.size()];
+                cpuSample[HostMetricsService.TIME] = time;
+                cpuSample[HostMetricsService.CPU_USAGE] = usage;
+                for (int core = 0; core < coreUsages.size(); core++) {
+                    cpuSample[HostMetricsService.CPU_CORES + core] = coreUsages.get(core);
+                }
+                cpu.add(cpuSample);
+
+                double[] sensorsSample = new double[FANS + fanSpeeds.size()];
+                sensorsSample[TIME] = time;
+                sensorsSample[TEMPERATURE] = temperature;
+                sensorsSample[VOLTAGE] = voltage;
+                for (int fan = 0; fan < fanSpeeds.size(); fan++) {
+                    sensorsSample[FANS + fan] = fanSpeeds.get(fan);
+                }
+                sensors.add(sensorsSample);
+            }
+            in.endArray();
+
+            return new CpuHistory(toSnapshot(cpu, HostMetricsService.CPU_CORES + cores), toSnapshot(sensors, width(fans)));
+        }
+
+        private static void readValues(JsonReader in, List<Double> values) throws IOException {
+            in.beginArray();
+            while (in.hasNext()) {
+                values.add(in.nextDouble());
+            }
+            in.endArray();
+        }
+
+        /**
+         * Samples one after the other, the missing values of the shorter ones are 0
+         */
+        private static SampleRing.Snapshot toSnapshot(List<double[]> samples, int width) {
+            double[] values = new double[samples.size() * width];
+            for (int i = 0; i < samples.size(); i++) {
+                System.arraycopy(samples.get(i), 0, values, i * width, samples.get(i).length);
+            }
+            return SampleRing.Snapshot.of(values, width);
+        }
+    }
+}
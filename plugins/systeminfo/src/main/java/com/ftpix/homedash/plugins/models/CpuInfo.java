@@ -1,8 +0,0 @@
-package com.ftpix.homedash.plugins.models;
-
-public class CpuInfo {
-    public double cpuUsage = 0;
-    public double temperature = 0, voltage = 0;
-    public int[] fanSpeed;
-    public double[] coreUsage;
-}
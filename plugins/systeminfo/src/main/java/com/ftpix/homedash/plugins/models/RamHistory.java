@@ -0,0 +1,106 @@
+package com.ftpix.homedash.plugins.models;
+
+import com.ftpix.homedash.Utils.SampleRing;
+import com.ftpix.homedash.metrics.HostMetricsService;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Memory samples of the {@link HostMetricsService}, sent as {maxRam, availableRam, usedRam, percentageUsed} objects
+ */
+@JsonAdapter(RamHistory.Adapter.class)
+public class RamHistory {
+    /**
+     * Columns of the samples read back, up to the memory used
+     */
+    private static final int WIDTH = HostMetricsService.MEMORY_USED + 1;
+
+    private final SampleRing.Snapshot samples;
+
+    public RamHistory(SampleRing.Snapshot samples) {
+        this.samples = samples;
+    }
+
+    /**
+     * Percentage of the memory used, rounded up
+     */
+    public static double percentage(double used, double total) {
+        return total > 0 ? Math.ceil(used / total * 100) : 0;
+    }
+
+    public static class Adapter extends TypeAdapter<RamHistory> {
+        @Override
+        public void write(JsonWriter out, RamHistory ram) throws IOException {
+            if (ram == null) {
+                out.nullValue();
+                return;
+            }
+
+            SampleRing.Snapshot samples = ram.samples;
+            out.beginArray();
+            for (int i = 0; i < samples.size(); i++) {
+                double total = samples.get(i, HostMetricsService.MEMORY_TOTAL);
+                double used = samples.get(i, HostMetricsService.MEMORY_USED);
+                out.beginObject()
+                        .name("maxRam").value(total)
+                        .name("availableRam").value(samples.get(i, HostMetricsService.MEMORY_AVAILABLE))
+                        .name("usedRam").value(used)
+                        .name("percentageUsed").value(percentage(used, total))
+                        .endObject();
+            }
+            out.endArray();
+        }
+
+        /**
+         * The times aren't sent, the samples read get their index as time
+         */
+        @Override
+        public RamHistory read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            List<double[]> samples = new ArrayList<>();
+            in.beginArray();
+            while (in.hasNext()) {
+                double[] sample = new double[WIDTH];
+                sample[HostMetricsService.TIME] = samples.size();
+
+                in.beginObject();
+                while (in.hasNext()) {
+                    switch (in.nextName()) {
+                        case "maxRam":
+                            sample[HostMetricsService.MEMORY_TOTAL] = in.nextDouble();
+                            break;
+                        case "availableRam":
+                            sample[HostMetricsService.MEMORY_AVAILABLE] = in.nextDouble();
+                            break;
+                        case "usedRam":
+                            sample[HostMetricsService.MEMORY_USED] = in.nextDouble();
+                            break;
+                        default:
+                            // percentageUsed is computed
+                            in.skipValue();
+                    }
+                }
+                in.endObject();
+                samples.add(sample);
+            }
+            in.endArray();
+
+            double[] values = new double[samples.size() * WIDTH];
+            for (int i = 0; i < samples.size(); i++) {
+                System.arraycopy(samples.get(i), 0, values, i * WIDTH, WIDTH);
+            }
+            return new RamHistory(SampleRing.Snapshot.of(values, WIDTH));
+        }
+    }
+}
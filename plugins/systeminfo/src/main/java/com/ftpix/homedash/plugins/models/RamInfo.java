@@ -1,6 +0,0 @@
-package com.ftpix.homedash.plugins.models;
-
-public class RamInfo {
-    public double maxRam, availableRam, usedRam, percentageUsed;
-
-}
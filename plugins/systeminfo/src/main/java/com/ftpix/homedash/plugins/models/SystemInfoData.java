@@ -1,10 +1,8 @@
 package com.ftpix.homedash.plugins.models;
 
-import java.util.List;
-
 public class SystemInfoData {
-    public List<CpuInfo> cpuInfo;
-    public List<RamInfo> ramInfo;
+    public CpuHistory cpuInfo;
+    public RamHistory ramInfo;
     public HardwareInfo hardwareInfo;
     public OsInfo osInfo;
 
@@ -0,0 +1,59 @@
+package com.ftpix.homedash.plugins;
+
+import com.ftpix.homedash.plugins.models.Process;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SystemInfoPluginTest {
+    private static final Comparator<Process> BY_CPU = (p1, p2) -> Double.compare(p2.cpuUsage, p1.cpuUsage);
+    private static final Comparator<Process> BY_PID = Comparator.comparingInt(p -> p.pid);
+
+    @Test
+    public void testTopOrder() {
+        List<Process> processes = Arrays.asList(process(1, 5), process(2, 50), process(3, 0.5), process(4, 20), process(5, 80), process(6, 1));
+
+        assertEquals(Arrays.asList(5, 2, 4), pids(SystemInfoPlugin.top(processes, BY_CPU, 3)));
+        assertEquals(Arrays.asList(3, 6, 1), pids(SystemInfoPlugin.top(processes, BY_CPU.reversed(), 3)));
+        assertEquals(Arrays.asList(1, 2), pids(SystemInfoPlugin.top(processes, BY_PID, 2)));
+    }
+
+    @Test
+    public void testTopTies() {
+        List<Process> processes = Arrays.asList(process(1, 10), process(2, 30), process(3, 10), process(4, 10), process(5, 30));
+
+        List<Process> top = SystemInfoPlugin.top(processes, BY_CPU, 3);
+        assertEquals(Arrays.asList(30.0, 30.0, 10.0), top.stream().map(p -> p.cpuUsage).collect(Collectors.toList()));
+        // one of the processes at 10%
+        assertTrue(Arrays.asList(1, 3, 4).contains(top.get(2).pid));
+        assertEquals(3, top.stream().map(p -> p.pid).distinct().count());
+    }
+
+    @Test
+    public void testTopMoreThanProcesses() {
+        List<Process> processes = Arrays.asList(process(1, 5), process(2, 50), process(3, 20));
+
+        assertEquals(Arrays.asList(2, 3, 1), pids(SystemInfoPlugin.top(processes, BY_CPU, 10)));
+        assertEquals(new ArrayList<>(), SystemInfoPlugin.top(new ArrayList<>(), BY_CPU, 10));
+        assertEquals(new ArrayList<>(), SystemInfoPlugin.top(processes, BY_CPU, 0));
+    }
+
+    private static Process process(int pid, double cpuUsage) {
+        Process process = new Process();
+        process.pid = pid;
+        process.name = "process " + pid;
+        process.cpuUsage = cpuUsage;
+        return process;
+    }
+
+    private static List<Integer> pids(List<Process> processes) {
+        return processes.stream().map(p -> p.pid).collect(Collectors.toList());
+    }
+}
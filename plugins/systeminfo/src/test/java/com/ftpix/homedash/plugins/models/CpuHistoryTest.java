@@ -0,0 +1,38 @@
+package com.ftpix.homedash.plugins.models;
+
+import com.ftpix.homedash.Utils.SampleRing;
+import com.ftpix.homedash.metrics.HostMetricsService;
+import com.google.gson.Gson;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CpuHistoryTest {
+    private final Gson gson = new Gson();
+
+    @Test
+    public void testReadWrite() {
+        // 2 cores, 1 fan
+        SampleRing cpu = new SampleRing(10, HostMetricsService.CPU_CORES + 2);
+        cpu.add(new double[]{1000, 12.5, 10, 15});
+        cpu.add(new double[]{2000, 40, 35, 45});
+        cpu.add(new double[]{3000, 3, 2, 4});
+
+        SampleRing sensors = new SampleRing(10, CpuHistory.width(1));
+        sensors.add(new double[]{1000, 45, 1.2, 1200});
+        sensors.add(new double[]{2500, 50, 1.3, 1500});
+
+        String json = gson.toJson(new CpuHistory(cpu.last(10), sensors.last(10)));
+        CpuHistory read = gson.fromJson(json, CpuHistory.class);
+
+        assertEquals(json, gson.toJson(read));
+    }
+
+    @Test
+    public void testReadEmpty() {
+        CpuHistory read = gson.fromJson("[]", CpuHistory.class);
+        assertEquals("[]", gson.toJson(read));
+        assertNull(gson.fromJson("null", CpuHistory.class));
+    }
+}
@@ -0,0 +1,24 @@
+package com.ftpix.homedash.plugins.models;
+
+import com.ftpix.homedash.Utils.SampleRing;
+import com.google.gson.Gson;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class RamHistoryTest {
+    private final Gson gson = new Gson();
+
+    @Test
+    public void testReadWrite() {
+        // time, total, available, used, swap total, swap used
+        SampleRing ram = new SampleRing(10, 6);
+        ram.add(new double[]{1000, 8e9, 6e9, 2e9, 0, 0});
+        ram.add(new double[]{2000, 8e9, 1e9, 7e9, 0, 0});
+
+        String json = gson.toJson(new RamHistory(ram.last(10)));
+        RamHistory read = gson.fromJson(json, RamHistory.class);
+
+        assertEquals(json, gson.toJson(read));
+    }
+}
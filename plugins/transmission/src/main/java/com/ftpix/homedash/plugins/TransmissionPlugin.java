@@ -1,6 +1,7 @@
 package com.ftpix.homedash.plugins;
 
 import com.ftpix.homedash.Utils.ByteUtils;
+import com.ftpix.homedash.Utils.Json;
 import com.ftpix.homedash.models.ModuleExposedData;
 import com.ftpix.homedash.models.ModuleLayout;
 import com.ftpix.homedash.models.WebSocketMessage;
@@ -27,6 +28,10 @@ import ca.benow.transmission.model.TransmissionSession;
  * Created by gz on 07-Jun-16.
  */
 public class TransmissionPlugin extends Plugin {
+    static {
+        Json.register(TorrentObject.class, TorrentObject.WRITER);
+    }
+
     private TransmissionClient client;
 
 
@@ -209,6 +214,14 @@ public class TransmissionPlugin extends Plugin {
         return result;
     }
 
+    /**
+     * Gets the transmission session id, every first call of a client is refused until it has one
+     */
+    @Override
+    public void warmUp() throws Exception {
+        client.getSession();
+    }
+
     @Override
     protected void onFirstClientConnect() {
 
@@ -1,12 +1,28 @@
 package com.ftpix.homedash.plugins.models;
 
 import ca.benow.transmission.model.TorrentStatus;
+import com.ftpix.homedash.Utils.Json;
 
 /**
  * Created by gz on 07-Jun-16.
  */
 public class TorrentObject {
-
+    /**
+     * Written for every torrent at each refresh
+     */
+    public static final Json.PayloadWriter<TorrentObject> WRITER = (gson, out, torrent) -> out.beginObject()
+            .name("name").value(torrent.name)
+            .name("statusStr").value(torrent.statusStr)
+            .name("downloadSpeed").value(torrent.downloadSpeed)
+            .name("uploadSpeed").value(torrent.uploadSpeed)
+            .name("id").value(torrent.id)
+            .name("status").value(torrent.status)
+            .name("percentDone").value(torrent.percentDone)
+            .name("downloaded").value(torrent.downloaded)
+            .name("uploaded").value(torrent.uploaded)
+            .name("totalSize").value(torrent.totalSize)
+            .name("seedRatioLimit").value(torrent.seedRatioLimit)
+            .endObject();
 
     public String name;
     public String statusStr;
@@ -110,6 +110,10 @@ else
 
     JAVA_PATH=${JAVA_HOME}/bin/java
 
+    if [ -f ${APP}/homedash.jsa ]; then
+        JAVA_OPTS="-XX:SharedArchiveFile=${APP}/homedash.jsa ${JAVA_OPTS}"
+    fi
+
     if [ "${USER}" != "root" ]; then
         echo "Runing su"
         su ${USER} -c "CONFIG='${CONFIG}' ${JAVA_PATH} ${JAVA_OPTS} -Dconfig.file=$CONFIG_FILE -jar homedash.jar"
@@ -4,4 +4,43 @@ $(document).ready(function(){
 
 function rootElement(moduleId) {
     return $('.content.size-full-screen');
-}
\ No newline at end of file
+}
+/**
+ * Draws a column of a long history sent by a module, as svg paths in a 100x100 view box:
+ * the band between the min and max of each point and the line of the averages.
+ * @param points {tier, time: [], min: [[]], max: [[]], avg: [[]]}
+ * @param column index of the value in the history
+ * @param max value at the top of the graph, the highest value when not set
+ * @returns {{band: string, line: string}}
+ */
+function historyPaths(points, column, max) {
+    var times = points.time;
+    var band = [], line = [], lower = [];
+
+    if (max === undefined) {
+        max = 0;
+        $.each(points.max[column], function (index, value) {
+            max = Math.max(max, value || 0);
+        });
+        max = max * 1.1;
+    }
+
+    if (times.length < 2 || max <= 0) {
+        return {band: '', line: ''};
+    }
+
+    var start = times[0], duration = times[times.length - 1] - start;
+    for (var i = 0; i < times.length; i++) {
+        var avg = points.avg[column][i];
+        if (avg === null) {
+            continue;
+        }
+
+        var x = ((times[i] - start) / duration) * 100;
+        line.push(line.length === 0 ? 'M' : ' L', x, ',', 100 - (avg / max) * 100);
+        band.push(band.length === 0 ? 'M' : ' L', x, ',', 100 - (points.max[column][i] / max) * 100);
+        lower.unshift(' L', x, ',', 100 - (points.min[column][i] / max) * 100);
+    }
+
+    return {band: band.concat(lower).join('') + ' Z', line: line.join('')};
+}
@@ -4,33 +4,61 @@
 var ws;
 var singleModuleSize = null;
 
+/*
+ Dashboard session, resumed after a reconnection so the back end only sends what we missed
+ */
+var sessionId = null;
+var lastSeq = 0;
+var resuming = false;
+
+/*
+ Server-sent events fallback, used when the websocket keeps dropping (some proxies and kiosk browsers)
+ or when the page is opened with ?transport=sse
+ */
+var eventSource = null;
+var eventStreamClient = null;
+var shortConnections = 0;
+var TRANSPORT_KEY = 'homedash-transport';
+var MAX_SHORT_CONNECTIONS = 3;
+var SHORT_CONNECTION_MS = 10000;
+
+/*
+ Encodings we can read, offered as websocket subprotocols. The back end sends binary messages (CBOR) when it picks homedash.cbor,
+ ?encoding=json keeps everything in json
+ */
+var ENCODINGS = ['homedash.cbor', 'homedash.json'];
+
 $(document).ready(function () {
 });
 
 
 function initWebsocket() {
     singleModuleSize = null;
+
+    if (useEventStream()) {
+        initEventStream('/events', onDashboardTransportOpen, onMessage);
+        return;
+    }
+
     var protocol = (location.protocol === 'https:') ? 'wss://' : 'ws://';
-    ws = new WebSocket(protocol + window.location.host + '/ws');
+    var openedAt = null;
+    ws = openWebsocket(protocol + window.location.host + '/ws');
     try {
         ws.onmessage = onMessage;
 
         ws.onopen = function (e) {
+            openedAt = Date.now();
             $('#reconnecting-bar').removeClass('showing');
-            for (i = 0; i < MODULES.length; i++) {
-                if (MODULES[i] != null && MODULES[i].onConnect != undefined) {
-                    MODULES[i].onConnect();
-                }
-            }
-            sendMessage(-1, "changePage", PAGE);
-            sendMessage(-1, "changeLayout", LAYOUT.id);
+            onDashboardTransportOpen();
         };
 
         ws.onerror = function (error) {
             console.error('There was an un-identified Web Socket error');
         };
 
-        ws.onclose = showOfflineOverlay;
+        ws.onclose = function () {
+            onWebsocketClosed(openedAt);
+        };
     } catch (e) {
         console.error('Sorry, the web socket at "%s" is un-available error', WS_ADDRESS);
         console.log(e);
@@ -41,43 +69,370 @@ function initWebsocket() {
 function initSingleModuleWebSocket(size) {
     singleModuleSize = size;
 
+    var onSizeMessage = function (event) {
+        onMessageForSize(event, size);
+    };
+
+    if (useEventStream()) {
+        initEventStream('/events/' + size, onSingleModuleConnect, onSizeMessage);
+        return;
+    }
+
     var protocol = (location.protocol === 'https:') ? 'wss://' : 'ws://';
-    ws = new WebSocket(protocol + window.location.host + '/ws-' + size);
+    var openedAt = null;
+    ws = openWebsocket(protocol + window.location.host + '/ws-' + size);
     try {
 
 
-        ws.onmessage = function (event) {
-            onMessageForSize(event, size);
-        }
+        ws.onmessage = onSizeMessage;
 
         ws.onopen = function (e) {
+            openedAt = Date.now();
             $('#reconnecting-bar').removeClass('showing');
-            MODULE.onConnect();
-            MODULE.documentReady(size);
-            sendMessage(MODULE.moduleId, "setModule", "");
-
+            onSingleModuleConnect();
         };
 
         ws.onerror = function (error) {
             console.error('There was an un-identified Web Socket error');
         };
 
-        ws.onclose = showOfflineOverlay;
+        ws.onclose = function () {
+            onWebsocketClosed(openedAt);
+        };
     } catch (e) {
         console.error('Sorry, the web socket at "%s" is un-available error', WS_ADDRESS);
         console.log(e);
     }
 }
 
+/**
+ * Opens a websocket offering the encodings we support
+ */
+function openWebsocket(url) {
+    if (location.search.indexOf('encoding=json') >= 0 || window.ArrayBuffer === undefined) {
+        return new WebSocket(url);
+    }
+
+    var socket = new WebSocket(url, ENCODINGS);
+    socket.binaryType = 'arraybuffer';
+    return socket;
+}
+
+/**
+ * Reads a message from the back end, json text or a binary (CBOR) message
+ */
+function readMessage(data) {
+    if (typeof data === 'string') {
+        return JSON.parse(data);
+    }
+
+    return decodeCbor(data);
+}
+
+/**
+ * Decodes the CBOR sent by the back end (maps, arrays, strings, numbers, booleans and null)
+ *
+ * @param buffer ArrayBuffer of the message
+ */
+function decodeCbor(buffer) {
+    var view = new DataView(buffer);
+    var offset = 0;
+    var BREAK = {};
+
+    function readLength(info) {
+        var value;
+        if (info < 24) {
+            return info;
+        }
+        switch (info) {
+            case 24:
+                value = view.getUint8(offset);
+                offset += 1;
+                return value;
+            case 25:
+                value = view.getUint16(offset);
+                offset += 2;
+                return value;
+            case 26:
+                value = view.getUint32(offset);
+                offset += 4;
+                return value;
+            case 27:
+                value = view.getUint32(offset) * 4294967296 + view.getUint32(offset + 4);
+                offset += 8;
+                return value;
+            case 31:
+                return -1;
+            default:
+                throw new Error('Invalid CBOR length ' + info);
+        }
+    }
+
+    function readText(length) {
+        var bytes = new Uint8Array(buffer, offset, length);
+        offset += length;
+
+        if (window.TextDecoder !== undefined) {
+            return new TextDecoder('utf-8').decode(bytes);
+        }
+
+        var encoded = '';
+        for (var i = 0; i < bytes.length; i++) {
+            encoded += '%' + ('0' + bytes[i].toString(16)).slice(-2);
+        }
+        return decodeURIComponent(encoded);
+    }
+
+    function readHalf() {
+        var half = view.getUint16(offset);
+        offset += 2;
+        var exponent = (half & 0x7c00) >> 10;
+        var fraction = half & 0x03ff;
+        var sign = half & 0x8000 ? -1 : 1;
+        if (exponent === 0) {
+            return sign * Math.pow(2, -14) * (fraction / 1024);
+        } else if (exponent === 31) {
+            return fraction ? NaN : sign * Infinity;
+        }
+        return sign * Math.pow(2, exponent - 15) * (1 + fraction / 1024);
+    }
+
+    function readItem() {
+        var initial = view.getUint8(offset++);
+        var major = initial >> 5;
+        var info = initial & 0x1f;
+        var value, length, i, key, item;
+
+        if (major === 7) {
+            switch (info) {
+                case 20:
+                    return false;
+                case 21:
+                    return true;
+                case 22:
+                case 23:
+                    return null;
+                case 25:
+                    return readHalf();
+                case 26:
+                    value = view.getFloat32(offset);
+                    offset += 4;
+                    return value;
+                case 27:
+                    value = view.getFloat64(offset);
+                    offset += 8;
+                    return value;
+                case 31:
+                    return BREAK;
+                default:
+                    return null;
+            }
+        }
+
+        length = readLength(info);
+        switch (major) {
+            case 0:
+                return length;
+            case 1:
+                return -1 - length;
+            case 2:
+                value = new Uint8Array(buffer.slice(offset, offset + length));
+                offset += length;
+                return value;
+            case 3:
+                if (length < 0) {
+                    value = '';
+                    while ((item = readItem()) !== BREAK) {
+                        value += item;
+                    }
+                    return value;
+                }
+                return readText(length);
+            case 4:
+                value = [];
+                for (i = 0; length < 0 || i < length; i++) {
+                    item = readItem();
+                    if (item === BREAK) {
+                        break;
+                    }
+                    value.push(item);
+                }
+                return value;
+            case 5:
+                value = {};
+                for (i = 0; length < 0 || i < length; i++) {
+                    key = readItem();
+                    if (key === BREAK) {
+                        break;
+                    }
+                    value[key] = readItem();
+                }
+                return value;
+            case 6:
+                // tags are ignored
+                return readItem();
+        }
+    }
+
+    return readItem();
+}
+
+/**
+ * Connected to the back end, resuming our session if we had one
+ */
+function onDashboardTransportOpen() {
+    if (sessionId !== null) {
+        resuming = true;
+        sendMessage(-1, "resume", {session: sessionId, seq: lastSeq});
+    } else {
+        onDashboardConnect();
+    }
+}
+
+/**
+ * Session messages from the back end
+ *
+ * @return true if the message was about the session
+ */
+function onSessionMessage(json) {
+    if (json.seq !== undefined) {
+        // never going back, a late message doesn't mean we missed the ones after it
+        lastSeq = Math.max(lastSeq, json.seq);
+    }
+
+    switch (json.command) {
+        case 'session':
+            sessionId = json.message;
+            // the numbers of a new session start over
+            lastSeq = 0;
+            if (resuming) {
+                // our session was over, starting from scratch
+                resuming = false;
+                onDashboardConnect();
+            }
+            return true;
+        case 'resumed':
+            resuming = false;
+            return true;
+        default:
+            return false;
+    }
+}
+
+/**
+ * New session, telling the back end what we display
+ */
+function onDashboardConnect() {
+    for (i = 0; i < MODULES.length; i++) {
+        if (MODULES[i] != null && MODULES[i].onConnect != undefined) {
+            MODULES[i].onConnect();
+        }
+    }
+    sendMessage(-1, "changePage", PAGE);
+    sendMessage(-1, "changeLayout", LAYOUT.id);
+}
+
+function onSingleModuleConnect() {
+    MODULE.onConnect();
+    MODULE.documentReady(singleModuleSize);
+    sendMessage(MODULE.moduleId, "setModule", "");
+}
+
+/**
+ * Whether to use server-sent events instead of the websocket
+ */
+function useEventStream() {
+    if (window.EventSource === undefined) {
+        return false;
+    }
+
+    if (location.search.indexOf('transport=sse') >= 0) {
+        return true;
+    }
+
+    try {
+        return sessionStorage.getItem(TRANSPORT_KEY) === 'sse';
+    } catch (e) {
+        return false;
+    }
+}
+
+/**
+ * Counts the connections that didn't last, switches to server-sent events when the websocket keeps dropping
+ * @param openedAt when the websocket was opened, null if it never opened
+ */
+function onWebsocketClosed(openedAt) {
+    if (openedAt === null || Date.now() - openedAt < SHORT_CONNECTION_MS) {
+        shortConnections++;
+    } else {
+        shortConnections = 0;
+    }
+
+    if (shortConnections >= MAX_SHORT_CONNECTIONS && window.EventSource !== undefined) {
+        console.log('The websocket keeps dropping, switching to server-sent events');
+        try {
+            sessionStorage.setItem(TRANSPORT_KEY, 'sse');
+        } catch (e) {
+            console.log(e);
+        }
+    }
+
+    showOfflineOverlay();
+}
+
+/**
+ * Connects with server-sent events, the browser reconnects by itself and we get a new client id each time
+ *
+ * @param path stream to listen to
+ * @param onConnect called when the stream is ready
+ * @param onEvent called for each message
+ */
+function initEventStream(path, onConnect, onEvent) {
+    ws = null;
+    if (eventSource !== null) {
+        eventSource.close();
+    }
+
+    eventSource = new EventSource(path);
+
+    eventSource.addEventListener('hello', function (e) {
+        eventStreamClient = JSON.parse(e.data).client;
+        $('#reconnecting-bar').removeClass('showing');
+        onConnect();
+    });
+
+    eventSource.onmessage = onEvent;
+
+    eventSource.onerror = function () {
+        eventStreamClient = null;
+        if (eventSource.readyState === EventSource.CLOSED) {
+            // the browser gave up (ex: session expired), starting again from scratch
+            showOfflineOverlay();
+        } else {
+            $('#reconnecting-bar').addClass('showing');
+        }
+    };
+}
+
 /**
  * what happens when we receive a message
  *
  * @param event
  */
 function onMessage(event) {
-    var json = JSON.parse(event.data);
+    var json = readMessage(event.data);
+
+    console.log(json);
+
+    if (onSessionMessage(json)) {
+        return;
+    }
 
-    console.log(event.data);
+    if (json.command === 'warming') {
+        // the module is still connecting to its service, keeping it loading
+        $('.gridster-item[data-module="' + json.id + '"] .module-loading').addClass('warming');
+        return;
+    }
 
     switch (json.command) {
         case 'success':
@@ -106,7 +461,7 @@ function onMessage(event) {
     var loadingOverlay = $('.gridster-item[data-module="' + json.id + '"] .module-loading');
 
     if (loadingOverlay.length === 1) {
-        loadingOverlay.addClass('fade');
+        loadingOverlay.removeClass('warming').addClass('fade');
         setTimeout(function () {
             loadingOverlay.hide();
         }, 250);
@@ -120,9 +475,13 @@ function onMessage(event) {
  * @param event
  */
 function onMessageForSize(event, size) {
-    var json = JSON.parse(event.data);
+    var json = readMessage(event.data);
+
+    console.log(json);
 
-    console.log(event.data);
+    if (json.command === 'warming') {
+        return;
+    }
 
     switch (json.command) {
         case 'success':
@@ -224,8 +583,20 @@ function sendMessage(moduleId, command, message, extra) {
     wsMsg.command = command;
     wsMsg.extra = extra;
     var json = JSON.stringify(wsMsg);
-    ws.send(json);
     console.log(json);
+
+    if (eventSource === null) {
+        ws.send(json);
+    } else if (eventStreamClient !== null) {
+        $.ajax({
+            url: '/events/' + eventStreamClient,
+            type: 'POST',
+            contentType: 'application/json',
+            data: json
+        });
+    } else {
+        console.log('Not connected, message dropped');
+    }
 }
 
 function WebsocketMessage() {
@@ -7,11 +7,13 @@ import com.ftpix.homedash.jobs.BackgroundRefresh;
 import com.ftpix.homedash.models.Layout;
 import com.ftpix.homedash.models.Page;
 import com.ftpix.homedash.plugins.SystemInfoPlugin;
+import com.ftpix.homedash.timeseries.TimeSeriesStore;
 import com.ftpix.homedash.updater.Updater;
+import com.ftpix.homedash.utils.HomeDashTemplateEngine;
+import com.ftpix.homedash.websocket.FederationWebSocket;
 import com.ftpix.homedash.websocket.FullScreenWebSocket;
 import com.ftpix.homedash.websocket.SingleModuleKioskWebSocket;
 import com.ftpix.homedash.websocket.MainWebSocket;
-import com.google.common.io.Files;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -26,20 +28,34 @@ import org.quartz.SimpleScheduleBuilder;
 import org.quartz.Trigger;
 import org.quartz.TriggerBuilder;
 import org.quartz.impl.StdSchedulerFactory;
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
 
 import javax.swing.text.html.Option;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
 
 import static java.nio.file.Files.deleteIfExists;
 import static spark.Spark.*;
@@ -50,6 +66,7 @@ import static spark.Spark.*;
 public class App {
     private static Logger logger = LogManager.getLogger();
     private final static String NATIVE_LIBS_FOLDER_NAME = "native-libs";
+    private final static String EXIT_AFTER_START = "-exit-after-start";
 
     public static void main(String[] args) {
         try {
@@ -60,9 +77,14 @@ public class App {
                 URL resource = App.class.getResource("/");
 
                 loadNativeLibs();
+                TimeSeriesStore.INSTANCE.setFolder(Paths.get(Constants.METRICS_FOLDER));
+                // the series are flushed to their files when homedash is stopped
+                Runtime.getRuntime().addShutdownHook(new Thread(TimeSeriesStore.INSTANCE::close, "time-series-close"));
+                warmUp();
 
 //            staticFileLocation("/web");
 
+                EmbeddedServers.add(EmbeddedServers.defaultIdentifier(), new EmbeddedJettyFactory(new HomeDashJettyServerFactory()));
                 port(Constants.PORT);
 
                 if (Constants.SECURE && Constants.KEY_STORE != null && Constants.KEY_STORE_PASS != null) {
@@ -70,15 +92,19 @@ public class App {
                     secure(Constants.KEY_STORE, Constants.KEY_STORE_PASS, null, null);
                 }
 
-                webSocket("/ws", MainWebSocket.class);
+                webSocket("/ws", MainWebSocket.INSTANCE);
                 webSocket("/ws-full-screen", FullScreenWebSocket.class);
                 webSocket("/ws-kiosk", SingleModuleKioskWebSocket.class);
+                webSocket("/ws-federation", FederationWebSocket.class);
 
                 //No cache policy, especially against Edge and IE
                 before((req, res) -> {
-                    res.header("Cache-Control", "no-cache, no-store, must-revalidate"); // HTTP 1.1.
-                    res.header("Pragma", "no-cache"); // HTTP 1.0.
-                    res.header("Expires", "0"); // Proxies.
+                    //cached files and assets handle their own caching headers
+                    if (!req.pathInfo().startsWith("/cache/") && !AssetPipeline.INSTANCE.isFingerprinted(req.pathInfo())) {
+                        res.header("Cache-Control", "no-cache, no-store, must-revalidate"); // HTTP 1.1.
+                        res.header("Pragma", "no-cache"); // HTTP 1.0.
+                        res.header("Expires", "0"); // Proxies.
+                    }
                     logger.info("{} -> {}", req.requestMethod(), req.url());
 
 
@@ -118,6 +144,16 @@ public class App {
 //            enableDebugScreen();
 
                 prepareJobs();
+
+                // all the modules connect to their services in the background
+                PluginWarmUp.INSTANCE.warmUp(PluginModuleMaintainer.INSTANCE.getAllPluginInstances());
+
+                if (Arrays.asList(args).contains(EXIT_AFTER_START)) {
+                    // training run loading all the startup classes, used to create the class data sharing archive
+                    awaitInitialization();
+                    logger.info("Started, exiting as requested by {}", EXIT_AFTER_START);
+                    System.exit(0);
+                }
             }
         } catch (Exception e) {
             logger.error("Error during startup, we better stop everything", e);
@@ -125,6 +161,28 @@ public class App {
         }
     }
 
+    /**
+     * Opens the DB, discovers the plugins and compiles the templates before the routes are set,
+     * they don't depend on each other so they're done at the same time.
+     */
+    private static void warmUp() {
+        long start = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            CompletableFuture.allOf(
+                    CompletableFuture.runAsync(DB::init, executor),
+                    CompletableFuture.runAsync(() -> {
+                        PluginRegistry.INSTANCE.load();
+                        AssetPipeline.INSTANCE.load();
+                    }, executor),
+                    CompletableFuture.runAsync(HomeDashTemplateEngine::precompile, executor)
+            ).join();
+        } finally {
+            executor.shutdown();
+        }
+        logger.info("Warm up done in {}ms", System.currentTimeMillis() - start);
+    }
+
     /**
      * Creates a default config
      */
@@ -152,6 +210,12 @@ public class App {
         sb.append("\n");
         sb.append("\n");
 
+        sb.append("# Long history of the host, network and container metrics, a few hundred KB per series");
+        sb.append("\n");
+        sb.append("metrics_path = metrics/");
+        sb.append("\n");
+        sb.append("\n");
+
         sb.append("# random string used to authentication and other hashing pruposes");
         sb.append("\n");
         sb.append("salt = " + generatedString);
@@ -171,6 +235,22 @@ public class App {
         sb.append("\n");
         sb.append("    key_store_pass = jks password");
         sb.append("\n");
+        sb.append("\n");
+
+        sb.append("# Responses (html, json, css, js) bigger than this size in bytes are gzipped");
+        sb.append("\n");
+        sb.append("compression_min_size = 1024");
+        sb.append("\n");
+        sb.append("# gzip level from 1 (fastest) to 9 (smallest)");
+        sb.append("\n");
+        sb.append("compression_level = 6");
+        sb.append("\n");
+        sb.append("\n");
+
+        sb.append("# Enables HTTP/2, h2 when secure = true, h2c otherwise");
+        sb.append("\n");
+        sb.append("http2 = true");
+        sb.append("\n");
 
 
         Path p = Paths.get("homedash.properties");
@@ -195,7 +275,11 @@ public class App {
 
 
     /**
-     * Load all the native libs from other modules
+     * Load all the native libs from other modules.
+     * When running from the jar they are extracted once per version in ~/.homedash, a lib is only copied again
+     * if it's missing or its checksum doesn't match the jar entry (snapshot builds keep the same version).
+     * The folder has to belong to the user running homedash and be writable by nobody else, the libs are loaded from it.
+     * If a lib can't be extracted none is loaded.
      */
     private static void loadNativeLibs() throws Exception {
         logger.info("Loading native libs if any");
@@ -205,43 +289,40 @@ public class App {
 
         final File jarFile = new File(App.class.getProtectionDomain().getCodeSource().getLocation().getPath());
         if (jarFile.isFile()) {  // Run with JAR file
-            dir = Files.createTempDir();
-            logger.info("Created tmp directory [{}]", dir.getAbsolutePath());
-            dir.mkdir();
-            final String path = NATIVE_LIBS_FOLDER_NAME;
-            final JarFile jar = new JarFile(jarFile);
-            final Enumeration<JarEntry> entries = jar.entries(); //gives ALL entries in jar
-            while (entries.hasMoreElements()) {
-                JarEntry jarEntry = entries.nextElement();
-                final String name = jarEntry.getName();
-
-                if (name.startsWith(path + "/") && !jarEntry.isDirectory()) { //filter according to the path
-
-                    File toCopy = new File(dir.getAbsolutePath() + File.separator + name);
-                    if (!toCopy.exists()) {
-                        try {
-                            logger.info("Copying [{}] to [{}]", name, toCopy.getAbsolutePath());
+            String version = Optional.ofNullable(App.class.getPackage().getImplementationVersion()).orElse("unknown");
+            Path libs = Paths.get(System.getProperty("user.home"), ".homedash", NATIVE_LIBS_FOLDER_NAME, version);
+            createPrivateDirectories(libs);
+            if (!isPrivate(libs) || !isPrivate(libs.getParent()) || !isPrivate(libs.getParent().getParent())) {
+                logger.error("[{}] must belong to the user running homedash and be writable by nobody else, not loading the native libs", libs.toAbsolutePath());
+                return;
+            }
 
-                            if (!toCopy.getParentFile().exists()) {
-                                toCopy.getParentFile().mkdir();
-                            }
-                            InputStream is = jar.getInputStream(jarEntry); // get the input stream
-                            FileOutputStream fos = new FileOutputStream(toCopy);
-                            while (is.available() > 0) {  // write contents of 'is' to 'fos'
-                                fos.write(is.read());
+            final String path = NATIVE_LIBS_FOLDER_NAME + "/";
+            int copied = 0;
+            try (JarFile jar = new JarFile(jarFile)) {
+                final Enumeration<JarEntry> entries = jar.entries(); //gives ALL entries in jar
+                while (entries.hasMoreElements()) {
+                    JarEntry jarEntry = entries.nextElement();
+                    final String name = jarEntry.getName();
+
+                    if (name.startsWith(path) && !jarEntry.isDirectory()) { //filter according to the path
+                        Path toCopy = libs.resolve(name.substring(path.length()));
+                        try {
+                            if (!isExtracted(jarEntry, toCopy)) {
+                                logger.info("Copying [{}] to [{}]", name, toCopy.toAbsolutePath());
+                                extract(jar, jarEntry, toCopy);
+                                copied++;
                             }
-                            fos.close();
-                            is.close();
                         } catch (Exception e) {
-                            logger.error("Error while extracting [" + name + "] continuing but it may cause issues", e);
+                            logger.error("Error while extracting [" + name + "], not loading the native libs", e);
+                            return;
                         }
                     }
                 }
             }
-            jar.close();
 
-            dir = new File(dir.getAbsolutePath() + File.separator + NATIVE_LIBS_FOLDER_NAME);
-            logger.info("Set lib path [{}]", dir.getAbsolutePath());
+            dir = libs.toFile();
+            logger.info("Extracted {} native libs to [{}]", copied, dir.getAbsolutePath());
 
         } else {// run in IDE
 
@@ -259,6 +340,70 @@ public class App {
 
     }
 
+    /**
+     * Creates the missing folders readable and writable by the current user only
+     */
+    private static void createPrivateDirectories(Path dir) throws IOException {
+        if (Files.isDirectory(dir)) {
+            return;
+        }
+
+        createPrivateDirectories(dir.toAbsolutePath().getParent());
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createDirectory(dir, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        } else {
+            Files.createDirectory(dir);
+        }
+    }
+
+    /**
+     * Whether a folder belongs to the current user and nobody else can write in it.
+     * Only checked on POSIX file systems, the others (Windows) have ACLs and owners prefixed by their domain that don't compare with the user name,
+     * the user folder the libs are in is already private there
+     */
+    private static boolean isPrivate(Path dir) throws IOException {
+        if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            return true;
+        }
+
+        UserPrincipal user = FileSystems.getDefault().getUserPrincipalLookupService().lookupPrincipalByName(System.getProperty("user.name"));
+        if (!Files.getOwner(dir, LinkOption.NOFOLLOW_LINKS).equals(user)) {
+            return false;
+        }
+
+        Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(dir, LinkOption.NOFOLLOW_LINKS);
+        return !permissions.contains(PosixFilePermission.GROUP_WRITE) && !permissions.contains(PosixFilePermission.OTHERS_WRITE);
+    }
+
+    /**
+     * Checks if a native lib was already extracted by a previous start, by size then by the CRC32 kept in the jar
+     */
+    private static boolean isExtracted(JarEntry entry, Path file) throws IOException {
+        if (!Files.isRegularFile(file) || Files.size(file) != entry.getSize()) {
+            return false;
+        }
+
+        CRC32 crc = new CRC32();
+        try (InputStream is = new CheckedInputStream(Files.newInputStream(file), crc)) {
+            is.transferTo(OutputStream.nullOutputStream());
+        }
+        return crc.getValue() == entry.getCrc();
+    }
+
+    /**
+     * Copies a jar entry to a tmp file first so another instance starting at the same time never loads half a lib
+     */
+    private static void extract(JarFile jar, JarEntry entry, Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try (InputStream is = jar.getInputStream(entry)) {
+            Files.copy(is, tmp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            deleteIfExists(tmp);
+        }
+    }
+
     /**
      * Create default data like layouts and the main page
      */
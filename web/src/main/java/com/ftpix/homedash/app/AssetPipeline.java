@@ -0,0 +1,258 @@
+package com.ftpix.homedash.app;
+
+import com.ftpix.homedash.models.PluginDescriptor;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.MimeTypes;
+import spark.Request;
+import spark.Response;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the static assets (core and plugins js/css/fonts/images) in memory, ready to be sent.
+ * Each asset is gzipped once and gets a fingerprinted url (ex: /js/index.0a1b2c3d4e.js)
+ * that can be cached forever by the browsers. The js isn't minified, safely minifying it takes a real parser,
+ * gzip already removes most of what a minifier would. Templates get those urls via {@link #url(String)}.
+ * <p>
+ * Plugin assets are prepared at startup, the other ones the first time they are requested.
+ * Nothing is kept in dev mode so changes on the files are visible right away.
+ */
+public enum AssetPipeline {
+    INSTANCE;
+
+    private static final Pattern FINGERPRINTED = Pattern.compile("^(.+)\\.([0-9a-f]{10})(\\.[a-zA-Z0-9]+)$");
+    private static final Pattern PLUGIN_PATH = Pattern.compile("^/plugin/([^/]+)/(.+)$");
+    private static final Set<String> COMPRESSIBLE = Set.of("js", "css", "svg", "json", "html", "txt", "ttf", "eot", "otf", "map");
+    private static final String CACHE_FOREVER = "public, max-age=31536000, immutable", CACHE_REVALIDATE = "no-cache";
+    private static final int MAX_ASSET_SIZE = 5 * 1024 * 1024, MAX_MISSING = 1024;
+
+    private final Logger logger = LogManager.getLogger();
+    private final MimeTypes mimeTypes = new MimeTypes();
+
+    /**
+     * assets by original url
+     */
+    private final Map<String, Asset> assets = new ConcurrentHashMap<>();
+    /**
+     * assets by fingerprinted url
+     */
+    private final Map<String, Asset> fingerprinted = new ConcurrentHashMap<>();
+    /**
+     * urls that don't match any resource, so we don't look for them every time. Least recently requested are dropped
+     * so random urls (scanners...) don't fill the memory
+     */
+    private final Set<String> missing = Collections.newSetFromMap(Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_MISSING;
+        }
+    }));
+
+
+    /**
+     * Prepares the js and css of all the plugins
+     */
+    public void load() {
+        if (Constants.DEV_MODE) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        for (PluginDescriptor plugin : PluginRegistry.INSTANCE.getDescriptors()) {
+            String id = plugin.getId();
+            get("/plugin/" + id + "/js/" + id + ".js");
+            get("/plugin/" + id + "/css/" + id + ".css");
+        }
+
+        logger.info("Prepared {} assets in {}ms", assets.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Gets the url to use in templates for an asset
+     *
+     * @param path url of the asset, ex: /js/index.js
+     * @return the fingerprinted url or the same url if the asset can't be found or we're in dev mode
+     */
+    public String url(String path) {
+        if (Constants.DEV_MODE) {
+            return path;
+        }
+
+        return get(path).map(a -> a.url).orElse(path);
+    }
+
+    /**
+     * Whether the url is a fingerprinted url and can be cached forever
+     */
+    public boolean isFingerprinted(String path) {
+        return fingerprinted.containsKey(path);
+    }
+
+    /**
+     * Sends an asset if we have it
+     *
+     * @return false if there is no asset for this request, meaning it has to be served another way
+     */
+    public boolean send(Request req, Response res) throws IOException {
+        if (Constants.DEV_MODE) {
+            return false;
+        }
+
+        String path = req.pathInfo();
+        Asset asset = fingerprinted.get(path);
+        boolean immutable = asset != null;
+
+        if (asset == null) {
+            //either the original url or an old fingerprint, the asset changed since
+            Matcher matcher = FINGERPRINTED.matcher(path);
+            Optional<Asset> found = get(path);
+            if (found.isEmpty() && matcher.matches()) {
+                found = get(matcher.group(1) + matcher.group(3));
+            }
+
+            if (found.isEmpty()) {
+                return false;
+            }
+            asset = found.get();
+        }
+
+        res.header("ETag", asset.etag);
+        res.header("Cache-Control", immutable ? CACHE_FOREVER : CACHE_REVALIDATE);
+        res.header("Vary", "Accept-Encoding");
+
+        String ifNoneMatch = req.headers("If-None-Match");
+        if (ifNoneMatch != null && ifNoneMatch.contains(asset.etag)) {
+            res.status(HttpStatus.NOT_MODIFIED_304);
+            return true;
+        }
+
+        byte[] body = asset.content;
+        String acceptEncoding = req.headers("Accept-Encoding");
+        if (asset.gzip != null && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            body = asset.gzip;
+            res.header("Content-Encoding", "gzip");
+        }
+
+        res.raw().setContentType(asset.contentType);
+        res.raw().setContentLength(body.length);
+        res.raw().getOutputStream().write(body);
+        return true;
+    }
+
+    /**
+     * Gets an asset by its original url, prepares it if needed
+     */
+    private Optional<Asset> get(String path) {
+        Asset asset = assets.get(path);
+        if (asset != null || missing.contains(path)) {
+            return Optional.ofNullable(asset);
+        }
+
+        try {
+            Optional<Asset> prepared = prepare(path);
+            if (prepared.isPresent()) {
+                asset = prepared.get();
+                assets.put(path, asset);
+                fingerprinted.put(asset.url, asset);
+            } else {
+                missing.add(path);
+            }
+            return prepared;
+        } catch (IOException e) {
+            logger.error("Couldn't prepare asset " + path, e);
+            missing.add(path);
+            return Optional.empty();
+        }
+    }
+
+    private Optional<Asset> prepare(String path) throws IOException {
+        String resource = toResource(path);
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+
+        byte[] content;
+        try (InputStream is = classLoader.getResourceAsStream(resource)) {
+            if (is == null) {
+                return Optional.empty();
+            }
+            content = IOUtils.toByteArray(is);
+        }
+
+        if (content.length > MAX_ASSET_SIZE) {
+            logger.info("{} is too big to be kept in memory", path);
+            return Optional.empty();
+        }
+
+        String extension = path.substring(path.lastIndexOf('.') + 1).toLowerCase();
+
+        Asset asset = new Asset();
+        asset.content = content;
+        asset.contentType = Optional.ofNullable(mimeTypes.getMimeByExtension(path)).orElse("application/octet-stream");
+        asset.etag = "\"" + DigestUtils.sha1Hex(content) + "\"";
+        asset.url = fingerprint(path, asset.etag.substring(1, 11));
+
+        if (COMPRESSIBLE.contains(extension)) {
+            byte[] gzip = gzip(content);
+            if (gzip.length < content.length) {
+                asset.gzip = gzip;
+            }
+        }
+
+        logger.info("Asset {} -> {} ({} bytes, {} gzipped)", path, asset.url, content.length, asset.gzip == null ? "not" : asset.gzip.length);
+        return Optional.of(asset);
+    }
+
+    /**
+     * Translates an url to its class path location
+     * /plugin/{id}/js/{id}.js is in web/{id}/js/{id}.js, /js/index.js in web/js/index.js
+     */
+    static String toResource(String path) {
+        Matcher matcher = PLUGIN_PATH.matcher(path);
+        if (matcher.matches()) {
+            return "web/" + matcher.group(1) + "/" + matcher.group(2);
+        } else {
+            return "web" + path;
+        }
+    }
+
+    /**
+     * Adds the hash before the extension, /js/index.js -> /js/index.{hash}.js
+     */
+    static String fingerprint(String path, String hash) {
+        int dot = path.lastIndexOf('.');
+        if (dot <= path.lastIndexOf('/')) {
+            return path + "." + hash;
+        }
+        return path.substring(0, dot) + "." + hash + path.substring(dot);
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 2);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out) {{
+            def.setLevel(Deflater.BEST_COMPRESSION);
+        }}) {
+            gzip.write(content);
+        }
+        return out.toByteArray();
+    }
+
+    private static class Asset {
+        private byte[] content, gzip;
+        private String contentType, etag, url;
+    }
+}
@@ -18,6 +18,7 @@ import org.apache.logging.log4j.Logger;
 
 public class Constants {
     public final static String CACHE_FOLDER;
+    public final static String METRICS_FOLDER;
     public final static String DB_PATH;
     public final static int PORT;
     public final static String SALT;
@@ -26,6 +27,8 @@ public class Constants {
     public final static boolean SECURE;
     public static final String KEY_STORE, KEY_STORE_PASS;
     public static boolean STATIC_CONFIG = false;
+    public final static int COMPRESSION_MIN_SIZE, COMPRESSION_LEVEL;
+    public final static boolean HTTP2;
 
     static {
 
@@ -90,6 +93,8 @@ public class Constants {
 
         DB_PATH = prop.getProperty("db_path");
 
+        METRICS_FOLDER = prop.getProperty("metrics_path", "metrics/").trim();
+
         PORT = Integer.parseInt(prop.getProperty("port"));
 
         File f = new File(CACHE_FOLDER);
@@ -99,8 +104,14 @@ public class Constants {
 
         SALT = prop.getProperty("salt");
 
+        COMPRESSION_MIN_SIZE = Integer.parseInt(prop.getProperty("compression_min_size", "1024").trim());
+        COMPRESSION_LEVEL = Integer.parseInt(prop.getProperty("compression_level", "6").trim());
+        HTTP2 = Boolean.parseBoolean(prop.getProperty("http2", "true").trim());
+
         logger.info("DB_PATH:{}", DB_PATH);
         logger.info("Cache folder:{}", CACHE_FOLDER);
+        logger.info("Metrics folder:{}", METRICS_FOLDER);
         logger.info("Port: {}", PORT);
+        logger.info("Compression: min size {} bytes, level {}, HTTP/2: {}", COMPRESSION_MIN_SIZE, COMPRESSION_LEVEL, HTTP2);
     }
 }
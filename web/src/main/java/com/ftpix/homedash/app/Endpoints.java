@@ -2,8 +2,10 @@ package com.ftpix.homedash.app;
 
 import com.ftpix.homedash.app.controllers.*;
 import com.ftpix.homedash.plugins.Plugin;
+import com.ftpix.homedash.utils.FileResponse;
 import com.ftpix.homedash.utils.HomeDashTemplateEngine;
 import com.ftpix.homedash.utils.Predicates;
+import com.ftpix.homedash.websocket.EventStreamEndpoint;
 import org.apache.commons.io.IOUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -43,6 +45,8 @@ public class Endpoints {
         UpdateController.INSTANCE.defineEndpoints();
         KioskController.INSTANCE.defineEndpoints();
         PluginUrlController.INSTANCE.defineEndPoints();
+        EventStreamEndpoint.INSTANCE.defineEndpoints();
+        MetricsController.INSTANCE.defineEndpoints();
 
         /*
          * Main Page
@@ -81,22 +85,16 @@ public class Endpoints {
     private static void cacheResources() {
         // serving file from cache
         get("/cache/*", (request, response) -> {
-            File file = new File(Constants.CACHE_FOLDER + request.splat()[0]);
-            logger.info("Looking for file [{}]", file.getAbsolutePath());
+            Path cacheFolder = Paths.get(Constants.CACHE_FOLDER).toAbsolutePath().normalize();
+            Path file = cacheFolder.resolve(request.splat()[0]).normalize();
+            logger.info("Looking for file [{}]", file);
 
-            if (file.exists()) {
-                response.raw().setContentType("application/octet-stream");
-                response.raw().setHeader("Content-Disposition", "attachment; filename=" + file.getName());
-
-                try (FileInputStream in = new FileInputStream(file)) {
-                    IOUtils.copy(in, response.raw().getOutputStream());
-                }
-                return "";
+            if (file.startsWith(cacheFolder) && Files.isRegularFile(file)) {
+                FileResponse.send(request, response, file);
             } else {
                 response.status(404);
-                return "";
             }
-
+            return "";
         });
     }
 
@@ -109,6 +107,8 @@ public class Endpoints {
 
             if (Constants.DEV_MODE) {
                 getDevStaticResource(req.splat()[0], res);
+            } else if (AssetPipeline.INSTANCE.send(req, res)) {
+                return "";
             }
 
             String fullPath = "web" + req.pathInfo();
@@ -174,7 +174,7 @@ public class Endpoints {
 
             if (Constants.DEV_MODE) {
                 getDevResource(name, path, res);
-            } else {
+            } else if (!AssetPipeline.INSTANCE.send(req, res)) {
                 getContent(res, fullPath);
             }
 
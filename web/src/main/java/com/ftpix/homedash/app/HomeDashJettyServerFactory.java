@@ -0,0 +1,168 @@
+package com.ftpix.homedash.app;
+
+import com.ftpix.homedash.websocket.WebSocketEncoding;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.jetty.alpn.server.ALPNServerConnectionFactory;
+import org.eclipse.jetty.http2.HTTP2Cipher;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.SslConnectionFactory;
+import org.eclipse.jetty.server.handler.HandlerCollection;
+import org.eclipse.jetty.server.handler.gzip.GzipHandler;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.eclipse.jetty.websocket.server.NativeWebSocketConfiguration;
+import org.eclipse.jetty.websocket.servlet.WebSocketCreator;
+import spark.embeddedserver.jetty.JettyServerFactory;
+
+/**
+ * Creates the jetty server used by spark with response compression and HTTP/2.
+ * Spark creates the connectors and the handlers itself, so we hook into them when they are set on the server.
+ * <p>
+ * Websockets already negotiate permessage-deflate with jetty's default extensions,
+ * the browser websockets also negotiate the encoding of their messages (see {@link WebSocketEncoding}).
+ */
+public class HomeDashJettyServerFactory implements JettyServerFactory {
+    private static final Logger logger = LogManager.getLogger();
+    private static final String[] COMPRESSED_TYPES = {"text/html", "text/plain", "text/css", "text/javascript", "application/javascript", "application/json", "image/svg+xml"};
+    private static final String[] ENCODED_WEBSOCKETS = {"/ws", "/ws-full-screen", "/ws-kiosk"};
+
+    @Override
+    public Server create(int maxThreads, int minThreads, int threadTimeoutMillis) {
+        if (maxThreads > 0) {
+            int min = minThreads > 0 ? minThreads : 8;
+            int idleTimeout = threadTimeoutMillis > 0 ? threadTimeoutMillis : 60000;
+
+            return create(new QueuedThreadPool(maxThreads, min, idleTimeout));
+        } else {
+            return create(null);
+        }
+    }
+
+    @Override
+    public Server create(ThreadPool threadPool) {
+        return new HomeDashServer(threadPool);
+    }
+
+
+    private static class HomeDashServer extends Server {
+
+        private HomeDashServer(ThreadPool pool) {
+            super(pool);
+        }
+
+        /**
+         * Wraps spark's handlers (routes + websockets) with gzip compression
+         */
+        @Override
+        public void setHandler(Handler handler) {
+            if (handler == null || handler instanceof GzipHandler) {
+                super.setHandler(handler);
+                return;
+            }
+
+            negotiateEncodings(handler);
+
+            GzipHandler gzip = new GzipHandler();
+            gzip.setMinGzipSize(Constants.COMPRESSION_MIN_SIZE);
+            gzip.setCompressionLevel(Constants.COMPRESSION_LEVEL);
+            gzip.setIncludedMimeTypes(COMPRESSED_TYPES);
+            //cached files are mostly images and are sent with byte ranges
+            gzip.setExcludedPaths("/cache/*");
+            gzip.setHandler(handler);
+
+            super.setHandler(gzip);
+        }
+
+        /**
+         * Spark's websocket creators don't accept any subprotocol, the ones of the browser websockets are wrapped
+         * so they accept the encoding offered by the browser
+         */
+        private void negotiateEncodings(Handler handler) {
+            if (handler instanceof HandlerCollection) {
+                for (Handler child : ((HandlerCollection) handler).getHandlers()) {
+                    negotiateEncodings(child);
+                }
+                return;
+            }
+
+            if (!(handler instanceof ServletContextHandler)) {
+                return;
+            }
+
+            Object configuration = ((ServletContextHandler) handler).getServletContext().getAttribute(NativeWebSocketConfiguration.class.getName());
+            if (configuration instanceof NativeWebSocketConfiguration) {
+                NativeWebSocketConfiguration webSockets = (NativeWebSocketConfiguration) configuration;
+                for (String path : ENCODED_WEBSOCKETS) {
+                    WebSocketCreator creator = webSockets.getMapping(path);
+                    if (creator != null) {
+                        webSockets.removeMapping(path);
+                        webSockets.addMapping(path, WebSocketEncoding.negotiating(creator));
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void setConnectors(Connector[] connectors) {
+            if (Constants.HTTP2 && connectors != null) {
+                for (Connector connector : connectors) {
+                    if (connector instanceof ServerConnector) {
+                        enableHttp2((ServerConnector) connector);
+                    }
+                }
+            }
+
+            super.setConnectors(connectors);
+        }
+
+        /**
+         * Adds h2 (via ALPN) to secure connectors, h2c to plain ones, HTTP/1.1 stays available
+         */
+        private void enableHttp2(ServerConnector connector) {
+            HttpConnectionFactory http = connector.getConnectionFactory(HttpConnectionFactory.class);
+            if (http == null) {
+                return;
+            }
+
+            HttpConfiguration configuration = http.getHttpConfiguration();
+            SslConnectionFactory ssl = connector.getConnectionFactory(SslConnectionFactory.class);
+
+            if (ssl == null) {
+                connector.addConnectionFactory(new HTTP2CServerConnectionFactory(configuration));
+                logger.info("HTTP/2 enabled (h2c)");
+                return;
+            }
+
+            try {
+                ALPNServerConnectionFactory alpn = new ALPNServerConnectionFactory("h2", http.getProtocol());
+                alpn.setDefaultProtocol(http.getProtocol());
+
+                SslContextFactory sslContextFactory = ssl.getSslContextFactory();
+                sslContextFactory.setCipherComparator(HTTP2Cipher.COMPARATOR);
+                SslConnectionFactory alpnSsl = new SslConnectionFactory(sslContextFactory, alpn.getProtocol());
+
+                connector.clearConnectionFactories();
+                connector.addConnectionFactory(alpnSsl);
+                connector.addConnectionFactory(alpn);
+                connector.addConnectionFactory(new HTTP2ServerConnectionFactory(configuration));
+                connector.addConnectionFactory(http);
+                connector.setDefaultProtocol(alpnSsl.getProtocol());
+
+                logger.info("HTTP/2 enabled (h2)");
+            } catch (IllegalStateException e) {
+                //no ALPN support available in this JVM
+                logger.warn("Couldn't enable HTTP/2, staying on HTTP/1.1", e);
+            }
+        }
+    }
+}
@@ -70,6 +70,9 @@ INSTANCE;
         plugin.setModule(module);
         plugin.addListener(this);
         PLUGIN_INSTANCES.put(module.getId(), plugin);
+
+        // new module or new settings
+        PluginWarmUp.INSTANCE.warmUp(plugin);
         return plugin;
     }
 
@@ -101,9 +104,15 @@ INSTANCE;
      * @param moduleId
      */
     public void removeModule(int moduleId) {
-        if (PLUGIN_INSTANCES.containsKey(moduleId)) {
-            PLUGIN_INSTANCES.remove(moduleId);
+        Plugin plugin = PLUGIN_INSTANCES.remove(moduleId);
+        if (plugin != null) {
+            try {
+                plugin.destroy();
+            } catch (Exception e) {
+                logger.error("Error while destroying module " + moduleId, e);
+            }
         }
+        PluginWarmUp.INSTANCE.remove(moduleId);
     }
 
 
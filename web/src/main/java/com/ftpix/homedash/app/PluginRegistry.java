@@ -0,0 +1,151 @@
+package com.ftpix.homedash.app;
+
+import com.ftpix.homedash.models.PluginDescriptor;
+import com.ftpix.homedash.plugins.Plugin;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the descriptors of all the available plugins.
+ * Plugins are discovered once via {@link ServiceLoader} (META-INF/services/com.ftpix.homedash.plugins.Plugin)
+ * and their constructors are cached so creating a new plugin doesn't go through reflection every time.
+ */
+public enum PluginRegistry {
+    INSTANCE;
+
+    private static final MethodType PLUGIN_CONSTRUCTOR = MethodType.methodType(Plugin.class);
+    private final Logger logger = LogManager.getLogger();
+    private volatile Map<String, PluginDescriptor> descriptors;
+    private final Map<String, MethodHandle> constructors = new HashMap<>();
+
+
+    /**
+     * Discovers all the plugins and reads their metadata, does nothing if already loaded
+     */
+    public synchronized void load() {
+        if (descriptors != null) {
+            return;
+        }
+
+        Map<String, PluginDescriptor> found = new LinkedHashMap<>();
+
+        ServiceLoader.load(Plugin.class).stream()
+                .map(ServiceLoader.Provider::type)
+                .forEach(clazz -> {
+                    try {
+                        MethodHandle constructor = MethodHandles.publicLookup()
+                                .findConstructor(clazz, MethodType.methodType(void.class))
+                                .asType(PLUGIN_CONSTRUCTOR);
+
+                        PluginDescriptor descriptor = describe((Plugin) constructor.invokeExact());
+
+                        constructors.put(clazz.getCanonicalName(), constructor);
+                        found.put(clazz.getCanonicalName(), descriptor);
+                        logger.info("Registered plugin [{}] -> {}", descriptor.getId(), clazz.getCanonicalName());
+                    } catch (Throwable e) {
+                        logger.error("Couldn't register plugin " + clazz.getCanonicalName(), e);
+                    }
+                });
+
+        logger.info("Found {} plugins", found.size());
+        descriptors = Collections.unmodifiableMap(found);
+    }
+
+    /**
+     * All the plugin descriptors sorted by display name
+     */
+    public List<PluginDescriptor> getDescriptors() {
+        return descriptors().values()
+                .stream()
+                .sorted(Comparator.comparing(PluginDescriptor::getDisplayName))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Gets the descriptor of a plugin class
+     *
+     * @param className canonical name of the plugin class
+     */
+    public Optional<PluginDescriptor> getDescriptor(String className) {
+        return Optional.ofNullable(className).map(descriptors()::get);
+    }
+
+    /**
+     * Creates a new plugin instance using the cached constructor
+     *
+     * @param className canonical name of the plugin class
+     * @throws ClassNotFoundException if the class isn't a registered plugin
+     * @throws InstantiationException if the plugin constructor failed
+     */
+    public Plugin newInstance(String className) throws ClassNotFoundException, InstantiationException {
+        descriptors();
+        MethodHandle constructor = constructors.get(className);
+        if (constructor == null) {
+            throw new ClassNotFoundException("No registered plugin for class " + className);
+        }
+
+        try {
+            return (Plugin) constructor.invokeExact();
+        } catch (Throwable e) {
+            InstantiationException exception = new InstantiationException("Couldn't create plugin " + className);
+            exception.initCause(e);
+            throw exception;
+        }
+    }
+
+    private Map<String, PluginDescriptor> descriptors() {
+        if (descriptors == null) {
+            load();
+        }
+        return descriptors;
+    }
+
+    /**
+     * Reads the metadata of a plugin instance that has no module attached
+     */
+    private PluginDescriptor describe(Plugin plugin) {
+        PluginDescriptor descriptor = new PluginDescriptor();
+        descriptor.setId(plugin.getId());
+        descriptor.setDisplayName(plugin.getDisplayName());
+        descriptor.setDescription(plugin.getDescription());
+        descriptor.setExternalLink(plugin.getExternalLink());
+        descriptor.setPluginClass(plugin.getClass().getCanonicalName());
+        descriptor.setSizes(plugin.getSizes());
+        descriptor.setHasSettings(Thread.currentThread().getContextClassLoader().getResource("templates/" + plugin.getId() + "-settings.jade") != null);
+
+        try {
+            descriptor.setBackgroundRefreshRate(plugin.getBackgroundRefreshRate());
+        } catch (Exception e) {
+            logger.info("[{}] background refresh rate depends on settings, using default", plugin.getId());
+        }
+
+        Map<String, Integer> refreshRates = new HashMap<>();
+        for (String size : plugin.getSizes()) {
+            try {
+                refreshRates.put(size, plugin.getRefreshRate(size));
+            } catch (Exception e) {
+                logger.info("[{}] refresh rate for size {} depends on settings, skipping", plugin.getId(), size);
+            }
+        }
+        descriptor.setRefreshRates(refreshRates);
+
+        try {
+            descriptor.setExternalEndPoints(Optional.ofNullable(plugin.defineExternalEndPoints())
+                    .orElse(Collections.emptyList())
+                    .stream()
+                    .filter(e -> e.getMethod() != null && e.getUrl() != null)
+                    .map(e -> e.getMethod() + " " + e.getUrl())
+                    .collect(Collectors.toList()));
+        } catch (Exception e) {
+            logger.info("[{}] couldn't list external end points", plugin.getId());
+        }
+
+        return descriptor;
+    }
+}
@@ -0,0 +1,172 @@
+package com.ftpix.homedash.app;
+
+import com.ftpix.homedash.models.ModuleLocation;
+import com.ftpix.homedash.plugins.Plugin;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Runs {@link Plugin#warmUp()} of the local modules in parallel and keeps track of which ones are ready.
+ * A module is warmed up again when its settings change. Modules still warming are not refreshed,
+ * their warm up timing out only means they're refreshed anyway, its thread is interrupted so it doesn't keep running for nothing.
+ */
+public enum PluginWarmUp {
+    INSTANCE;
+
+    public enum State {
+        WARMING, READY, FAILED, TIMED_OUT
+    }
+
+    private final Logger logger = LogManager.getLogger();
+    private final Map<Integer, ModuleWarmUp> modules = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool(daemon("plugin-warm-up"));
+    private final ScheduledExecutorService timeouts = Executors.newSingleThreadScheduledExecutor(daemon("plugin-warm-up-timeout"));
+
+    /**
+     * Warms up all the given plugins at the same time, doesn't wait for them
+     */
+    public void warmUp(Collection<Plugin> plugins) {
+        plugins.forEach(this::warmUp);
+    }
+
+    /**
+     * Warms up a plugin in the background unless it's already done (or being done) for its current settings
+     */
+    public void warmUp(Plugin plugin) {
+        if (plugin.getModule() == null || plugin.getModule().getLocation() != ModuleLocation.LOCAL) {
+            return;
+        }
+
+        int moduleId = plugin.getModule().getId();
+        int settingsVersion = plugin.getSettingsVersion();
+
+        ModuleWarmUp previous = modules.get(moduleId);
+        if (previous != null && previous.settingsVersion == settingsVersion) {
+            return;
+        }
+
+        ModuleWarmUp warmUp = new ModuleWarmUp(moduleId, plugin.getId(), settingsVersion);
+        ModuleWarmUp current = modules.merge(moduleId, warmUp, (old, next) -> old.settingsVersion == next.settingsVersion ? old : next);
+        if (current != warmUp) {
+            return;
+        }
+
+        logger.info("Warming up module [{}] plugin [{}]", moduleId, plugin.getId());
+        Future<?> task = executor.submit(() -> {
+            try {
+                plugin.warmUp();
+                warmUp.done(State.READY);
+            } catch (Exception e) {
+                if (warmUp.state != State.TIMED_OUT) {
+                    logger.error("Couldn't warm up module [" + moduleId + "] plugin [" + plugin.getId() + "]", e);
+                }
+                warmUp.done(State.FAILED);
+            }
+        });
+
+        timeouts.schedule(() -> {
+            if (warmUp.timeOut()) {
+                logger.warn("Module [{}] plugin [{}] still warming up after {}s, stopping it and refreshing it anyway", moduleId, plugin.getId(), plugin.getWarmUpTimeout());
+                task.cancel(true);
+            }
+        }, plugin.getWarmUpTimeout(), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Whether the module is still warming up and shouldn't be refreshed yet
+     */
+    public boolean isWarming(int moduleId) {
+        ModuleWarmUp warmUp = modules.get(moduleId);
+        return warmUp != null && warmUp.state == State.WARMING;
+    }
+
+    /**
+     * Warm up of all the modules, by module id
+     */
+    public List<ModuleWarmUp> getModules() {
+        return modules.values().stream()
+                .sorted((a, b) -> Integer.compare(a.moduleId, b.moduleId))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Forgets a deleted module
+     */
+    public void remove(int moduleId) {
+        modules.remove(moduleId);
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Warm up of a module for one version of its settings
+     */
+    public static class ModuleWarmUp {
+        private final int moduleId, settingsVersion;
+        private final String pluginId;
+        private final long start = System.currentTimeMillis();
+        private volatile State state = State.WARMING;
+        private volatile long duration = -1;
+
+        private ModuleWarmUp(int moduleId, String pluginId, int settingsVersion) {
+            this.moduleId = moduleId;
+            this.pluginId = pluginId;
+            this.settingsVersion = settingsVersion;
+        }
+
+        /**
+         * A warm up finishing after its timeout still makes the module ready, failing after it (interrupted) keeps it timed out
+         */
+        private synchronized void done(State state) {
+            this.duration = System.currentTimeMillis() - start;
+            if (state != State.FAILED || this.state != State.TIMED_OUT) {
+                this.state = state;
+            }
+        }
+
+        private synchronized boolean timeOut() {
+            if (state == State.WARMING) {
+                state = State.TIMED_OUT;
+                return true;
+            }
+            return false;
+        }
+
+        public int getModuleId() {
+            return moduleId;
+        }
+
+        public String getPluginId() {
+            return pluginId;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        /**
+         * How long the warm up took in ms, or has been running so far
+         */
+        public long getDuration() {
+            return duration >= 0 ? duration : System.currentTimeMillis() - start;
+        }
+    }
+}
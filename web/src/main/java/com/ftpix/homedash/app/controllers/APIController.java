@@ -1,5 +1,6 @@
 package com.ftpix.homedash.app.controllers;
 
+import com.ftpix.homedash.Utils.Json;
 import com.ftpix.homedash.app.Constants;
 import com.ftpix.homedash.app.PluginModuleMaintainer;
 import com.ftpix.homedash.models.ExposedModule;
@@ -8,17 +9,26 @@ import com.ftpix.homedash.models.Settings;
 import com.ftpix.homedash.models.WebSocketMessage;
 import com.ftpix.homedash.plugins.Plugin;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import org.apache.commons.codec.digest.DigestUtils;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.eclipse.jetty.http.HttpStatus;
 import spark.Request;
 import spark.Response;
 import spark.Spark;
 
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
 
 /**
  * Created by gz on 22-Jun-16.
@@ -30,9 +40,20 @@ public enum APIController {
 
 
     public static final String HEADER_AUTHORIZATION = "Authorization";
+    private static final long BROWSE_TIMEOUT_MS = 5000, EXPOSE_TIMEOUT_MS = 60_000;
 
-    private Gson gson = new GsonBuilder().create();
+    private Gson gson = Json.PLAIN;
 
+    /**
+     * Last refresh of each module by {moduleId}:{size}, kept for the refresh rate of the module
+     */
+    private final Map<String, CachedRefresh> refreshes = new ConcurrentHashMap<>();
+
+    /**
+     * Settings exposed by each module for /api/browse, kept until the module settings change
+     */
+    private final Map<Integer, ExposedSettings> exposedSettings = new ConcurrentHashMap<>();
+    private final ExecutorService browseExecutor = Executors.newCachedThreadPool();
 
 
     public void defineEndpoints() {
@@ -49,7 +70,12 @@ public enum APIController {
         /**
          * Refresh a remote module
          */
-        Spark.get("/api/refresh/:moduleId/size/:size", "application/json", this::refreshModule, gson::toJson);
+        Spark.get("/api/refresh/:moduleId/size/:size", "application/json", this::refreshModule);
+
+        /**
+         * Refresh many modules at once, ?modules={moduleId}:{size},{moduleId}:{size}
+         */
+        Spark.get("/api/refresh-batch", "application/json", this::refreshModules);
 
 
         /**
@@ -71,18 +97,28 @@ public enum APIController {
 
         logger.info("API request : [{}]", req.pathInfo());
 
-        Settings useRemote = SettingsController.INSTANCE.get(Settings.USE_REMOTE);
-        if (useRemote != null && useRemote.getValue().equalsIgnoreCase("1")) {
-            String clientKey = req.headers(HEADER_AUTHORIZATION);
+        if (!isAuthorized(req.headers(HEADER_AUTHORIZATION))) {
+            Spark.halt(401);
+        }
+    }
 
-            Settings localKey = SettingsController.INSTANCE.get(Settings.REMOTE_API_KEY);
-            if (localKey == null) {
-                Spark.halt(401);
-            } else if (!localKey.getValue().equalsIgnoreCase(clientKey)) {
-                Spark.halt(401);
+    /**
+     * Checks if the remote api is enabled and the key matches ours
+     *
+     * @param clientKey key sent by the client
+     */
+    public boolean isAuthorized(String clientKey) {
+        try {
+            Settings useRemote = SettingsController.INSTANCE.get(Settings.USE_REMOTE);
+            if (useRemote != null && useRemote.getValue().equalsIgnoreCase("1")) {
+                Settings localKey = SettingsController.INSTANCE.get(Settings.REMOTE_API_KEY);
+                return localKey != null && localKey.getValue().equalsIgnoreCase(clientKey);
+            } else {
+                return false;
             }
-        } else {
-            Spark.halt(401);
+        } catch (SQLException e) {
+            logger.error("Couldn't check API key", e);
+            return false;
         }
     }
 
@@ -99,6 +135,9 @@ public enum APIController {
     }
 
     /**
+     * Lists the modules available to remote instances.
+     * The settings of all modules are exposed in parallel, a plugin taking too long is listed without settings
+     *
      * @param req
      * @param resp
      * @return
@@ -110,21 +149,29 @@ public enum APIController {
 
         response.put("name", SettingsController.INSTANCE.get(Settings.REMOTE_NAME).getValue());
 
-        List<ExposedModule> modules = new ArrayList<ExposedModule>();
-        PluginModuleMaintainer.INSTANCE.getAllPluginInstances().stream()
+        List<Plugin> plugins = PluginModuleMaintainer.INSTANCE.getAllPluginInstances().stream()
                 .filter(p -> p.getModule().getLocation() == ModuleLocation.LOCAL)
-                .forEach((plugin) -> {
+                .collect(Collectors.toList());
 
-                    ExposedModule module = new ExposedModule();
+        // starting everything first, then waiting for each with the same deadline
+        List<CompletableFuture<Map<String, String>>> settings = plugins.stream()
+                .map(this::exposeSettings)
+                .collect(Collectors.toList());
+        long deadline = System.currentTimeMillis() + BROWSE_TIMEOUT_MS;
 
-                    module.setName(plugin.getDisplayName());
-                    module.setDescription(plugin.getDescription());
-                    module.setId(plugin.getModule().getId());
-                    module.setSettings(plugin.exposeSettings());
-                    module.setPluginClass(plugin.getClass().getCanonicalName());
-                    modules.add(module);
+        List<ExposedModule> modules = new ArrayList<ExposedModule>();
+        for (int i = 0; i < plugins.size(); i++) {
+            Plugin plugin = plugins.get(i);
 
-                });
+            ExposedModule module = new ExposedModule();
+
+            module.setName(plugin.getDisplayName());
+            module.setDescription(plugin.getDescription());
+            module.setId(plugin.getModule().getId());
+            module.setSettings(await(plugin, settings.get(i), deadline));
+            module.setPluginClass(plugin.getClass().getCanonicalName());
+            modules.add(module);
+        }
 
         response.put("modules", modules);
 
@@ -132,20 +179,164 @@ public enum APIController {
     }
 
     /**
-     * Refresh a module
+     * Gets the exposed settings of a module, computes them in the background if they're not known for the current settings.
+     * The computation keeps going even if the caller stopped waiting for it, the next browse will get it.
+     * A computation still running after {@link #EXPOSE_TIMEOUT_MS} is interrupted and the next browse starts again
+     */
+    private CompletableFuture<Map<String, String>> exposeSettings(Plugin plugin) {
+        int moduleId = plugin.getModule().getId();
+        int version = plugin.getSettingsVersion();
+
+        ExposedSettings exposed = exposedSettings.get(moduleId);
+        if (exposed != null && exposed.plugin == plugin && exposed.settingsVersion == version) {
+            if (exposed.settings.isDone() || System.currentTimeMillis() - exposed.startedAt < EXPOSE_TIMEOUT_MS) {
+                return exposed.settings;
+            }
+
+            logger.info("Module {} ({}) is stuck exposing its settings, starting again", moduleId, plugin.getId());
+            exposed.task.cancel(true);
+        }
+
+        CompletableFuture<Map<String, String>> future = new CompletableFuture<>();
+        Future<?> task = browseExecutor.submit(() -> {
+            try {
+                future.complete(plugin.exposeSettings());
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        ExposedSettings computing = new ExposedSettings(plugin, version, future, task);
+        exposedSettings.put(moduleId, computing);
+
+        future.whenComplete((result, e) -> {
+            if (e != null) {
+                logger.error("Couldn't expose settings of module " + moduleId, e);
+                exposedSettings.remove(moduleId, computing);
+            }
+        });
+
+        return future;
+    }
+
+    private Map<String, String> await(Plugin plugin, CompletableFuture<Map<String, String>> settings, long deadline) {
+        try {
+            return settings.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            logger.info("Module {} ({}) took too long to expose its settings", plugin.getModule().getId(), plugin.getId());
+        } catch (InterruptedException | ExecutionException e) {
+            logger.error("Couldn't get exposed settings of module " + plugin.getModule().getId(), e);
+        }
+        return null;
+    }
+
+    /**
+     * Forgets what has been computed for a module, to call when it's saved or deleted
+     *
+     * @param moduleId
+     */
+    public void invalidate(int moduleId) {
+        exposedSettings.remove(moduleId);
+        refreshes.keySet().removeIf(key -> key.startsWith(moduleId + ":"));
+    }
+
+    /**
+     * Refresh a module, answers 304 if the client already has the same refresh (If-None-Match)
      *
      * @param req
      * @param res
-     * @return
+     * @return the json of the refreshed module
      * @throws Exception
      */
-    private WebSocketMessage refreshModule(Request req, Response res) throws Exception {
+    private String refreshModule(Request req, Response res) throws Exception {
+        CachedRefresh refresh = refresh(Integer.parseInt(req.params("moduleId")), req.params("size"));
 
-        String size = req.params("size");
-        Integer moduleId = Integer.parseInt(req.params("moduleId"));
+        return conditional(req, res, refresh.json, refresh.etag);
+    }
+
+    /**
+     * Refresh many modules in one call, answers 304 if none of them changed
+     *
+     * @param req
+     * @param res
+     * @return the refreshed modules keyed by {moduleId}:{size}
+     */
+    private String refreshModules(Request req, Response res) {
+        String modules = Optional.ofNullable(req.queryParams("modules")).orElse("");
+
+        StringBuilder json = new StringBuilder("{");
+        Arrays.stream(modules.split(","))
+                .map(String::trim)
+                .filter(s -> s.matches("\\d+:.+"))
+                .distinct()
+                .forEach(module -> {
+                    String[] split = module.split(":", 2);
+                    String refreshed;
+                    try {
+                        refreshed = refresh(Integer.parseInt(split[0]), split[1]).json;
+                    } catch (Exception e) {
+                        logger.error("Couldn't refresh module " + module, e);
+                        WebSocketMessage error = new WebSocketMessage();
+                        error.setCommand(WebSocketMessage.COMMAND_ERROR);
+                        error.setMessage("Can't refresh module:" + e.getMessage());
+                        refreshed = gson.toJson(error);
+                    }
+
+                    if (json.length() > 1) {
+                        json.append(',');
+                    }
+                    json.append(gson.toJson(module)).append(':').append(refreshed);
+                });
+        json.append('}');
+
+        String body = json.toString();
+        return conditional(req, res, body, etag(body));
+    }
+
+    /**
+     * Gets the refresh of a module, from the cache if it's not older than the refresh rate of the module.
+     * Errors and modules that never refresh are not kept.
+     */
+    private CachedRefresh refresh(int moduleId, String size) throws Exception {
         Plugin plugin = PluginModuleMaintainer.INSTANCE.getPluginForModule(moduleId);
+        String key = moduleId + ":" + size;
+        long now = System.currentTimeMillis();
 
-        return plugin.refreshPlugin(size);
+        CachedRefresh cached = refreshes.get(key);
+        if (cached != null && cached.plugin == plugin && cached.settingsVersion == plugin.getSettingsVersion() && cached.expiresAt > now) {
+            return cached;
+        }
+
+        int version = plugin.getSettingsVersion();
+        WebSocketMessage message = plugin.refreshPlugin(size);
+        String json = gson.toJson(message);
+        cached = new CachedRefresh(plugin, version, json, etag(json), now + plugin.getRefreshRate(size) * 1000L);
+
+        refreshes.values().removeIf(r -> r.expiresAt <= now);
+        if (plugin.getRefreshRate(size) > Plugin.NEVER && message != null && !WebSocketMessage.COMMAND_ERROR.equals(message.getCommand())) {
+            refreshes.put(key, cached);
+        }
+
+        return cached;
+    }
+
+    /**
+     * Sends the json with its ETag or a 304 if the client already has it
+     */
+    private String conditional(Request req, Response res, String json, String etag) {
+        res.type("application/json");
+        res.header("ETag", etag);
+
+        String ifNoneMatch = req.headers("If-None-Match");
+        if (ifNoneMatch != null && (ifNoneMatch.contains(etag) || ifNoneMatch.trim().equals("*"))) {
+            res.status(HttpStatus.NOT_MODIFIED_304);
+            return "";
+        }
+
+        return json;
+    }
+
+    private String etag(String json) {
+        return "\"" + DigestUtils.sha1Hex(json) + "\"";
     }
 
     /**
@@ -168,4 +359,33 @@ public enum APIController {
         return plugin.processIncomingCommand(command, message, extra);
     }
 
+    private static class CachedRefresh {
+        private final Plugin plugin;
+        private final int settingsVersion;
+        private final String json, etag;
+        private final long expiresAt;
+
+        private CachedRefresh(Plugin plugin, int settingsVersion, String json, String etag, long expiresAt) {
+            this.plugin = plugin;
+            this.settingsVersion = settingsVersion;
+            this.json = json;
+            this.etag = etag;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static class ExposedSettings {
+        private final Plugin plugin;
+        private final int settingsVersion;
+        private final CompletableFuture<Map<String, String>> settings;
+        private final Future<?> task;
+        private final long startedAt = System.currentTimeMillis();
+
+        private ExposedSettings(Plugin plugin, int settingsVersion, CompletableFuture<Map<String, String>> settings, Future<?> task) {
+            this.plugin = plugin;
+            this.settingsVersion = settingsVersion;
+            this.settings = settings;
+            this.task = task;
+        }
+    }
 }
@@ -1,5 +1,6 @@
 package com.ftpix.homedash.app.controllers;
 
+import com.ftpix.homedash.Utils.Json;
 import com.ftpix.homedash.app.PluginModuleMaintainer;
 import com.ftpix.homedash.db.DB;
 import com.ftpix.homedash.models.Module;
@@ -8,7 +9,6 @@ import com.ftpix.homedash.plugins.Plugin;
 import com.ftpix.homedash.utils.HomeDashTemplateEngine;
 import com.ftpix.homedash.utils.Predicates;
 import com.google.gson.Gson;
-import io.gsonfire.GsonFireBuilder;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import spark.ModelAndView;
@@ -27,7 +27,7 @@ public enum KioskController {
 
     private Logger logger = LogManager.getLogger();
 
-    private final Gson gson = new GsonFireBuilder().enableExposeMethodResult().createGsonBuilder().excludeFieldsWithoutExposeAnnotation().create();
+    private final Gson gson = Json.EXPOSED;
 
     public void defineEndpoints() {
         Spark.get("/kiosk/:moduleId", this::getKioskView, new HomeDashTemplateEngine());
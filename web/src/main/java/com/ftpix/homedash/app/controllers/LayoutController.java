@@ -1,5 +1,7 @@
 package com.ftpix.homedash.app.controllers;
 
+import com.ftpix.homedash.Utils.Json;
+import com.ftpix.homedash.app.PluginModuleMaintainer;
 import com.ftpix.homedash.db.DB;
 import com.ftpix.homedash.models.Layout;
 import com.ftpix.homedash.models.Module;
@@ -8,7 +10,6 @@ import com.ftpix.homedash.plugins.Plugin;
 import com.ftpix.homedash.utils.HomeDashTemplateEngine;
 import com.google.gson.Gson;
 import de.neuland.jade4j.exceptions.JadeException;
-import io.gsonfire.GsonFireBuilder;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.eclipse.jetty.http.HttpStatus;
@@ -25,7 +26,7 @@ public enum LayoutController implements Controller<Layout, Integer> {
     INSTANCE;
 
     private Logger logger = LogManager.getLogger();
-    private final Gson gson = new GsonFireBuilder().enableExposeMethodResult().createGsonBuilder().excludeFieldsWithoutExposeAnnotation().create();
+    private final Gson gson = Json.EXPOSED;
 
 
 
@@ -176,13 +177,9 @@ public enum LayoutController implements Controller<Layout, Integer> {
      * @param req A Spark request
      * @param res A Spark Response
      * @return
-     * @throws ClassNotFoundException
-     * @throws SQLException
-     * @throws InstantiationException
-     * @throws IOException
-     * @throws IllegalAccessException
+     * @throws Exception
      */
-    private String getModuleHtml(Request req, Response res) throws ClassNotFoundException, SQLException, InstantiationException, IOException, IllegalAccessException {
+    private String getModuleHtml(Request req, Response res) throws Exception {
         int moduleId = Integer.parseInt(req.params("moduleId"));
         String size = req.params("size");
 
@@ -278,18 +275,10 @@ public enum LayoutController implements Controller<Layout, Integer> {
      * @param moduleId
      * @param size
      * @return
-     * @throws SQLException
-     * @throws InstantiationException
-     * @throws IllegalAccessException
-     * @throws ClassNotFoundException
-     * @throws JadeException
-     * @throws IOException
+     * @throws Exception
      */
-    public String getModuleContent(int moduleId, String size) throws SQLException, InstantiationException, IllegalAccessException, ClassNotFoundException, JadeException, IOException {
-
-        Module module = ModuleController.INSTANCE.get(moduleId);
-
-        Plugin plugin = (Plugin) Class.forName(module.getPluginClass()).newInstance();
+    public String getModuleContent(int moduleId, String size) throws Exception {
+        Plugin plugin = PluginModuleMaintainer.INSTANCE.getPluginForModule(moduleId);
         return plugin.getView(size);
     }
 
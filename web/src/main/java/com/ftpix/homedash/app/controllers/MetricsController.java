@@ -0,0 +1,53 @@
+package com.ftpix.homedash.app.controllers;
+
+import com.ftpix.homedash.app.PluginWarmUp;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import spark.Request;
+import spark.Response;
+import spark.Spark;
+
+import java.util.List;
+
+/**
+ * Metrics of the instance in the prometheus text format.
+ * So far the warm up of the modules: which ones are ready, still warming or failed and how long it took.
+ */
+public enum MetricsController {
+    INSTANCE;
+
+    private Logger logger = LogManager.getLogger();
+
+    public void defineEndpoints() {
+        Spark.get("/metrics", this::metrics);
+    }
+
+    private String metrics(Request req, Response res) {
+        res.type("text/plain; version=0.0.4; charset=utf-8");
+
+        List<PluginWarmUp.ModuleWarmUp> modules = PluginWarmUp.INSTANCE.getModules();
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("# HELP homedash_module_ready 1 when the module warmed up, 0 while it's warming or if it failed\n");
+        sb.append("# TYPE homedash_module_ready gauge\n");
+        modules.forEach(m -> sb.append("homedash_module_ready").append(labels(m)).append(' ')
+                .append(m.getState() == PluginWarmUp.State.READY ? 1 : 0).append('\n'));
+
+        sb.append("# HELP homedash_module_warm_up_seconds How long the warm up of the module took, or has been running\n");
+        sb.append("# TYPE homedash_module_warm_up_seconds gauge\n");
+        modules.forEach(m -> sb.append("homedash_module_warm_up_seconds").append(labels(m)).append(' ')
+                .append(m.getDuration() / 1000d).append('\n'));
+
+        sb.append("# HELP homedash_modules_warming Number of modules still warming up\n");
+        sb.append("# TYPE homedash_modules_warming gauge\n");
+        sb.append("homedash_modules_warming ").append(modules.stream().filter(m -> m.getState() == PluginWarmUp.State.WARMING).count()).append('\n');
+
+        logger.debug("/metrics: {} modules", modules.size());
+        return sb.toString();
+    }
+
+    private String labels(PluginWarmUp.ModuleWarmUp module) {
+        return "{module=\"" + module.getModuleId() + "\",plugin=\"" + module.getPluginId()
+                + "\",state=\"" + module.getState().name().toLowerCase() + "\"}";
+    }
+}
@@ -1,6 +1,7 @@
 package com.ftpix.homedash.app.controllers;
 
 
+import com.ftpix.homedash.Utils.Json;
 import com.ftpix.homedash.app.PluginModuleMaintainer;
 import com.ftpix.homedash.db.DB;
 import com.ftpix.homedash.jobs.BackgroundRefresh;
@@ -12,7 +13,6 @@ import com.google.gson.Gson;
 import com.j256.ormlite.stmt.PreparedQuery;
 import com.j256.ormlite.stmt.QueryBuilder;
 import com.j256.ormlite.stmt.Where;
-import io.gsonfire.GsonFireBuilder;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.eclipse.jetty.http.HttpStatus;
@@ -34,7 +34,7 @@ public enum ModuleController implements Controller<Module, Integer> {
 
     private Logger logger = LogManager.getLogger();
 
-    private final Gson gson = new GsonFireBuilder().enableExposeMethodResult().createGsonBuilder().excludeFieldsWithoutExposeAnnotation().create();
+    private final Gson gson = Json.EXPOSED;
     public static final String SESSION_NEW_MODULE_PAGE = "new-module-page";
 
 
@@ -171,11 +171,11 @@ public enum ModuleController implements Controller<Module, Integer> {
      * @param res A Spark response
      * @return a list of String with the different sizes
      */
-    private String[] getModuleSizes(Request req, Response res) throws ClassNotFoundException, SQLException, InstantiationException, IllegalAccessException {
+    private String[] getModuleSizes(Request req, Response res) throws ClassNotFoundException, SQLException {
         int moduleId = Integer.parseInt(req.params("id"));
         logger.info("/module/{}/availableSizes", moduleId);
 
-        return PluginController.INSTANCE.getPluginSizes(getModulePlugin(moduleId));
+        return getModulePluginDescriptor(moduleId).getSizes();
     }
 
     /**
@@ -299,13 +299,12 @@ public enum ModuleController implements Controller<Module, Integer> {
      * @param res A Spark response
      * @return
      * @throws ClassNotFoundException
-     * @throws IllegalAccessException
      * @throws InstantiationException
      * @throws SQLException
      */
-    private ModelAndView addModule(Request req, Response res) throws ClassNotFoundException, IllegalAccessException, InstantiationException, SQLException {
+    private ModelAndView addModule(Request req, Response res) throws ClassNotFoundException, InstantiationException, SQLException {
 
-        Plugin plugin = (Plugin) Class.forName(req.params("pluginclass")).newInstance();
+        Plugin plugin = PluginController.INSTANCE.createPluginFromClass(req.params("pluginclass"));
 
         logger.info("/add-module/{}", plugin.getClass().getCanonicalName());
         try {
@@ -417,13 +416,12 @@ public enum ModuleController implements Controller<Module, Integer> {
 
 
     /**
-     * Get the plugin class for a module
+     * Get the plugin descriptor for a module
      */
-    public Plugin getModulePlugin(int moduleId) throws InstantiationException, IllegalAccessException, ClassNotFoundException, SQLException {
+    public PluginDescriptor getModulePluginDescriptor(int moduleId) throws ClassNotFoundException, SQLException {
         Module module = MODULE_DAO.queryForId(moduleId);
 
-        Plugin plugin = (Plugin) Class.forName(module.getPluginClass()).newInstance();
-        return plugin;
+        return PluginController.INSTANCE.getDescriptor(module.getPluginClass());
     }
 
     /**
@@ -464,6 +462,7 @@ public enum ModuleController implements Controller<Module, Integer> {
         });
 
         BackgroundRefresh.resetTimer();
+        APIController.INSTANCE.invalidate(module.getId());
 
         //Initializing the modules endpoints if any;
         try {
@@ -486,6 +485,7 @@ public enum ModuleController implements Controller<Module, Integer> {
             ModuleSettingsController.INSTANCE.deleteMany(module.getSettings());
 
             PluginModuleMaintainer.INSTANCE.removeModule(module.getId());
+            APIController.INSTANCE.invalidate(module.getId());
             return true;
         } else {
             return false;
@@ -1,18 +1,18 @@
 package com.ftpix.homedash.app.controllers;
 
+import com.ftpix.homedash.Utils.Json;
 import com.ftpix.homedash.app.PluginModuleMaintainer;
+import com.ftpix.homedash.app.PluginWarmUp;
 import com.ftpix.homedash.db.DB;
 import com.ftpix.homedash.models.Layout;
 import com.ftpix.homedash.models.Module;
 import com.ftpix.homedash.models.ModuleLayout;
 import com.ftpix.homedash.models.Page;
-import com.ftpix.homedash.plugins.Plugin;
 import com.ftpix.homedash.utils.HomeDashTemplateEngine;
 import com.google.gson.Gson;
 import com.j256.ormlite.stmt.PreparedQuery;
 import com.j256.ormlite.stmt.QueryBuilder;
 import com.j256.ormlite.stmt.Where;
-import io.gsonfire.GsonFireBuilder;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import spark.ModelAndView;
@@ -30,7 +30,8 @@ public enum ModuleLayoutController implements Controller<ModuleLayout, Integer>
     INSTANCE;
 
     private Logger logger = LogManager.getLogger();
-    private final Gson gson = new GsonFireBuilder().enableExposeMethodResult().createGsonBuilder().excludeFieldsWithoutExposeAnnotation().create();
+    private final Gson gson = Json.EXPOSED;
+    private final HomeDashTemplateEngine engine = new HomeDashTemplateEngine();
 
 
     @Override
@@ -65,9 +66,8 @@ public enum ModuleLayoutController implements Controller<ModuleLayout, Integer>
         Map<String, Object> model = new HashMap<>();
         model.put("layouts", layouts);
         model.put("plugins", PluginModuleMaintainer.INSTANCE.PLUGIN_INSTANCES);
+        model.put("warmUp", PluginWarmUp.INSTANCE);
 
-
-        HomeDashTemplateEngine engine = new HomeDashTemplateEngine();
         String html = engine.render(new ModelAndView(model, "module-layout"));
 
         Map<String, Object> toJson = new HashMap<String, Object>();
@@ -122,10 +122,8 @@ public enum ModuleLayoutController implements Controller<ModuleLayout, Integer>
      * @return
      * @throws SQLException
      * @throws ClassNotFoundException
-     * @throws IllegalAccessException
-     * @throws InstantiationException
      */
-    public ModuleLayout getLayoutForModule(Layout layout, Module module) throws SQLException, InstantiationException, IllegalAccessException, ClassNotFoundException {
+    public ModuleLayout getLayoutForModule(Layout layout, Module module) throws SQLException, ClassNotFoundException {
 
         logger.info("Getting Layout for module[{}] on {}", module.getId(), layout.getName());
         QueryBuilder<ModuleLayout, Integer> queryBuilder = DB.MODULE_LAYOUT_DAO.queryBuilder();
@@ -145,8 +143,7 @@ public enum ModuleLayoutController implements Controller<ModuleLayout, Integer>
             moduleLayout.setY(1);
 
             // Getting the smallest available size for this plugin
-            Plugin plugin = (Plugin) Class.forName(module.getPluginClass()).newInstance();
-            moduleLayout.setSize(PluginController.INSTANCE.getSmallestAvailableSize(plugin));
+            moduleLayout.setSize(PluginController.INSTANCE.getSmallestAvailableSize(module.getPluginClass()));
             ModuleLayoutController.INSTANCE.create(moduleLayout);
         } else {
             moduleLayout = moduleLayouts.get(0);
@@ -189,9 +186,7 @@ public enum ModuleLayoutController implements Controller<ModuleLayout, Integer>
                 ml.setX(x);
                 ml.setY(y);
 
-                Plugin plugin = PluginModuleMaintainer.INSTANCE.getPluginForModule(module);
-
-                String[] availableSizes = PluginController.INSTANCE.getPluginSizes(plugin);
+                String[] availableSizes = PluginController.INSTANCE.getPluginSizes(module.getPluginClass());
 
                 //Checking if the size we're trying to save really exists (sometimes resizing can fail);
                 boolean contains = false;
@@ -1,9 +1,9 @@
 package com.ftpix.homedash.app.controllers;
 
+import com.ftpix.homedash.Utils.Json;
 import com.ftpix.homedash.db.DB;
 import com.ftpix.homedash.models.Page;
 import com.google.gson.Gson;
-import io.gsonfire.GsonFireBuilder;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import spark.Request;
@@ -21,7 +21,7 @@ public enum PageController implements Controller<Page, Integer> {
 INSTANCE;
     private Logger logger = LogManager.getLogger();
 
-    private final Gson gson = new GsonFireBuilder().enableExposeMethodResult().createGsonBuilder().excludeFieldsWithoutExposeAnnotation().create();
+    private final Gson gson = Json.EXPOSED;
 
 
     @Override
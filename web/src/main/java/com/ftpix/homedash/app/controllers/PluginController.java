@@ -1,24 +1,8 @@
 package com.ftpix.homedash.app.controllers;
 
-import com.ftpix.homedash.plugin.plex.PlexPlugin;
+import com.ftpix.homedash.app.PluginRegistry;
+import com.ftpix.homedash.models.PluginDescriptor;
 import com.ftpix.homedash.plugins.Plugin;
-import com.ftpix.homedash.plugins.SonarrTvPlugin;
-import com.ftpix.homedash.plugins.SystemInfoPlugin;
-import com.ftpix.homedash.plugins.TransmissionPlugin;
-import com.ftpix.homedash.plugins.couchpotato.CouchPotatoPlugin;
-import com.ftpix.homedash.plugins.docker.DockerPlugin;
-import com.ftpix.homedash.plugins.dockercompose.DockerComposePlugin;
-import com.ftpix.homedash.plugins.dynamicdns.DynamicDnsPlugin;
-import com.ftpix.homedash.plugins.googlepubliccalendar.GooglePublicCalendarPlugin;
-import com.ftpix.homedash.plugins.harddisk.HarddiskPlugin;
-import com.ftpix.homedash.plugins.kvm.KvmPlugin;
-import com.ftpix.homedash.plugins.mma.MmaPlugin;
-import com.ftpix.homedash.plugins.networkmonitor.NetworkMonitorPlugin;
-import com.ftpix.homedash.plugins.pihole.PiHolePlugin;
-import com.ftpix.homedash.plugins.portmapper.PortMapperPlugin;
-import com.ftpix.homedash.plugins.spotify.SpotifyPlugin;
-import com.ftpix.homedash.plugins.unifi.UnifiPlugin;
-import com.ftpix.logreader.LogReaderPlugin;
 import de.neuland.jade4j.exceptions.JadeException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -31,56 +15,18 @@ public enum PluginController {
     private Logger logger = LogManager.getLogger();
 
 
-    private final static Set<Class> subTypes = Set.of(
-            CouchPotatoPlugin.class,
-            DockerPlugin.class,
-            DockerComposePlugin.class,
-            DynamicDnsPlugin.class,
-            GooglePublicCalendarPlugin.class,
-            HarddiskPlugin.class,
-            KvmPlugin.class,
-            LogReaderPlugin.class,
-            MmaPlugin.class,
-            NetworkMonitorPlugin.class,
-            PiHolePlugin.class,
-            PlexPlugin.class,
-            PortMapperPlugin.class,
-            SonarrTvPlugin.class,
-            SpotifyPlugin.class,
-            SystemInfoPlugin.class,
-            TransmissionPlugin.class,
-            UnifiPlugin.class
-            );
-
-
     public void defineEndpoints() {
 
     }
 
     /**
-     * Lists all the available controller, looking for class implementing the Plugin class
+     * Lists all the available plugins from the plugin registry
      *
      * @return
      */
-    public List<Plugin> listAvailablePlugins() {
+    public List<PluginDescriptor> listAvailablePlugins() {
         logger.info("listAvailablePlugins()");
-        List<Plugin> availablePlugins = new ArrayList<>();
-
-
-        logger.info("Found {} plugins", subTypes.size());
-
-        subTypes.forEach(plugin -> {
-            try {
-                availablePlugins.add((Plugin) plugin.newInstance());
-            } catch (Exception e) {
-                e.printStackTrace();
-                logger.error("Error while creating new instance of " + plugin.getCanonicalName(), e);
-            }
-        });
-
-
-        Collections.sort(availablePlugins, Comparator.comparing(Plugin::getDisplayName));
-        return availablePlugins;
+        return PluginRegistry.INSTANCE.getDescriptors();
     }
 
 
@@ -100,24 +46,29 @@ public enum PluginController {
     /**
      * Get the smallest available size for a plugin
      *
-     * @param plugin
+     * @param pluginClass
      */
-    public String getSmallestAvailableSize(Plugin plugin) {
-        logger.info("getSmallestAvailableSize [{}]", plugin.getId());
-        String[] sizes = plugin.getSizes();
-        Arrays.sort(sizes);
-        logger.info("Smallest size: {}", sizes[0]);
-        return sizes[0];
+    public String getSmallestAvailableSize(String pluginClass) throws ClassNotFoundException {
+        String size = getDescriptor(pluginClass).getSmallestSize();
+        logger.info("Smallest size for [{}]: {}", pluginClass, size);
+        return size;
     }
 
 
-    public String[] getPluginSizes(Plugin modulePlugin) {
-        String[] sizes = modulePlugin.getSizes();
-        Arrays.sort(sizes);
-        return sizes;
+    public String[] getPluginSizes(Plugin modulePlugin) throws ClassNotFoundException {
+        return getPluginSizes(modulePlugin.getClass().getCanonicalName());
+    }
+
+    public String[] getPluginSizes(String pluginClass) throws ClassNotFoundException {
+        return getDescriptor(pluginClass).getSizes();
+    }
+
+    public PluginDescriptor getDescriptor(String pluginClass) throws ClassNotFoundException {
+        return PluginRegistry.INSTANCE.getDescriptor(pluginClass)
+                .orElseThrow(() -> new ClassNotFoundException("No registered plugin for class " + pluginClass));
     }
 
-    public Plugin createPluginFromClass(String className) throws ClassNotFoundException, IllegalAccessException, InstantiationException {
-        return (Plugin) Class.forName(className).newInstance();
+    public Plugin createPluginFromClass(String className) throws ClassNotFoundException, InstantiationException {
+        return PluginRegistry.INSTANCE.newInstance(className);
     }
 }
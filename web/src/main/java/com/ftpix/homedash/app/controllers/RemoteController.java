@@ -1,10 +1,10 @@
 package com.ftpix.homedash.app.controllers;
 
+import com.ftpix.homedash.Utils.Json;
 import com.ftpix.homedash.models.*;
 import com.ftpix.homedash.models.Module;
 import com.ftpix.homedash.utils.HomeDashTemplateEngine;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.mashape.unirest.http.HttpResponse;
 import com.mashape.unirest.http.JsonNode;
 import com.mashape.unirest.http.Unirest;
@@ -29,7 +29,7 @@ public enum RemoteController implements Controller<RemoteFavorite, Integer> {
     private Logger logger = LogManager.getLogger();
 
 
-    private Gson gson = new GsonBuilder().create();
+    private Gson gson = Json.PLAIN;
 
     @Override
     public void defineEndpoints() {
@@ -1,6 +1,7 @@
 package com.ftpix.homedash.app.controllers;
 
 
+import com.ftpix.homedash.Utils.Json;
 import com.ftpix.homedash.app.Constants;
 import com.ftpix.homedash.db.DB;
 import com.ftpix.homedash.models.*;
@@ -99,7 +100,7 @@ public enum SettingsController implements Controller<Settings, String> {
                 .stream()
                 .collect(Collectors.toMap(Settings::getName, Settings::getValue));
 
-        Gson gson = new Gson();
+        Gson gson = Json.PLAIN;
 
 
         response.header("Content-type", "application/json");
@@ -117,7 +118,7 @@ public enum SettingsController implements Controller<Settings, String> {
 
         logger.info("Importing config:\n{}", json);
 
-        Export export = new Gson().fromJson(json, Export.class);
+        Export export = Json.PLAIN.fromJson(json, Export.class);
 
         //delete all settings
         DB.clearTable(Settings.class);
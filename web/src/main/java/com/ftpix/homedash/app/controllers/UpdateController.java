@@ -1,10 +1,10 @@
 package com.ftpix.homedash.app.controllers;
 
+import com.ftpix.homedash.Utils.Json;
 import com.ftpix.homedash.models.Version;
 import com.ftpix.homedash.updater.Updater;
 import com.ftpix.homedash.updater.exceptions.WrongVersionPatternException;
 import com.google.gson.Gson;
-import io.gsonfire.GsonFireBuilder;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import spark.Request;
@@ -24,7 +24,7 @@ import java.util.concurrent.Executors;
 public enum UpdateController {
     INSTANCE;
 
-    private final Gson gson = new GsonFireBuilder().enableExposeMethodResult().createGsonBuilder().excludeFieldsWithoutExposeAnnotation().create();
+    private final Gson gson = Json.EXPOSED;
     private final Logger logger = LogManager.getLogger();
     private Updater updater = new Updater();
 
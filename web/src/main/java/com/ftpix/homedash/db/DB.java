@@ -94,6 +94,15 @@ public class DB {
     }
 
 
+    /**
+     * Opens the database and runs the schema updates, it's all done by the static block the first time this class is used
+     * so calling this is only about choosing when it happens.
+     */
+    public static void init() {
+        logger.info("DB ready");
+    }
+
+
     public static boolean clearTable(Class dataClass) throws SQLException {
         return TableUtils.clearTable(connectionSource, dataClass) >= 0;
     }
@@ -1,6 +1,7 @@
 package com.ftpix.homedash.jobs;
 
 import com.ftpix.homedash.app.PluginModuleMaintainer;
+import com.ftpix.homedash.app.PluginWarmUp;
 import com.ftpix.homedash.models.ModuleLocation;
 import com.ftpix.homedash.plugins.Plugin;
 
@@ -29,6 +30,8 @@ public class BackgroundRefresh implements Job {
             PluginModuleMaintainer.INSTANCE.getAllPluginInstances()
                     .stream()
                     .filter(p -> p.getBackgroundRefreshRate() > Plugin.NEVER && time % p.getBackgroundRefreshRate() == 0 && p.getModule().getLocation() == ModuleLocation.LOCAL)
+                    // one module still connecting to its service would hold all the others
+                    .filter(p -> !PluginWarmUp.INSTANCE.isWarming(p.getModule().getId()))
                     .forEach((plugin) -> {
                         try {
                             logger.info("Background task: plugin:[{}] module:[{}]", plugin.getId(), plugin.getModule().getId());
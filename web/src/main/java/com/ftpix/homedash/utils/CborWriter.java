@@ -0,0 +1,155 @@
+package com.ftpix.homedash.utils;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes a json tree as CBOR (RFC 7049). The tree comes from {@link com.google.gson.Gson#toJsonTree(Object)}
+ * so the same type adapters produce a binary message, whatever methods of {@link com.google.gson.stream.JsonWriter} they call.
+ * <p>
+ * Objects and arrays are written with indefinite lengths, integral numbers as integers and the other numbers
+ * as single precision floats when it doesn't lose anything, double precision otherwise.
+ */
+public class CborWriter implements Closeable, Flushable {
+    private static final int MAJOR_UNSIGNED = 0, MAJOR_NEGATIVE = 1, MAJOR_TEXT = 3;
+    private static final int START_ARRAY = 0x9f, START_MAP = 0xbf, BREAK = 0xff;
+    private static final int FALSE = 0xf4, TRUE = 0xf5, NULL = 0xf6, FLOAT = 0xfa, DOUBLE = 0xfb;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[9];
+
+    public CborWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes an element and everything in it
+     */
+    public void write(JsonElement element) throws IOException {
+        if (element == null || element.isJsonNull()) {
+            out.write(NULL);
+        } else if (element.isJsonArray()) {
+            out.write(START_ARRAY);
+            for (JsonElement item : element.getAsJsonArray()) {
+                write(item);
+            }
+            out.write(BREAK);
+        } else if (element.isJsonObject()) {
+            out.write(START_MAP);
+            for (Map.Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+                writeText(entry.getKey());
+                write(entry.getValue());
+            }
+            out.write(BREAK);
+        } else {
+            JsonPrimitive primitive = element.getAsJsonPrimitive();
+            if (primitive.isBoolean()) {
+                out.write(primitive.getAsBoolean() ? TRUE : FALSE);
+            } else if (primitive.isNumber()) {
+                writeNumber(primitive.getAsNumber());
+            } else {
+                writeText(primitive.getAsString());
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void writeNumber(Number value) throws IOException {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte
+                || value instanceof AtomicInteger || value instanceof AtomicLong) {
+            writeLong(value.longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            writeDouble(value.doubleValue());
+        } else {
+            //BigDecimal, BigInteger or the lazily parsed numbers of a json tree
+            writeParsed(value.toString());
+        }
+    }
+
+    private void writeText(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeHeader(MAJOR_TEXT, bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeLong(long value) throws IOException {
+        if (value >= 0) {
+            writeHeader(MAJOR_UNSIGNED, value);
+        } else {
+            writeHeader(MAJOR_NEGATIVE, -1 - value);
+        }
+    }
+
+    private void writeDouble(double value) throws IOException {
+        if (value == Math.rint(value) && Math.abs(value) < 0x1p53 && !(value == 0 && 1 / value < 0)) {
+            writeLong((long) value);
+        } else if ((float) value == value || Double.isNaN(value)) {
+            writeBits(FLOAT, Float.floatToIntBits((float) value), 4);
+        } else {
+            writeBits(DOUBLE, Double.doubleToLongBits(value), 8);
+        }
+    }
+
+    private void writeParsed(String value) throws IOException {
+        try {
+            BigDecimal decimal = new BigDecimal(value);
+            if (decimal.precision() - decimal.scale() <= 19) {
+                BigInteger integer = decimal.toBigIntegerExact();
+                if (integer.bitLength() < 64) {
+                    writeLong(integer.longValue());
+                    return;
+                }
+            }
+        } catch (ArithmeticException | NumberFormatException e) {
+            //not an integer, written as a floating point number
+        }
+        writeDouble(Double.parseDouble(value));
+    }
+
+    /**
+     * Major type with its argument, in the smallest form
+     */
+    private void writeHeader(int major, long argument) throws IOException {
+        int type = major << 5;
+        if (argument < 24) {
+            out.write(type | (int) argument);
+        } else if (argument < 0x100) {
+            writeBits(type | 24, argument, 1);
+        } else if (argument < 0x10000) {
+            writeBits(type | 25, argument, 2);
+        } else if (argument < 0x100000000L) {
+            writeBits(type | 26, argument, 4);
+        } else {
+            writeBits(type | 27, argument, 8);
+        }
+    }
+
+    private void writeBits(int initialByte, long bits, int length) throws IOException {
+        buffer[0] = (byte) initialByte;
+        for (int i = length; i > 0; i--) {
+            buffer[i] = (byte) bits;
+            bits >>>= 8;
+        }
+        out.write(buffer, 0, length + 1);
+    }
+}
@@ -0,0 +1,225 @@
+package com.ftpix.homedash.utils;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.MimeTypes;
+import org.eclipse.jetty.server.HttpOutput;
+import spark.Request;
+import spark.Response;
+
+import javax.servlet.ServletOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Sends files from the file system with HTTP validators (ETag / Last-Modified) and byte ranges.
+ * The content is memory mapped and handed to jetty directly so it doesn't get copied through the heap.
+ */
+public class FileResponse {
+    private static final Logger logger = LogManager.getLogger();
+
+    /**
+     * Files named after a hash (ex: md5 of the source url) never change, browsers can keep them forever
+     */
+    private static final Pattern CONTENT_ADDRESSED = Pattern.compile("^[0-9a-fA-F]{32,}\\.[a-zA-Z0-9]+$");
+    private static final Pattern RANGE = Pattern.compile("^bytes=(\\d*)-(\\d*)$");
+    private static final String CACHE_IMMUTABLE = "public, max-age=31536000, immutable", CACHE_REVALIDATE = "no-cache";
+
+    private static final int MAX_VALIDATORS = 1024;
+
+    private static final MimeTypes MIME_TYPES = new MimeTypes();
+    /**
+     * Validators of the files served lately, least recently used are dropped
+     */
+    private static final Map<Path, Validator> VALIDATORS = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, Validator> eldest) {
+            return size() > MAX_VALIDATORS;
+        }
+    });
+
+
+    /**
+     * Sends a file, answers 304 if the client already has it
+     *
+     * @param req  the spark request
+     * @param res  the spark response
+     * @param file the file to send, has to exist
+     */
+    public static void send(Request req, Response res, Path file) throws IOException {
+        Validator validator = getValidator(file);
+        String fileName = file.getFileName().toString();
+
+        res.header("ETag", validator.etag);
+        res.header("Last-Modified", validator.lastModified);
+        res.header("Accept-Ranges", "bytes");
+        res.header("Cache-Control", CONTENT_ADDRESSED.matcher(fileName).matches() ? CACHE_IMMUTABLE : CACHE_REVALIDATE);
+
+        if (isNotModified(req, validator)) {
+            res.status(HttpStatus.NOT_MODIFIED_304);
+            return;
+        }
+
+        long start = 0, length = validator.size;
+
+        Optional<String> range = Optional.ofNullable(req.headers("Range"))
+                .filter(r -> ifRangeMatches(req, validator));
+
+        if (range.isPresent()) {
+            long[] bounds = parseRange(range.get(), validator.size);
+            if (bounds == null) {
+                res.status(HttpStatus.RANGE_NOT_SATISFIABLE_416);
+                res.header("Content-Range", "bytes */" + validator.size);
+                return;
+            }
+
+            start = bounds[0];
+            length = bounds[1] - bounds[0] + 1;
+            res.status(HttpStatus.PARTIAL_CONTENT_206);
+            res.header("Content-Range", "bytes " + bounds[0] + "-" + bounds[1] + "/" + validator.size);
+        }
+
+        res.raw().setContentType(Optional.ofNullable(MIME_TYPES.getMimeByExtension(fileName))
+                .or(() -> probeContentType(file))
+                .orElse("application/octet-stream"));
+        res.raw().setHeader("Content-Disposition", "inline; filename=" + fileName);
+        res.raw().setContentLengthLong(length);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ServletOutputStream out = res.raw().getOutputStream();
+            if (out instanceof HttpOutput) {
+                ((HttpOutput) out).sendContent(channel.map(FileChannel.MapMode.READ_ONLY, start, length));
+            } else {
+                channel.transferTo(start, length, Channels.newChannel(out));
+            }
+        }
+    }
+
+
+    /**
+     * Gets the validators of a file, the hash is computed again only if the file changed
+     */
+    private static Validator getValidator(Path file) throws IOException {
+        long size = Files.size(file);
+        long modified = Files.getLastModifiedTime(file).toMillis();
+
+        Validator validator = VALIDATORS.get(file);
+        if (validator == null || validator.size != size || validator.modified != modified) {
+            try (InputStream is = Files.newInputStream(file)) {
+                validator = new Validator(size, modified, "\"" + DigestUtils.sha1Hex(is) + "\"");
+            }
+            VALIDATORS.put(file, validator);
+        }
+        return validator;
+    }
+
+    private static boolean isNotModified(Request req, Validator validator) {
+        String ifNoneMatch = req.headers("If-None-Match");
+        if (ifNoneMatch != null) {
+            return etagMatches(ifNoneMatch, validator.etag);
+        }
+
+        String ifModifiedSince = req.headers("If-Modified-Since");
+        if (ifModifiedSince != null) {
+            try {
+                long since = ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+                return validator.modified / 1000 <= since / 1000;
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Ranges are honored only if the If-Range validator (if any) still matches the file
+     */
+    private static boolean ifRangeMatches(Request req, Validator validator) {
+        String ifRange = req.headers("If-Range");
+        return ifRange == null || ifRange.equals(validator.etag) || ifRange.equals(validator.lastModified);
+    }
+
+    private static boolean etagMatches(String header, String etag) {
+        for (String candidate : header.split(",")) {
+            String trimmed = candidate.trim();
+            if (trimmed.equals("*") || trimmed.equals(etag) || trimmed.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses a single byte range
+     *
+     * @return first and last byte (inclusive) or null if the range can't be satisfied
+     */
+    static long[] parseRange(String header, long size) {
+        Matcher matcher = RANGE.matcher(header.trim());
+        if (!matcher.matches() || size == 0) {
+            return null;
+        }
+
+        String first = matcher.group(1), last = matcher.group(2);
+        try {
+            long start, end;
+            if (first.isEmpty()) {
+                if (last.isEmpty()) {
+                    return null;
+                }
+                //suffix range, last n bytes
+                start = Math.max(0, size - Long.parseLong(last));
+                end = size - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+            }
+
+            if (start >= size || start > end) {
+                return null;
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Optional<String> probeContentType(Path file) {
+        try {
+            return Optional.ofNullable(Files.probeContentType(file));
+        } catch (IOException e) {
+            logger.info("Couldn't probe content type of {}", file);
+            return Optional.empty();
+        }
+    }
+
+    private static class Validator {
+        private final long size, modified;
+        private final String etag, lastModified;
+
+        private Validator(long size, long modified, String etag) {
+            this.size = size;
+            this.modified = modified;
+            this.etag = etag;
+            this.lastModified = DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(modified).atZone(ZoneOffset.UTC));
+        }
+    }
+}
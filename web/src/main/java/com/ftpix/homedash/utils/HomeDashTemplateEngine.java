@@ -1,44 +1,57 @@
 package com.ftpix.homedash.utils;
 
 import com.ftpix.homedash.Utils.HomeDashClassPathTemplateLoader;
+import com.ftpix.homedash.app.AssetPipeline;
 import com.ftpix.homedash.app.Constants;
 import de.neuland.jade4j.JadeConfiguration;
 import de.neuland.jade4j.template.FileTemplateLoader;
 import de.neuland.jade4j.template.JadeTemplate;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import spark.ModelAndView;
 import spark.TemplateEngine;
 
 import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
 
 /**
- * Does the same as usual, just that it has a dev mode to read the files directly so we can reload pages without rebuilding the whole thing
+ * Does the same as usual, just that it has a dev mode to read the files directly so we can reload pages without rebuilding the whole thing.
+ * <p>
+ * Outside of dev mode the engines of a same template root share their configuration, so the templates compiled by {@link #precompile()}
+ * at startup are the ones used by all the routes.
  */
 public class HomeDashTemplateEngine extends TemplateEngine {
+    private static final String DEFAULT_ROOT = "templates", EXTENSION = ".jade";
+    private static final Map<String, JadeConfiguration> CONFIGURATIONS = new ConcurrentHashMap<>();
+    private static final Logger logger = LogManager.getLogger();
+
     private JadeConfiguration configuration;
 
     public HomeDashTemplateEngine() {
-        this("templates");
+        this(DEFAULT_ROOT);
     }
 
     public HomeDashTemplateEngine(String templateRoot) {
         if (Constants.DEV_MODE) {
-            this.configuration = new JadeConfiguration();
-
-            Path resolve = Paths.get(".").resolve("web").resolve("src").resolve("main").resolve("resources").resolve("templates");
-            this.configuration.setTemplateLoader(new FileTemplateLoader(resolve.toString() + "/", StandardCharsets.UTF_8.name()));
+            this.configuration = createConfiguration(templateRoot);
         } else {
-            this.configuration = new JadeConfiguration();
-            this.configuration.setTemplateLoader(new HomeDashClassPathTemplateLoader(templateRoot));
+            this.configuration = CONFIGURATIONS.computeIfAbsent(templateRoot, HomeDashTemplateEngine::createConfiguration);
         }
-
-        Map<String, Object> shared = new HashMap<>();
-        shared.put("STATIC_CONFIG", Constants.STATIC_CONFIG);
-        this.configuration.setSharedVariables(shared);
     }
 
     public HomeDashTemplateEngine(JadeConfiguration configuration) {
@@ -49,12 +62,97 @@ public class HomeDashTemplateEngine extends TemplateEngine {
         return this.configuration;
     }
 
+    /**
+     * Compiles all the templates of the default root (core pages and plugins templates) so the first request of each page
+     * doesn't have to. Does nothing in dev mode as templates are compiled on every request.
+     */
+    public static void precompile() {
+        if (Constants.DEV_MODE) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        JadeConfiguration configuration = new HomeDashTemplateEngine().configuration();
+        Set<String> names = templateNames(DEFAULT_ROOT);
+        int compiled = 0;
+        for (String name : names) {
+            try {
+                configuration.getTemplate(name);
+                compiled++;
+            } catch (Exception e) {
+                // mostly partials that can't be compiled on their own, they'll be compiled with the template including them
+                logger.debug("Couldn't precompile template [{}]", name, e);
+            }
+        }
+
+        logger.info("Compiled {}/{} templates in {}ms", compiled, names.size(), System.currentTimeMillis() - start);
+    }
+
     public String render(ModelAndView modelAndView) {
         try {
             JadeTemplate template = this.configuration.getTemplate(modelAndView.getViewName());
-            return this.configuration.renderTemplate(template, (Map) modelAndView.getModel());
+
+            Map<String, Object> model = new HashMap<>();
+            // not a shared variable, it changes when the config is imported after the configurations are created
+            model.put("STATIC_CONFIG", Constants.STATIC_CONFIG);
+            if (modelAndView.getModel() != null) {
+                model.putAll((Map) modelAndView.getModel());
+            }
+            return this.configuration.renderTemplate(template, model);
         } catch (IOException var3) {
             throw new IllegalArgumentException(var3);
         }
     }
+
+    private static JadeConfiguration createConfiguration(String templateRoot) {
+        JadeConfiguration configuration = new JadeConfiguration();
+        if (Constants.DEV_MODE) {
+            Path resolve = Paths.get(".").resolve("web").resolve("src").resolve("main").resolve("resources").resolve("templates");
+            configuration.setTemplateLoader(new FileTemplateLoader(resolve.toString() + "/", StandardCharsets.UTF_8.name()));
+        } else {
+            configuration.setTemplateLoader(new HomeDashClassPathTemplateLoader(templateRoot));
+        }
+
+        // compiled templates are kept by jade, only dev mode needs to see the changes on the files
+        configuration.setCaching(!Constants.DEV_MODE);
+
+        Map<String, Object> shared = new HashMap<>();
+        shared.put("assets", AssetPipeline.INSTANCE);
+        configuration.setSharedVariables(shared);
+        return configuration;
+    }
+
+    /**
+     * Names of the templates found directly in a root, from the folders and the jars of the class path.
+     * Names are the same as the views (without extension) as they are the keys of jade's cache
+     */
+    private static Set<String> templateNames(String templateRoot) {
+        Set<String> names = new TreeSet<>();
+        String prefix = templateRoot + "/";
+        try {
+            Enumeration<URL> roots = Thread.currentThread().getContextClassLoader().getResources(templateRoot);
+            while (roots.hasMoreElements()) {
+                URL root = roots.nextElement();
+                if (root.getProtocol().equals("jar")) {
+                    JarURLConnection connection = (JarURLConnection) root.openConnection();
+                    connection.setUseCaches(false);
+                    try (JarFile jar = connection.getJarFile()) {
+                        jar.stream()
+                                .map(JarEntry::getName)
+                                .filter(name -> name.startsWith(prefix) && name.endsWith(EXTENSION) && name.indexOf('/', prefix.length()) < 0)
+                                .forEach(name -> names.add(name.substring(prefix.length(), name.length() - EXTENSION.length())));
+                    }
+                } else if (root.getProtocol().equals("file")) {
+                    try (Stream<Path> files = Files.list(Paths.get(root.toURI()))) {
+                        files.map(file -> file.getFileName().toString())
+                                .filter(name -> name.endsWith(EXTENSION))
+                                .forEach(name -> names.add(name.substring(0, name.length() - EXTENSION.length())));
+                    }
+                }
+            }
+        } catch (IOException | URISyntaxException e) {
+            logger.error("Couldn't list the templates of [{}]", templateRoot, e);
+        }
+        return names;
+    }
 }
@@ -0,0 +1,93 @@
+package com.ftpix.homedash.websocket;
+
+import com.ftpix.homedash.models.ModuleLayout;
+import com.ftpix.homedash.models.WebSocketSession;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.jetty.http.HttpStatus;
+import spark.Request;
+import spark.Response;
+import spark.Spark;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Server-sent events version of the websockets, for browsers or proxies that break long lived websockets.
+ * The browser gets the same messages as on the websocket and posts the same messages it would send on it.
+ * <p>
+ * GET /events: dashboard, same as /ws
+ * GET /events/full-screen and /events/kiosk: single module, same as /ws-full-screen and /ws-kiosk
+ * POST /events/{client}: message from the browser, the client id is sent in the first event of the stream
+ * <p>
+ * The streams are asynchronous requests, they don't hold a request thread while they're open.
+ */
+public enum EventStreamEndpoint {
+    INSTANCE;
+
+    private final Logger logger = LogManager.getLogger();
+    private final Map<String, Consumer<String>> clients = new ConcurrentHashMap<>();
+
+
+    public void defineEndpoints() {
+        Spark.get("/events", this::dashboard);
+        Spark.get("/events/:size", this::singleModule);
+        Spark.post("/events/:client", this::message);
+    }
+
+    /**
+     * Streams the dashboard, driven by the same refresh as the websocket clients
+     */
+    private String dashboard(Request req, Response res) throws IOException {
+        EventStreamTransport transport = new EventStreamTransport();
+        WebSocketSession client = new WebSocketSession();
+        client.setTransport(transport);
+
+        logger.info("New event stream client [{}]", req.ip());
+        clients.put(transport.getId(), message -> MainWebSocket.INSTANCE.processMessage(client, message));
+        transport.start(req.raw(), res.raw(), () -> {
+            clients.remove(transport.getId());
+            MainWebSocket.INSTANCE.disconnect(client);
+        });
+
+        return "";
+    }
+
+    /**
+     * Streams a single module (full screen or kiosk)
+     */
+    private String singleModule(Request req, Response res) throws IOException {
+        String size = req.params("size");
+        if (!size.equals(ModuleLayout.FULL_SCREEN) && !size.equals(ModuleLayout.KIOSK)) {
+            Spark.halt(HttpStatus.NOT_FOUND_404);
+        }
+
+        EventStreamTransport transport = new EventStreamTransport();
+        InnerSocketClass socket = new InnerSocketClass(transport, size);
+
+        logger.info("New {} event stream client [{}]", size, req.ip());
+        clients.put(transport.getId(), socket::processMessage);
+        transport.start(req.raw(), res.raw(), () -> {
+            clients.remove(transport.getId());
+            socket.stopRefresh();
+        });
+
+        return "";
+    }
+
+    /**
+     * Message from a browser, 404 if its stream is gone, it will get a new id when reconnecting
+     */
+    private String message(Request req, Response res) {
+        Consumer<String> client = clients.get(req.params("client"));
+        if (client == null) {
+            Spark.halt(HttpStatus.NOT_FOUND_404);
+        }
+
+        client.accept(req.body());
+        res.status(HttpStatus.NO_CONTENT_204);
+        return "";
+    }
+}
@@ -0,0 +1,215 @@
+package com.ftpix.homedash.websocket;
+
+import com.ftpix.homedash.models.ClientTransport;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Server-sent events stream (text/event-stream) to a browser that can't keep a websocket open.
+ * <p>
+ * The request is made asynchronous so the stream doesn't hold a request thread: messages are queued by the refresh engine
+ * and written with non blocking writes, by the thread queuing them or by jetty when the client can take more.
+ */
+public class EventStreamTransport implements ClientTransport, WriteListener, AsyncListener {
+    private static final long HEARTBEAT_MS = 15_000;
+    private static final int MAX_PENDING = 1000, RETRY_MS = 3000;
+
+    private static final ScheduledExecutorService HEARTBEATS = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "event-stream-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Logger logger = LogManager.getLogger();
+    private final String id = UUID.randomUUID().toString();
+    private final BlockingQueue<String> queue = new LinkedBlockingQueue<>(MAX_PENDING);
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private volatile boolean open = true;
+    private AsyncContext async;
+    private ServletOutputStream out;
+    private ScheduledFuture<?> heartbeat;
+    private Runnable onClose = () -> {
+    };
+
+    /**
+     * Events written but not accepted by the output yet
+     */
+    private byte[] pending;
+
+
+    /**
+     * Id given to the browser to post its commands
+     */
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public void send(String message) throws IOException {
+        if (!open) {
+            throw new IOException("Event stream closed");
+        }
+
+        if (!queue.offer(event(null, message))) {
+            close();
+            throw new IOException("Event stream client is not reading, closing it");
+        }
+        write();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Starts the stream and returns right away, the request stays open until the client leaves.
+     * The first event (hello) gives its id to the browser, comments are sent when there's nothing to say
+     * so proxies don't close the connection.
+     *
+     * @param onClose called once when the client is gone
+     */
+    public void start(HttpServletRequest request, HttpServletResponse response, Runnable onClose) throws IOException {
+        this.onClose = onClose;
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType("text/event-stream");
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setHeader("Cache-Control", "no-cache");
+        response.setHeader("X-Accel-Buffering", "no");
+
+        async = request.startAsync();
+        async.setTimeout(0);
+        async.addListener(this);
+
+        // the headers go out now, the response is committed before going async
+        response.flushBuffer();
+        queue.offer("retry: " + RETRY_MS + "\n" + event("hello", "{\"client\":\"" + id + "\"}"));
+
+        synchronized (this) {
+            out = response.getOutputStream();
+            out.setWriteListener(this);
+        }
+
+        heartbeat = HEARTBEATS.scheduleWithFixedDelay(() -> {
+            if (queue.isEmpty() && queue.offer(": ping\n\n")) {
+                write();
+            }
+        }, HEARTBEAT_MS, HEARTBEAT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void onWritePossible() {
+        write();
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        logger.info("Event stream client {} left", id);
+        close();
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+        close();
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+        close();
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+        onError(event.getThrowable());
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+    }
+
+    /**
+     * Writes what's queued as long as the output takes it, everything already waiting goes out with a single flush
+     */
+    private synchronized void write() {
+        if (out == null || !open) {
+            return;
+        }
+
+        try {
+            while (out.isReady()) {
+                if (pending == null) {
+                    List<String> events = new ArrayList<>();
+                    queue.drainTo(events);
+                    if (events.isEmpty()) {
+                        return;
+                    }
+                    pending = String.join("", events).getBytes(StandardCharsets.UTF_8);
+                }
+
+                out.write(pending);
+                pending = null;
+                if (out.isReady()) {
+                    out.flush();
+                }
+            }
+        } catch (IOException | IllegalStateException e) {
+            logger.info("Event stream client {} left", id);
+            close();
+        }
+    }
+
+    private void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+
+        open = false;
+        queue.clear();
+        if (heartbeat != null) {
+            heartbeat.cancel(false);
+        }
+        if (async != null) {
+            try {
+                async.complete();
+            } catch (IllegalStateException e) {
+                // already completed
+            }
+        }
+        onClose.run();
+    }
+
+    /**
+     * Formats an event, a line break in the data would end the event so each line gets its own data field
+     */
+    static String event(String name, String data) {
+        StringBuilder event = new StringBuilder();
+        if (name != null) {
+            event.append("event: ").append(name).append('\n');
+        }
+        for (String line : data.split("\r\n|\r|\n", -1)) {
+            event.append("data: ").append(line).append('\n');
+        }
+        return event.append('\n').toString();
+    }
+}
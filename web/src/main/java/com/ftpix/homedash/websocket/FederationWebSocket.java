@@ -0,0 +1,318 @@
+package com.ftpix.homedash.websocket;
+
+import com.ftpix.homedash.Utils.Json;
+import com.ftpix.homedash.app.PluginModuleMaintainer;
+import com.ftpix.homedash.app.controllers.APIController;
+import com.ftpix.homedash.models.FederationMessage;
+import com.ftpix.homedash.models.WebSocketMessage;
+import com.ftpix.homedash.plugins.Plugin;
+import com.ftpix.homedash.plugins.RefreshListener;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketMessage;
+import org.eclipse.jetty.websocket.api.annotations.WebSocket;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Websocket used by other HomeDash instances showing our modules (/ws-federation).
+ * They subscribe to the modules they need, we push the modules every time we refresh them
+ * and process the commands they forward.
+ * <p>
+ * The pushes come from the refreshes of the modules (see {@link RefreshListener}), whoever asked for them: our own browsers
+ * or the other instances. A module nobody refreshes here is refreshed at its refresh rate for the subscribers.
+ * The connection needs the remote api key in the Authorization header, same as the HTTP api.
+ */
+@WebSocket(maxTextMessageSize = 10 * 1024 * 1024)
+public class FederationWebSocket implements RefreshListener {
+    private static final ScheduledExecutorService REFRESHER = Executors.newScheduledThreadPool(2, r -> {
+        Thread thread = new Thread(r, "federation-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Logger logger = LogManager.getLogger();
+    private final Gson gson = Json.MESSAGES;
+    /**
+     * Subscriptions of each client, module:size
+     */
+    private final Map<Session, Set<String>> subscriptions = new ConcurrentHashMap<>();
+    /**
+     * Subscribers of each module:size
+     */
+    private final Map<String, Feed> feeds = new ConcurrentHashMap<>();
+    private final ExecutorService commandProcessor = Executors.newCachedThreadPool();
+    private final PluginResolver plugins;
+    private final Predicate<String> authorizer;
+
+    public FederationWebSocket() {
+        this(PluginModuleMaintainer.INSTANCE::getPluginForModule, APIController.INSTANCE::isAuthorized);
+    }
+
+    /**
+     * @param plugins    gets the plugin of a module
+     * @param authorizer checks the api key sent by the other instance
+     */
+    public FederationWebSocket(PluginResolver plugins, Predicate<String> authorizer) {
+        this.plugins = plugins;
+        this.authorizer = authorizer;
+    }
+
+    @OnWebSocketConnect
+    public void connected(Session session) {
+        if (!authorizer.test(session.getUpgradeRequest().getHeader(APIController.HEADER_AUTHORIZATION))) {
+            logger.info("Refusing federation client {}, wrong API key", session.getRemoteAddress());
+            session.close(StatusCode.POLICY_VIOLATION, "Invalid API key");
+            return;
+        }
+
+        logger.info("New federation client {}", session.getRemoteAddress());
+        subscriptions.put(session, ConcurrentHashMap.newKeySet());
+    }
+
+    @OnWebSocketClose
+    public void closed(Session session, int statusCode, String reason) {
+        Set<String> sessionSubscriptions = subscriptions.remove(session);
+        if (sessionSubscriptions != null) {
+            logger.info("Federation client {} left, dropping {} subscriptions", session.getRemoteAddress(), sessionSubscriptions.size());
+            sessionSubscriptions.forEach(key -> release(session, key));
+        }
+    }
+
+    @OnWebSocketMessage
+    public void onMessage(Session session, String text) {
+        Set<String> sessionSubscriptions = subscriptions.get(session);
+        if (sessionSubscriptions == null) {
+            return;
+        }
+
+        FederationMessage message = gson.fromJson(text, FederationMessage.class);
+        String key = message.getModule() + ":" + message.getSize();
+
+        switch (message.getType()) {
+            case FederationMessage.SUBSCRIBE:
+                if (sessionSubscriptions.add(key)) {
+                    subscribe(session, message.getModule(), message.getSize());
+                }
+                break;
+            case FederationMessage.UNSUBSCRIBE:
+                if (sessionSubscriptions.remove(key)) {
+                    release(session, key);
+                }
+                break;
+            case FederationMessage.COMMAND:
+                commandProcessor.execute(() -> processCommand(session, message));
+                break;
+            default:
+                logger.info("Unknown federation message [{}]", message.getType());
+        }
+    }
+
+    /**
+     * Pushes the refreshes of the modules to their subscribers
+     */
+    @Override
+    public void refreshed(Plugin plugin, String size, WebSocketMessage refreshed, boolean pushed) {
+        int moduleId = plugin.getModule().getId();
+        Feed feed = feeds.get(moduleId + ":" + size);
+        if (feed == null) {
+            return;
+        }
+
+        REFRESHER.execute(() -> {
+            FederationMessage message = new FederationMessage();
+            message.setType(FederationMessage.REFRESH);
+            message.setModule(moduleId);
+            message.setSize(size);
+
+            try {
+                String json = toJson(message, refreshed);
+                feed.sessions.forEach(s -> send(s, json));
+            } catch (IOException e) {
+                logger.error("Couldn't push module " + moduleId + " to federation clients", e);
+            }
+        });
+    }
+
+    /**
+     * Adds a subscriber to a module and sends it the module right away
+     */
+    private void subscribe(Session session, int moduleId, String size) {
+        String key = moduleId + ":" + size;
+        try {
+            Plugin plugin = plugins.get(moduleId);
+            plugin.increaseClients(size);
+
+            synchronized (feeds) {
+                feeds.computeIfAbsent(key, k -> new Feed(plugin, size)).sessions.add(session);
+            }
+
+            REFRESHER.execute(() -> refresh(plugin, size));
+            logger.info("Federation client {} subscribed to module {} size {}", session.getRemoteAddress(), moduleId, size);
+        } catch (Exception e) {
+            logger.error("Couldn't subscribe to module " + moduleId, e);
+        }
+    }
+
+    /**
+     * Refreshes a module, the refresh is pushed by {@link #refreshed(Plugin, String, WebSocketMessage, boolean)}
+     */
+    private void refresh(Plugin plugin, String size) {
+        try {
+            plugin.refreshPlugin(size);
+        } catch (Exception e) {
+            logger.error("Couldn't refresh module " + plugin.getModule().getId() + " for federation clients", e);
+        }
+    }
+
+    private void processCommand(Session session, FederationMessage message) {
+        WebSocketMessage response;
+        try {
+            WebSocketMessage command = gson.fromJson(message.getPayload(), WebSocketMessage.class);
+            Object commandMessage = command.getMessage();
+
+            response = plugins.get(message.getModule())
+                    .processIncomingCommand(command.getCommand(), commandMessage == null ? null : commandMessage.toString(), command.getExtra());
+        } catch (Exception e) {
+            logger.error("Error while processing federated command", e);
+            response = new WebSocketMessage();
+            response.setCommand(WebSocketMessage.COMMAND_ERROR);
+            response.setMessage("Error while processing the command:" + e.getMessage());
+        }
+
+        FederationMessage reply = new FederationMessage();
+        reply.setType(FederationMessage.RESPONSE);
+        reply.setModule(message.getModule());
+        reply.setRequest(message.getRequest());
+
+        send(session, reply, response);
+    }
+
+    private void send(Session session, FederationMessage message, WebSocketMessage payload) {
+        try {
+            send(session, toJson(message, payload));
+        } catch (IOException e) {
+            logger.error("Couldn't send message to federation client", e);
+        }
+    }
+
+    private void send(Session session, String json) {
+        if (!session.isOpen()) {
+            return;
+        }
+
+        try {
+            //blocking sends can't overlap on the same session
+            synchronized (session) {
+                session.getRemote().sendString(json);
+            }
+        } catch (IOException e) {
+            logger.error("Couldn't send message to federation client", e);
+        }
+    }
+
+    /**
+     * Writes a message with its payload, the payload is streamed in the json without building its tree first
+     */
+    String toJson(FederationMessage message, WebSocketMessage payload) throws IOException {
+        StringWriter json = new StringWriter();
+        JsonWriter writer = new JsonWriter(json);
+        writer.setSerializeNulls(false);
+
+        writer.beginObject()
+                .name("type").value(message.getType())
+                .name("module").value(message.getModule())
+                .name("size").value(message.getSize())
+                .name("request").value(message.getRequest())
+                .name("payload");
+        gson.toJson(payload, WebSocketMessage.class, writer);
+        writer.endObject();
+        writer.flush();
+
+        return json.toString();
+    }
+
+    /**
+     * Stops pushing a module to a client
+     */
+    private void release(Session session, String key) {
+        synchronized (feeds) {
+            Feed feed = feeds.get(key);
+            if (feed != null && feed.sessions.remove(session) && feed.sessions.isEmpty()) {
+                feeds.remove(key);
+                feed.close();
+            }
+        }
+
+        try {
+            int separator = key.indexOf(':');
+            plugins.get(Integer.parseInt(key.substring(0, separator))).decreaseClients(key.substring(separator + 1));
+        } catch (Exception e) {
+            logger.error("Couldn't release module " + key, e);
+        }
+    }
+
+    /**
+     * Subscribers of a module at a size. Makes sure the module gets refreshed at its refresh rate,
+     * it's refreshed here only when nobody else did it in time
+     */
+    private class Feed {
+        private final Plugin plugin;
+        private final String size;
+        private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+        private final ScheduledFuture<?> refreshes;
+
+        private Feed(Plugin plugin, String size) {
+            this.plugin = plugin;
+            this.size = size;
+            plugin.addRefreshListener(FederationWebSocket.this);
+
+            int refreshRate = plugin.getRefreshRate(size);
+            refreshes = refreshRate > Plugin.NEVER
+                    ? REFRESHER.scheduleWithFixedDelay(() -> refreshIfLate(refreshRate), refreshRate, Math.max(1, refreshRate / 2), TimeUnit.SECONDS)
+                    : null;
+        }
+
+        private void refreshIfLate(int refreshRate) {
+            if (System.currentTimeMillis() - plugin.getLastRefresh(size) >= refreshRate * 1000L) {
+                refresh(plugin, size);
+            }
+        }
+
+        /**
+         * Called once the last subscriber is gone, with the lock of the feeds
+         */
+        private void close() {
+            if (refreshes != null) {
+                refreshes.cancel(false);
+            }
+            if (feeds.values().stream().noneMatch(f -> f.plugin == plugin)) {
+                plugin.removeRefreshListener(FederationWebSocket.this);
+            }
+        }
+    }
+
+    /**
+     * Gets the plugin of a module
+     */
+    public interface PluginResolver {
+        Plugin get(int moduleId) throws Exception;
+    }
+}
@@ -1,17 +1,20 @@
 package com.ftpix.homedash.websocket;
 
+import com.ftpix.homedash.Utils.Json;
 import com.ftpix.homedash.app.PluginModuleMaintainer;
+import com.ftpix.homedash.models.ClientTransport;
 import com.ftpix.homedash.models.WebSocketMessage;
 import com.ftpix.homedash.plugins.Plugin;
 import com.google.gson.Gson;
 import com.kenai.jnr.x86asm.SIZE;
-import io.gsonfire.GsonFireBuilder;
 import org.eclipse.jetty.websocket.api.Session;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -23,18 +26,34 @@ import java.util.concurrent.TimeUnit;
 public class InnerSocketClass {
     protected Logger logger = LogManager.getLogger();
     protected Session session;
+    protected ClientTransport transport;
+    protected WebSocketEncoding encoding = WebSocketEncoding.JSON;
     protected boolean refresh = false;
     protected long time = 0;
-    protected Gson gson = new GsonFireBuilder().enableExposeMethodResult().createGson();
+    protected Gson gson = Json.MESSAGES;
     protected ExecutorService exec;
     private final String SIZE;
     private int moduleId;
+    /**
+     * What the module keeps about this client between its refreshes.
+     * Locked by each refresh and command so the refresh loop and the commands of the client never change it at the same time
+     */
+    private final Map<String, Object> client = new ConcurrentHashMap<>();
 
     private ExecutorService commandProcessor = Executors.newCachedThreadPool();
 
 
     InnerSocketClass(Session session, String size) {
+        this(ClientTransport.of(session), size);
         this.session = session;
+        this.encoding = WebSocketEncoding.of(session);
+    }
+
+    /**
+     * For a client that is not on a websocket
+     */
+    InnerSocketClass(ClientTransport transport, String size) {
+        this.transport = transport;
         SIZE = size;
     }
 
@@ -48,12 +67,21 @@ public class InnerSocketClass {
 
                 switch (socketMessage.getCommand()) {
                     case WebSocketMessage.COMMAND_REFRESH:
-                        WebSocketMessage response = MainWebSocket.refreshSingleModule(socketMessage.getModuleId(), (String) socketMessage.getMessage());
-                        final String jsonResponse = gson.toJson(response);
-                        session.getRemote().sendString(jsonResponse);
+                        // asked by the client, it gets everything again
+                        WebSocketMessage response;
+                        synchronized (client) {
+                            client.clear();
+                            response = MainWebSocket.refreshSingleModule(socketMessage.getModuleId(), (String) socketMessage.getMessage(), client);
+                        }
+                        send(response);
                         break;
                     case WebSocketMessage.COMMAND_SET_MODULE:
+                        // the clients of the previous module have to be decreased before forgetting it
+                        stopRefresh();
                         this.moduleId = socketMessage.getModuleId();
+                        synchronized (client) {
+                            client.clear();
+                        }
                         startRefresh();
                         break;
                     default: // send the command to the module concerned
@@ -73,7 +101,9 @@ public class InnerSocketClass {
         Plugin plugin = null;
         try {
             plugin = PluginModuleMaintainer.INSTANCE.getPluginForModule(message.getModuleId());
-            response = plugin.processIncomingCommand(message.getCommand(), message.getMessage().toString(), message.getExtra());
+            synchronized (client) {
+                response = plugin.processIncomingCommand(message.getCommand(), message.getMessage().toString(), message.getExtra(), client);
+            }
         } catch (Exception e) {
             logger.error("Error while processing the command", e);
             if (plugin != null) {
@@ -86,15 +116,25 @@ public class InnerSocketClass {
         }
 
         try {
-            String gsonResponse = gson.toJson(response);
-            logger.info("Sending response: [{}]", gsonResponse);
-            session.getRemote().sendString(gson.toJson(response));
+            logger.info("Sending response: [{}]", response.getCommand());
+            send(response);
         } catch (IOException e) {
             logger.error("Errror while sending response", e);
         }
 
     }
 
+    /**
+     * Sends a message in the encoding negotiated by the client
+     */
+    protected void send(WebSocketMessage message) throws IOException {
+        if (encoding.isBinary()) {
+            transport.send(encoding.encode(gson, message));
+        } else {
+            transport.send(gson.toJson(message));
+        }
+    }
+
 
     /**
      * Refresh all the modules
@@ -109,13 +149,12 @@ public class InnerSocketClass {
                     try {
                         logger.info("Refreshing plugin [{}]", moduleId);
 
-                        WebSocketMessage response = MainWebSocket.refreshSingleModule(this.moduleId, SIZE);
-
-                        final String jsonResponse = gson.toJson(response);
-                        logger.info("session:{}, response:[{}]", session, jsonResponse);
+                        WebSocketMessage response;
+                        synchronized (client) {
+                            response = MainWebSocket.refreshSingleModule(this.moduleId, SIZE, client);
+                        }
 
-                        boolean done = this.session.getRemote().sendStringByFuture(jsonResponse).isDone();
-                        logger.info("Sending to client {}, isdone ? {}", jsonResponse, done);
+                        send(response);
                     } catch (Exception e) {
                         logger.error("Errror while sending response", e);
                     }
@@ -145,7 +184,7 @@ public class InnerSocketClass {
         //we will start refresh only if at least one of the clients has a page
         stopRefresh();
 
-        PluginModuleMaintainer.INSTANCE.getPluginForModule(moduleId).increaseClients();
+        PluginModuleMaintainer.INSTANCE.getPluginForModule(moduleId).increaseClients(SIZE);
 
         logger.info("clients are ready");
 
@@ -176,7 +215,7 @@ public class InnerSocketClass {
                 exec = null;
                 time = 0;
 
-                PluginModuleMaintainer.INSTANCE.getPluginForModule(moduleId).decreaseClients();
+                PluginModuleMaintainer.INSTANCE.getPluginForModule(moduleId).decreaseClients(SIZE);
 
             }
         } catch (Exception e) {
@@ -1,16 +1,19 @@
 package com.ftpix.homedash.websocket;
 
+import com.ftpix.homedash.Utils.Json;
 import com.ftpix.homedash.app.PluginModuleMaintainer;
+import com.ftpix.homedash.app.PluginWarmUp;
 import com.ftpix.homedash.app.controllers.ModuleLayoutController;
 import com.ftpix.homedash.db.DB;
 import com.ftpix.homedash.models.Layout;
+import com.ftpix.homedash.models.ModuleLocation;
 import com.ftpix.homedash.models.ModuleLayout;
 import com.ftpix.homedash.models.WebSocketMessage;
 import com.ftpix.homedash.models.WebSocketSession;
 import com.ftpix.homedash.plugins.Plugin;
+import com.ftpix.homedash.plugins.RefreshListener;
 import com.ftpix.homedash.utils.Predicates;
 import com.google.gson.Gson;
-import io.gsonfire.GsonFireBuilder;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.eclipse.jetty.websocket.api.Session;
@@ -23,115 +26,268 @@ import java.io.IOException;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
+/**
+ * Refreshes the modules of the dashboards and sends them to the browsers.
+ * Browsers are connected via the websocket (/ws) or via server-sent events (see {@link EventStreamEndpoint})
+ * <p>
+ * Each browser session gets an id (sent with a "session" message) and every message a sequence number.
+ * When a browser loses its connection, its session is kept for a while, still receiving messages in its replay buffer.
+ * If it comes back in time, its first message is "resume" with its session id and the last sequence number received:
+ * the messages it missed are sent again and nothing is restarted. Otherwise it starts a new session.
+ * <p>
+ * Websocket clients that negotiated a binary encoding (see {@link WebSocketEncoding}) get the refreshes as binary messages.
+ */
 @WebSocket
 public class MainWebSocket {
+    /**
+     * The instance shared by the websocket and the server-sent events clients
+     */
+    public static final MainWebSocket INSTANCE = new MainWebSocket();
 
+    private static final int RESUME_GRACE = 30;
+
+    /**
+     * Started sessions, connected or waiting to be resumed
+     */
     private final List<WebSocketSession> sessions = new CopyOnWriteArrayList<>();
+    private final Map<Session, WebSocketSession> connections = new ConcurrentHashMap<>();
+    /**
+     * Sessions that lost their connection, with the task ending them when the grace period is over
+     */
+    private final Map<String, ScheduledFuture<?>> detached = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService expirations = Executors.newSingleThreadScheduledExecutor();
+    private final AtomicLong seq = new AtomicLong(0);
+    /**
+     * Held while a message gets its sequence number and its place in the order of its clients, so every client gets its messages
+     * (and keeps them for replay) in the order of their sequence numbers. The messages are encoded and sent outside of it
+     */
+    private final Object sequencing = new Object();
     protected Logger logger = LogManager.getLogger();
-    private boolean refresh = false;
-    private long time = 0;
-    private Gson gson = new GsonFireBuilder().enableExposeMethodResult().createGsonBuilder().excludeFieldsWithModifiers(Modifier.STATIC, Modifier.TRANSIENT, Modifier.VOLATILE).serializeSpecialFloatingPointValues().create();
-    private ExecutorService exec;
+    private volatile boolean refresh = false;
+    private volatile long time = 0;
+    private Gson gson = Json.MESSAGES;
+    private volatile ExecutorService exec;
     private ExecutorService commandProcessor = Executors.newCachedThreadPool();
+    /**
+     * Sends the refreshes pushed by the remote instances of the remote modules as soon as they come
+     */
+    private final RefreshListener pushes = (plugin, size, message, pushed) -> {
+        if (pushed && refresh) {
+            commandProcessor.execute(() -> sendPushed(plugin, size, message));
+        }
+    };
 
     public MainWebSocket() {
 
     }
 
     /**
-     * Refresh a single module
+     * Refresh a single module for all its clients, or tells the browsers it's still warming up
      */
     public static WebSocketMessage refreshSingleModule(int moduleId, String size) throws Exception {
+        return refreshSingleModule(moduleId, size, null);
+    }
+
+    /**
+     * Refresh a single module for a single client, see {@link Plugin#refresh(String, Map)}
+     *
+     * @param client null for a refresh shared by all the clients
+     */
+    public static WebSocketMessage refreshSingleModule(int moduleId, String size, Map<String, Object> client) throws Exception {
 
         Plugin plugin = PluginModuleMaintainer.INSTANCE.getPluginForModule(moduleId);
-        WebSocketMessage response = plugin.refreshPlugin(size);
+        if (PluginWarmUp.INSTANCE.isWarming(moduleId)) {
+            WebSocketMessage warming = new WebSocketMessage();
+            warming.setCommand(WebSocketMessage.COMMAND_WARMING);
+            warming.setModuleId(moduleId);
+            return warming;
+        }
+
+        WebSocketMessage response = client == null ? plugin.refreshPlugin(size) : plugin.refreshPlugin(size, client);
 
         return response;
 
     }
 
     @OnWebSocketConnect
-    public void connected(Session session) throws Exception {
-        Optional<WebSocketSession> client = getClientFromSession(session);
-        if (!client.isPresent()) {
-            stopRefresh();
-            WebSocketSession newClient = new WebSocketSession();
-            newClient.setSession(session);
-            sessions.add(newClient);
-            PluginModuleMaintainer.INSTANCE.getAllPluginInstances().forEach(Plugin::increaseClients);
-            logger.info("New Client !, We now have {} clients", sessions.size());
-
-        } else {
-            logger.info("Seems that this client already exists");
-        }
+    public void connected(Session session) {
+        WebSocketSession client = new WebSocketSession();
+        client.setSession(session);
+        client.setBinary(WebSocketEncoding.of(session).isBinary());
+        connections.put(session, client);
     }
 
     @OnWebSocketClose
     public void closed(Session session, int statusCode, String reason) {
-        getClientFromSession(session).ifPresent(client -> {
-            sessions.remove(client);
-            try {
-                PluginModuleMaintainer.INSTANCE.getAllPluginInstances().forEach(Plugin::decreaseClients);
-            } catch (Exception e) {
-                logger.error("Couldn't decrease the number of clients");
-            }
-            if (sessions.isEmpty()) {
-                stopRefresh();
-            }
-            try {
-                session.disconnect();
-                session.close();
-                logger.info("A client left, {} clients left, continue refresh ? {}", sessions.size(), refresh);
-            } catch (IOException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            }
-        });
-
+        Optional.ofNullable(connections.remove(session)).ifPresent(this::disconnect);
     }
 
     @OnWebSocketMessage
     public void message(Session session, String message) throws IOException {
+        getClientFromSession(session).ifPresent(client -> processMessage(client, message));
+    }
+
+    /**
+     * A browser lost its connection, its session is ended if it doesn't resume it in time
+     */
+    public void disconnect(WebSocketSession client) {
+        if (!sessions.contains(client)) {
+            return;
+        }
+
+        logger.info("Client {} disconnected, keeping its session {}s", client.getId(), RESUME_GRACE);
+        detached.put(client.getId(), expirations.schedule(() -> {
+            detached.remove(client.getId());
+            removeClient(client);
+        }, RESUME_GRACE, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Starts a new session
+     */
+    private void addClient(WebSocketSession client) throws Exception {
+        sessions.add(client);
+        PluginModuleMaintainer.INSTANCE.getAllPluginInstances().forEach(Plugin::increaseClients);
+        logger.info("New Client !, We now have {} clients", sessions.size());
+
+        WebSocketMessage session = new WebSocketMessage();
+        session.setCommand(WebSocketMessage.COMMAND_SESSION);
+        session.setMessage(client.getId());
+        session.setModuleId(-1);
+        client.send(gson.toJson(session));
+    }
+
+    /**
+     * Ends a session
+     */
+    private void removeClient(WebSocketSession client) {
+        if (!sessions.remove(client)) {
+            return;
+        }
+
+        try {
+            PluginModuleMaintainer.INSTANCE.getAllPluginInstances().forEach(Plugin::decreaseClients);
+        } catch (Exception e) {
+            logger.error("Couldn't decrease the number of clients");
+        }
+        if (sessions.isEmpty()) {
+            stopRefresh();
+        }
+        logger.info("A client left, {} clients left, continue refresh ? {}", sessions.size(), refresh);
+    }
+
+    /**
+     * Resumes a previous session of the browser on its new connection
+     *
+     * @return false if the session is over or the replay buffer doesn't go back far enough
+     */
+    private boolean resume(WebSocketSession client, Object resume) throws IOException {
+        if (!(resume instanceof Map)) {
+            return false;
+        }
+
+        Object sessionId = ((Map<?, ?>) resume).get("session");
+        Object lastSeq = ((Map<?, ?>) resume).get("seq");
+        Optional<WebSocketSession> previous = sessions.stream()
+                .filter(s -> s != client && s.getId().equals(sessionId))
+                .findFirst();
+
+        if (previous.isEmpty() || !(lastSeq instanceof Number)) {
+            return false;
+        }
+
+        Optional.ofNullable(detached.remove(previous.get().getId())).ifPresent(f -> f.cancel(false));
+
+        // nothing can be sent to the previous session between reading its replay and handing it over
+        Optional<List<String>> missed;
+        synchronized (previous.get()) {
+            missed = previous.get().getReplay().after(((Number) lastSeq).longValue());
+            if (missed.isPresent()) {
+                client.resume(previous.get());
+                sessions.add(client);
+                sessions.remove(previous.get());
+
+                WebSocketMessage resumed = new WebSocketMessage();
+                resumed.setCommand(WebSocketMessage.COMMAND_RESUMED);
+                resumed.setModuleId(-1);
+                client.send(gson.toJson(resumed));
+                for (String message : missed.get()) {
+                    client.send(message);
+                }
+            }
+        }
+
+        if (missed.isEmpty()) {
+            logger.info("Client {} has been away too long to resume", sessionId);
+            removeClient(previous.get());
+            return false;
+        }
+
+        logger.info("Client {} resumed its session, {} messages sent again", client.getId(), missed.get().size());
+        return true;
+    }
+
+    /**
+     * Processes a message sent by a browser
+     */
+    public void processMessage(WebSocketSession client, String message) {
         commandProcessor.execute(() -> {
             try {
                 logger.info("Received Message [{}]", message);
 
-                Optional<WebSocketSession> optClient = getClientFromSession(session);
-
-                if (optClient.isPresent()) {
-                    WebSocketSession client = optClient.get();
-                    WebSocketMessage socketMessage = gson.fromJson(message, WebSocketMessage.class);
-
-                    switch (socketMessage.getCommand()) {
-                        case WebSocketMessage.COMMAND_REFRESH:
-                            WebSocketMessage response = refreshSingleModule(socketMessage.getModuleId(), (String) socketMessage.getMessage());
-                            final String jsonResponse = gson.toJson(response);
-                            client.getSession().getRemote().sendString(jsonResponse);
-                            break;
-                        case WebSocketMessage.COMMAND_CHANGE_PAGE:
-                            client.setPage(DB.PAGE_DAO.queryForId(Double.valueOf(socketMessage.getMessage().toString()).intValue()));
-                            logger.info("New page for client: [{}]", client.getPage().getName());
-                            time = 0;
-                            startRefresh();
-                            break;
-                        case WebSocketMessage.COMMAND_CHANGE_LAYOUT:
-                            Layout layout = DB.LAYOUT_DAO.queryForId(Double.valueOf(socketMessage.getMessage().toString()).intValue());
-                            client.setLayout(layout);
-                            logger.info("New layout for client: [{}]", client.getLayout().getName());
-                            time = 0;
-                            startRefresh();
-                            break;
-                        default: // send the command to the module concerned
-                            sendCommandToModule(client, socketMessage);
+                WebSocketMessage socketMessage = gson.fromJson(message, WebSocketMessage.class);
+
+                // the first message of a connection starts or resumes its session
+                synchronized (client) {
+                    if (!sessions.contains(client)) {
+                        boolean resuming = WebSocketMessage.COMMAND_RESUME.equals(socketMessage.getCommand());
+                        if (resuming && resume(client, socketMessage.getMessage())) {
+                            return;
+                        }
+
+                        addClient(client);
+                        if (resuming) {
+                            // the browser sends its page and layout again when it gets its new session
+                            return;
+                        }
                     }
                 }
+
+                switch (socketMessage.getCommand()) {
+                    case WebSocketMessage.COMMAND_RESUME:
+                        break;
+                    case WebSocketMessage.COMMAND_REFRESH:
+                        WebSocketMessage response = refreshSingleModule(socketMessage.getModuleId(), (String) socketMessage.getMessage());
+                        send(client, response);
+                        break;
+                    case WebSocketMessage.COMMAND_CHANGE_PAGE:
+                        client.setPage(DB.PAGE_DAO.queryForId(Double.valueOf(socketMessage.getMessage().toString()).intValue()));
+                        logger.info("New page for client: [{}]", client.getPage().getName());
+                        time = 0;
+                        startRefresh();
+                        break;
+                    case WebSocketMessage.COMMAND_CHANGE_LAYOUT:
+                        Layout layout = DB.LAYOUT_DAO.queryForId(Double.valueOf(socketMessage.getMessage().toString()).intValue());
+                        client.setLayout(layout);
+                        logger.info("New layout for client: [{}]", client.getLayout().getName());
+                        time = 0;
+                        startRefresh();
+                        break;
+                    default: // send the command to the module concerned
+                        sendCommandToModule(client, socketMessage);
+                }
             } catch (Exception e) {
                 logger.error("Error while receiving command:", e);
             }
@@ -161,9 +317,8 @@ public class MainWebSocket {
         }
 
         try {
-            String gsonResponse = gson.toJson(response);
             logger.info("Sending response to command");
-            session.getSession().getRemote().sendString(gson.toJson(response));
+            send(session, response);
         } catch (IOException e) {
             logger.error("Errror while sending response", e);
         }
@@ -185,7 +340,12 @@ public class MainWebSocket {
                     try {
                         // Getting the data to send
                         Plugin plugin = PluginModuleMaintainer.INSTANCE.getPluginForModule(ml.getModule());
-                        if (plugin.getRefreshRate(ml.getSize()) > Plugin.NEVER && time % plugin.getRefreshRate(ml.getSize()) == 0) {
+                        if (ml.getModule().getLocation() == ModuleLocation.REMOTE) {
+                            plugin.addRefreshListener(pushes);
+                        }
+
+                        if (plugin.getRefreshRate(ml.getSize()) > Plugin.NEVER && time % plugin.getRefreshRate(ml.getSize()) == 0
+                                && !plugin.isPushed(ml.getSize())) {
 
                             // finding which clients to send to and sending
                             // the
@@ -199,9 +359,7 @@ public class MainWebSocket {
 
                                     WebSocketMessage response = refreshSingleModule(ml.getModule().getId(), ml.getSize());
 
-                                    String jsonResponse = gson.toJson(response);
-
-                                    sendMessage(jsonResponse, ml);
+                                    sendMessage(response, ml);
 
                                 } catch (Exception e) {
                                     logger.error("Can't refresh module #" + ml.getModule().getId(), e);
@@ -229,6 +387,16 @@ public class MainWebSocket {
         }
     }
 
+    /**
+     * Sends a refresh pushed by the remote instance of a remote module to the clients showing it
+     */
+    private void sendPushed(Plugin plugin, String size, WebSocketMessage message) {
+        int moduleId = plugin.getModule().getId();
+        getModuleLayoutsToRefresh().stream()
+                .filter(ml -> ml.getModule().getId() == moduleId && ml.getSize().equals(size))
+                .forEach(ml -> sendMessage(message, ml));
+    }
+
     /**
      * Find all the module layouts to refresh based on the clients connected
      */
@@ -313,36 +481,74 @@ public class MainWebSocket {
      * Gets a WebSocket session via the session (usually check the hash
      */
     private Optional<WebSocketSession> getClientFromSession(Session session) {
+        return Optional.ofNullable(connections.get(session));
+    }
 
-        Optional<WebSocketSession> webSocketSession = sessions.stream()
-                .filter(s -> s.equals(session))
-                .findFirst();
+    /**
+     * Sends a message to a single client
+     */
+    private void send(WebSocketSession client, WebSocketMessage message) throws IOException {
+        WebSocketSession.Reserved place;
+        synchronized (sequencing) {
+            long next = seq.incrementAndGet();
+            message.setSeq(next);
+            place = client.reserve(next);
+        }
 
-        return webSocketSession;
+        String json = null;
+        byte[] encoded = null;
+        try {
+            json = gson.toJson(message);
+            encoded = client.isBinary() ? WebSocketEncoding.CBOR.encode(gson, message) : null;
+        } finally {
+            // frees the place even if the message couldn't be made
+            client.send(place, json, encoded);
+        }
     }
 
 
     /**
-     * Sends a message to clients
+     * Sends a message to clients, the disconnected ones keep it until they resume
      */
-    public void sendMessage(String message, ModuleLayout ml) {
-        sessions.stream().filter(s -> {
+    public void sendMessage(WebSocketMessage response, ModuleLayout ml) {
+        List<WebSocketSession> recipients = sessions.stream().filter(s -> {
             try {
                 return (s.getLayout() != null)
                         && (s.getPage() != null)
                         && (s.getLayout().getId() == ml.getLayout().getId())
-                        && (s.getPage().getId() == ml.getModule().getPage().getId())
-                        && s.getSession().isOpen();
+                        && (s.getPage().getId() == ml.getModule().getPage().getId());
             } catch (Exception e) {
                 logger.error("Error while checking client", e);
                 return false;
             }
-        }).forEach(s -> {
-            try {
-                boolean done = s.getSession().getRemote().sendStringByFuture(message).isDone();
-            } catch (Exception e) {
-                logger.error("Errror while sending response", e);
+        }).collect(Collectors.toList());
+
+        List<WebSocketSession.Reserved> places = new ArrayList<>(recipients.size());
+        synchronized (sequencing) {
+            long next = seq.incrementAndGet();
+            response.setSeq(next);
+            recipients.forEach(s -> places.add(s.reserve(next)));
+        }
+
+        String message = null;
+        // encoded once for all the binary clients
+        byte[] encoded = null;
+        try {
+            message = gson.toJson(response);
+            if (recipients.stream().anyMatch(WebSocketSession::isBinary)) {
+                try {
+                    encoded = WebSocketEncoding.CBOR.encode(gson, response);
+                } catch (IOException e) {
+                    logger.error("Couldn't encode message, sending json", e);
+                }
             }
-        });
+        } catch (Exception e) {
+            logger.error("Couldn't serialize message", e);
+        }
+
+        // the places are freed even if the message couldn't be made
+        for (int i = 0; i < recipients.size(); i++) {
+            recipients.get(i).send(places.get(i), message, encoded);
+        }
     }
 }
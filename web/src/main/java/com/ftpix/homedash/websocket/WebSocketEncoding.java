@@ -0,0 +1,79 @@
+package com.ftpix.homedash.websocket;
+
+import com.ftpix.homedash.models.WebSocketMessage;
+import com.ftpix.homedash.utils.CborWriter;
+import com.google.gson.Gson;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.servlet.WebSocketCreator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Encoding of the messages sent to a browser, negotiated when the websocket connects with the subprotocols
+ * the browser offers (new WebSocket(url, ['homedash.cbor', 'homedash.json'])).
+ * Browsers that don't offer any get json.
+ */
+public enum WebSocketEncoding {
+    JSON("homedash.json"), CBOR("homedash.cbor");
+
+    private final String subProtocol;
+
+    WebSocketEncoding(String subProtocol) {
+        this.subProtocol = subProtocol;
+    }
+
+    public String getSubProtocol() {
+        return subProtocol;
+    }
+
+    /**
+     * Whether messages are sent as binary frames
+     */
+    public boolean isBinary() {
+        return this != JSON;
+    }
+
+    /**
+     * Encodes a message for the binary encodings
+     */
+    public byte[] encode(Gson gson, WebSocketMessage message) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        try (CborWriter writer = new CborWriter(out)) {
+            writer.write(gson.toJsonTree(message, WebSocketMessage.class));
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Encoding chosen when the session connected
+     */
+    public static WebSocketEncoding of(Session session) {
+        return Optional.ofNullable(session.getUpgradeResponse())
+                .map(r -> r.getAcceptedSubProtocol())
+                .flatMap(WebSocketEncoding::fromSubProtocol)
+                .orElse(JSON);
+    }
+
+    static Optional<WebSocketEncoding> fromSubProtocol(String subProtocol) {
+        return Arrays.stream(values())
+                .filter(e -> e.subProtocol.equalsIgnoreCase(subProtocol))
+                .findFirst();
+    }
+
+    /**
+     * Wraps the creator of a websocket to accept the first subprotocol offered by the browser that we support
+     */
+    public static WebSocketCreator negotiating(WebSocketCreator creator) {
+        return (request, response) -> {
+            request.getSubProtocols().stream()
+                    .filter(p -> fromSubProtocol(p).isPresent())
+                    .findFirst()
+                    .ifPresent(response::setAcceptedSubProtocol);
+
+            return creator.createWebSocket(request, response);
+        };
+    }
+}
@@ -0,0 +1,21 @@
+package com.ftpix.homedash.app;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class AssetPipelineTest {
+
+    @Test
+    public void testFingerprint() {
+        assertEquals("/js/index.0123456789.js", AssetPipeline.fingerprint("/js/index.js", "0123456789"));
+        assertEquals("/js/vendor/jquery/jquery-3.2.1.min.0123456789.js", AssetPipeline.fingerprint("/js/vendor/jquery/jquery-3.2.1.min.js", "0123456789"));
+        assertEquals("/fonts/v1.0/font.0123456789", AssetPipeline.fingerprint("/fonts/v1.0/font", "0123456789"));
+    }
+
+    @Test
+    public void testToResource() {
+        assertEquals("web/js/index.js", AssetPipeline.toResource("/js/index.js"));
+        assertEquals("web/systeminfo/css/systeminfo.css", AssetPipeline.toResource("/plugin/systeminfo/css/systeminfo.css"));
+    }
+}
@@ -0,0 +1,127 @@
+package com.ftpix.homedash.app;
+
+import com.ftpix.homedash.models.WebSocketMessage;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Bytes on the wire for typical refresh payloads, raw, with websocket permessage-deflate and with gzip (HTTP)
+ */
+public class CompressionBenchmarkTest {
+    private final Logger logger = LogManager.getLogger();
+
+    @Test
+    public void testRefreshPayloadSizes() throws IOException {
+        Map<String, String> payloads = new HashMap<>();
+        payloads.put("systeminfo", systemInfoRefresh());
+        payloads.put("transmission", torrentsRefresh());
+        payloads.put("logreader", logLinesRefresh());
+
+        for (Map.Entry<String, String> payload : payloads.entrySet()) {
+            byte[] raw = payload.getValue().getBytes(StandardCharsets.UTF_8);
+
+            int deflate = permessageDeflate(raw, Deflater.DEFAULT_COMPRESSION);
+            int gzip1 = gzip(raw, 1), gzip6 = gzip(raw, 6), gzip9 = gzip(raw, 9);
+
+            logger.info("[{}] raw: {} bytes, permessage-deflate: {} bytes, gzip level 1/6/9: {}/{}/{} bytes",
+                    payload.getKey(), raw.length, deflate, gzip1, gzip6, gzip9);
+
+            assertTrue(deflate < raw.length);
+            assertTrue(gzip6 < raw.length);
+        }
+    }
+
+    /**
+     * Size of a websocket message compressed with permessage-deflate (raw deflate, sync flush, tail removed)
+     */
+    private int permessageDeflate(byte[] raw, int level) {
+        Deflater deflater = new Deflater(level, true);
+        deflater.setInput(raw);
+
+        byte[] buffer = new byte[raw.length + 64];
+        int size = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+        deflater.end();
+        return size - 4;
+    }
+
+    private int gzip(byte[] raw, int level) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out) {{
+            def.setLevel(level);
+        }}) {
+            gzip.write(raw);
+        }
+        return out.size();
+    }
+
+    private String systemInfoRefresh() {
+        List<Map<String, Object>> cpu = new ArrayList<>(), ram = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            Map<String, Object> cpuInfo = new HashMap<>();
+            cpuInfo.put("cpuUsage", 10 + (i * 7) % 35 + 0.123456789);
+            cpuInfo.put("time", 1600000000000L + i * 1000);
+            cpu.add(cpuInfo);
+
+            Map<String, Object> ramInfo = new HashMap<>();
+            ramInfo.put("maxRam", 16_000_000_000L);
+            ramInfo.put("usedRam", 8_000_000_000L + i * 1_000_000);
+            ramInfo.put("percentageUsed", 50.0 + i / 10.0);
+            ram.add(ramInfo);
+        }
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("cpuInfo", cpu);
+        data.put("ramInfo", ram);
+        return message(data);
+    }
+
+    private String torrentsRefresh() {
+        List<Map<String, Object>> torrents = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Map<String, Object> torrent = new HashMap<>();
+            torrent.put("id", i);
+            torrent.put("name", "Some.Linux.Distribution.Release." + i + ".x86_64.DVD.iso");
+            torrent.put("percentDone", (i * 13 % 100) / 100.0);
+            torrent.put("rateDownload", i * 1024);
+            torrent.put("rateUpload", i * 512);
+            torrent.put("status", i % 4 == 0 ? "Downloading" : "Seeding");
+            torrent.put("eta", i * 60);
+            torrents.add(torrent);
+        }
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("torrents", torrents);
+        data.put("downloadSpeed", 102400);
+        data.put("uploadSpeed", 51200);
+        return message(data);
+    }
+
+    private String logLinesRefresh() {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            lines.add("2020-10-19 12:00:" + (i % 60) + ",123 INFO  [qtp123456-" + (i % 8) + "] com.ftpix.homedash.app.App - GET -> http://localhost:4567/api/refresh/" + i + "/size/2x1");
+        }
+        return message(lines);
+    }
+
+    private String message(Object data) {
+        WebSocketMessage message = new WebSocketMessage();
+        message.setCommand(WebSocketMessage.COMMAND_REFRESH);
+        message.setModuleId(1);
+        message.setMessage(data);
+        return message.toJSon();
+    }
+}
@@ -0,0 +1,49 @@
+package com.ftpix.homedash.app;
+
+import com.ftpix.homedash.models.ModuleLayout;
+import com.ftpix.homedash.models.PluginDescriptor;
+import com.ftpix.homedash.plugins.Plugin;
+import com.ftpix.homedash.plugins.SystemInfoPlugin;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PluginRegistryTest {
+
+    @Test
+    public void allPluginsShouldBeRegistered() {
+        List<PluginDescriptor> descriptors = PluginRegistry.INSTANCE.getDescriptors();
+
+        assertEquals("All the plugins are discovered", 18, descriptors.size());
+
+        for (int i = 1; i < descriptors.size(); i++) {
+            assertTrue("Sorted by display name", descriptors.get(i - 1).getDisplayName().compareTo(descriptors.get(i).getDisplayName()) <= 0);
+        }
+    }
+
+    @Test
+    public void descriptorShouldHavePluginMetadata() {
+        PluginDescriptor descriptor = PluginRegistry.INSTANCE.getDescriptor(SystemInfoPlugin.class.getCanonicalName()).orElseThrow();
+
+        assertEquals("systeminfo", descriptor.getId());
+        assertEquals(ModuleLayout.SIZE_1x1, descriptor.getSmallestSize());
+        assertTrue(descriptor.hasFullScreen());
+        assertEquals(Integer.valueOf(3), descriptor.getRefreshRates().get(ModuleLayout.SIZE_1x1));
+    }
+
+    @Test
+    public void newInstanceShouldCreateDistinctPlugins() throws Exception {
+        Plugin first = PluginRegistry.INSTANCE.newInstance(SystemInfoPlugin.class.getCanonicalName());
+        Plugin second = PluginRegistry.INSTANCE.newInstance(SystemInfoPlugin.class.getCanonicalName());
+
+        assertTrue(first instanceof SystemInfoPlugin);
+        assertNotSame(first, second);
+    }
+
+    @Test(expected = ClassNotFoundException.class)
+    public void unknownClassShouldNotBeInstantiated() throws Exception {
+        PluginRegistry.INSTANCE.newInstance("java.lang.Object");
+    }
+}
@@ -0,0 +1,25 @@
+package com.ftpix.homedash.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+public class FileResponseTest {
+
+    @Test
+    public void testParseRange() {
+        assertArrayEquals(new long[]{0, 99}, FileResponse.parseRange("bytes=0-99", 1000));
+        assertArrayEquals(new long[]{500, 999}, FileResponse.parseRange("bytes=500-", 1000));
+        assertArrayEquals(new long[]{900, 999}, FileResponse.parseRange("bytes=-100", 1000));
+        assertArrayEquals(new long[]{0, 999}, FileResponse.parseRange("bytes=-5000", 1000));
+        assertArrayEquals(new long[]{990, 999}, FileResponse.parseRange("bytes=990-5000", 1000));
+
+        assertNull(FileResponse.parseRange("bytes=1000-", 1000));
+        assertNull(FileResponse.parseRange("bytes=50-10", 1000));
+        assertNull(FileResponse.parseRange("bytes=-", 1000));
+        assertNull(FileResponse.parseRange("bytes=0-10,20-30", 1000));
+        assertNull(FileResponse.parseRange("items=0-10", 1000));
+        assertNull(FileResponse.parseRange("bytes=0-10", 0));
+    }
+}
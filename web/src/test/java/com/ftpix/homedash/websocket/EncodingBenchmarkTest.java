@@ -0,0 +1,253 @@
+package com.ftpix.homedash.websocket;
+
+import com.ftpix.homedash.models.WebSocketMessage;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import io.gsonfire.GsonFireBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Bytes and encode time of numeric heavy refresh payloads, gson json vs CBOR
+ */
+public class EncodingBenchmarkTest {
+    private static final int ITERATIONS = 2000;
+
+    private final Logger logger = LogManager.getLogger();
+    private final Gson gson = new GsonFireBuilder().enableExposeMethodResult().createGsonBuilder().excludeFieldsWithModifiers(Modifier.STATIC, Modifier.TRANSIENT, Modifier.VOLATILE).serializeSpecialFloatingPointValues().create();
+
+    @Test
+    public void testSizesAndEncodeTime() throws IOException {
+        Map<String, WebSocketMessage> payloads = new LinkedHashMap<>();
+        payloads.put("systeminfo", message(systemInfoRefresh()));
+        payloads.put("networkmonitor", message(networkRefresh()));
+        payloads.put("docker", message(dockerStatsRefresh()));
+
+        for (Map.Entry<String, WebSocketMessage> payload : payloads.entrySet()) {
+            WebSocketMessage message = payload.getValue();
+            int json = gson.toJson(message).getBytes(StandardCharsets.UTF_8).length;
+            int cbor = WebSocketEncoding.CBOR.encode(gson, message).length;
+
+            //warm up
+            time(() -> gson.toJson(message));
+            time(() -> WebSocketEncoding.CBOR.encode(gson, message));
+
+            long jsonTime = time(() -> gson.toJson(message).getBytes(StandardCharsets.UTF_8));
+            long cborTime = time(() -> WebSocketEncoding.CBOR.encode(gson, message));
+
+            logger.info("[{}] json: {} bytes {}us/message, cbor: {} bytes {}us/message",
+                    payload.getKey(), json, jsonTime / ITERATIONS / 1000, cbor, cborTime / ITERATIONS / 1000);
+
+            assertTrue(cbor < json);
+        }
+    }
+
+    @Test
+    public void testSameContent() throws IOException {
+        WebSocketMessage message = message(systemInfoRefresh());
+        message.setExtra("extra");
+        message.setSeq(42L);
+
+        Map<String, Object> special = new HashMap<>();
+        special.put("negative", -1234567890123L);
+        special.put("small", 0.1);
+        special.put("half", 0.5);
+        special.put("text", "\u00e9\u00e0 \u20ac");
+        special.put("nothing", null);
+        special.put("flag", true);
+        ((Map<String, Object>) message.getMessage()).put("special", special);
+
+        JsonElement expected = gson.toJsonTree(message);
+        JsonElement decoded = new Decoder(WebSocketEncoding.CBOR.encode(gson, message)).read();
+
+        assertEquals(expected, decoded);
+    }
+
+    @Test
+    public void testBoxedValues() throws IOException {
+        // written by gson with value(Boolean) and the like
+        Boxed boxed = new Boxed();
+        WebSocketMessage message = message(new HashMap<>());
+        message.setExtra(boxed);
+
+        JsonElement expected = gson.toJsonTree(message);
+        JsonElement decoded = new Decoder(WebSocketEncoding.CBOR.encode(gson, message)).read();
+
+        assertEquals(expected, decoded);
+    }
+
+    private long time(Encoding encoding) throws IOException {
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            encoding.run();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private Map<String, Object> systemInfoRefresh() {
+        List<Map<String, Object>> cpu = new ArrayList<>(), ram = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            Map<String, Object> cpuInfo = new HashMap<>();
+            cpuInfo.put("cpuUsage", 10 + (i * 7) % 35 + 0.123456789);
+            cpuInfo.put("time", 1600000000000L + i * 1000);
+            cpu.add(cpuInfo);
+
+            Map<String, Object> ramInfo = new HashMap<>();
+            ramInfo.put("maxRam", 16_000_000_000L);
+            ramInfo.put("usedRam", 8_000_000_000L + i * 1_000_000);
+            ramInfo.put("percentageUsed", 50.0 + i / 10.0);
+            ram.add(ramInfo);
+        }
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("cpuInfo", cpu);
+        data.put("ramInfo", ram);
+        return data;
+    }
+
+    private Map<String, Object> networkRefresh() {
+        List<Map<String, Object>> samples = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            Map<String, Object> sample = new HashMap<>();
+            sample.put("upload", 1024L * (i % 17) * 37);
+            sample.put("download", 1024L * (i % 23) * 113);
+            sample.put("time", 1600000000000L + i * 1000);
+            samples.add(sample);
+        }
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("samples", samples);
+        data.put("interface", "eth0");
+        return data;
+    }
+
+    private Map<String, Object> dockerStatsRefresh() {
+        List<Map<String, Object>> containers = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Map<String, Object> container = new HashMap<>();
+            container.put("id", "3f4e5d6c7b8a" + i);
+            container.put("name", "container-" + i);
+            container.put("cpu", (i * 3.7) % 100);
+            container.put("memoryUsage", 100_000_000L + i * 12_345_678L);
+            container.put("memoryLimit", 2_000_000_000L);
+            container.put("networkRx", i * 987_654L);
+            container.put("networkTx", i * 123_456L);
+            containers.add(container);
+        }
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("containers", containers);
+        return data;
+    }
+
+    private WebSocketMessage message(Map<String, Object> data) {
+        WebSocketMessage message = new WebSocketMessage();
+        message.setCommand(WebSocketMessage.COMMAND_REFRESH);
+        message.setModuleId(1);
+        message.setMessage(data);
+        return message;
+    }
+
+    private interface Encoding {
+        Object run() throws IOException;
+    }
+
+    /**
+     * Reads back what CborWriter writes
+     */
+    private static class Decoder {
+        private final ByteBuffer buffer;
+
+        private Decoder(byte[] bytes) {
+            this.buffer = ByteBuffer.wrap(bytes);
+        }
+
+        private JsonElement read() {
+            int initial = buffer.get() & 0xff;
+            int major = initial >> 5, info = initial & 0x1f;
+
+            if (major == 7) {
+                switch (info) {
+                    case 20:
+                        return new JsonPrimitive(false);
+                    case 21:
+                        return new JsonPrimitive(true);
+                    case 22:
+                        return JsonNull.INSTANCE;
+                    case 26:
+                        return new JsonPrimitive(buffer.getFloat());
+                    case 27:
+                        return new JsonPrimitive(buffer.getDouble());
+                    default:
+                        return null; //break
+                }
+            }
+
+            long argument = argument(info);
+            switch (major) {
+                case 0:
+                    return new JsonPrimitive(argument);
+                case 1:
+                    return new JsonPrimitive(-1 - argument);
+                case 3:
+                    byte[] text = new byte[(int) argument];
+                    buffer.get(text);
+                    return new JsonPrimitive(new String(text, StandardCharsets.UTF_8));
+                case 4:
+                    JsonArray array = new JsonArray();
+                    for (JsonElement item = read(); item != null; item = read()) {
+                        array.add(item);
+                    }
+                    return array;
+                case 5:
+                    JsonObject object = new JsonObject();
+                    for (JsonElement key = read(); key != null; key = read()) {
+                        object.add(key.getAsString(), read());
+                    }
+                    return object;
+                default:
+                    throw new IllegalStateException("Unexpected major type " + major);
+            }
+        }
+
+        private long argument(int info) {
+            switch (info) {
+                case 24:
+                    return buffer.get() & 0xff;
+                case 25:
+                    return buffer.getShort() & 0xffff;
+                case 26:
+                    return buffer.getInt() & 0xffffffffL;
+                case 27:
+                    return buffer.getLong();
+                default:
+                    return info;
+            }
+        }
+    }
+
+    private static class Boxed {
+        private Boolean running = true;
+        private Boolean missing = null;
+        private Integer count = 3;
+        private Float ratio = 0.25f;
+    }
+}
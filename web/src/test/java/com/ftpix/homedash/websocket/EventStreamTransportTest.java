@@ -0,0 +1,36 @@
+package com.ftpix.homedash.websocket;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EventStreamTransportTest {
+
+    @Test
+    public void testEvent() {
+        assertEquals("data: {\"id\":1}\n\n", EventStreamTransport.event(null, "{\"id\":1}"));
+        assertEquals("event: hello\ndata: a\ndata: b\ndata: \n\n", EventStreamTransport.event("hello", "a\r\nb\n"));
+    }
+
+    @Test
+    public void testSlowClientIsClosed() {
+        EventStreamTransport transport = new EventStreamTransport();
+        assertTrue(transport.isOpen());
+
+        boolean failed = false;
+        for (int i = 0; i < 2000 && !failed; i++) {
+            try {
+                transport.send("{}");
+            } catch (IOException e) {
+                failed = true;
+            }
+        }
+
+        assertTrue(failed);
+        assertFalse(transport.isOpen());
+    }
+}
@@ -0,0 +1,217 @@
+package com.ftpix.homedash.websocket;
+
+import com.ftpix.homedash.models.Module;
+import com.ftpix.homedash.models.ModuleExposedData;
+import com.ftpix.homedash.models.WebSocketMessage;
+import com.ftpix.homedash.plugins.FederationClient;
+import com.ftpix.homedash.plugins.Plugin;
+import com.google.gson.JsonObject;
+import com.j256.ormlite.dao.EagerForeignCollection;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import spark.Service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Two instances on loopback: a "remote" one serving /ws-federation and the local federation client
+ */
+public class FederationTest {
+    private static final String KEY = "api-key";
+
+    private Service remote;
+    private CounterPlugin plugin;
+    private String remoteUrl;
+
+    @Before
+    public void setUp() throws Exception {
+        Module module = new Module();
+        module.setId(1);
+        module.setSettings(new EagerForeignCollection<>(null, module, null, null, null, false));
+
+        plugin = new CounterPlugin();
+        plugin.setModule(module);
+
+        remote = Service.ignite().port(0);
+        remote.webSocket("/ws-federation", new FederationWebSocket(id -> plugin, KEY::equals));
+        remote.init();
+        remote.awaitInitialization();
+
+        remoteUrl = "http://localhost:" + remote.port() + "/";
+    }
+
+    @After
+    public void tearDown() {
+        FederationClient.INSTANCE.close();
+        remote.stop();
+        remote.awaitStop();
+    }
+
+    @Test
+    public void testPushedRefreshAndCommand() throws Exception {
+        Optional<JsonObject> refresh = waitForRefresh(KEY, 0);
+        assertTrue(refresh.isPresent());
+        assertEquals(1, plugin.connected.get());
+
+        JsonObject message = refresh.get().getAsJsonObject("message");
+        assertEquals(remoteUrl + "cache/1/image.jpg", message.get("image").getAsString());
+
+        // the remote keeps pushing without being asked
+        int first = message.get("count").getAsInt();
+        Optional<JsonObject> next = waitForRefresh(KEY, first);
+        assertTrue(next.isPresent());
+        assertTrue(next.get().getAsJsonObject("message").get("count").getAsInt() > first);
+
+        WebSocketMessage command = new WebSocketMessage();
+        command.setCommand("echo");
+        command.setMessage("hello");
+        command.setModuleId(1);
+
+        JsonObject response = FederationClient.INSTANCE.command(remoteUrl, KEY, 1, command).get().get(5, TimeUnit.SECONDS);
+        assertEquals("echo", response.get("command").getAsString());
+        assertEquals("hello", response.get("message").getAsString());
+    }
+
+    @Test
+    public void testPushReceiverAndExpiry() throws Exception {
+        List<JsonObject> received = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 50 && received.size() < 2; i++) {
+            FederationClient.INSTANCE.latest(remoteUrl, KEY, 1, "1x1", 10_000, received::add);
+            Thread.sleep(100);
+        }
+
+        // every refresh of the remote is handed over as it comes
+        assertTrue(received.size() >= 2);
+        assertTrue(received.get(1).getAsJsonObject("message").get("count").getAsInt() > received.get(0).getAsJsonObject("message").get("count").getAsInt());
+
+        assertTrue(FederationClient.INSTANCE.latest(remoteUrl, KEY, 1, "1x1", 10_000, null).isPresent());
+        Thread.sleep(5);
+        assertFalse(FederationClient.INSTANCE.latest(remoteUrl, KEY, 1, "1x1", 1, null).isPresent());
+    }
+
+    @Test
+    public void testWrongKey() throws Exception {
+        assertFalse(waitForRefresh("wrong-key", 0).isPresent());
+        assertEquals(0, plugin.connected.get());
+    }
+
+    /**
+     * Reads the module until the remote pushed a refresh with a count higher than the given one
+     */
+    private Optional<JsonObject> waitForRefresh(String key, int after) throws InterruptedException {
+        for (int i = 0; i < 50; i++) {
+            Optional<JsonObject> refresh = FederationClient.INSTANCE.latest(remoteUrl, key, 1, "1x1")
+                    .filter(r -> r.getAsJsonObject("message").get("count").getAsInt() > after);
+            if (refresh.isPresent()) {
+                return refresh;
+            }
+            Thread.sleep(100);
+        }
+        return Optional.empty();
+    }
+
+
+    public static class CounterPlugin extends Plugin {
+        private final AtomicInteger count = new AtomicInteger(), connected = new AtomicInteger();
+
+        @Override
+        public String getId() {
+            return "counter";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Counter";
+        }
+
+        @Override
+        public String getDescription() {
+            return "Counts refreshes";
+        }
+
+        @Override
+        public String getExternalLink() {
+            return null;
+        }
+
+        @Override
+        protected void init() {
+        }
+
+        @Override
+        public String[] getSizes() {
+            return new String[]{"1x1"};
+        }
+
+        @Override
+        public int getBackgroundRefreshRate() {
+            return NEVER;
+        }
+
+        @Override
+        protected WebSocketMessage processCommand(String command, String message, Object extra) {
+            WebSocketMessage response = new WebSocketMessage();
+            response.setCommand(command);
+            response.setMessage(message);
+            return response;
+        }
+
+        @Override
+        public void doInBackground() {
+        }
+
+        @Override
+        protected Object refresh(String size) {
+            Map<String, Object> data = new HashMap<>();
+            data.put("count", count.incrementAndGet());
+            data.put("image", "/cache/1/image.jpg");
+            return data;
+        }
+
+        @Override
+        public int getRefreshRate(String size) {
+            return ONE_SECOND;
+        }
+
+        @Override
+        public Map<String, String> validateSettings(Map<String, String> settings) {
+            return null;
+        }
+
+        @Override
+        public ModuleExposedData exposeData() {
+            return null;
+        }
+
+        @Override
+        public Map<String, String> exposeSettings() {
+            return null;
+        }
+
+        @Override
+        protected void onFirstClientConnect() {
+            connected.incrementAndGet();
+        }
+
+        @Override
+        protected void onLastClientDisconnect() {
+            connected.decrementAndGet();
+        }
+
+        @Override
+        protected Map<String, Object> getSettingsModel() {
+            return null;
+        }
+    }
+}